@@ -0,0 +1,97 @@
+package ee.taltech.iti03022024backend.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import liquibase.integration.spring.SpringLiquibase;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares adding a view the old way (route lookup, one INSERT and a COUNT per view)
+ * with the write-behind {@link CampingRouteViewCounter}. Needs Docker for the database.
+ * <p>
+ * Run with {@code ./gradlew jmh -PjmhArgs="CampingRouteViewCounterBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(8)
+public class CampingRouteViewCounterBenchmark {
+    private static final long CAMPING_ROUTE_ID = 1L;
+
+    private PostgreSQLContainer<?> postgres;
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private CampingRouteViewCounter viewCounter;
+    private ScheduledExecutorService flusher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        postgres = new PostgreSQLContainer<>("postgres:14.1");
+        postgres.start();
+
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(postgres.getJdbcUrl());
+        dataSource.setUsername(postgres.getUsername());
+        dataSource.setPassword(postgres.getPassword());
+        dataSource.setMaximumPoolSize(10);
+
+        var liquibase = new SpringLiquibase();
+        liquibase.setDataSource(dataSource);
+        liquibase.setChangeLog("classpath:db/changelog/changelog-master.xml");
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("INSERT INTO user_data (username, email, password) VALUES ('bench', 'bench@example.com', 'x')");
+        jdbcTemplate.update("INSERT INTO camping_route (name, user_data_id) VALUES ('Benchmark route', 1)");
+
+        var transactionManager = new DataSourceTransactionManager(dataSource);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        viewCounter = new CampingRouteViewCounter(jdbcTemplate, transactionManager, Duration.ofMinutes(10));
+
+        // same cadence as the @Scheduled flush in the application
+        flusher = Executors.newSingleThreadScheduledExecutor();
+        flusher.scheduleWithFixedDelay(viewCounter::flush, 5, 5, TimeUnit.SECONDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        flusher.shutdownNow();
+        viewCounter.flush();
+        dataSource.close();
+        postgres.stop();
+    }
+
+    /**
+     * The path {@code CampingRouteViewService.addViewForCampingRoute} took before the write-behind counter.
+     */
+    @Benchmark
+    public Long insertAndCountPerView() {
+        return transactionTemplate.execute(status -> {
+            jdbcTemplate.queryForList(
+                    "SELECT r.*, u.* FROM camping_route r JOIN user_data u ON u.id = r.user_data_id WHERE r.id = ?",
+                    CAMPING_ROUTE_ID);
+            jdbcTemplate.update("INSERT INTO view (created_at, camping_route_id) VALUES (now(), ?)", CAMPING_ROUTE_ID);
+            return jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM view WHERE camping_route_id = ?", Long.class, CAMPING_ROUTE_ID);
+        });
+    }
+
+    @Benchmark
+    public long writeBehindCounter() {
+        return viewCounter.increment(CAMPING_ROUTE_ID);
+    }
+}
@@ -0,0 +1,79 @@
+package ee.taltech.iti03022024backend.config;
+
+import ee.taltech.iti03022024backend.file.ContentAddressedFileStore;
+import ee.taltech.iti03022024backend.file.FileResponses;
+import ee.taltech.iti03022024backend.file.HotFileCache;
+import ee.taltech.iti03022024backend.file.S3FileStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Chooses where uploaded files are kept with {@code app.files.storage}: {@code local} keeps them on the disk of
+ * the instance, {@code s3} in an S3 compatible bucket shared by all instances.
+ */
+@Configuration
+public class FileStoreConfig {
+
+    /**
+     * @param cacheSize     memory for the content of the files served most often, 0 to serve every file from disk
+     * @param cacheFileSize files larger than this are always served from disk
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.files.storage", havingValue = "local", matchIfMissing = true)
+    public ContentAddressedFileStore localFileStore(
+            @Value("${app.files.root:files}") Path rootDir,
+            FileResponses fileResponses,
+            MeterRegistry meterRegistry,
+            @Value("${app.files.cache.max-size:64MB}") DataSize cacheSize,
+            @Value("${app.files.cache.max-file-size:1MB}") DataSize cacheFileSize
+    ) {
+        var hotFiles = new HotFileCache(cacheSize.toBytes(), cacheFileSize.toBytes());
+        hotFiles.bindTo(meterRegistry);
+        return new ContentAddressedFileStore(rootDir, fileResponses, hotFiles);
+    }
+
+    /**
+     * @param endpoint  URL of an S3 compatible service such as MinIO, AWS S3 when empty
+     * @param accessKey access key of the bucket, the default AWS credentials are used when empty
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.files.storage", havingValue = "s3")
+    public S3FileStore s3FileStore(
+            @Value("${app.files.s3.endpoint:}") String endpoint,
+            @Value("${app.files.s3.region:us-east-1}") String region,
+            @Value("${app.files.s3.bucket}") String bucket,
+            @Value("${app.files.s3.access-key:}") String accessKey,
+            @Value("${app.files.s3.secret-key:}") String secretKey,
+            @Value("${app.files.s3.url-expiry:PT1H}") Duration urlExpiry
+    ) {
+        AwsCredentialsProvider credentials = accessKey.isEmpty()
+                ? DefaultCredentialsProvider.create()
+                : StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+        // services other than AWS S3 seldom resolve buckets as subdomains
+        S3Configuration s3 = S3Configuration.builder().pathStyleAccessEnabled(!endpoint.isEmpty()).build();
+
+        var client = S3Client.builder().region(Region.of(region)).credentialsProvider(credentials).serviceConfiguration(s3);
+        var presigner = S3Presigner.builder().region(Region.of(region)).credentialsProvider(credentials).serviceConfiguration(s3);
+        if (!endpoint.isEmpty()) {
+            client.endpointOverride(URI.create(endpoint));
+            presigner.endpointOverride(URI.create(endpoint));
+        }
+        return new S3FileStore(client.build(), presigner.build(), bucket, urlExpiry);
+    }
+}
@@ -0,0 +1,22 @@
+package ee.taltech.iti03022024backend.config;
+
+import ee.taltech.iti03022024backend.file.FileChannelResourceHttpMessageConverter;
+import ee.taltech.iti03022024backend.file.FileChannelResourceRegionHttpMessageConverter;
+import ee.taltech.iti03022024backend.gpx.EncodedGpxTrackHttpMessageConverter;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.addFirst(new EncodedGpxTrackHttpMessageConverter());
+        // stored files are written from their file channel, ahead of the default resource converters
+        converters.addFirst(new FileChannelResourceRegionHttpMessageConverter());
+        converters.addFirst(new FileChannelResourceHttpMessageConverter());
+    }
+}
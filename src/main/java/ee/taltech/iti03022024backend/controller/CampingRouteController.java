@@ -2,9 +2,12 @@ package ee.taltech.iti03022024backend.controller;
 
 import ee.taltech.iti03022024backend.dto.CampingRouteDto;
 import ee.taltech.iti03022024backend.dto.CampingRouteSearchRequest;
+import ee.taltech.iti03022024backend.dto.CampingRouteSummaryDto;
 import ee.taltech.iti03022024backend.dto.PageResponse;
+import ee.taltech.iti03022024backend.dto.SliceResponse;
 import ee.taltech.iti03022024backend.exception.ExceptionResponse;
 import ee.taltech.iti03022024backend.service.CampingRouteService;
+import ee.taltech.iti03022024backend.service.CampingRouteSummaryService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
@@ -12,11 +15,13 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Size;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.security.Principal;
+import java.util.List;
 
 @RestController
 @RequiredArgsConstructor
@@ -24,6 +29,7 @@ import java.security.Principal;
 @Tag(name = "Camping routes", description = "Camping route management APIs")
 public class CampingRouteController {
     private final CampingRouteService service;
+    private final CampingRouteSummaryService summaryService;
 
     @Operation(
             summary = "Create a new camping route",
@@ -77,6 +83,54 @@ public class CampingRouteController {
         return service.getCampingRoutesByUserId(searchRequest);
     }
 
+    @Operation(
+            summary = "Scroll found camping routes",
+            description = "Search camping routes like the search endpoint, newest first, one slice at a time. "
+                    + "Pass the returned cursor as 'after' to get the next slice"
+    )
+    @ApiResponse(responseCode = "200", description = "Found slice of camping routes successfully from the system")
+    @ApiResponse(responseCode = "400", description = "Cursor is not valid",
+            content = @Content(
+                    schema = @Schema(implementation = ExceptionResponse.class),
+                    examples = @ExampleObject(value = "{\"message\": \"Cursor is not valid\"}")
+            ))
+    @PostMapping("/public/camping_routes/search/scroll")
+    public ResponseEntity<SliceResponse<CampingRouteDto>> scrollFoundCampingRoutes(@Valid @RequestBody CampingRouteSearchRequest searchRequest) {
+        return service.scrollFoundCampingRoutes(searchRequest);
+    }
+
+    @Operation(
+            summary = "Scroll camping routes",
+            description = "Get camping routes newest first, one slice at a time. "
+                    + "Pass the returned cursor as 'after' to get the next slice"
+    )
+    @ApiResponse(responseCode = "200", description = "Slice of camping routes successfully found")
+    @ApiResponse(responseCode = "400", description = "Cursor is not valid",
+            content = @Content(
+                    schema = @Schema(implementation = ExceptionResponse.class),
+                    examples = @ExampleObject(value = "{\"message\": \"Cursor is not valid\"}")
+            ))
+    @PostMapping("/public/camping_routes/scroll")
+    public ResponseEntity<SliceResponse<CampingRouteDto>> scrollCampingRoutes(@Valid @RequestBody CampingRouteSearchRequest searchRequest) {
+        return service.scrollCampingRoutesForHomepage(searchRequest);
+    }
+
+    @Operation(
+            summary = "Scroll camping routes by user ID",
+            description = "Get camping routes of the given user ID newest first, one slice at a time. "
+                    + "Pass the returned cursor as 'after' to get the next slice"
+    )
+    @ApiResponse(responseCode = "200", description = "Slice of camping routes successfully found by user ID")
+    @ApiResponse(responseCode = "400", description = "Cursor is not valid",
+            content = @Content(
+                    schema = @Schema(implementation = ExceptionResponse.class),
+                    examples = @ExampleObject(value = "{\"message\": \"Cursor is not valid\"}")
+            ))
+    @PostMapping("/public/camping_routes/user/scroll")
+    public ResponseEntity<SliceResponse<CampingRouteDto>> scrollCampingRoutesByUserId(@Valid @RequestBody CampingRouteSearchRequest searchRequest) {
+        return service.scrollCampingRoutesByUserId(searchRequest);
+    }
+
     @Operation(
             summary = "Get a camping route by its ID",
             description = "Get a camping route from the system by its ID"
@@ -92,6 +146,24 @@ public class CampingRouteController {
         return service.getCampingRoute(id);
     }
 
+    @Operation(
+            summary = "Get summaries of many camping routes",
+            description = "Get the cover image name, view count and comment count of each camping route with the "
+                    + "provided IDs in one request, e.g. for the cards of a listing page. "
+                    + "Camping routes that do not exist are left out."
+    )
+    @ApiResponse(responseCode = "200", description = "Summaries successfully fetched in the order of the IDs")
+    @ApiResponse(responseCode = "400", description = "No IDs or too many IDs were provided",
+            content = @Content(
+                    schema = @Schema(implementation = ExceptionResponse.class),
+                    examples = @ExampleObject(value = "{\"message\": \"Between 1 and 100 IDs must be provided\"}")
+            ))
+    @GetMapping("/public/camping_routes/summaries")
+    public ResponseEntity<List<CampingRouteSummaryDto>> getCampingRouteSummaries(
+            @RequestParam @Size(min = 1, max = 100, message = "Between 1 and 100 IDs must be provided") List<Long> ids) {
+        return summaryService.getSummaries(ids);
+    }
+
     @Operation(
             summary = "Delete camping route",
             description = "Delete camping route with provided ID from the system"
@@ -1,6 +1,9 @@
 package ee.taltech.iti03022024backend.controller;
 
+import ee.taltech.iti03022024backend.dto.CampingRouteElevationProfileDto;
 import ee.taltech.iti03022024backend.exception.ExceptionResponse;
+import ee.taltech.iti03022024backend.gpx.EncodedGpxTrack;
+import ee.taltech.iti03022024backend.gpx.GpxTrackCodec;
 import ee.taltech.iti03022024backend.service.CampingRouteGpxService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -8,8 +11,13 @@ import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import lombok.RequiredArgsConstructor;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -68,9 +76,12 @@ public class CampingRouteGpxController {
 
     @Operation(
             summary = "Get GPX file by camping route ID",
-            description = "Get GPX file from the system by provided camping route ID"
+            description = "Get GPX file from the system by provided camping route ID, "
+                    + "simplified by up to tolerance meters or to what is visible at the zoom level when either is given. "
+                    + "The whole file is sent gzip compressed when Accept-Encoding allows it"
     )
     @ApiResponse(responseCode = "200", description = "GPX file found successfully from the system")
+    @ApiResponse(responseCode = "302", description = "GPX file is kept in object storage, redirect to a temporary link to it")
     @ApiResponse(responseCode = "404", description = "No GPX file found from the system with provided camping route ID",
             content = @Content(
                     schema = @Schema(implementation = ExceptionResponse.class),
@@ -84,8 +95,66 @@ public class CampingRouteGpxController {
             )
     )
     @GetMapping("/public/camping_routes/gpx/{campingRouteId}")
-    public ResponseEntity<Resource> getGpx(@PathVariable long campingRouteId) {
-        return gpxService.getGpx(campingRouteId);
+    public ResponseEntity<Resource> getGpx(
+            @PathVariable long campingRouteId,
+            @RequestParam(required = false) @DecimalMin(value = "0", message = "Tolerance can not be negative") Double tolerance,
+            @RequestParam(required = false) @Min(value = 0, message = "Zoom can not be negative")
+            @Max(value = 24, message = "Zoom can not be over 24") Integer zoom,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        return gpxService.getGpx(campingRouteId, tolerance, zoom, acceptEncoding);
+    }
+
+    @Operation(
+            summary = "Get track of a camping route",
+            description = "Get the points of the GPX file of a camping route in a compact binary format ("
+                    + GpxTrackCodec.MEDIA_TYPE_VALUE + ") or, when JSON is asked for, as arrays of coordinates. "
+                    + "The track is simplified by up to tolerance meters or to what is visible at the zoom level"
+    )
+    @ApiResponse(responseCode = "200", description = "Track found successfully from the system")
+    @ApiResponse(responseCode = "404", description = "No GPX file found from the system with provided camping route ID",
+            content = @Content(
+                    schema = @Schema(implementation = ExceptionResponse.class),
+                    examples = @ExampleObject(value = "{\"message\": \"GPX file not found for camping route with id 0\"}")
+            )
+    )
+    @ApiResponse(responseCode = "500", description = "Something went wrong with reading the track",
+            content = @Content(
+                    schema = @Schema(implementation = ExceptionResponse.class),
+                    examples = @ExampleObject(value = "{\"message\": \"Track could not be read.\"}")
+            )
+    )
+    @GetMapping(value = "/public/camping_routes/gpx/{campingRouteId}/track",
+            produces = {GpxTrackCodec.MEDIA_TYPE_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<EncodedGpxTrack> getTrack(
+            @PathVariable long campingRouteId,
+            @RequestParam(required = false) @DecimalMin(value = "0", message = "Tolerance can not be negative") Double tolerance,
+            @RequestParam(required = false) @Min(value = 0, message = "Zoom can not be negative")
+            @Max(value = 24, message = "Zoom can not be over 24") Integer zoom
+    ) {
+        return gpxService.getTrack(campingRouteId, tolerance, zoom);
+    }
+
+    @Operation(
+            summary = "Get elevation profile of a camping route",
+            description = "Get the elevations along the GPX track of a camping route in 100 equally wide buckets of distance"
+    )
+    @ApiResponse(responseCode = "200", description = "Elevation profile found successfully from the system")
+    @ApiResponse(responseCode = "404", description = "No GPX file with elevations found with provided camping route ID",
+            content = @Content(
+                    schema = @Schema(implementation = ExceptionResponse.class),
+                    examples = @ExampleObject(value = "{\"message\": \"GPX file not found for camping route with id 0\"}")
+            )
+    )
+    @ApiResponse(responseCode = "500", description = "Something went wrong with reading the GPX file",
+            content = @Content(
+                    schema = @Schema(implementation = ExceptionResponse.class),
+                    examples = @ExampleObject(value = "{\"message\": \"GPX file could not be read.\"}")
+            )
+    )
+    @GetMapping("/public/camping_routes/gpx/{campingRouteId}/profile")
+    public ResponseEntity<CampingRouteElevationProfileDto> getElevationProfile(@PathVariable long campingRouteId) {
+        return gpxService.getElevationProfile(campingRouteId);
     }
 
     @Operation(
@@ -1,6 +1,7 @@
 package ee.taltech.iti03022024backend.controller;
 
 import ee.taltech.iti03022024backend.dto.CampingRouteImageNamesDto;
+import ee.taltech.iti03022024backend.dto.CampingRouteImageUploadDto;
 import ee.taltech.iti03022024backend.exception.ExceptionResponse;
 import ee.taltech.iti03022024backend.service.CampingRouteImagesService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -9,8 +10,10 @@ import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.constraints.Min;
 import lombok.RequiredArgsConstructor;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -28,7 +31,8 @@ public class CampingRouteImagesController {
 
     @Operation(
             summary = "Add images to a camping route",
-            description = "Add images to a camping route that is being created"
+            description = "Add images to a camping route that is being created. Either all images are added "
+                    + "or none of them when one can not be stored"
     )
     @ApiResponse(responseCode = "200", description = "Images successfully added to camping route")
     @ApiResponse(responseCode = "404", description = "Camping route with provided ID does not exist",
@@ -61,7 +65,7 @@ public class CampingRouteImagesController {
             )
     )
     @PostMapping("/camping_routes/images/{id}")
-    public ResponseEntity<Void> addImagesToCampingRoute(
+    public ResponseEntity<CampingRouteImageUploadDto> addImagesToCampingRoute(
             Principal principal,
             @RequestParam("files") MultipartFile[] files,
             @PathVariable long id
@@ -87,9 +91,12 @@ public class CampingRouteImagesController {
 
     @Operation(
             summary = "Get image by camping route ID and image name",
-            description = "Get image from the system by provided camping route ID and image name"
+            description = "Get image from the system by provided camping route ID and image name. "
+                    + "When a size is given, a smaller copy at least size pixels wide is sent if there is one, "
+                    + "as WebP when the client accepts it and JPEG otherwise"
     )
     @ApiResponse(responseCode = "200", description = "Image found successfully from the system")
+    @ApiResponse(responseCode = "302", description = "Image is kept in object storage, redirect to a temporary link to it")
     @ApiResponse(responseCode = "404", description = "No image found from the system with provided camping route ID and image name",
             content = @Content(
                     schema = @Schema(implementation = ExceptionResponse.class),
@@ -103,8 +110,13 @@ public class CampingRouteImagesController {
             )
     )
     @GetMapping("/public/camping_routes/images/{id}/{imageName}")
-    public ResponseEntity<Resource> getImage(@PathVariable long id, @PathVariable String imageName) {
-        return campingRouteImagesService.getImage(id, imageName);
+    public ResponseEntity<Resource> getImage(
+            @PathVariable long id,
+            @PathVariable String imageName,
+            @RequestParam(required = false) @Min(value = 1, message = "Size must be at least 1") Integer size,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept
+    ) {
+        return campingRouteImagesService.getImage(id, imageName, size, accept);
     }
 
     @Operation(
@@ -0,0 +1,51 @@
+package ee.taltech.iti03022024backend.controller;
+
+import ee.taltech.iti03022024backend.exception.ExceptionResponse;
+import ee.taltech.iti03022024backend.service.CampingRouteTileService;
+import ee.taltech.iti03022024backend.tile.VectorTileEncoder;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.ExampleObject;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("api")
+@Tag(name = "Camping route tiles", description = "Map tiles of camping routes")
+public class CampingRouteTileController {
+    private final CampingRouteTileService tileService;
+
+    @Operation(
+            summary = "Get map tile of camping routes",
+            description = "Get a Mapbox Vector Tile (" + VectorTileEncoder.MEDIA_TYPE_VALUE + ") of the web map tile grid "
+                    + "with the simplified GPX tracks of the camping routes in it and the start points of the ones "
+                    + "without a GPX file, an empty body when there are no camping routes in the tile"
+    )
+    @ApiResponse(responseCode = "200", description = "Tile rendered successfully")
+    @ApiResponse(responseCode = "400", description = "Tile is not part of the tile grid",
+            content = @Content(
+                    schema = @Schema(implementation = ExceptionResponse.class),
+                    examples = @ExampleObject(value = "{\"message\": \"Tile 1/2/0 does not exist\"}")
+            )
+    )
+    @GetMapping("/public/tiles/{z}/{x}/{y}.mvt")
+    public ResponseEntity<Resource> getTile(
+            @PathVariable @Min(value = 0, message = "Zoom can not be negative")
+            @Max(value = CampingRouteTileService.MAX_ZOOM, message = "Zoom can not be over 22") int z,
+            @PathVariable int x,
+            @PathVariable int y
+    ) {
+        return tileService.getTile(z, x, y);
+    }
+}
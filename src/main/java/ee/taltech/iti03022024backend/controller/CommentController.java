@@ -1,6 +1,7 @@
 package ee.taltech.iti03022024backend.controller;
 
 import ee.taltech.iti03022024backend.dto.CommentDto;
+import ee.taltech.iti03022024backend.dto.SliceResponse;
 import ee.taltech.iti03022024backend.exception.ExceptionResponse;
 import ee.taltech.iti03022024backend.service.CommentService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -10,9 +11,13 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.security.Principal;
 import java.util.List;
@@ -70,6 +75,43 @@ public class CommentController {
         return service.getCommentsByCampingRoute(campingRouteId);
     }
 
+    @Operation(
+            summary = "Get a slice of comments by camping route ID",
+            description = "Get at most 'limit' camping route comments after the comment with ID 'after', oldest first. "
+                    + "Pass the returned cursor as 'after' to get the next slice"
+    )
+    @ApiResponse(responseCode = "200", description = "Camping route comments successfully found")
+    @ApiResponse(responseCode = "404", description = "Camping route with provided ID was not found",
+            content = @Content(
+                    schema = @Schema(implementation = ExceptionResponse.class),
+                    examples = @ExampleObject(value = "{\"message\": \"Camping route with id of 0 does not exist\"}")
+            )
+    )
+    @GetMapping(value = "/public/camping_routes/comments/{campingRouteId}", params = "limit")
+    public ResponseEntity<SliceResponse<CommentDto>> getCommentSliceByCampingRoute(
+            @PathVariable long campingRouteId,
+            @RequestParam(required = false) Long after,
+            @RequestParam @Min(value = 1, message = "Limit must be at least 1")
+            @Max(value = 100, message = "Limit must not exceed 100") int limit) {
+        return service.getCommentSliceByCampingRoute(campingRouteId, after, limit);
+    }
+
+    @Operation(
+            summary = "Stream comments by camping route ID",
+            description = "Stream all camping route comments as newline delimited JSON, oldest first"
+    )
+    @ApiResponse(responseCode = "200", description = "Camping route comments are streamed")
+    @ApiResponse(responseCode = "404", description = "Camping route with provided ID was not found",
+            content = @Content(
+                    schema = @Schema(implementation = ExceptionResponse.class),
+                    examples = @ExampleObject(value = "{\"message\": \"Camping route with id of 0 does not exist\"}")
+            )
+    )
+    @GetMapping(value = "/public/camping_routes/comments/{campingRouteId}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamCommentsByCampingRoute(@PathVariable long campingRouteId) {
+        return service.streamCommentsByCampingRoute(campingRouteId);
+    }
+
     @Operation(
             summary = "Get comments by user ID",
             description = "Get camping route comments by provided user ID from the system"
@@ -80,6 +122,31 @@ public class CommentController {
         return service.getCommentsByUserId(userId);
     }
 
+    @Operation(
+            summary = "Get a slice of comments by user ID",
+            description = "Get at most 'limit' comments of the user after the comment with ID 'after', oldest first. "
+                    + "Pass the returned cursor as 'after' to get the next slice"
+    )
+    @ApiResponse(responseCode = "200", description = "Camping route comments successfully found")
+    @GetMapping(value = "/public/camping_routes/comments/user/{userId}", params = "limit")
+    public ResponseEntity<SliceResponse<CommentDto>> getCommentSliceByUserId(
+            @PathVariable long userId,
+            @RequestParam(required = false) Long after,
+            @RequestParam @Min(value = 1, message = "Limit must be at least 1")
+            @Max(value = 100, message = "Limit must not exceed 100") int limit) {
+        return service.getCommentSliceByUserId(userId, after, limit);
+    }
+
+    @Operation(
+            summary = "Stream comments by user ID",
+            description = "Stream all comments of the user as newline delimited JSON, oldest first"
+    )
+    @ApiResponse(responseCode = "200", description = "Camping route comments are streamed")
+    @GetMapping(value = "/public/camping_routes/comments/user/{userId}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamCommentsByUserId(@PathVariable long userId) {
+        return service.streamCommentsByUserId(userId);
+    }
+
     @Operation(
             summary = "Delete comments by user ID",
             description = "Delete camping route comments by provided user ID from the system"
@@ -31,6 +31,22 @@ public class CampingRouteDto {
             example = "https://media.voog.com/0000/0030/9870/photos/viru_raba_loodusrada_1_medium.jpg")
     private String thumbnailUrl;
 
+    @DecimalMin(value = "-90", message = "Start latitude must be at least -90")
+    @DecimalMax(value = "90", message = "Start latitude must not exceed 90")
+    @Schema(description = "Latitude of the start of the camping route, taken from the GPX track once it is uploaded",
+            example = "59.3317")
+    private Double startLatitude;
+
+    @DecimalMin(value = "-180", message = "Start longitude must be at least -180")
+    @DecimalMax(value = "180", message = "Start longitude must not exceed 180")
+    @Schema(description = "Longitude of the start of the camping route, taken from the GPX track once it is uploaded",
+            example = "25.3428")
+    private Double startLongitude;
+
     @Schema(description = "ID of Camping Route author")
     private long userID;
+
+    @Schema(description = "Statistics of the uploaded GPX track, missing while the route has no track",
+            accessMode = Schema.AccessMode.READ_ONLY)
+    private CampingRouteTrackStatsDto trackStats;
 }
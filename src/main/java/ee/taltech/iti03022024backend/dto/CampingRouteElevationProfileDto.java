@@ -0,0 +1,29 @@
+package ee.taltech.iti03022024backend.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@Schema(description = "Elevations along the GPX track of a camping route in equally wide buckets of distance, "
+        + "the arrays hold one value per bucket")
+public class CampingRouteElevationProfileDto {
+    @Schema(description = "Length of the track in meters", example = "4909.3")
+    private double distanceMeters;
+
+    @Schema(description = "Width of a bucket in meters", example = "49.1")
+    private double bucketMeters;
+
+    @Schema(description = "Distance from the start of the track to the middle of each bucket in meters")
+    private double[] distances;
+
+    @Schema(description = "Mean elevation of each bucket in meters")
+    private double[] elevations;
+
+    @Schema(description = "Lowest elevation of each bucket in meters")
+    private double[] minElevations;
+
+    @Schema(description = "Highest elevation of each bucket in meters")
+    private double[] maxElevations;
+}
@@ -0,0 +1,29 @@
+package ee.taltech.iti03022024backend.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Schema(description = "Data Transfer Object for images added to a camping route")
+public class CampingRouteImageUploadDto {
+    @Schema(description = "Added images in the order they were uploaded")
+    private List<StoredImage> images;
+
+    @Data
+    @Schema(description = "Image added to a camping route")
+    public static class StoredImage {
+        @Schema(description = "Name of the uploaded file", example = "IMG_2041.jpg")
+        private String originalName;
+
+        @Schema(description = "Name the image is stored and fetched by", example = "a532adgehpf.jpg")
+        private String imageName;
+
+        @Schema(description = "Size of the image in bytes", example = "2481034")
+        private long size;
+
+        @Schema(description = "Whether the same image had been uploaded before and its bytes are shared", example = "false")
+        private boolean duplicate;
+    }
+}
@@ -0,0 +1,13 @@
+package ee.taltech.iti03022024backend.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "How the search keyword is matched against camping routes")
+public enum CampingRouteSearchMode {
+    @Schema(description = "Case-insensitive substring match on name, description and location")
+    CONTAINS,
+    @Schema(description = "Ranked full-text match with prefix matching on every word of the keyword")
+    FULL_TEXT,
+    @Schema(description = "Typo-tolerant trigram match on name and location, ranked by similarity")
+    FUZZY
+}
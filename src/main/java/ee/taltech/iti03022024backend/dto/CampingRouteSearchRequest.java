@@ -1,8 +1,13 @@
 package ee.taltech.iti03022024backend.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
 import lombok.Data;
@@ -18,6 +23,63 @@ public class CampingRouteSearchRequest {
     @Pattern(regexp = "^[\\p{L}\\p{N}\\s.,()-]*$", message = "Search keyword contains invalid characters")
     private String keyword;
 
+    @Schema(description = "How the keyword is matched, used by the search endpoint", example = "FULL_TEXT")
+    @NotNull(message = "Search mode must not be null")
+    private CampingRouteSearchMode mode = CampingRouteSearchMode.FULL_TEXT;
+
+    @Schema(description = "Minimum word similarity between the keyword and the route name, used by the FUZZY mode", example = "0.4")
+    @DecimalMin(value = "0.1", message = "Name similarity threshold must be at least 0.1")
+    @DecimalMax(value = "1.0", message = "Name similarity threshold must not exceed 1.0")
+    private double nameSimilarityThreshold = 0.4;
+
+    @Schema(description = "Minimum word similarity between the keyword and the route location, used by the FUZZY mode", example = "0.4")
+    @DecimalMin(value = "0.1", message = "Location similarity threshold must be at least 0.1")
+    @DecimalMax(value = "1.0", message = "Location similarity threshold must not exceed 1.0")
+    private double locationSimilarityThreshold = 0.4;
+
+    @Schema(description = "Latitude of the center of a radius search, used by the search endpoint", example = "59.437")
+    @DecimalMin(value = "-90", message = "Latitude must be at least -90")
+    @DecimalMax(value = "90", message = "Latitude must not exceed 90")
+    private Double latitude;
+
+    @Schema(description = "Longitude of the center of a radius search, used by the search endpoint", example = "24.7536")
+    @DecimalMin(value = "-180", message = "Longitude must be at least -180")
+    @DecimalMax(value = "180", message = "Longitude must not exceed 180")
+    private Double longitude;
+
+    @Schema(description = "Radius in kilometers around latitude and longitude the routes must start in, nearest first",
+            example = "25")
+    @DecimalMin(value = "0.1", message = "Radius must be at least 0.1 km")
+    @DecimalMax(value = "1000", message = "Radius must not exceed 1000 km")
+    private Double radiusKm;
+
+    @Schema(description = "Southern edge of a viewport the routes must overlap, used by the search endpoint", example = "59.2")
+    @DecimalMin(value = "-90", message = "Viewport latitude must be at least -90")
+    @DecimalMax(value = "90", message = "Viewport latitude must not exceed 90")
+    private Double minLatitude;
+
+    @Schema(description = "Western edge of a viewport, east of maxLongitude when the viewport crosses the antimeridian",
+            example = "24.5")
+    @DecimalMin(value = "-180", message = "Viewport longitude must be at least -180")
+    @DecimalMax(value = "180", message = "Viewport longitude must not exceed 180")
+    private Double minLongitude;
+
+    @Schema(description = "Northern edge of a viewport the routes must overlap", example = "59.6")
+    @DecimalMin(value = "-90", message = "Viewport latitude must be at least -90")
+    @DecimalMax(value = "90", message = "Viewport latitude must not exceed 90")
+    private Double maxLatitude;
+
+    @Schema(description = "Eastern edge of a viewport the routes must overlap", example = "25.1")
+    @DecimalMin(value = "-180", message = "Viewport longitude must be at least -180")
+    @DecimalMax(value = "180", message = "Viewport longitude must not exceed 180")
+    private Double maxLongitude;
+
+    @Schema(description = "Cursor of the previous slice, used by the scroll endpoints. Empty for the first slice",
+            example = "MjAyNC0xMS0yMFQxMDoxNToyMC4xMjM0NTY6NDI")
+    @Size(max = 100, message = "Cursor must not exceed 100 characters")
+    @Pattern(regexp = "^[A-Za-z0-9_-]*$", message = "Cursor contains invalid characters")
+    private String after;
+
     @Schema(description = "Page number (zero-based)", example = "0")
     @Min(value = 0, message = "Page number must not be negative")
     private int pageNumber;
@@ -26,4 +88,31 @@ public class CampingRouteSearchRequest {
     @Min(value = 1, message = "Page size must be at least 1")
     @Max(value = 20, message = "Page size must not exceed 20")
     private int pageSize;
+
+    public boolean hasRadius() {
+        return latitude != null || longitude != null || radiusKm != null;
+    }
+
+    public boolean hasViewport() {
+        return minLatitude != null || minLongitude != null || maxLatitude != null || maxLongitude != null;
+    }
+
+    @JsonIgnore
+    @AssertTrue(message = "Radius search needs latitude, longitude and radiusKm")
+    public boolean isRadiusComplete() {
+        return !hasRadius() || latitude != null && longitude != null && radiusKm != null;
+    }
+
+    @JsonIgnore
+    @AssertTrue(message = "Viewport needs minLatitude, minLongitude, maxLatitude and maxLongitude, south to north")
+    public boolean isViewportComplete() {
+        return !hasViewport() || minLatitude != null && minLongitude != null && maxLatitude != null
+                && maxLongitude != null && minLatitude <= maxLatitude;
+    }
+
+    @JsonIgnore
+    @AssertTrue(message = "Search either by radius or by viewport")
+    public boolean isSingleArea() {
+        return !(hasRadius() && hasViewport());
+    }
 }
@@ -0,0 +1,20 @@
+package ee.taltech.iti03022024backend.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+@Data
+@RequiredArgsConstructor
+@Schema(description = "Data Transfer Object for what a card of a camping route in a listing shows")
+public class CampingRouteSummaryDto {
+    @Schema(description = "ID of the camping route.", example = "14")
+    private final long campingRouteId;
+    @Schema(description = "Name of the first image of the camping route, null when it has no images",
+            example = "a532adgehpf.png")
+    private final String coverImageName;
+    @Schema(description = "View count of the camping route.", example = "142")
+    private final long viewsCount;
+    @Schema(description = "Number of comments on the camping route.", example = "5")
+    private final long commentsCount;
+}
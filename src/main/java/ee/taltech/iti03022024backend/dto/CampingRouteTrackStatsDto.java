@@ -0,0 +1,38 @@
+package ee.taltech.iti03022024backend.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@Schema(description = "Statistics of the GPX track of a camping route")
+public class CampingRouteTrackStatsDto {
+    @Schema(description = "Length of the track in meters", example = "11834.5")
+    private Double distanceMeters;
+
+    @Schema(description = "Total climb of the track in meters", example = "64.2")
+    private Double elevationGainMeters;
+
+    @Schema(description = "Total descent of the track in meters", example = "61.8")
+    private Double elevationLossMeters;
+
+    @Schema(description = "Southern edge of the track", example = "59.2912")
+    private Double minLatitude;
+
+    @Schema(description = "Western edge of the track", example = "25.3182")
+    private Double minLongitude;
+
+    @Schema(description = "Northern edge of the track", example = "59.3317")
+    private Double maxLatitude;
+
+    @Schema(description = "Eastern edge of the track", example = "25.3945")
+    private Double maxLongitude;
+
+    @Schema(description = "Number of track points", example = "784")
+    private Integer pointCount;
+
+    @Schema(description = "Time from the first to the last track point in seconds, missing when the track has no times",
+            example = "9912")
+    private Long durationSeconds;
+}
@@ -3,11 +3,13 @@ package ee.taltech.iti03022024backend.dto;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data
 @NoArgsConstructor
+@AllArgsConstructor
 @Schema(description = "Data Transfer Object for camping route comment")
 public class CommentDto {
     @Schema(description = "ID for the camping route comment", example = "0")
@@ -1,13 +1,13 @@
 package ee.taltech.iti03022024backend.dto;
 
 import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
 import lombok.Data;
-import lombok.RequiredArgsConstructor;
 
 import java.util.List;
 
 @Data
-@RequiredArgsConstructor
+@AllArgsConstructor
 @Schema(description = "Data Transfer Object for page response")
 public class PageResponse<T> {
     @Schema(description = "Camping route DTO-s list", example = "[<CampingRouteDTO_1>, <CampingRouteDTO_2>]")
@@ -16,4 +16,10 @@ public class PageResponse<T> {
     private final long totalElements;
     @Schema(description = "Total pages form the query response", example = "4")
     private final int totalPages;
+    @Schema(description = "Whether the totals are an estimate or a cached count that can be out of date", example = "false")
+    private final boolean approximate;
+
+    public PageResponse(List<T> content, long totalElements, int totalPages) {
+        this(content, totalElements, totalPages, false);
+    }
 }
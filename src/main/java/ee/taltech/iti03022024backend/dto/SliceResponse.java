@@ -0,0 +1,18 @@
+package ee.taltech.iti03022024backend.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+@Data
+@RequiredArgsConstructor
+@Schema(description = "Data Transfer Object for a slice of a scrolled listing")
+public class SliceResponse<T> {
+    @Schema(description = "Camping route DTO-s list", example = "[<CampingRouteDTO_1>, <CampingRouteDTO_2>]")
+    private final List<T> content;
+    @Schema(description = "Cursor to pass as 'after' for the next slice, null when this is the last slice",
+            example = "MjAyNC0xMS0yMFQxMDoxNToyMC4xMjM0NTY6NDI")
+    private final String nextCursor;
+}
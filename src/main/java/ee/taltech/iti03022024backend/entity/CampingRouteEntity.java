@@ -1,15 +1,22 @@
 package ee.taltech.iti03022024backend.entity;
 
+import ee.taltech.iti03022024backend.service.CampingRouteRemovalListener;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.Generated;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Getter
 @Setter
 @Entity
 @Table(name = "camping_route")
+// edits of a route and GPX uploads change different columns, so neither writes back what the other changed
+@DynamicUpdate
+@EntityListeners(CampingRouteRemovalListener.class)
 public class CampingRouteEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -19,7 +26,22 @@ public class CampingRouteEntity {
     private String location;
     private String thumbnailUrl;
 
-    @ManyToOne
+    @Column(name = "start_lat")
+    private Double startLatitude;
+
+    @Column(name = "start_lon")
+    private Double startLongitude;
+
+    // set by the database on insert
+    @Generated
+    @Column(name = "created_at", insertable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // null while the route has no GPX track
+    @Embedded
+    private CampingRouteTrackStats trackStats;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_data_id")
     private UserEntity user;
 
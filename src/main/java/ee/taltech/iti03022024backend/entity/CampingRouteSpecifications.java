@@ -3,6 +3,8 @@ package ee.taltech.iti03022024backend.entity;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.jpa.domain.Specification;
 
+import java.util.Collection;
+
 @Slf4j
 public class CampingRouteSpecifications {
     private CampingRouteSpecifications() {}
@@ -12,6 +14,10 @@ public class CampingRouteSpecifications {
                 criteriaBuilder.equal(root.get("user").get("id"), userId);
     }
 
+    public static Specification<CampingRouteEntity> hasIdIn(Collection<Long> ids) {
+        return (root, query, criteriaBuilder) -> root.get("id").in(ids);
+    }
+
     public static Specification<CampingRouteEntity> hasKeyword(String keyword) {
         return (root, query, criteriaBuilder) -> {
             if (keyword == null || keyword.isEmpty()) {
@@ -20,9 +26,9 @@ public class CampingRouteSpecifications {
             String likePattern = '%' + keyword.toLowerCase() + '%';
             log.info("This is the like pattern: {}", likePattern);
             return criteriaBuilder.or(
-                    criteriaBuilder.like(root.get("name"), likePattern),
-                    criteriaBuilder.like(root.get("description"), likePattern),
-                    criteriaBuilder.like(root.get("location"), likePattern)
+                    criteriaBuilder.like(criteriaBuilder.lower(root.get("name")), likePattern),
+                    criteriaBuilder.like(criteriaBuilder.lower(root.get("description")), likePattern),
+                    criteriaBuilder.like(criteriaBuilder.lower(root.get("location")), likePattern)
             );
         };
     }
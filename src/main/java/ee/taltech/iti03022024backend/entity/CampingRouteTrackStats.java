@@ -0,0 +1,46 @@
+package ee.taltech.iti03022024backend.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Statistics of the GPX track of a camping route, worked out when the track is uploaded.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Embeddable
+public class CampingRouteTrackStats {
+    @Column(name = "track_distance_m")
+    private Double distanceMeters;
+
+    @Column(name = "track_elevation_gain_m")
+    private Double elevationGainMeters;
+
+    @Column(name = "track_elevation_loss_m")
+    private Double elevationLossMeters;
+
+    @Column(name = "track_min_lat")
+    private Double minLatitude;
+
+    @Column(name = "track_min_lon")
+    private Double minLongitude;
+
+    @Column(name = "track_max_lat")
+    private Double maxLatitude;
+
+    @Column(name = "track_max_lon")
+    private Double maxLongitude;
+
+    @Column(name = "track_point_count")
+    private Integer pointCount;
+
+    // null when the track has no timestamps
+    @Column(name = "track_duration_s")
+    private Long durationSeconds;
+}
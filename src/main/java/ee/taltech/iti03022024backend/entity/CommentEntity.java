@@ -13,11 +13,11 @@ public class CommentEntity {
     private long id;
     private String content;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_data_id")
     private UserEntity user;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "camping_route_id")
     private CampingRouteEntity campingRoute;
 }
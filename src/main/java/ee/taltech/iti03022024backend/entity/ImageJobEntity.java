@@ -0,0 +1,47 @@
+package ee.taltech.iti03022024backend.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.Generated;
+
+import java.time.LocalDateTime;
+
+// claimed, retried and removed by CampingRouteImageProcessor with plain SQL, the entity only creates jobs
+@Getter
+@Setter
+@Entity
+@Table(name = "image_job")
+public class ImageJobEntity {
+    public enum Status {
+        /** Waiting for its next attempt at run_at. */
+        PENDING,
+        /** Failed every attempt and is not retried anymore. */
+        DEAD
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "route_image_id")
+    private RouteImageEntity image;
+
+    @Enumerated(EnumType.STRING)
+    private Status status = Status.PENDING;
+
+    private int attempts;
+
+    // set by the database on insert, the job is due right away
+    @Generated
+    @Column(name = "run_at", insertable = false, updatable = false)
+    private LocalDateTime runAt;
+
+    private String lastError;
+
+    // set by the database on insert
+    @Generated
+    @Column(name = "created_at", insertable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,52 @@
+package ee.taltech.iti03022024backend.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.Generated;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@Entity
+@Table(name = "route_image")
+public class RouteImageEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "camping_route_id")
+    private CampingRouteEntity campingRoute;
+
+    // name of the file in the directory of the route's images
+    private String fileName;
+
+    @Column(name = "size_bytes")
+    private long size;
+
+    // null when the image is in a format that can not be read
+    private Integer width;
+    private Integer height;
+
+    @Column(name = "content_sha256")
+    private String contentSha256;
+
+    // images are listed in upload order
+    private int sortOrder;
+
+    // whether the metadata has been stripped and the image re-encoded
+    private boolean processed;
+
+    // a new image is stored with the job that processes it, the job is removed once it is done
+    @OneToMany(mappedBy = "image", cascade = CascadeType.PERSIST)
+    private List<ImageJobEntity> jobs = new ArrayList<>();
+
+    // set by the database on insert
+    @Generated
+    @Column(name = "created_at", insertable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
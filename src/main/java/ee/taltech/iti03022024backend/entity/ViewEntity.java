@@ -21,7 +21,7 @@ public class ViewEntity {
     @Column(name = "created_at")
     private Date date = new Date();
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "camping_route_id")
     private CampingRouteEntity campingRoute;
 }
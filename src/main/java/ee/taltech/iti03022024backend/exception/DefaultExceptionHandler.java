@@ -35,7 +35,10 @@ public class DefaultExceptionHandler {
     }
 
     @ExceptionHandler({InvalidPasswordException.class,
-            InvalidCredentialsException.class})
+            InvalidCredentialsException.class,
+            InvalidCursorException.class,
+            InvalidGpxException.class,
+            InvalidTileException.class})
     public ResponseEntity<ExceptionResponse> handleInvalidInformationException(RuntimeException e) {
         log.warn("Given information is invalid: {}", e.getMessage());
         return ResponseEntity
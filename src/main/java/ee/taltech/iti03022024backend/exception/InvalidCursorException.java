@@ -0,0 +1,7 @@
+package ee.taltech.iti03022024backend.exception;
+
+public class InvalidCursorException extends RuntimeException {
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+}
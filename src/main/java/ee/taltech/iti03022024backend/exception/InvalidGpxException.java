@@ -0,0 +1,7 @@
+package ee.taltech.iti03022024backend.exception;
+
+public class InvalidGpxException extends RuntimeException {
+    public InvalidGpxException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package ee.taltech.iti03022024backend.exception;
+
+public class InvalidTileException extends RuntimeException {
+    public InvalidTileException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,329 @@
+package ee.taltech.iti03022024backend.file;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Keeps files on the local disk under the root directory, with every distinct content kept once as a blob named
+ * by its SHA-256 hash under {@code blobs/ab/cd/abcd...}. A stored file is a hard link to its blob, so files are read
+ * straight from their own path and the link count of a blob is the number of files sharing it. Blobs no file links
+ * to anymore are removed by {@link #collectGarbage()}. Uploads are hashed while they are written, so the content is
+ * only read once.
+ * <p>
+ * Where hard links are not possible, e.g. when the blobs are on another file system, files are stored as copies.
+ * <p>
+ * Files served often are kept in a {@link HotFileCache} and served from memory until they are replaced or deleted.
+ */
+@Slf4j
+public class ContentAddressedFileStore implements FileStore {
+    private static final String BLOBS_DIR = "blobs";
+    private static final String STAGING_DIR = "staging";
+    private static final String LINK_COUNT_ATTRIBUTE = "unix:nlink";
+    // files left behind in staging by a crash, an upload in progress is never this old
+    private static final Duration MAX_STAGING_AGE = Duration.ofDays(1);
+    private static final int LOCK_STRIPES = 64;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path rootDir;
+    private final Path blobsDir;
+    private final Path stagingDir;
+    private final FileResponses fileResponses;
+    private final HotFileCache hotFiles;
+    // a blob is only linked to and removed under the lock of its hash, so it is never removed while being linked to
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * Store that serves every file from disk.
+     */
+    public ContentAddressedFileStore(Path rootDir, FileResponses fileResponses) {
+        this(rootDir, fileResponses, new HotFileCache(0, 0));
+    }
+
+    public ContentAddressedFileStore(Path rootDir, FileResponses fileResponses, HotFileCache hotFiles) {
+        this.rootDir = rootDir.toAbsolutePath().normalize();
+        this.blobsDir = this.rootDir.resolve(BLOBS_DIR);
+        this.stagingDir = blobsDir.resolve(STAGING_DIR);
+        this.fileResponses = fileResponses;
+        this.hotFiles = hotFiles;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public Upload newUpload(String key) throws IOException {
+        Path target = path(key);
+        Files.createDirectories(stagingDir);
+        return new ContentAddressedUpload(Files.createTempFile(stagingDir, "upload-", ".part"), target);
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return Files.newInputStream(path(key));
+    }
+
+    @Override
+    public Optional<FileInfo> info(String key) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path(key), BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return Optional.empty();
+            }
+            // a replaced file has a new file key (inode) or modification time
+            String version = attributes.fileKey() + "-" + attributes.lastModifiedTime().toMillis() + "-" + attributes.size();
+            return Optional.of(new FileInfo(attributes.size(), attributes.lastModifiedTime().toInstant(), version));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public List<String> list(String directory) throws IOException {
+        Path dir = path(directory);
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(Files::isRegularFile)
+                    .map(file -> file.getFileName().toString())
+                    // hidden files are links that have not been moved into place yet
+                    .filter(name -> !name.startsWith("."))
+                    .toList();
+        }
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        // the blob stays until the next collection, another upload of the same content may still link to it
+        Path path = path(key);
+        boolean deleted = Files.deleteIfExists(path);
+        hotFiles.invalidate(path);
+        return deleted;
+    }
+
+    @Override
+    public int deleteAll(String directory) throws IOException {
+        Path dir = path(directory);
+        if (Files.notExists(dir)) {
+            return 0;
+        }
+
+        int deleted = 0;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                if (!Files.isDirectory(path)) {
+                    deleted++;
+                }
+                Files.deleteIfExists(path);
+            }
+        } finally {
+            hotFiles.invalidateAll(dir);
+        }
+        return deleted;
+    }
+
+    @Override
+    public ResponseEntity<Resource> serve(String key, MediaType contentType, CacheControl cacheControl, HttpHeaders headers)
+            throws IOException {
+        Path path = path(key);
+        HotFileCache.CachedFile cached = hotFiles.get(path);
+        if (cached == null && hotFiles.wants(path, Files.size(path))) {
+            // a file replaced while it is read is not kept
+            long version = hotFiles.version();
+            cached = fileResponses.read(path);
+            hotFiles.put(path, cached, version);
+        }
+
+        return cached != null
+                ? fileResponses.ok(cached, contentType, cacheControl, headers)
+                : fileResponses.ok(path, contentType, cacheControl, headers);
+    }
+
+    /**
+     * Removes blobs no stored file links to and staging files left behind by a crash.
+     *
+     * @return number of blobs removed
+     */
+    @Scheduled(cron = "${app.files.store.gc-cron:0 45 3 * * *}")
+    public int collectGarbage() {
+        int removed = 0;
+        try {
+            for (Path blob : blobs()) {
+                if (removeUnlinked(blob)) {
+                    removed++;
+                }
+            }
+            removeStaleStaging();
+        } catch (IOException e) {
+            log.warn("Could not collect unused blobs: {}", e.getMessage());
+        }
+
+        log.info("Removed {} unused blobs from the file store", removed);
+        return removed;
+    }
+
+    Path blobPath(String sha256) {
+        return blobsDir.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+    }
+
+    // keys may come from requests, so they must stay inside the root directory and out of the blobs
+    private Path path(String key) throws NoSuchFileException {
+        Path path = rootDir.resolve(key).normalize();
+        if (!path.startsWith(rootDir) || path.startsWith(blobsDir)) {
+            throw new NoSuchFileException(key);
+        }
+        return path;
+    }
+
+    private List<Path> blobs() throws IOException {
+        if (Files.notExists(blobsDir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.find(blobsDir, 3,
+                (path, attributes) -> attributes.isRegularFile() && !path.startsWith(stagingDir))) {
+            return files.toList();
+        }
+    }
+
+    private boolean removeUnlinked(Path blob) throws IOException {
+        synchronized (lock(blob.getFileName().toString())) {
+            Integer links = linkCount(blob);
+            if (links == null || links > 1) {
+                return false;
+            }
+            return Files.deleteIfExists(blob);
+        }
+    }
+
+    private void removeStaleStaging() throws IOException {
+        if (Files.notExists(stagingDir)) {
+            return;
+        }
+        Instant before = Instant.now().minus(MAX_STAGING_AGE);
+        try (Stream<Path> files = Files.list(stagingDir)) {
+            for (Path file : files.toList()) {
+                if (Files.getLastModifiedTime(file).toInstant().isBefore(before)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    // null when the file system does not count links, such blobs are never removed
+    private static Integer linkCount(Path blob) throws IOException {
+        try {
+            return (Integer) Files.getAttribute(blob, LINK_COUNT_ATTRIBUTE);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            log.debug("File system of {} does not count links", blob);
+            return null;
+        }
+    }
+
+    private Object lock(String sha256) {
+        return locks[Math.floorMod(sha256.hashCode(), LOCK_STRIPES)];
+    }
+
+    // moves the staged content to its blob unless it is there already and links the target to the blob
+    private StoredFile commit(Path staging, String sha256, Path target) throws IOException {
+        long size = Files.size(staging);
+        Path blob = blobPath(sha256);
+        Files.createDirectories(target.getParent());
+
+        synchronized (lock(sha256)) {
+            boolean duplicate = Files.exists(blob);
+            if (!duplicate) {
+                Files.createDirectories(blob.getParent());
+                Files.move(staging, blob, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            Path link = target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + ".link");
+            try {
+                boolean linked = createLinkOrCopy(link, blob);
+                Files.move(link, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                hotFiles.invalidate(target);
+                if (!linked && !duplicate) {
+                    Files.delete(blob);
+                }
+            } finally {
+                // left behind when the target already was a link to the blob
+                Files.deleteIfExists(link);
+            }
+            return new StoredFile(sha256, size, duplicate);
+        }
+    }
+
+    private static boolean createLinkOrCopy(Path link, Path blob) throws IOException {
+        try {
+            Files.createLink(link, blob);
+            return true;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            log.debug("Could not link {} to {}, copying it instead: {}", link, blob, e.getMessage());
+            Files.copy(blob, link);
+            return false;
+        }
+    }
+
+    private class ContentAddressedUpload implements Upload {
+        private final Path staging;
+        private final Path target;
+        private final MessageDigest digest;
+        private final OutputStream out;
+
+        ContentAddressedUpload(Path staging, Path target) throws IOException {
+            this.staging = staging;
+            this.target = target;
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+            this.out = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(staging)), digest);
+        }
+
+        @Override
+        public OutputStream outputStream() {
+            return out;
+        }
+
+        @Override
+        public StoredFile commit() throws IOException {
+            out.close();
+            return ContentAddressedFileStore.this.commit(staging, HEX.formatHex(digest.digest()), target);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+            Files.deleteIfExists(staging);
+        }
+    }
+}
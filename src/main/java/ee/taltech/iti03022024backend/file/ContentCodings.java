@@ -0,0 +1,51 @@
+package ee.taltech.iti03022024backend.file;
+
+import java.util.Locale;
+
+/**
+ * Reads the Accept-Encoding header of a request.
+ */
+public final class ContentCodings {
+    public static final String GZIP = "gzip";
+
+    private ContentCodings() {
+    }
+
+    /**
+     * @param acceptEncoding value of the Accept-Encoding header, null when the request has none
+     * @return whether the content coding is acceptable, either by name or through "*", and not refused with q=0
+     */
+    public static boolean accepts(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        Boolean named = null;
+        boolean wildcard = false;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            boolean acceptable = quality(parts) > 0;
+            if (name.equals(coding) || name.equals("x-" + coding)) {
+                named = acceptable;
+            } else if (name.equals("*")) {
+                wildcard = acceptable;
+            }
+        }
+        return named != null ? named : wildcard;
+    }
+
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.length() > 2 && (parameter.startsWith("q=") || parameter.startsWith("Q="))) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,28 @@
+package ee.taltech.iti03022024backend.file;
+
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.ResourceHttpMessageConverter;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+
+/**
+ * Writes whole resources, the ones backed by a file through {@link FileTransfer}.
+ */
+public class FileChannelResourceHttpMessageConverter extends ResourceHttpMessageConverter {
+
+    @Override
+    protected void writeContent(Resource resource, HttpOutputMessage outputMessage) throws IOException {
+        if (!resource.isFile()) {
+            super.writeContent(resource, outputMessage);
+            return;
+        }
+
+        try {
+            FileTransfer.transfer(resource.getFile().toPath(), 0, resource.contentLength(), outputMessage);
+        } catch (NoSuchFileException e) {
+            // deleted after the response was started, like the default converter the body stays empty
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ee.taltech.iti03022024backend.file;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds responses for stored files with a strong ETag made from a hash of their content and a Last-Modified date.
+ * Spring MVC answers If-None-Match and If-Modified-Since with 304 and Range with 206 from these headers, the file
+ * itself is written by {@link FileChannelResourceHttpMessageConverter}. The hash of a file is kept until the file
+ * is replaced, so it is only read once for its ETag.
+ */
+@Component
+public class FileResponses {
+    // paths are part of the key, so the cache is dropped instead of growing without bound
+    private static final int MAX_CACHED_HASHES = 10_000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // a replaced file has a new file key (inode) or modification time
+    private record Hash(Object fileKey, long lastModified, long size, String eTag) {
+        boolean matches(BasicFileAttributes attributes) {
+            return Objects.equals(fileKey, attributes.fileKey())
+                    && lastModified == attributes.lastModifiedTime().toMillis()
+                    && size == attributes.size();
+        }
+    }
+
+    private final Map<Path, Hash> hashes = new ConcurrentHashMap<>();
+
+    /**
+     * @throws NoSuchFileException when the file does not exist
+     */
+    public ResponseEntity<Resource> ok(Path file, MediaType contentType, CacheControl cacheControl) throws IOException {
+        return ok(file, contentType, cacheControl, HttpHeaders.EMPTY);
+    }
+
+    /**
+     * @param headers further headers of the response, e.g. the Content-Encoding of a compressed file
+     * @throws NoSuchFileException when the file does not exist
+     */
+    public ResponseEntity<Resource> ok(Path file, MediaType contentType, CacheControl cacheControl, HttpHeaders headers)
+            throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (!attributes.isRegularFile()) {
+            throw new NoSuchFileException(file.toString());
+        }
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .eTag(eTag(file, attributes))
+                .lastModified(attributes.lastModifiedTime().toInstant())
+                .contentType(contentType)
+                .cacheControl(cacheControl)
+                .body(new FileSystemResource(file));
+    }
+
+    /**
+     * Response for a file kept in memory, with the same headers as when it is served from disk.
+     */
+    public ResponseEntity<Resource> ok(HotFileCache.CachedFile file, MediaType contentType, CacheControl cacheControl,
+                                       HttpHeaders headers) {
+        return ResponseEntity.ok()
+                .headers(headers)
+                .eTag(file.eTag())
+                .lastModified(file.lastModified())
+                .contentType(contentType)
+                .cacheControl(cacheControl)
+                .body(new ByteArrayResource(file.content()));
+    }
+
+    /**
+     * Reads the file into memory with the headers of its response.
+     *
+     * @throws NoSuchFileException when the file does not exist
+     */
+    public HotFileCache.CachedFile read(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (!attributes.isRegularFile()) {
+            throw new NoSuchFileException(file.toString());
+        }
+
+        byte[] content = Files.readAllBytes(file);
+        Hash cached = hashes.get(file);
+        String eTag;
+        if (cached != null && cached.matches(attributes)) {
+            eTag = cached.eTag();
+        } else {
+            MessageDigest digest = sha256();
+            digest.update(content);
+            eTag = eTag(digest);
+            putHash(file, attributes, eTag);
+        }
+        return new HotFileCache.CachedFile(content, eTag, attributes.lastModifiedTime().toInstant());
+    }
+
+    /**
+     * Response for content made on request, e.g. from a stored file.
+     */
+    public ResponseEntity<Resource> ok(byte[] content, MediaType contentType, CacheControl cacheControl) {
+        MessageDigest digest = sha256();
+        digest.update(content);
+
+        return ResponseEntity.ok()
+                .eTag(eTag(digest))
+                .contentType(contentType)
+                .cacheControl(cacheControl)
+                .body(new ByteArrayResource(content));
+    }
+
+    private String eTag(Path file, BasicFileAttributes attributes) throws IOException {
+        Hash cached = hashes.get(file);
+        if (cached != null && cached.matches(attributes)) {
+            return cached.eTag();
+        }
+
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+
+        String eTag = eTag(digest);
+        putHash(file, attributes, eTag);
+        return eTag;
+    }
+
+    private void putHash(Path file, BasicFileAttributes attributes, String eTag) {
+        if (hashes.size() >= MAX_CACHED_HASHES) {
+            hashes.clear();
+        }
+        hashes.put(file, new Hash(attributes.fileKey(), attributes.lastModifiedTime().toMillis(), attributes.size(), eTag));
+    }
+
+    private static String eTag(MessageDigest digest) {
+        return '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest()) + '"';
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
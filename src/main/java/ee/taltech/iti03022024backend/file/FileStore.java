@@ -0,0 +1,105 @@
+package ee.taltech.iti03022024backend.file;
+
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.NoSuchFileException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Storage of uploaded files and the files made from them. Files are named by keys of {@code /} separated names,
+ * e.g. {@code camping_route_images/1/photo.jpg}, the part before the last {@code /} is the directory of a file.
+ * Stored files must be replaced through the store and never written to in place.
+ */
+public interface FileStore {
+
+    /**
+     * @param sha256    hex SHA-256 hash of the content
+     * @param size      size of the content in bytes
+     * @param duplicate whether the content was stored before and is shared now
+     */
+    record StoredFile(String sha256, long size, boolean duplicate) {
+    }
+
+    /**
+     * @param version changes whenever the file is replaced
+     */
+    record FileInfo(long size, Instant lastModified, String version) {
+    }
+
+    /**
+     * Content written to a store that only becomes a file once committed. An upload closed without
+     * being committed is discarded.
+     */
+    interface Upload extends Closeable {
+
+        OutputStream outputStream();
+
+        /**
+         * Stores the content written so far under the key of the upload, replacing any file there.
+         */
+        StoredFile commit() throws IOException;
+    }
+
+    Upload newUpload(String key) throws IOException;
+
+    /**
+     * Copies the content into the store, replacing any file with the key.
+     */
+    default StoredFile store(InputStream content, String key) throws IOException {
+        try (Upload upload = newUpload(key)) {
+            try (OutputStream out = upload.outputStream()) {
+                content.transferTo(out);
+            }
+            return upload.commit();
+        }
+    }
+
+    default StoredFile store(byte[] content, String key) throws IOException {
+        return store(new ByteArrayInputStream(content), key);
+    }
+
+    /**
+     * @throws NoSuchFileException when there is no file with the key
+     */
+    InputStream open(String key) throws IOException;
+
+    Optional<FileInfo> info(String key) throws IOException;
+
+    /**
+     * @return names of the files right in the directory, empty when there are none
+     */
+    List<String> list(String directory) throws IOException;
+
+    /**
+     * @return whether there was a file to delete
+     */
+    boolean delete(String key) throws IOException;
+
+    /**
+     * Deletes every file in the directory and its subdirectories.
+     *
+     * @return number of files deleted
+     */
+    int deleteAll(String directory) throws IOException;
+
+    /**
+     * Response that sends the file to the client, either with the file as its body or by redirecting the client
+     * to where the file can be downloaded from.
+     *
+     * @param headers further headers of the response, e.g. the Content-Encoding of a compressed file
+     * @throws NoSuchFileException when there is no file with the key
+     */
+    ResponseEntity<Resource> serve(String key, MediaType contentType, CacheControl cacheControl, HttpHeaders headers)
+            throws IOException;
+}
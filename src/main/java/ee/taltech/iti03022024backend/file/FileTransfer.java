@@ -0,0 +1,73 @@
+package ee.taltech.iti03022024backend.file;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes part of a file to a response without copying it through the heap. When the servlet container
+ * can send files itself (Tomcat with sendfile enabled) the file is handed over to it and sent straight
+ * from the page cache to the socket once the request is handled, otherwise the file channel transfers it.
+ */
+final class FileTransfer {
+    // request attributes of the Tomcat sendfile support, see org.apache.catalina.Globals
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // smaller files are written right away, handing them over costs more than it saves (as in Tomcat)
+    private static final long SENDFILE_THRESHOLD = 48 * 1024;
+
+    private FileTransfer() {
+    }
+
+    /**
+     * Writes count bytes of the file from position on, the headers of the response must already be set.
+     */
+    static void transfer(Path file, long position, long count, HttpOutputMessage outputMessage) throws IOException {
+        if (count >= SENDFILE_THRESHOLD && outputMessage instanceof ServletServerHttpResponse
+                && sendfile(file, position, count)) {
+            // writes the headers, the container sends the file instead of the body
+            outputMessage.getBody();
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(outputMessage.getBody());
+            long sent = 0;
+            while (sent < count) {
+                long transferred = channel.transferTo(position + sent, count - sent, target);
+                if (transferred <= 0) {
+                    // the file got shorter since its length was taken
+                    break;
+                }
+                sent += transferred;
+            }
+        }
+    }
+
+    private static boolean sendfile(Path file, long position, long count) {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return false;
+        }
+
+        HttpServletRequest request = attributes.getRequest();
+        if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            return false;
+        }
+        request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+        request.setAttribute(SENDFILE_START, position);
+        request.setAttribute(SENDFILE_END, position + count);
+        return true;
+    }
+}
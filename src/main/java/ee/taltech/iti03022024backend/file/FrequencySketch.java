@@ -0,0 +1,79 @@
+package ee.taltech.iti03022024backend.file;
+
+/**
+ * Estimates how often keys were seen with a count-min sketch: every key is counted in one counter of each of
+ * four rows and its frequency is the smallest of them. Counters stop at 15 and all of them are halved once ten
+ * times as many keys were counted as a row has counters, so the estimates follow what is popular lately.
+ * <p>
+ * Not thread-safe.
+ */
+final class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int MAX_WIDTH = 1 << 22;
+    private static final int SAMPLE_FACTOR = 10;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    private final byte[][] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param width counters per row, rounded up to a power of two
+     */
+    FrequencySketch(int width) {
+        int size = Integer.highestOneBit(Math.clamp(width, 2, MAX_WIDTH) - 1) << 1;
+        this.counters = new byte[DEPTH][size];
+        this.mask = size - 1;
+        this.sampleSize = SAMPLE_FACTOR * size;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row);
+            if (counters[row][index] < MAX_COUNT) {
+                counters[row][index]++;
+                added = true;
+            }
+        }
+
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * @return estimated number of times the key was counted lately, at most 15
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, counters[row][index(hash, row)]);
+        }
+        return frequency;
+    }
+
+    private void reset() {
+        for (byte[] row : counters) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>= 1;
+            }
+        }
+        additions /= 2;
+    }
+
+    private int index(int hash, int row) {
+        int h = hash * SEEDS[row];
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    // hash codes of paths and strings differ mostly in their low bits
+    private static int spread(int hash) {
+        int h = (hash ^ (hash >>> 16)) * 0x45D9F3B;
+        return h ^ (h >>> 16);
+    }
+}
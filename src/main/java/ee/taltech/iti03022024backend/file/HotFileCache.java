@@ -0,0 +1,238 @@
+package ee.taltech.iti03022024backend.file;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the content of the files served most often in memory within a budget of bytes, so a few popular images
+ * and tracks are served without touching the disk. Which files are kept is decided W-TinyLFU style: a file is read
+ * into a small window of recently served files once it is requested a second time, and a file leaving the window
+ * only replaces files of the main space that were requested less often lately, as estimated by a
+ * {@link FrequencySketch}. Files requested again while in the main space are protected from replacement for longer.
+ * <p>
+ * The store drops a file with {@link #invalidate(Path)} whenever it is replaced or deleted.
+ */
+public class HotFileCache implements MeterBinder {
+    private static final String CACHE_NAME = "files";
+    // files served once stay on disk
+    private static final int MIN_FREQUENCY = 2;
+    private static final int WINDOW_PERCENT = 5;
+    private static final int PROTECTED_PERCENT = 80;
+    // the sketch counts every file served, most are resized images of tens of kilobytes
+    private static final long BYTES_PER_SKETCH_COUNTER = 16 * 1024;
+    private static final int MIN_SKETCH_WIDTH = 4096;
+
+    /**
+     * Content of a file with what its response needs, the content must not be changed.
+     */
+    public record CachedFile(byte[] content, String eTag, Instant lastModified) {
+        long size() {
+            return content.length;
+        }
+    }
+
+    private final long maxBytes;
+    private final long maxFileBytes;
+    private final long windowBytes;
+    private final long protectedBytes;
+    private final FrequencySketch sketch;
+
+    // least recently used first, all guarded by this
+    private final LinkedHashMap<Path, CachedFile> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Path, CachedFile> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Path, CachedFile> protectedFiles = new LinkedHashMap<>(16, 0.75f, true);
+    private long windowUsed;
+    private long probationUsed;
+    private long protectedUsed;
+    // bumped on every invalidation so content read before a file was replaced is not kept
+    private long version;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes     bytes of content kept in memory, nothing is kept when 0
+     * @param maxFileBytes files larger than this are always served from disk
+     */
+    public HotFileCache(long maxBytes, long maxFileBytes) {
+        this.maxBytes = maxBytes;
+        this.maxFileBytes = Math.min(maxFileBytes, maxBytes);
+        this.windowBytes = maxBytes * WINDOW_PERCENT / 100;
+        this.protectedBytes = (maxBytes - windowBytes) * PROTECTED_PERCENT / 100;
+        this.sketch = new FrequencySketch(maxBytes == 0 ? 0
+                : (int) Math.max(MIN_SKETCH_WIDTH, Math.min(Integer.MAX_VALUE, maxBytes / BYTES_PER_SKETCH_COUNTER)));
+    }
+
+    /**
+     * Counts a request for the file.
+     *
+     * @return content of the file, null when it is not in memory
+     */
+    public synchronized CachedFile get(Path file) {
+        if (maxBytes == 0) {
+            return null;
+        }
+        sketch.increment(file);
+
+        CachedFile cached = window.get(file);
+        if (cached == null) {
+            cached = probation.remove(file);
+            if (cached != null) {
+                probationUsed -= cached.size();
+                protect(file, cached);
+            } else {
+                cached = protectedFiles.get(file);
+            }
+        }
+
+        (cached != null ? hits : misses).increment();
+        return cached;
+    }
+
+    /**
+     * @return whether a file of the size that was not in memory is requested often enough to be read into memory
+     */
+    public synchronized boolean wants(Path file, long size) {
+        return size <= maxFileBytes && sketch.frequency(file) >= MIN_FREQUENCY;
+    }
+
+    /**
+     * @return version to pass to {@link #put} for content read after this call
+     */
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Keeps the content in memory unless the file was invalidated since the version was taken.
+     */
+    public synchronized void put(Path file, CachedFile cached, long readVersion) {
+        if (readVersion != version || cached.size() > maxFileBytes || contains(file)) {
+            return;
+        }
+
+        window.put(file, cached);
+        windowUsed += cached.size();
+        while (windowUsed > windowBytes && !window.isEmpty()) {
+            Map.Entry<Path, CachedFile> eldest = window.pollFirstEntry();
+            windowUsed -= eldest.getValue().size();
+            admit(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    public synchronized void invalidate(Path file) {
+        version++;
+        windowUsed -= removeIf(window, file::equals);
+        probationUsed -= removeIf(probation, file::equals);
+        protectedUsed -= removeIf(protectedFiles, file::equals);
+    }
+
+    /**
+     * Drops every file in the directory and its subdirectories.
+     */
+    public synchronized void invalidateAll(Path directory) {
+        version++;
+        windowUsed -= removeIf(window, file -> file.startsWith(directory));
+        probationUsed -= removeIf(probation, file -> file.startsWith(directory));
+        protectedUsed -= removeIf(protectedFiles, file -> file.startsWith(directory));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum).tag("cache", CACHE_NAME).tag("result", "hit")
+                .description("Files served from memory").register(registry);
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum).tag("cache", CACHE_NAME).tag("result", "miss")
+                .description("Files served from disk").register(registry);
+        FunctionCounter.builder("cache.evictions", evictions, LongAdder::sum).tag("cache", CACHE_NAME)
+                .description("Files dropped from memory for more popular ones").register(registry);
+        Gauge.builder("cache.size", this, HotFileCache::size).tag("cache", CACHE_NAME)
+                .description("Files held in memory").register(registry);
+        Gauge.builder("cache.bytes", this, HotFileCache::bytes).tag("cache", CACHE_NAME).baseUnit("bytes")
+                .description("Bytes of file content held in memory").register(registry);
+    }
+
+    synchronized int size() {
+        return window.size() + probation.size() + protectedFiles.size();
+    }
+
+    synchronized long bytes() {
+        return windowUsed + probationUsed + protectedUsed;
+    }
+
+    private boolean contains(Path file) {
+        return window.containsKey(file) || probation.containsKey(file) || protectedFiles.containsKey(file);
+    }
+
+    // a file leaving the window replaces the least recently used files of the main space that are less popular
+    private void admit(Path file, CachedFile candidate) {
+        long needed = probationUsed + protectedUsed + candidate.size() - (maxBytes - windowBytes);
+        int frequency = sketch.frequency(file);
+
+        List<Path> victims = new ArrayList<>();
+        Iterator<Map.Entry<Path, CachedFile>> eldest = Stream.concat(
+                probation.entrySet().stream(), protectedFiles.entrySet().stream()).iterator();
+        for (long freed = 0; freed < needed; ) {
+            if (!eldest.hasNext()) {
+                evictions.increment();
+                return;
+            }
+            Map.Entry<Path, CachedFile> victim = eldest.next();
+            if (sketch.frequency(victim.getKey()) >= frequency) {
+                evictions.increment();
+                return;
+            }
+            victims.add(victim.getKey());
+            freed += victim.getValue().size();
+        }
+
+        for (Path victim : victims) {
+            CachedFile removed = probation.remove(victim);
+            if (removed != null) {
+                probationUsed -= removed.size();
+            } else {
+                protectedUsed -= protectedFiles.remove(victim).size();
+            }
+            evictions.increment();
+        }
+        probation.put(file, candidate);
+        probationUsed += candidate.size();
+    }
+
+    // files requested again in the main space are moved to its protected part, pushing out its eldest files
+    private void protect(Path file, CachedFile cached) {
+        protectedFiles.put(file, cached);
+        protectedUsed += cached.size();
+        while (protectedUsed > protectedBytes && protectedFiles.size() > 1) {
+            Map.Entry<Path, CachedFile> eldest = protectedFiles.pollFirstEntry();
+            protectedUsed -= eldest.getValue().size();
+            probation.put(eldest.getKey(), eldest.getValue());
+            probationUsed += eldest.getValue().size();
+        }
+    }
+
+    private static long removeIf(Map<Path, CachedFile> files, Predicate<Path> condition) {
+        long removed = 0;
+        for (Iterator<Map.Entry<Path, CachedFile>> it = files.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, CachedFile> entry = it.next();
+            if (condition.test(entry.getKey())) {
+                removed += entry.getValue().size();
+                it.remove();
+            }
+        }
+        return removed;
+    }
+}
@@ -0,0 +1,292 @@
+package ee.taltech.iti03022024backend.file;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.NoSuchFileException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keeps files as objects of an S3 compatible bucket, e.g. AWS S3 or MinIO, so any number of application
+ * instances share them. Uploads are streamed to the bucket in parts while they are written, and files are
+ * served by redirecting clients to a presigned URL, so their bytes never pass through the application.
+ * <p>
+ * Objects are not deduplicated, a bucket has no hard links to share content between keys.
+ */
+@Slf4j
+public class S3FileStore implements FileStore, AutoCloseable {
+    // S3 takes parts of at least 5 MiB except for the last one, smaller files are uploaded in one request
+    static final int PART_SIZE = 8 * 1024 * 1024;
+    private static final int MAX_KEYS_PER_DELETE = 1_000;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final S3Client client;
+    private final S3Presigner presigner;
+    private final String bucket;
+    private final Duration urlExpiry;
+
+    /**
+     * @param urlExpiry how long a presigned URL a client is redirected to stays valid
+     */
+    public S3FileStore(S3Client client, S3Presigner presigner, String bucket, Duration urlExpiry) {
+        this.client = client;
+        this.presigner = presigner;
+        this.bucket = bucket;
+        this.urlExpiry = urlExpiry;
+    }
+
+    @Override
+    public Upload newUpload(String key) {
+        return new S3Upload(key);
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        try {
+            return client.getObject(request -> request.bucket(bucket).key(key));
+        } catch (SdkException e) {
+            throw ioException(key, e);
+        }
+    }
+
+    @Override
+    public Optional<FileInfo> info(String key) throws IOException {
+        try {
+            HeadObjectResponse head = client.headObject(request -> request.bucket(bucket).key(key));
+            return Optional.of(new FileInfo(head.contentLength(), head.lastModified(), head.eTag()));
+        } catch (SdkException e) {
+            IOException exception = ioException(key, e);
+            if (exception instanceof NoSuchFileException) {
+                return Optional.empty();
+            }
+            throw exception;
+        }
+    }
+
+    @Override
+    public List<String> list(String directory) throws IOException {
+        String prefix = directory + "/";
+        try {
+            return client.listObjectsV2Paginator(request -> request.bucket(bucket).prefix(prefix).delimiter("/"))
+                    .contents()
+                    .stream()
+                    .map(object -> object.key().substring(prefix.length()))
+                    .toList();
+        } catch (SdkException e) {
+            throw ioException(directory, e);
+        }
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        // deleting a missing object succeeds as well, so whether there was one has to be asked first
+        if (info(key).isEmpty()) {
+            return false;
+        }
+        try {
+            client.deleteObject(request -> request.bucket(bucket).key(key));
+            return true;
+        } catch (SdkException e) {
+            throw ioException(key, e);
+        }
+    }
+
+    @Override
+    public int deleteAll(String directory) throws IOException {
+        String prefix = directory + "/";
+        try {
+            List<ObjectIdentifier> objects = client.listObjectsV2Paginator(request -> request.bucket(bucket).prefix(prefix))
+                    .contents()
+                    .stream()
+                    .map(S3Object::key)
+                    .map(key -> ObjectIdentifier.builder().key(key).build())
+                    .toList();
+
+            for (int from = 0; from < objects.size(); from += MAX_KEYS_PER_DELETE) {
+                List<ObjectIdentifier> batch = objects.subList(from, Math.min(from + MAX_KEYS_PER_DELETE, objects.size()));
+                client.deleteObjects(request -> request.bucket(bucket).delete(delete -> delete.objects(batch).quiet(true)));
+            }
+            return objects.size();
+        } catch (SdkException e) {
+            throw ioException(directory, e);
+        }
+    }
+
+    @Override
+    public ResponseEntity<Resource> serve(String key, MediaType contentType, CacheControl cacheControl, HttpHeaders headers)
+            throws IOException {
+        if (info(key).isEmpty()) {
+            throw new NoSuchFileException(key);
+        }
+
+        // the headers the file would have been sent with are sent by the bucket instead
+        var request = GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .responseContentType(contentType.toString());
+        if (cacheControl.getHeaderValue() != null) {
+            request.responseCacheControl(cacheControl.getHeaderValue());
+        }
+        if (headers.containsKey(HttpHeaders.CONTENT_ENCODING)) {
+            request.responseContentEncoding(headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+        }
+
+        URI url;
+        try {
+            url = presigner.presignGetObject(presign -> presign.signatureDuration(urlExpiry).getObjectRequest(request.build()))
+                    .url()
+                    .toURI();
+        } catch (SdkException | URISyntaxException e) {
+            throw new IOException("Could not presign a URL for " + key, e);
+        }
+
+        var redirectHeaders = new HttpHeaders();
+        redirectHeaders.putAll(headers);
+        redirectHeaders.remove(HttpHeaders.CONTENT_ENCODING);
+        return ResponseEntity.status(HttpStatus.FOUND)
+                .headers(redirectHeaders)
+                .location(url)
+                // a cached redirect must not outlive its URL
+                .cacheControl(CacheControl.maxAge(urlExpiry.dividedBy(2)).cachePrivate())
+                .build();
+    }
+
+    @Override
+    public void close() {
+        presigner.close();
+        client.close();
+    }
+
+    private static IOException ioException(String key, SdkException e) {
+        if (e instanceof NoSuchKeyException || e instanceof S3Exception s3 && s3.statusCode() == HttpStatus.NOT_FOUND.value()) {
+            return new NoSuchFileException(key);
+        }
+        return new IOException("Request for " + key + " failed: " + e.getMessage(), e);
+    }
+
+    // content is sent in parts as soon as a part is full, the multipart upload is only started once there is a full part
+    private class S3Upload implements Upload {
+        private final String key;
+        private final MessageDigest digest;
+        private final ByteArrayOutputStream part = new ByteArrayOutputStream();
+        private final List<CompletedPart> parts = new ArrayList<>();
+        private final OutputStream out;
+        private String uploadId;
+        private long size;
+        private boolean committed;
+
+        S3Upload(String key) {
+            this.key = key;
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+            this.out = new DigestOutputStream(new PartOutputStream(), digest);
+        }
+
+        @Override
+        public OutputStream outputStream() {
+            return out;
+        }
+
+        @Override
+        public StoredFile commit() throws IOException {
+            out.close();
+            try {
+                if (uploadId == null) {
+                    client.putObject(request -> request.bucket(bucket).key(key), RequestBody.fromBytes(part.toByteArray()));
+                } else {
+                    if (part.size() > 0) {
+                        uploadPart();
+                    }
+                    client.completeMultipartUpload(request -> request.bucket(bucket).key(key).uploadId(uploadId)
+                            .multipartUpload(upload -> upload.parts(parts)));
+                }
+            } catch (SdkException e) {
+                throw ioException(key, e);
+            }
+            committed = true;
+            return new StoredFile(HEX.formatHex(digest.digest()), size, false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+            if (uploadId != null && !committed) {
+                try {
+                    client.abortMultipartUpload(request -> request.bucket(bucket).key(key).uploadId(uploadId));
+                } catch (SdkException e) {
+                    log.warn("Could not abort upload of {}, the bucket lifecycle has to remove its parts: {}",
+                            key, e.getMessage());
+                }
+            }
+        }
+
+        private void uploadPart() throws IOException {
+            try {
+                if (uploadId == null) {
+                    uploadId = client.createMultipartUpload(request -> request.bucket(bucket).key(key)).uploadId();
+                }
+                int partNumber = parts.size() + 1;
+                String eTag = client.uploadPart(request -> request.bucket(bucket).key(key).uploadId(uploadId)
+                        .partNumber(partNumber), RequestBody.fromBytes(part.toByteArray())).eTag();
+                parts.add(CompletedPart.builder().partNumber(partNumber).eTag(eTag).build());
+                part.reset();
+            } catch (SdkException e) {
+                throw ioException(key, e);
+            }
+        }
+
+        private class PartOutputStream extends OutputStream {
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                while (length > 0) {
+                    int chunk = Math.min(length, PART_SIZE - part.size());
+                    part.write(bytes, offset, chunk);
+                    size += chunk;
+                    offset += chunk;
+                    length -= chunk;
+                    if (part.size() == PART_SIZE) {
+                        uploadPart();
+                    }
+                }
+            }
+        }
+    }
+}
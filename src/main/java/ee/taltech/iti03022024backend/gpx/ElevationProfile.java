@@ -0,0 +1,13 @@
+package ee.taltech.iti03022024backend.gpx;
+
+/**
+ * Elevations along a track in equally wide buckets of distance, the arrays hold one value per bucket.
+ *
+ * @param distances     distance from the start of the track to the middle of each bucket in meters
+ * @param elevations    mean elevation of each bucket in meters
+ * @param minElevations lowest elevation of each bucket in meters
+ * @param maxElevations highest elevation of each bucket in meters
+ */
+public record ElevationProfile(double distanceMeters, double bucketMeters, double[] distances,
+                               double[] elevations, double[] minElevations, double[] maxElevations) {
+}
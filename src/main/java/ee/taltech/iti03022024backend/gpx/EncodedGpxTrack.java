@@ -0,0 +1,14 @@
+package ee.taltech.iti03022024backend.gpx;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * Track in the binary format of {@link GpxTrackCodec}, it is only decoded when it is written as JSON.
+ */
+public record EncodedGpxTrack(byte[] bytes) {
+
+    @JsonValue
+    public GpxTrack decode() {
+        return GpxTrackCodec.decode(bytes);
+    }
+}
@@ -0,0 +1,39 @@
+package ee.taltech.iti03022024backend.gpx;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+
+import java.io.IOException;
+
+/**
+ * Writes encoded tracks as they are stored when the client accepts the binary track format.
+ */
+public class EncodedGpxTrackHttpMessageConverter extends AbstractHttpMessageConverter<EncodedGpxTrack> {
+
+    public EncodedGpxTrackHttpMessageConverter() {
+        super(GpxTrackCodec.MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return EncodedGpxTrack.class == clazz;
+    }
+
+    @Override
+    protected EncodedGpxTrack readInternal(Class<? extends EncodedGpxTrack> clazz, HttpInputMessage inputMessage)
+            throws IOException {
+        return new EncodedGpxTrack(inputMessage.getBody().readAllBytes());
+    }
+
+    @Override
+    protected void writeInternal(EncodedGpxTrack track, HttpOutputMessage outputMessage) throws IOException {
+        outputMessage.getBody().write(track.bytes());
+    }
+
+    @Override
+    protected Long getContentLength(EncodedGpxTrack track, MediaType contentType) {
+        return (long) track.bytes().length;
+    }
+}
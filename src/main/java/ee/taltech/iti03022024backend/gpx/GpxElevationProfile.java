@@ -0,0 +1,173 @@
+package ee.taltech.iti03022024backend.gpx;
+
+/**
+ * Builds an {@link ElevationProfile} with a fixed number of buckets while the GPX file is read, without knowing the
+ * length of the track beforehand. Points are collected into twice as many slots as there are buckets, starting one
+ * meter wide. Whenever the track outgrows the slots, neighbouring slots are merged and their width doubled, so memory
+ * stays the same however long the track is. At the end the slots are spread over the buckets, buckets without points
+ * get the elevation between their neighbours.
+ */
+public class GpxElevationProfile implements GpxPointConsumer {
+    private final int buckets;
+    private final int slots;
+    private double slotMeters = 1;
+    private final double[] sums;
+    private final int[] counts;
+    private final double[] mins;
+    private final double[] maxes;
+
+    private double distanceMeters;
+    private boolean hasElevation;
+    // previous point of the current segment, in radians
+    private boolean segmentStarted;
+    private double previousLatitude;
+    private double previousLongitude;
+
+    public GpxElevationProfile(int buckets) {
+        if (buckets < 1) {
+            throw new IllegalArgumentException("A profile needs at least one bucket");
+        }
+        this.buckets = buckets;
+        this.slots = buckets * 2;
+        this.sums = new double[slots];
+        this.counts = new int[slots];
+        this.mins = new double[slots];
+        this.maxes = new double[slots];
+    }
+
+    @Override
+    public void segmentStart() {
+        segmentStarted = false;
+    }
+
+    @Override
+    public void point(double latitude, double longitude, double elevation, long epochMilli) {
+        double phi = Math.toRadians(latitude);
+        double lambda = Math.toRadians(longitude);
+        if (segmentStarted) {
+            distanceMeters += GpxTrackStatistics.haversine(previousLatitude, previousLongitude, phi, lambda);
+        }
+        segmentStarted = true;
+        previousLatitude = phi;
+        previousLongitude = lambda;
+
+        if (Double.isNaN(elevation)) {
+            return;
+        }
+        while (distanceMeters >= slots * slotMeters) {
+            mergeSlots();
+        }
+
+        int slot = (int) (distanceMeters / slotMeters);
+        if (counts[slot] == 0) {
+            mins[slot] = elevation;
+            maxes[slot] = elevation;
+        } else {
+            mins[slot] = Math.min(mins[slot], elevation);
+            maxes[slot] = Math.max(maxes[slot], elevation);
+        }
+        sums[slot] += elevation;
+        counts[slot]++;
+        hasElevation = true;
+    }
+
+    // slot i takes over slots 2i and 2i + 1, the upper half is emptied
+    private void mergeSlots() {
+        for (int i = 0; i < slots / 2; i++) {
+            int left = 2 * i;
+            int right = left + 1;
+            int count = counts[left] + counts[right];
+            double min = counts[left] == 0 ? mins[right] : counts[right] == 0 ? mins[left] : Math.min(mins[left], mins[right]);
+            double max = counts[left] == 0 ? maxes[right] : counts[right] == 0 ? maxes[left] : Math.max(maxes[left], maxes[right]);
+            sums[i] = sums[left] + sums[right];
+            counts[i] = count;
+            mins[i] = min;
+            maxes[i] = max;
+        }
+        for (int i = slots / 2; i < slots; i++) {
+            sums[i] = 0;
+            counts[i] = 0;
+        }
+        slotMeters *= 2;
+    }
+
+    /**
+     * @return the profile, null when no point of the track has an elevation
+     */
+    public ElevationProfile build() {
+        if (!hasElevation) {
+            return null;
+        }
+
+        // a track of a single point still gets a profile of one meter
+        double length = Math.max(distanceMeters, 1);
+        double bucketMeters = length / buckets;
+        double[] distances = new double[buckets];
+        double[] elevations = new double[buckets];
+        double[] minElevations = new double[buckets];
+        double[] maxElevations = new double[buckets];
+        boolean[] filled = new boolean[buckets];
+
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            double from = bucket * bucketMeters;
+            distances[bucket] = from + bucketMeters / 2;
+            // the last bucket takes the rest of the slots, they hold the point at the very end of the track
+            double to = bucket == buckets - 1 ? slots * slotMeters : from + bucketMeters;
+
+            double sum = 0;
+            double weight = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            int lastSlot = Math.min(slots - 1, (int) Math.ceil(to / slotMeters) - 1);
+            for (int slot = (int) (from / slotMeters); slot <= lastSlot; slot++) {
+                if (counts[slot] == 0) {
+                    continue;
+                }
+                // a slot on the edge of the bucket counts by how much of it lies in the bucket
+                double overlap = Math.min(to, (slot + 1) * slotMeters) - Math.max(from, slot * slotMeters);
+                double share = overlap / slotMeters;
+                if (share <= 0) {
+                    continue;
+                }
+                sum += sums[slot] * share;
+                weight += counts[slot] * share;
+                min = Math.min(min, mins[slot]);
+                max = Math.max(max, maxes[slot]);
+            }
+
+            if (weight > 0) {
+                elevations[bucket] = sum / weight;
+                minElevations[bucket] = min;
+                maxElevations[bucket] = max;
+                filled[bucket] = true;
+            }
+        }
+
+        fillGaps(elevations, minElevations, maxElevations, filled);
+        return new ElevationProfile(distanceMeters, bucketMeters, distances, elevations, minElevations, maxElevations);
+    }
+
+    private static void fillGaps(double[] elevations, double[] minElevations, double[] maxElevations, boolean[] filled) {
+        int previous = -1;
+        for (int bucket = 0; bucket <= filled.length; bucket++) {
+            if (bucket < filled.length && !filled[bucket]) {
+                continue;
+            }
+            for (int gap = previous + 1; gap < bucket; gap++) {
+                double elevation;
+                if (previous < 0) {
+                    elevation = elevations[bucket];
+                } else if (bucket == filled.length) {
+                    elevation = elevations[previous];
+                } else {
+                    double position = (double) (gap - previous) / (bucket - previous);
+                    elevation = elevations[previous] + (elevations[bucket] - elevations[previous]) * position;
+                }
+                elevations[gap] = elevation;
+                minElevations[gap] = elevation;
+                maxElevations[gap] = elevation;
+            }
+            previous = bucket;
+        }
+    }
+}
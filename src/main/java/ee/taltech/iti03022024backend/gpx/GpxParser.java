@@ -0,0 +1,143 @@
+package ee.taltech.iti03022024backend.gpx;
+
+import ee.taltech.iti03022024backend.exception.InvalidGpxException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Objects;
+
+/**
+ * Streams the track and route points of a GPX 1.0 or 1.1 file to a {@link GpxPointConsumer} without building
+ * a document, so the memory used does not grow with the size of the file. Waypoints and extensions are skipped.
+ */
+public final class GpxParser {
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private GpxParser() {
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // uploaded files must not reach out to other files or hosts
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Reads the GPX file up to the end of its root element, the stream is not closed.
+     *
+     * @throws InvalidGpxException when the file is not a well-formed GPX file
+     */
+    public static void parse(InputStream in, GpxPointConsumer consumer) {
+        try {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+            try {
+                parse(reader, consumer);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new InvalidGpxException("GPX file is not valid XML.");
+        }
+    }
+
+    private static void parse(XMLStreamReader reader, GpxPointConsumer consumer) throws XMLStreamException {
+        reader.nextTag();
+        if (!"gpx".equals(reader.getLocalName())) {
+            throw new InvalidGpxException("File is not a GPX file.");
+        }
+        String gpxNamespace = reader.getNamespaceURI();
+
+        // the point that is being read, its elevation and time come from child elements
+        boolean inPoint = false;
+        double latitude = 0;
+        double longitude = 0;
+        double elevation = Double.NaN;
+        long epochMilli = GpxPointConsumer.NO_TIME;
+
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                if (inPoint && isPoint(reader.getLocalName()) && isGpx(reader, gpxNamespace)) {
+                    consumer.point(latitude, longitude, elevation, epochMilli);
+                    inPoint = false;
+                }
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            depth++;
+            if (!isGpx(reader, gpxNamespace)) {
+                continue;
+            }
+
+            String name = reader.getLocalName();
+            if ("trkseg".equals(name) || "rte".equals(name)) {
+                consumer.segmentStart();
+            } else if (isPoint(name)) {
+                inPoint = true;
+                latitude = coordinate(reader, "lat", 90);
+                longitude = coordinate(reader, "lon", 180);
+                elevation = Double.NaN;
+                epochMilli = GpxPointConsumer.NO_TIME;
+            } else if (inPoint && "ele".equals(name)) {
+                elevation = elevation(reader.getElementText());
+                depth--;
+            } else if (inPoint && "time".equals(name)) {
+                epochMilli = time(reader.getElementText());
+                depth--;
+            }
+        }
+    }
+
+    private static boolean isPoint(String name) {
+        return "trkpt".equals(name) || "rtept".equals(name);
+    }
+
+    // elements of extensions have their own namespace
+    private static boolean isGpx(XMLStreamReader reader, String gpxNamespace) {
+        return Objects.equals(reader.getNamespaceURI(), gpxNamespace);
+    }
+
+    private static double coordinate(XMLStreamReader reader, String attribute, double limit) {
+        String value = reader.getAttributeValue(null, attribute);
+        if (value == null) {
+            throw new InvalidGpxException("GPX point is missing its " + attribute + " attribute.");
+        }
+        try {
+            double coordinate = Double.parseDouble(value);
+            if (!(Math.abs(coordinate) <= limit)) {
+                throw new InvalidGpxException("GPX point has an invalid " + attribute + " attribute.");
+            }
+            return coordinate;
+        } catch (NumberFormatException e) {
+            throw new InvalidGpxException("GPX point has an invalid " + attribute + " attribute.");
+        }
+    }
+
+    // a broken elevation or time is dropped instead of rejecting the whole track
+    private static double elevation(String text) {
+        try {
+            return Double.parseDouble(text.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static long time(String text) {
+        try {
+            return Instant.parse(text.trim()).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return GpxPointConsumer.NO_TIME;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package ee.taltech.iti03022024backend.gpx;
+
+/**
+ * Receives the points of a GPX file in file order while it is being parsed.
+ */
+public interface GpxPointConsumer {
+    /** Time of a point that has no time. */
+    long NO_TIME = Long.MIN_VALUE;
+
+    /**
+     * Called when a track segment or a route starts, the points of different segments are not connected.
+     */
+    default void segmentStart() {
+    }
+
+    /**
+     * @param elevation  elevation in meters, {@link Double#NaN} when the point has none
+     * @param epochMilli time of the point, {@link #NO_TIME} when the point has none
+     */
+    void point(double latitude, double longitude, double elevation, long epochMilli);
+
+    /**
+     * @return consumer that passes every segment and point to this consumer and then to the next one
+     */
+    default GpxPointConsumer andThen(GpxPointConsumer next) {
+        GpxPointConsumer first = this;
+        return new GpxPointConsumer() {
+            @Override
+            public void segmentStart() {
+                first.segmentStart();
+                next.segmentStart();
+            }
+
+            @Override
+            public void point(double latitude, double longitude, double elevation, long epochMilli) {
+                first.point(latitude, longitude, elevation, epochMilli);
+                next.point(latitude, longitude, elevation, epochMilli);
+            }
+        };
+    }
+}
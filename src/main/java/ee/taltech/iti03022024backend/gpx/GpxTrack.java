@@ -0,0 +1,141 @@
+package ee.taltech.iti03022024backend.gpx;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Points of a GPX track in primitive arrays, the point at an index is the one at the same index of every array.
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class GpxTrack {
+    private final double[] latitudes;
+    private final double[] longitudes;
+    // in meters, null when no point of the track has an elevation
+    private final double[] elevations;
+    // epoch milliseconds, null when no point of the track has a time
+    private final long[] times;
+    // index of the first point of each segment, starts with 0
+    private final int[] segmentStarts;
+
+    GpxTrack(double[] latitudes, double[] longitudes, double[] elevations, long[] times, int[] segmentStarts) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.elevations = elevations;
+        this.times = times;
+        this.segmentStarts = segmentStarts;
+    }
+
+    public int size() {
+        return latitudes.length;
+    }
+
+    /**
+     * @return index after the last point of the segment
+     */
+    public int segmentEnd(int segment) {
+        return segment + 1 < segmentStarts.length ? segmentStarts[segment + 1] : size();
+    }
+
+    /**
+     * Collects the points of a GPX file into a track. Gaps in elevations and times are filled from the
+     * neighbouring points, so a track either has an elevation and a time for every point or none at all.
+     */
+    public static class Builder implements GpxPointConsumer {
+        private double[] latitudes = new double[1024];
+        private double[] longitudes = new double[1024];
+        private double[] elevations = new double[1024];
+        private long[] times = new long[1024];
+        private int[] segmentStarts = new int[8];
+        private int size;
+        private int segments;
+        private boolean hasElevation;
+        private boolean hasTime;
+
+        @Override
+        public void segmentStart() {
+            if (segments > 0 && segmentStarts[segments - 1] == size) {
+                return; // the previous segment has no points
+            }
+            if (segments == segmentStarts.length) {
+                segmentStarts = Arrays.copyOf(segmentStarts, segments * 2);
+            }
+            segmentStarts[segments++] = size;
+        }
+
+        @Override
+        public void point(double latitude, double longitude, double elevation, long epochMilli) {
+            if (segments == 0) {
+                segmentStart();
+            }
+            if (size == latitudes.length) {
+                int capacity = size * 2;
+                latitudes = Arrays.copyOf(latitudes, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+                elevations = Arrays.copyOf(elevations, capacity);
+                times = Arrays.copyOf(times, capacity);
+            }
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            elevations[size] = elevation;
+            times[size] = epochMilli;
+            hasElevation |= !Double.isNaN(elevation);
+            hasTime |= epochMilli != NO_TIME;
+            size++;
+        }
+
+        public GpxTrack build() {
+            int segmentCount = segments > 0 && segmentStarts[segments - 1] == size ? segments - 1 : segments;
+            return new GpxTrack(
+                    Arrays.copyOf(latitudes, size),
+                    Arrays.copyOf(longitudes, size),
+                    hasElevation ? filledElevations() : null,
+                    hasTime ? filledTimes() : null,
+                    Arrays.copyOf(segmentStarts, segmentCount)
+            );
+        }
+
+        private double[] filledElevations() {
+            double[] filled = Arrays.copyOf(elevations, size);
+            double previous = Double.NaN;
+            for (int i = 0; i < size; i++) {
+                if (Double.isNaN(filled[i])) {
+                    filled[i] = previous;
+                } else {
+                    previous = filled[i];
+                }
+            }
+            // points before the first elevation take the first elevation
+            for (int i = size - 1; i >= 0; i--) {
+                if (Double.isNaN(filled[i])) {
+                    filled[i] = previous;
+                } else {
+                    previous = filled[i];
+                }
+            }
+            return filled;
+        }
+
+        private long[] filledTimes() {
+            long[] filled = Arrays.copyOf(times, size);
+            long previous = NO_TIME;
+            for (int i = 0; i < size; i++) {
+                if (filled[i] == NO_TIME) {
+                    filled[i] = previous;
+                } else {
+                    previous = filled[i];
+                }
+            }
+            for (int i = size - 1; i >= 0; i--) {
+                if (filled[i] == NO_TIME) {
+                    filled[i] = previous;
+                } else {
+                    previous = filled[i];
+                }
+            }
+            return filled;
+        }
+    }
+}
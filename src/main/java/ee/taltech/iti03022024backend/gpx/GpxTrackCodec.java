@@ -0,0 +1,155 @@
+package ee.taltech.iti03022024backend.gpx;
+
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+
+/**
+ * Compact binary format of a {@link GpxTrack}, about a hundredth of the size of the GPX file it comes from.
+ * <p>
+ * Every number is a varint, signed numbers are zigzag encoded first. After the header
+ * {@code 'C' 'R' 'T' version flags pointCount segmentCount segmentLength...} come the columns of the track:
+ * latitudes and longitudes in 1e-5 degrees (about a meter), elevations in decimeters when flag 1 is set and
+ * times in epoch seconds when flag 2 is set. Each column holds the difference to the previous point,
+ * the first point of a column is relative to 0, so neighbouring points mostly take a byte per value.
+ */
+public final class GpxTrackCodec {
+    public static final String MEDIA_TYPE_VALUE = "application/vnd.camping-route.track";
+    public static final MediaType MEDIA_TYPE = MediaType.valueOf(MEDIA_TYPE_VALUE);
+
+    private static final byte[] MAGIC = {'C', 'R', 'T'};
+    private static final int VERSION = 1;
+    private static final int HAS_ELEVATIONS = 1;
+    private static final int HAS_TIMES = 2;
+
+    private static final double COORDINATE_SCALE = 1e5;
+    private static final double ELEVATION_SCALE = 10;
+
+    private GpxTrackCodec() {
+    }
+
+    public static byte[] encode(GpxTrack track) {
+        int size = track.size();
+        // roughly four bytes per point
+        var out = new ByteArrayOutputStream(16 + size * 4);
+
+        out.writeBytes(MAGIC);
+        out.write(VERSION);
+        writeVarint(out, (track.getElevations() != null ? HAS_ELEVATIONS : 0) | (track.getTimes() != null ? HAS_TIMES : 0));
+        writeVarint(out, size);
+
+        int[] segmentStarts = track.getSegmentStarts();
+        writeVarint(out, segmentStarts.length);
+        for (int segment = 0; segment < segmentStarts.length; segment++) {
+            writeVarint(out, track.segmentEnd(segment) - segmentStarts[segment]);
+        }
+
+        writeScaled(out, track.getLatitudes(), COORDINATE_SCALE);
+        writeScaled(out, track.getLongitudes(), COORDINATE_SCALE);
+        if (track.getElevations() != null) {
+            writeScaled(out, track.getElevations(), ELEVATION_SCALE);
+        }
+        if (track.getTimes() != null) {
+            long previous = 0;
+            for (long time : track.getTimes()) {
+                long seconds = Math.floorDiv(time, 1000);
+                writeVarint(out, zigzag(seconds - previous));
+                previous = seconds;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException when the bytes are not a track of this format
+     */
+    public static GpxTrack decode(byte[] bytes) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            for (byte magic : MAGIC) {
+                if (in.get() != magic) {
+                    throw new IllegalArgumentException("Not an encoded track");
+                }
+            }
+            int version = in.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported track version " + version);
+            }
+            int flags = (int) readVarint(in);
+            int size = (int) readVarint(in);
+
+            int[] segmentStarts = new int[(int) readVarint(in)];
+            int start = 0;
+            for (int segment = 0; segment < segmentStarts.length; segment++) {
+                segmentStarts[segment] = start;
+                start += (int) readVarint(in);
+            }
+
+            double[] latitudes = readScaled(in, size, COORDINATE_SCALE);
+            double[] longitudes = readScaled(in, size, COORDINATE_SCALE);
+            double[] elevations = (flags & HAS_ELEVATIONS) != 0 ? readScaled(in, size, ELEVATION_SCALE) : null;
+            long[] times = null;
+            if ((flags & HAS_TIMES) != 0) {
+                times = new long[size];
+                long seconds = 0;
+                for (int i = 0; i < size; i++) {
+                    seconds += unzigzag(readVarint(in));
+                    times[i] = seconds * 1000;
+                }
+            }
+            return new GpxTrack(latitudes, longitudes, elevations, times, segmentStarts);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Encoded track is truncated", e);
+        }
+    }
+
+    // deltas of the rounded values, so rounding errors do not add up along the track
+    private static void writeScaled(ByteArrayOutputStream out, double[] values, double scale) {
+        long previous = 0;
+        for (double value : values) {
+            long scaled = Math.round(value * scale);
+            writeVarint(out, zigzag(scaled - previous));
+            previous = scaled;
+        }
+    }
+
+    private static double[] readScaled(ByteBuffer in, int size, double scale) {
+        double[] values = new double[size];
+        long scaled = 0;
+        for (int i = 0; i < size; i++) {
+            scaled += unzigzag(readVarint(in));
+            values[i] = scaled / scale;
+        }
+        return values;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint is too long");
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
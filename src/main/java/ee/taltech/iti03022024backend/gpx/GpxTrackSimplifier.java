@@ -0,0 +1,186 @@
+package ee.taltech.iti03022024backend.gpx;
+
+import java.util.Arrays;
+
+/**
+ * Douglas-Peucker simplification of tracks into levels of detail.
+ * <p>
+ * Instead of running Douglas-Peucker once per tolerance, every point gets the largest tolerance at which it
+ * would still be kept, which is its distance from the line it splits, capped by the tolerance of the point
+ * that split the line before it. A level is then the points whose tolerance is above the tolerance of the level.
+ * Distances are measured in meters on an equirectangular projection around the middle of the track,
+ * which is accurate enough for tracks up to a few hundred kilometers.
+ */
+public final class GpxTrackSimplifier {
+    /** Tolerances of the stored levels of detail in meters, level 0 is the full track. */
+    private static final double[] LEVEL_TOLERANCES = {0, 2, 8, 32, 128};
+
+    public static final int LEVELS = LEVEL_TOLERANCES.length;
+
+    // meters per pixel of a 256 pixel web mercator tile at zoom 0 on the equator
+    private static final double EQUATOR_METERS_PER_PIXEL = 156_543.03;
+    private static final double EARTH_RADIUS_M = 6_371_008.8;
+
+    private GpxTrackSimplifier() {
+    }
+
+    /**
+     * @return level whose tolerance is the largest one not above the given tolerance in meters
+     */
+    public static int levelForTolerance(double toleranceMeters) {
+        int level = 0;
+        while (level + 1 < LEVELS && LEVEL_TOLERANCES[level + 1] <= toleranceMeters) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * @return level that looks like the full track on a web map at the given zoom
+     */
+    public static int levelForZoom(int zoom) {
+        // half a pixel on the equator is about a pixel at the latitudes of Estonia
+        return levelForTolerance(EQUATOR_METERS_PER_PIXEL / Math.pow(2, zoom) / 2);
+    }
+
+    /**
+     * @return track of every level of detail, index 0 is the given track
+     */
+    public static GpxTrack[] levels(GpxTrack track) {
+        double[] tolerances = tolerances(track);
+        GpxTrack[] levels = new GpxTrack[LEVELS];
+        levels[0] = track;
+        for (int level = 1; level < LEVELS; level++) {
+            levels[level] = keep(track, tolerances, LEVEL_TOLERANCES[level]);
+        }
+        return levels;
+    }
+
+    /**
+     * @return track without the points that are closer than the tolerance in meters to the simplified line
+     */
+    public static GpxTrack simplify(GpxTrack track, double toleranceMeters) {
+        return keep(track, tolerances(track), toleranceMeters);
+    }
+
+    // largest tolerance at which each point is kept, the ends of segments are always kept
+    static double[] tolerances(GpxTrack track) {
+        int size = track.size();
+        double[] tolerances = new double[size];
+        if (size == 0) {
+            return tolerances;
+        }
+
+        double[] x = new double[size];
+        double[] y = new double[size];
+        project(track, x, y);
+
+        // pairs of first and last index of the lines still to be split
+        int[] stack = new int[64];
+        int[] segmentStarts = track.getSegmentStarts();
+        for (int segment = 0; segment < segmentStarts.length; segment++) {
+            int first = segmentStarts[segment];
+            int last = track.segmentEnd(segment) - 1;
+            tolerances[first] = Double.POSITIVE_INFINITY;
+            tolerances[last] = Double.POSITIVE_INFINITY;
+
+            int top = 0;
+            stack[top++] = first;
+            stack[top++] = last;
+            while (top > 0) {
+                int end = stack[--top];
+                int start = stack[--top];
+                if (end - start < 2) {
+                    continue;
+                }
+
+                int farthest = -1;
+                double maxDistance = -1;
+                for (int i = start + 1; i < end; i++) {
+                    double distance = distanceToLine(x, y, i, start, end);
+                    if (distance > maxDistance) {
+                        maxDistance = distance;
+                        farthest = i;
+                    }
+                }
+
+                // a point is never kept longer than the point that made its line
+                double cap = Math.min(tolerances[start], tolerances[end]);
+                tolerances[farthest] = Math.min(maxDistance, cap);
+
+                if (top + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = start;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = end;
+            }
+        }
+        return tolerances;
+    }
+
+    private static void project(GpxTrack track, double[] x, double[] y) {
+        double[] latitudes = track.getLatitudes();
+        double[] longitudes = track.getLongitudes();
+        double minLatitude = Double.POSITIVE_INFINITY;
+        double maxLatitude = Double.NEGATIVE_INFINITY;
+        for (double latitude : latitudes) {
+            minLatitude = Math.min(minLatitude, latitude);
+            maxLatitude = Math.max(maxLatitude, latitude);
+        }
+        double xScale = EARTH_RADIUS_M * Math.cos(Math.toRadians((minLatitude + maxLatitude) / 2));
+
+        for (int i = 0; i < latitudes.length; i++) {
+            x[i] = Math.toRadians(longitudes[i]) * xScale;
+            y[i] = Math.toRadians(latitudes[i]) * EARTH_RADIUS_M;
+        }
+    }
+
+    // distance of point i from the line between start and end
+    private static double distanceToLine(double[] x, double[] y, int i, int start, int end) {
+        double dx = x[end] - x[start];
+        double dy = y[end] - y[start];
+        double px = x[i] - x[start];
+        double py = y[i] - y[start];
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return Math.hypot(px, py);
+        }
+        double t = Math.clamp((px * dx + py * dy) / lengthSquared, 0, 1);
+        return Math.hypot(px - t * dx, py - t * dy);
+    }
+
+    private static GpxTrack keep(GpxTrack track, double[] tolerances, double toleranceMeters) {
+        int size = track.size();
+        int[] kept = new int[size];
+        int keptCount = 0;
+        int[] segmentStarts = track.getSegmentStarts();
+        int[] keptSegmentStarts = new int[segmentStarts.length];
+        for (int segment = 0; segment < segmentStarts.length; segment++) {
+            keptSegmentStarts[segment] = keptCount;
+            for (int i = segmentStarts[segment]; i < track.segmentEnd(segment); i++) {
+                if (tolerances[i] > toleranceMeters) {
+                    kept[keptCount++] = i;
+                }
+            }
+        }
+
+        double[] latitudes = new double[keptCount];
+        double[] longitudes = new double[keptCount];
+        double[] elevations = track.getElevations() != null ? new double[keptCount] : null;
+        long[] times = track.getTimes() != null ? new long[keptCount] : null;
+        for (int k = 0; k < keptCount; k++) {
+            int i = kept[k];
+            latitudes[k] = track.getLatitudes()[i];
+            longitudes[k] = track.getLongitudes()[i];
+            if (elevations != null) {
+                elevations[k] = track.getElevations()[i];
+            }
+            if (times != null) {
+                times[k] = track.getTimes()[i];
+            }
+        }
+        return new GpxTrack(latitudes, longitudes, elevations, times, keptSegmentStarts);
+    }
+}
@@ -0,0 +1,117 @@
+package ee.taltech.iti03022024backend.gpx;
+
+import lombok.Getter;
+
+/**
+ * Adds up the distance, climb, extent and duration of a track point by point, so they are known
+ * as soon as the GPX file has been read.
+ */
+public class GpxTrackStatistics implements GpxPointConsumer {
+    // mean radius of the earth
+    private static final double EARTH_RADIUS_M = 6_371_008.8;
+    // elevation changes smaller than this are treated as GPS and barometer noise
+    private static final double ELEVATION_THRESHOLD_M = 3.0;
+
+    @Getter
+    private double distanceMeters;
+    @Getter
+    private double elevationGainMeters;
+    @Getter
+    private double elevationLossMeters;
+    @Getter
+    private double minLatitude = Double.POSITIVE_INFINITY;
+    @Getter
+    private double minLongitude = Double.POSITIVE_INFINITY;
+    @Getter
+    private double maxLatitude = Double.NEGATIVE_INFINITY;
+    @Getter
+    private double maxLongitude = Double.NEGATIVE_INFINITY;
+    @Getter
+    private int pointCount;
+    @Getter
+    private double startLatitude;
+    @Getter
+    private double startLongitude;
+    private long firstTime = NO_TIME;
+    private long lastTime = NO_TIME;
+
+    // previous point of the current segment, in radians
+    private boolean segmentStarted;
+    private double previousLatitude;
+    private double previousLongitude;
+    // elevation the next climb or descent is measured from
+    private double referenceElevation = Double.NaN;
+
+    @Override
+    public void segmentStart() {
+        segmentStarted = false;
+    }
+
+    @Override
+    public void point(double latitude, double longitude, double elevation, long epochMilli) {
+        if (pointCount++ == 0) {
+            startLatitude = latitude;
+            startLongitude = longitude;
+        }
+        minLatitude = Math.min(minLatitude, latitude);
+        minLongitude = Math.min(minLongitude, longitude);
+        maxLatitude = Math.max(maxLatitude, latitude);
+        maxLongitude = Math.max(maxLongitude, longitude);
+
+        double phi = Math.toRadians(latitude);
+        double lambda = Math.toRadians(longitude);
+        if (segmentStarted) {
+            distanceMeters += haversine(previousLatitude, previousLongitude, phi, lambda);
+        }
+        segmentStarted = true;
+        previousLatitude = phi;
+        previousLongitude = lambda;
+
+        addElevation(elevation);
+
+        if (epochMilli != NO_TIME) {
+            if (firstTime == NO_TIME) {
+                firstTime = epochMilli;
+            }
+            lastTime = epochMilli;
+        }
+    }
+
+    private void addElevation(double elevation) {
+        if (Double.isNaN(elevation)) {
+            return;
+        }
+        if (Double.isNaN(referenceElevation)) {
+            referenceElevation = elevation;
+            return;
+        }
+
+        double change = elevation - referenceElevation;
+        if (change >= ELEVATION_THRESHOLD_M) {
+            elevationGainMeters += change;
+            referenceElevation = elevation;
+        } else if (change <= -ELEVATION_THRESHOLD_M) {
+            elevationLossMeters -= change;
+            referenceElevation = elevation;
+        }
+    }
+
+    public boolean isEmpty() {
+        return pointCount == 0;
+    }
+
+    /**
+     * @return seconds from the first to the last timed point, null when no point has a time
+     */
+    public Long getDurationSeconds() {
+        return firstTime == NO_TIME ? null : (lastTime - firstTime) / 1000;
+    }
+
+    // great-circle distance between two points given in radians
+    static double haversine(double phi1, double lambda1, double phi2, double lambda2) {
+        double sinPhi = Math.sin((phi2 - phi1) / 2);
+        double sinLambda = Math.sin((lambda2 - lambda1) / 2);
+        double a = sinPhi * sinPhi + Math.cos(phi1) * Math.cos(phi2) * sinLambda * sinLambda;
+        return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
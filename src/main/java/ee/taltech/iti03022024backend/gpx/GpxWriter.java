@@ -0,0 +1,65 @@
+package ee.taltech.iti03022024backend.gpx;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+
+/**
+ * Writes a {@link GpxTrack} as a GPX 1.1 file with a single track.
+ */
+public final class GpxWriter {
+    private static final String GPX_NAMESPACE = "http://www.topografix.com/GPX/1/1";
+    private static final XMLOutputFactory FACTORY = XMLOutputFactory.newFactory();
+
+    private GpxWriter() {
+    }
+
+    public static void write(GpxTrack track, OutputStream out) throws IOException {
+        try {
+            XMLStreamWriter writer = FACTORY.createXMLStreamWriter(out, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.setDefaultNamespace(GPX_NAMESPACE);
+            writer.writeStartElement(GPX_NAMESPACE, "gpx");
+            writer.writeDefaultNamespace(GPX_NAMESPACE);
+            writer.writeAttribute("version", "1.1");
+            writer.writeAttribute("creator", "camping-route-backend");
+            writer.writeStartElement(GPX_NAMESPACE, "trk");
+
+            int[] segmentStarts = track.getSegmentStarts();
+            for (int segment = 0; segment < segmentStarts.length; segment++) {
+                writer.writeStartElement(GPX_NAMESPACE, "trkseg");
+                for (int i = segmentStarts[segment]; i < track.segmentEnd(segment); i++) {
+                    writePoint(writer, track, i);
+                }
+                writer.writeEndElement();
+            }
+
+            writer.writeEndElement();
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("GPX file could not be written", e);
+        }
+    }
+
+    private static void writePoint(XMLStreamWriter writer, GpxTrack track, int i) throws XMLStreamException {
+        writer.writeStartElement(GPX_NAMESPACE, "trkpt");
+        writer.writeAttribute("lat", Double.toString(track.getLatitudes()[i]));
+        writer.writeAttribute("lon", Double.toString(track.getLongitudes()[i]));
+        if (track.getElevations() != null) {
+            writer.writeStartElement(GPX_NAMESPACE, "ele");
+            writer.writeCharacters(Double.toString(track.getElevations()[i]));
+            writer.writeEndElement();
+        }
+        if (track.getTimes() != null) {
+            writer.writeStartElement(GPX_NAMESPACE, "time");
+            writer.writeCharacters(Instant.ofEpochMilli(track.getTimes()[i]).toString());
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+    }
+}
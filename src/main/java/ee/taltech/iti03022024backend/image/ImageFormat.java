@@ -0,0 +1,47 @@
+package ee.taltech.iti03022024backend.image;
+
+import org.springframework.http.MediaType;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Formats images are resized to, in order of preference. WebP needs an ImageIO plugin on the classpath.
+ */
+public enum ImageFormat {
+    WEBP("webp", MediaType.parseMediaType("image/webp"), 0.8f),
+    JPEG("jpg", MediaType.IMAGE_JPEG, 0.82f);
+
+    private final String extension;
+    private final MediaType mediaType;
+    private final float quality;
+    private final boolean writable;
+
+    ImageFormat(String extension, MediaType mediaType, float quality) {
+        this.extension = extension;
+        this.mediaType = mediaType;
+        this.quality = quality;
+        this.writable = ImageIO.getImageWritersByMIMEType(mediaType.toString()).hasNext();
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @return compression quality between 0 and 1
+     */
+    public float getQuality() {
+        return quality;
+    }
+
+    /**
+     * @return whether an ImageIO writer for the format is installed
+     */
+    public boolean isWritable() {
+        return writable;
+    }
+}
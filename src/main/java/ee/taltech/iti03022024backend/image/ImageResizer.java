@@ -0,0 +1,163 @@
+package ee.taltech.iti03022024backend.image;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Decodes, downscales and encodes images with ImageIO.
+ * <p>
+ * Large photos are subsampled while they are decoded, so only the pixels needed for the widest size are kept in
+ * memory. Downscaling halves the image until it is less than twice the target size, as a single bilinear step over
+ * a larger factor skips pixels and looks grainy.
+ */
+public final class ImageResizer {
+    // a photo of a few megabytes may declare dimensions that take gigabytes to decode
+    private static final long MAX_PIXELS = 100_000_000L;
+
+    private ImageResizer() {
+    }
+
+    /**
+     * @param minWidth width the decoded image should not be narrower than, unless the image itself is
+     * @return the image, null when it is in a format ImageIO does not read or too large to decode
+     */
+    public static BufferedImage read(InputStream in, int minWidth) throws IOException {
+        // every other pixel still leaves twice the width needed, enough to downscale smoothly from
+        return read(in, (width, height) -> Math.max(1, width / (2 * minWidth)));
+    }
+
+    /**
+     * @param maxPixels pixels the decoded image should have at most, larger images are subsampled evenly to fit
+     * @return the image, null when it is in a format ImageIO does not read or too large to decode
+     */
+    public static BufferedImage readWithin(InputStream in, long maxPixels) throws IOException {
+        return read(in, (width, height) -> (int) Math.max(1, Math.ceil(Math.sqrt((double) width * height / maxPixels))));
+    }
+
+    // subsampling gives the step between the pixels decoded for the width and height of the image
+    private static BufferedImage read(InputStream in, IntBinaryOperator subsampling) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > MAX_PIXELS) {
+                    return null;
+                }
+
+                int step = subsampling.applyAsInt(width, height);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Reads the width and height from the header of the image without decoding its pixels.
+     *
+     * @return the dimensions, null when the image is in a format ImageIO does not read
+     */
+    public static Dimension dimensions(InputStream in) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * @return the image scaled to the width with its aspect ratio kept, transparent pixels turned white
+     */
+    public static BufferedImage resize(BufferedImage source, int width) {
+        int height = Math.max(1, Math.round((float) source.getHeight() * width / source.getWidth()));
+
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            current = draw(current, currentWidth, currentHeight);
+        } while (currentWidth != width || currentHeight != height);
+        return current;
+    }
+
+    public static void write(BufferedImage image, ImageFormat format, OutputStream out) throws IOException {
+        write(image, format, format.getQuality(), out);
+    }
+
+    /**
+     * Encodes the image without any metadata.
+     *
+     * @param quality compression quality between 0 and 1
+     */
+    public static void write(BufferedImage image, ImageFormat format, float quality, OutputStream out) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByMIMEType(format.getMediaType().toString());
+        if (!writers.hasNext()) {
+            throw new IOException("No writer for " + format.getMediaType());
+        }
+
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (param.getCompressionTypes() != null) {
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                param.setCompressionQuality(quality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+}
@@ -0,0 +1,182 @@
+package ee.taltech.iti03022024backend.image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Strips the metadata of uploaded images, e.g. the GPS position a phone writes into a photo, by decoding them
+ * and encoding the pixels again in the same format. The EXIF orientation of a JPEG is applied to the pixels
+ * before it is dropped, so photos taken with the phone turned stay upright.
+ * <p>
+ * JPEG and PNG images are re-encoded, other formats are left as they are. Photos of more than 24 megapixels
+ * are scaled down while they are decoded, as turning one takes a second copy of its pixels.
+ */
+public final class ImageSanitizer {
+    // originals are kept in a higher quality than their resized copies
+    private static final float JPEG_QUALITY = 0.9f;
+    // about 170 MB for the decoded pixels and their upright copy
+    private static final long MAX_PIXELS = 24_000_000L;
+
+    private static final int START_OF_IMAGE = 0xFFD8;
+    private static final int START_OF_SCAN = 0xFFDA;
+    private static final int END_OF_IMAGE = 0xFFD9;
+    private static final int APP1 = 0xFFE1;
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+    private static final int TIFF_MAGIC = 42;
+    private static final int ORIENTATION_TAG = 0x0112;
+    private static final int IFD_ENTRY_SIZE = 12;
+
+    /**
+     * @param reoriented whether the pixels were turned or flipped, the width and height may have been swapped
+     */
+    public record Result(int width, int height, boolean reoriented) {
+    }
+
+    private ImageSanitizer() {
+    }
+
+    /**
+     * Writes the image without metadata to the output.
+     *
+     * @return dimensions of the written image, null when the image is not a JPEG or PNG and nothing was written
+     * @throws IOException when the image can not be decoded, e.g. when it is too large
+     */
+    public static Result sanitize(byte[] image, OutputStream out) throws IOException {
+        return sanitize(image, out, MAX_PIXELS);
+    }
+
+    static Result sanitize(byte[] image, OutputStream out, long maxPixels) throws IOException {
+        String format = formatName(image);
+        if (!"jpeg".equals(format) && !"png".equals(format)) {
+            return null;
+        }
+
+        BufferedImage decoded = ImageResizer.readWithin(new ByteArrayInputStream(image), maxPixels);
+        if (decoded == null) {
+            throw new IOException("Image is too large to decode");
+        }
+        int orientation = "jpeg".equals(format) ? orientation(image) : 1;
+        BufferedImage oriented = orient(decoded, orientation);
+
+        if ("jpeg".equals(format)) {
+            ImageResizer.write(oriented, ImageFormat.JPEG, JPEG_QUALITY, out);
+        } else if (!ImageIO.write(oriented, "png", out)) {
+            throw new IOException("No writer for PNG");
+        }
+        return new Result(oriented.getWidth(), oriented.getHeight(), orientation > 1);
+    }
+
+    /**
+     * @return EXIF orientation of the JPEG from 1 to 8, 1 (upright) when it has none
+     */
+    static int orientation(byte[] jpeg) {
+        ByteBuffer buffer = ByteBuffer.wrap(jpeg);
+        if (buffer.remaining() < 2 || (buffer.getShort() & 0xFFFF) != START_OF_IMAGE) {
+            return 1;
+        }
+
+        // the metadata segments all come before the compressed pixels
+        while (buffer.remaining() >= 4) {
+            int marker = buffer.getShort() & 0xFFFF;
+            if ((marker & 0xFF00) != 0xFF00 || marker == START_OF_SCAN || marker == END_OF_IMAGE) {
+                return 1;
+            }
+            int length = (buffer.getShort() & 0xFFFF) - 2;
+            if (length < 0 || length > buffer.remaining()) {
+                return 1;
+            }
+
+            int start = buffer.position();
+            if (marker == APP1 && length > EXIF_HEADER.length
+                    && buffer.slice(start, EXIF_HEADER.length).equals(ByteBuffer.wrap(EXIF_HEADER))) {
+                return tiffOrientation(buffer.slice(start + EXIF_HEADER.length, length - EXIF_HEADER.length));
+            }
+            buffer.position(start + length);
+        }
+        return 1;
+    }
+
+    // the orientation is a tag of the first image file directory of the TIFF structure EXIF is kept in
+    private static int tiffOrientation(ByteBuffer tiff) {
+        try {
+            int byteOrder = tiff.getShort(0) & 0xFFFF;
+            if (byteOrder == 0x4949) {
+                tiff.order(ByteOrder.LITTLE_ENDIAN);
+            } else if (byteOrder != 0x4D4D) {
+                return 1;
+            }
+            if (tiff.getShort(2) != TIFF_MAGIC) {
+                return 1;
+            }
+
+            int directory = tiff.getInt(4);
+            int entries = tiff.getShort(directory) & 0xFFFF;
+            for (int i = 0; i < entries; i++) {
+                int entry = directory + 2 + i * IFD_ENTRY_SIZE;
+                if ((tiff.getShort(entry) & 0xFFFF) == ORIENTATION_TAG) {
+                    int orientation = tiff.getShort(entry + 8) & 0xFFFF;
+                    return orientation >= 1 && orientation <= 8 ? orientation : 1;
+                }
+            }
+            return 1;
+        } catch (IndexOutOfBoundsException e) {
+            // offsets pointing outside of the segment
+            return 1;
+        }
+    }
+
+    /**
+     * @return the image turned and flipped so it is upright, the image itself when it already is
+     */
+    static BufferedImage orient(BufferedImage image, int orientation) {
+        if (orientation <= 1 || orientation > 8) {
+            return image;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        // orientations from 5 on are turned by a quarter, which swaps width and height
+        AffineTransform transform = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, width, 0);
+            case 3 -> new AffineTransform(-1, 0, 0, -1, width, height);
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, height);
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6 -> new AffineTransform(0, 1, -1, 0, height, 0);
+            case 7 -> new AffineTransform(0, -1, -1, 0, height, width);
+            default -> new AffineTransform(0, -1, 1, 0, 0, width);
+        };
+        boolean swapped = orientation >= 5;
+
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage target = new BufferedImage(swapped ? height : width, swapped ? width : height, type);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    // lower case name of the format, null when ImageIO does not read it
+    private static String formatName(byte[] image) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(image))) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            return readers.next().getFormatName().toLowerCase(Locale.ROOT);
+        }
+    }
+}
@@ -13,6 +13,7 @@ public interface CampingRouteMapper {
     CampingRouteDto toDto(CampingRouteEntity entity);
 
     @Mapping(target = "id", ignore = true)
+    @Mapping(target = "trackStats", ignore = true)
     CampingRouteEntity toEntity(CampingRouteDto dto);
 
     List<CampingRouteDto> toDtoList(List<CampingRouteEntity> list);
@@ -1,11 +1,100 @@
 package ee.taltech.iti03022024backend.repository;
 
 import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
-public interface CampingRouteRepository extends JpaRepository<CampingRouteEntity, Long>, JpaSpecificationExecutor<CampingRouteEntity> {
+public interface CampingRouteRepository extends JpaRepository<CampingRouteEntity, Long>, JpaSpecificationExecutor<CampingRouteEntity>,
+        CampingRouteRepositoryCustom {
     List<CampingRouteEntity> findByUser_Id(long id);
+
+    // the author is needed for permission checks, load it in the same statement
+    @Override
+    @EntityGraph(attributePaths = "user")
+    Optional<CampingRouteEntity> findById(Long id);
+
+    // query is a to_tsquery expression, matching is done on the GIN indexed search_vector column
+    @Query(value = """
+            SELECT r.* FROM camping_route r
+            WHERE r.search_vector @@ to_tsquery('route_search', :query)
+            ORDER BY ts_rank(r.search_vector, to_tsquery('route_search', :query)) DESC, r.id DESC
+            """,
+            countQuery = """
+                    SELECT count(*) FROM camping_route r
+                    WHERE r.search_vector @@ to_tsquery('route_search', :query)
+                    """,
+            nativeQuery = true)
+    Page<CampingRouteEntity> searchFullText(@Param("query") String query, Pageable pageable);
+
+    /**
+     * Sets the word similarity threshold used by the {@code <%} operator for the rest of the transaction.
+     * {@link #searchFuzzy} only finds routes above this threshold, so it must not be higher than the
+     * thresholds passed to the search.
+     */
+    @Query(value = "SELECT set_config('pg_trgm.word_similarity_threshold', :threshold, true)", nativeQuery = true)
+    String setWordSimilarityThreshold(@Param("threshold") String threshold);
+
+    // the <% conditions run on the trigram indexes, the word_similarity conditions apply the per column thresholds
+    @Query(value = """
+            SELECT r.* FROM camping_route r
+            WHERE (:query <% r.name OR :query <% r.location)
+              AND (word_similarity(:query, r.name) >= :nameThreshold
+                   OR word_similarity(:query, r.location) >= :locationThreshold)
+            ORDER BY greatest(word_similarity(:query, r.name), word_similarity(:query, r.location)) DESC, r.id DESC
+            """,
+            countQuery = """
+                    SELECT count(*) FROM camping_route r
+                    WHERE (:query <% r.name OR :query <% r.location)
+                      AND (word_similarity(:query, r.name) >= :nameThreshold
+                           OR word_similarity(:query, r.location) >= :locationThreshold)
+                    """,
+            nativeQuery = true)
+    Page<CampingRouteEntity> searchFuzzy(
+            @Param("query") String query,
+            @Param("nameThreshold") double nameThreshold,
+            @Param("locationThreshold") double locationThreshold,
+            Pageable pageable);
+
+    // keyset variant of searchFullText, ordered by creation time so the cursor stays stable
+    @Query(value = """
+            SELECT r.* FROM camping_route r
+            WHERE r.search_vector @@ to_tsquery('route_search', :query)
+              AND (r.created_at, r.id) < (:createdAt, :id)
+            ORDER BY r.created_at DESC, r.id DESC
+            LIMIT :limit
+            """,
+            nativeQuery = true)
+    List<CampingRouteEntity> searchFullTextAfter(
+            @Param("query") String query,
+            @Param("createdAt") LocalDateTime createdAt,
+            @Param("id") long id,
+            @Param("limit") int limit);
+
+    // keyset variant of searchFuzzy, ordered by creation time so the cursor stays stable
+    @Query(value = """
+            SELECT r.* FROM camping_route r
+            WHERE (:query <% r.name OR :query <% r.location)
+              AND (word_similarity(:query, r.name) >= :nameThreshold
+                   OR word_similarity(:query, r.location) >= :locationThreshold)
+              AND (r.created_at, r.id) < (:createdAt, :id)
+            ORDER BY r.created_at DESC, r.id DESC
+            LIMIT :limit
+            """,
+            nativeQuery = true)
+    List<CampingRouteEntity> searchFuzzyAfter(
+            @Param("query") String query,
+            @Param("nameThreshold") double nameThreshold,
+            @Param("locationThreshold") double locationThreshold,
+            @Param("createdAt") LocalDateTime createdAt,
+            @Param("id") long id,
+            @Param("limit") int limit);
 }
@@ -0,0 +1,21 @@
+package ee.taltech.iti03022024backend.repository;
+
+import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+
+public interface CampingRouteRepositoryCustom {
+    /**
+     * Same as {@code findAll(spec, pageable)}, but without the count query.
+     * Fetches one camping route more than the page size to know whether there is a next page.
+     */
+    Slice<CampingRouteEntity> findSlice(Specification<CampingRouteEntity> spec, Pageable pageable);
+
+    /**
+     * @return ids of the camping routes matching the spec, without loading the routes
+     */
+    List<Long> findIds(Specification<CampingRouteEntity> spec);
+}
@@ -1,13 +1,86 @@
 package ee.taltech.iti03022024backend.repository;
 
-import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import ee.taltech.iti03022024backend.dto.CommentDto;
 import ee.taltech.iti03022024backend.entity.CommentEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface CommentRepository extends JpaRepository<CommentEntity, Long> {
-    List<CommentEntity> findByCampingRoute(CampingRouteEntity campingRouteEntity);
 
-    List<CommentEntity> findByUser_Id(long id);
+    interface CampingRouteCommentCount {
+        long getCampingRouteId();
+
+        long getCommentCount();
+    }
+
+    // the author id is read from the foreign key column, no user is loaded
+    @Query("""
+            SELECT new ee.taltech.iti03022024backend.dto.CommentDto(c.id, c.content, c.user.id)
+            FROM CommentEntity c
+            WHERE c.campingRoute.id = :campingRouteId
+            ORDER BY c.id
+            """)
+    List<CommentDto> findDtosByCampingRouteId(@Param("campingRouteId") long campingRouteId);
+
+    @Query("""
+            SELECT new ee.taltech.iti03022024backend.dto.CommentDto(c.id, c.content, c.user.id)
+            FROM CommentEntity c
+            WHERE c.user.id = :userId
+            ORDER BY c.id
+            """)
+    List<CommentDto> findDtosByUserId(@Param("userId") long userId);
+
+    @Query("""
+            SELECT new ee.taltech.iti03022024backend.dto.CommentDto(c.id, c.content, c.user.id)
+            FROM CommentEntity c
+            WHERE c.campingRoute.id = :campingRouteId AND c.id > :afterId
+            ORDER BY c.id
+            """)
+    List<CommentDto> findDtosByCampingRouteIdAfter(
+            @Param("campingRouteId") long campingRouteId, @Param("afterId") long afterId, Limit limit);
+
+    @Query("""
+            SELECT new ee.taltech.iti03022024backend.dto.CommentDto(c.id, c.content, c.user.id)
+            FROM CommentEntity c
+            WHERE c.user.id = :userId AND c.id > :afterId
+            ORDER BY c.id
+            """)
+    List<CommentDto> findDtosByUserIdAfter(@Param("userId") long userId, @Param("afterId") long afterId, Limit limit);
+
+    // routes without comments have no row, counted from idx_comment_camping_route_id
+    @Query("""
+            SELECT c.campingRoute.id AS campingRouteId, count(c) AS commentCount
+            FROM CommentEntity c
+            WHERE c.campingRoute.id IN :campingRouteIds
+            GROUP BY c.campingRoute.id
+            """)
+    List<CampingRouteCommentCount> countByCampingRouteIds(@Param("campingRouteIds") Collection<Long> campingRouteIds);
+
+    // streams have to be consumed in a transaction, the fetch size keeps the driver from reading all rows at once
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("""
+            SELECT new ee.taltech.iti03022024backend.dto.CommentDto(c.id, c.content, c.user.id)
+            FROM CommentEntity c
+            WHERE c.campingRoute.id = :campingRouteId
+            ORDER BY c.id
+            """)
+    Stream<CommentDto> streamDtosByCampingRouteId(@Param("campingRouteId") long campingRouteId);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("""
+            SELECT new ee.taltech.iti03022024backend.dto.CommentDto(c.id, c.content, c.user.id)
+            FROM CommentEntity c
+            WHERE c.user.id = :userId
+            ORDER BY c.id
+            """)
+    Stream<CommentDto> streamDtosByUserId(@Param("userId") long userId);
 }
@@ -0,0 +1,42 @@
+package ee.taltech.iti03022024backend.repository;
+
+import ee.taltech.iti03022024backend.entity.RouteImageEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface RouteImageRepository extends JpaRepository<RouteImageEntity, Long> {
+    // images of many routes in one query, read in the order of idx_route_image_camping_route_sort_order
+    @Query("""
+            SELECT i FROM RouteImageEntity i
+            WHERE i.campingRoute.id IN :campingRouteIds
+            ORDER BY i.campingRoute.id, i.sortOrder, i.id
+            """)
+    List<RouteImageEntity> findByCampingRouteIds(@Param("campingRouteIds") Collection<Long> campingRouteIds);
+
+    @Query("SELECT coalesce(max(i.sortOrder), -1) FROM RouteImageEntity i WHERE i.campingRoute.id = :campingRouteId")
+    int findMaxSortOrder(@Param("campingRouteId") long campingRouteId);
+
+    // routes whose images were stored before they were indexed
+    @Query("""
+            SELECT r.id FROM CampingRouteEntity r
+            WHERE NOT EXISTS (SELECT 1 FROM RouteImageEntity i WHERE i.campingRoute = r)
+            ORDER BY r.id
+            """)
+    List<Long> findCampingRouteIdsWithoutImages();
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM RouteImageEntity i WHERE i.campingRoute.id = :campingRouteId AND i.fileName = :fileName")
+    int deleteByCampingRouteIdAndFileName(@Param("campingRouteId") long campingRouteId, @Param("fileName") String fileName);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM RouteImageEntity i WHERE i.campingRoute.id = :campingRouteId")
+    int deleteByCampingRouteId(@Param("campingRouteId") long campingRouteId);
+}
@@ -0,0 +1,51 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import ee.taltech.iti03022024backend.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in a camping route listing sorted by {@code created_at DESC, id DESC}.
+ * Clients only see it as an opaque token.
+ */
+record CampingRouteCursor(LocalDateTime createdAt, long id) {
+    // sorts before every camping route, used when no cursor is given
+    static final CampingRouteCursor START = new CampingRouteCursor(LocalDateTime.of(9999, 12, 31, 0, 0), Long.MAX_VALUE);
+
+    private static final String INVALID_CURSOR = "Cursor is not valid";
+
+    static CampingRouteCursor of(CampingRouteEntity route) {
+        return new CampingRouteCursor(route.getCreatedAt(), route.getId());
+    }
+
+    /**
+     * @return cursor of the token, {@link #START} when there is no token
+     */
+    static CampingRouteCursor decode(String token) {
+        if (token == null || token.isEmpty()) {
+            return START;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = value.lastIndexOf(':');
+            return new CampingRouteCursor(
+                    LocalDateTime.parse(value.substring(0, separator)),
+                    Long.parseLong(value.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new InvalidCursorException(INVALID_CURSOR);
+        }
+    }
+
+    boolean isStart() {
+        return this.equals(START);
+    }
+
+    String encode() {
+        String value = createdAt + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,10 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+
+/**
+ * Published while a camping route is removed in a transaction, whether it is deleted on its own or together
+ * with its user. Listeners holding state of the route drop it once the transaction commits.
+ */
+public record CampingRouteDeletedEvent(CampingRouteEntity route) {
+}
@@ -1,34 +1,86 @@
 package ee.taltech.iti03022024backend.service;
 
+import ee.taltech.iti03022024backend.dto.CampingRouteElevationProfileDto;
 import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import ee.taltech.iti03022024backend.entity.CampingRouteTrackStats;
 import ee.taltech.iti03022024backend.exception.CampingRouteGpxNotFoundException;
 import ee.taltech.iti03022024backend.exception.CampingRouteGpxStorageException;
 import ee.taltech.iti03022024backend.exception.CampingRouteNotFoundException;
+import ee.taltech.iti03022024backend.exception.InvalidGpxException;
 import ee.taltech.iti03022024backend.exception.NotPermittedException;
+import ee.taltech.iti03022024backend.file.ContentCodings;
+import ee.taltech.iti03022024backend.file.FileResponses;
+import ee.taltech.iti03022024backend.file.FileStore;
+import ee.taltech.iti03022024backend.gpx.ElevationProfile;
+import ee.taltech.iti03022024backend.gpx.EncodedGpxTrack;
+import ee.taltech.iti03022024backend.gpx.GpxElevationProfile;
+import ee.taltech.iti03022024backend.gpx.GpxParser;
+import ee.taltech.iti03022024backend.gpx.GpxTrack;
+import ee.taltech.iti03022024backend.gpx.GpxTrackCodec;
+import ee.taltech.iti03022024backend.gpx.GpxTrackSimplifier;
+import ee.taltech.iti03022024backend.gpx.GpxWriter;
+import ee.taltech.iti03022024backend.gpx.GpxTrackStatistics;
 import ee.taltech.iti03022024backend.repository.CampingRouteRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class CampingRouteGpxService {
-    private final Path rootDir = Path.of("files").resolve("camping_route_gpx");
+    private static final String GPX_EXTENSION = ".gpx";
+    private static final String TRACK_EXTENSION = ".track";
+    private static final String GZIP_EXTENSION = GPX_EXTENSION + ".gz";
+    private static final MediaType GPX_MEDIA_TYPE = MediaType.parseMediaType("application/gpx+xml");
+    // a route keeps its URL when its GPX file is replaced, so clients check their copy with the ETag every time
+    private static final CacheControl GPX_CACHE_CONTROL = CacheControl.noCache();
+
+    // enough for a chart as wide as a phone screen while staying a few kilobytes
+    private static final int PROFILE_BUCKETS = 100;
+    private static final int MAX_CACHED_PROFILES = 1_000;
+
+    private static final String GPX_DIR = "camping_route_gpx";
+
+    // profile of the version of the GPX file it was read from
+    private record CachedProfile(String version, CampingRouteElevationProfileDto profile) {
+    }
+
+    private final Map<Long, CachedProfile> profiles = new ConcurrentHashMap<>();
     private final CampingRouteRepository repository;
+    private final CampingRouteHomepageCache homepageCache;
+    private final CampingRouteSpatialIndex spatialIndex;
+    private final CampingRouteTileCache tileCache;
+    private final FileResponses fileResponses;
+    private final FileStore fileStore;
+    private final TransactionTemplate transactionTemplate;
 
-    private void validateUser(String principal, long campingRouteId) {
+    private CampingRouteEntity validateUser(String principal, long campingRouteId) {
         CampingRouteEntity route = repository.findById(campingRouteId)
                 .orElseThrow(() -> new CampingRouteNotFoundException("Camping route with id of "
                         + campingRouteId + " does not exist"));
@@ -36,6 +88,7 @@ public class CampingRouteGpxService {
         if (!route.getUser().getUsername().equals(principal)) {
             throw new NotPermittedException("You are not permitted to do this action.");
         }
+        return route;
     }
 
     public ResponseEntity<Void> storeGpx(String principal, MultipartFile file, long campingRouteId) {
@@ -47,6 +100,7 @@ public class CampingRouteGpxService {
             throw new CampingRouteGpxStorageException("Encountered empty file.");
         }
 
+        GpxTrackStatistics statistics;
         try {
             var fileExtension = FilenameUtils.getExtension(file.getOriginalFilename());
 
@@ -54,62 +108,318 @@ public class CampingRouteGpxService {
                 throw new CampingRouteGpxStorageException("Only GPX files are allowed.");
             }
 
-            if (Files.notExists(rootDir)) {
-                log.info("Creating directory for camping route with id {}", campingRouteId);
-                Files.createDirectories(rootDir);
-            }
-
-            // Save the file, overwriting any existing GPX file
-            Files.copy(
-                    file.getInputStream(),
-                    rootDir.resolve(campingRouteId + ".gpx").normalize().toAbsolutePath(),
-                    StandardCopyOption.REPLACE_EXISTING // Overwrite if file exists
-            );
+            // Save the file and its encoded track, overwriting any existing GPX file
+            statistics = storeAndParse(file, campingRouteId);
 
         } catch (IOException e) {
             throw new CampingRouteGpxStorageException("GPX file could not be saved.");
         }
 
+        log.info("GPX file of camping route with id {} has {} points over {} m",
+                campingRouteId, statistics.getPointCount(), Math.round(statistics.getDistanceMeters()));
+        updateTrack(campingRouteId, route -> {
+            route.setStartLatitude(statistics.getStartLatitude());
+            route.setStartLongitude(statistics.getStartLongitude());
+            route.setTrackStats(toTrackStats(statistics));
+        });
+
         return ResponseEntity.ok().build();
     }
 
+    // the upload is parsed and compressed while it is copied, the stored files are only replaced once it is known to be a GPX file
+    private GpxTrackStatistics storeAndParse(MultipartFile file, long campingRouteId) throws IOException {
+        try (FileStore.Upload gpx = fileStore.newUpload(key(campingRouteId, GPX_EXTENSION));
+             FileStore.Upload compressed = fileStore.newUpload(key(campingRouteId, GZIP_EXTENSION))) {
+            var statistics = new GpxTrackStatistics();
+            var track = new GpxTrack.Builder();
+            try (InputStream in = new TeeInputStream(file.getInputStream(),
+                    new TeeOutputStream(gpx.outputStream(), gzip(compressed.outputStream())), true)) {
+                GpxParser.parse(in, statistics.andThen(track));
+                // keep whatever follows the root element as well
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+
+            if (statistics.isEmpty()) {
+                throw new InvalidGpxException("GPX file has no track or route points.");
+            }
+
+            writeTracks(campingRouteId, track.build());
+            compressed.commit();
+            FileStore.StoredFile stored = gpx.commit();
+            if (stored.duplicate()) {
+                log.info("GPX file of camping route with id {} is shared with another camping route", campingRouteId);
+            }
+            profiles.remove(campingRouteId);
+            return statistics;
+        }
+    }
+
+    // GPX files are downloaded far more often than uploaded, so they are compressed once as hard as gzip goes
+    private static OutputStream gzip(OutputStream out) throws IOException {
+        return new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        };
+    }
+
+    // every level of detail of the track, so map previews do not have to simplify on each request
+    private void writeTracks(long campingRouteId, GpxTrack track) throws IOException {
+        GpxTrack[] levels = GpxTrackSimplifier.levels(track);
+        for (int level = 0; level < levels.length; level++) {
+            fileStore.store(GpxTrackCodec.encode(levels[level]), trackKey(campingRouteId, level));
+        }
+    }
+
+    private static String trackKey(long campingRouteId, int level) {
+        return key(campingRouteId, level == 0 ? TRACK_EXTENSION : ".lod" + level + TRACK_EXTENSION);
+    }
+
+    private static int level(Double tolerance, Integer zoom) {
+        if (tolerance != null) {
+            return GpxTrackSimplifier.levelForTolerance(tolerance);
+        }
+        return zoom != null ? GpxTrackSimplifier.levelForZoom(zoom) : 0;
+    }
+
+    private static String key(long campingRouteId, String extension) {
+        return GPX_DIR + "/" + campingRouteId + extension;
+    }
+
+    private static CampingRouteTrackStats toTrackStats(GpxTrackStatistics statistics) {
+        return new CampingRouteTrackStats(
+                statistics.getDistanceMeters(),
+                statistics.getElevationGainMeters(),
+                statistics.getElevationLossMeters(),
+                statistics.getMinLatitude(),
+                statistics.getMinLongitude(),
+                statistics.getMaxLatitude(),
+                statistics.getMaxLongitude(),
+                statistics.getPointCount(),
+                statistics.getDurationSeconds()
+        );
+    }
+
+    // the file is handled before, so the route is loaded again in a short transaction of its own and only the
+    // changed columns are written, an edit of the route made during an upload is kept
+    private void updateTrack(long campingRouteId, Consumer<CampingRouteEntity> change) {
+        transactionTemplate.executeWithoutResult(status -> {
+            CampingRouteEntity route = repository.findById(campingRouteId)
+                    .orElseThrow(() -> new CampingRouteNotFoundException("Camping route with id of "
+                            + campingRouteId + " does not exist"));
+            // tiles of where the track was and of where it is now
+            tileCache.invalidate(route);
+            change.accept(route);
+            repository.save(route);
+            homepageCache.routeUpdated(route);
+            spatialIndex.routeChanged(route);
+            tileCache.invalidate(route);
+        });
+    }
+
     public ResponseEntity<Resource> getGpx(long campingRouteId) {
-        log.info("Getting GPX file for camping route with id {}", campingRouteId);
+        return getGpx(campingRouteId, null);
+    }
+
+    /**
+     * @param acceptEncoding Accept-Encoding header of the request, the gzip compressed file is sent when it allows gzip
+     */
+    public ResponseEntity<Resource> getGpx(long campingRouteId, String acceptEncoding) {
+        boolean gzip = ContentCodings.accepts(acceptEncoding, ContentCodings.GZIP);
+
+        log.info("Getting {}GPX file for camping route with id {}", gzip ? "compressed " : "", campingRouteId);
+
+        var headers = new HttpHeaders();
+        headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+        try {
+            if (!gzip) {
+                return fileStore.serve(key(campingRouteId, GPX_EXTENSION), GPX_MEDIA_TYPE, GPX_CACHE_CONTROL, headers);
+            }
+
+            var compressedKey = key(campingRouteId, GZIP_EXTENSION);
+            if (fileStore.info(compressedKey).isEmpty()) {
+                compressStoredGpx(campingRouteId);
+            }
+            headers.set(HttpHeaders.CONTENT_ENCODING, ContentCodings.GZIP);
+            return fileStore.serve(compressedKey, GPX_MEDIA_TYPE, GPX_CACHE_CONTROL, headers);
+
+        } catch (NoSuchFileException e) {
+            throw new CampingRouteGpxNotFoundException("GPX file not found for camping route with id " + campingRouteId);
+        } catch (IOException e) {
+            throw new CampingRouteGpxStorageException("GPX file could not be read.");
+        }
+    }
+
+    // GPX files stored before they were compressed on upload get compressed on the first request
+    private void compressStoredGpx(long campingRouteId) throws IOException {
+        log.info("Compressing stored GPX file of camping route with id {}", campingRouteId);
+        try (FileStore.Upload compressed = fileStore.newUpload(key(campingRouteId, GZIP_EXTENSION));
+             InputStream in = fileStore.open(key(campingRouteId, GPX_EXTENSION))) {
+            try (OutputStream out = gzip(compressed.outputStream())) {
+                in.transferTo(out);
+            }
+            compressed.commit();
+        }
+    }
+
+    /**
+     * @param tolerance largest distance in meters the track may be simplified by, takes precedence over zoom
+     * @param zoom      web map zoom level the track is shown at
+     * @param acceptEncoding Accept-Encoding header of the request, see {@link #getGpx(long, String)}
+     */
+    public ResponseEntity<Resource> getGpx(long campingRouteId, Double tolerance, Integer zoom, String acceptEncoding) {
+        int level = level(tolerance, zoom);
+        if (level == 0) {
+            return getGpx(campingRouteId, acceptEncoding);
+        }
+
+        log.info("Getting GPX file of level {} for camping route with id {}", level, campingRouteId);
+
+        try {
+            var out = new ByteArrayOutputStream();
+            GpxWriter.write(GpxTrackCodec.decode(readTrack(campingRouteId, level)), out);
+            return fileResponses.ok(out.toByteArray(), GPX_MEDIA_TYPE, GPX_CACHE_CONTROL);
+        } catch (IOException e) {
+            throw new CampingRouteGpxStorageException("Track could not be read.");
+        }
+    }
+
+    /**
+     * @param tolerance largest distance in meters the track may be simplified by, takes precedence over zoom
+     * @param zoom      web map zoom level the track is shown at
+     */
+    public ResponseEntity<EncodedGpxTrack> getTrack(long campingRouteId, Double tolerance, Integer zoom) {
+        int level = level(tolerance, zoom);
+
+        log.info("Getting encoded track of level {} for camping route with id {}", level, campingRouteId);
 
-        var filePath = rootDir
-                .resolve(campingRouteId + ".gpx")
-                .normalize()
-                .toAbsolutePath();
+        try {
+            return ResponseEntity.ok(new EncodedGpxTrack(readTrack(campingRouteId, level)));
+        } catch (IOException e) {
+            throw new CampingRouteGpxStorageException("Track could not be read.");
+        }
+    }
+
+    /**
+     * @return the track at the level of detail, empty when the camping route has no GPX file
+     */
+    public Optional<GpxTrack> findTrack(long campingRouteId, int level) {
+        try {
+            return Optional.of(GpxTrackCodec.decode(readTrack(campingRouteId, level)));
+        } catch (CampingRouteGpxNotFoundException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new CampingRouteGpxStorageException("Track could not be read.");
+        }
+    }
 
+    /**
+     * @return elevations along the track in a fixed number of buckets, read from the GPX file once until it is replaced
+     */
+    public ResponseEntity<CampingRouteElevationProfileDto> getElevationProfile(long campingRouteId) {
+        log.info("Getting elevation profile for camping route with id {}", campingRouteId);
+
+        var key = key(campingRouteId, GPX_EXTENSION);
         try {
-            var resource = new UrlResource(filePath.toUri());
-            if (!resource.exists() || !resource.isReadable()) {
-                throw new CampingRouteGpxNotFoundException("GPX file not found for camping route with id " + campingRouteId);
+            FileStore.FileInfo info = fileStore.info(key).orElseThrow(() -> new NoSuchFileException(key));
+            CachedProfile cached = profiles.get(campingRouteId);
+            if (cached != null && cached.version().equals(info.version())) {
+                return ResponseEntity.ok(cached.profile());
             }
 
-            return ResponseEntity.ok(resource);
+            var profile = new GpxElevationProfile(PROFILE_BUCKETS);
+            try (InputStream in = new BufferedInputStream(fileStore.open(key))) {
+                GpxParser.parse(in, profile);
+            }
+            ElevationProfile built = profile.build();
+            if (built == null) {
+                throw new CampingRouteGpxNotFoundException("GPX file of camping route with id " + campingRouteId
+                        + " has no elevations");
+            }
 
-        } catch (MalformedURLException e) {
-            throw new CampingRouteGpxStorageException("Invalid file path.");
+            CampingRouteElevationProfileDto dto = toProfileDto(built);
+            if (profiles.size() >= MAX_CACHED_PROFILES) {
+                profiles.clear();
+            }
+            profiles.put(campingRouteId, new CachedProfile(info.version(), dto));
+            return ResponseEntity.ok(dto);
+
+        } catch (NoSuchFileException e) {
+            throw new CampingRouteGpxNotFoundException("GPX file not found for camping route with id " + campingRouteId);
+        } catch (IOException e) {
+            throw new CampingRouteGpxStorageException("GPX file could not be read.");
         }
     }
 
+    private static CampingRouteElevationProfileDto toProfileDto(ElevationProfile profile) {
+        var dto = new CampingRouteElevationProfileDto();
+        dto.setDistanceMeters(toDecimeters(profile.distanceMeters()));
+        dto.setBucketMeters(toDecimeters(profile.bucketMeters()));
+        dto.setDistances(toDecimeters(profile.distances()));
+        dto.setElevations(toDecimeters(profile.elevations()));
+        dto.setMinElevations(toDecimeters(profile.minElevations()));
+        dto.setMaxElevations(toDecimeters(profile.maxElevations()));
+        return dto;
+    }
+
+    // GPS elevations are not any more precise, and shorter numbers keep the response small
+    private static double toDecimeters(double meters) {
+        return Math.round(meters * 10) / 10.0;
+    }
+
+    private static double[] toDecimeters(double[] meters) {
+        return Arrays.stream(meters).map(CampingRouteGpxService::toDecimeters).toArray();
+    }
+
+    private byte[] readTrack(long campingRouteId, int level) throws IOException {
+        var trackKey = trackKey(campingRouteId, level);
+
+        try {
+            try (InputStream in = fileStore.open(trackKey)) {
+                return in.readAllBytes();
+            } catch (NoSuchFileException e) {
+                encodeStoredGpx(campingRouteId);
+            }
+
+            try (InputStream in = fileStore.open(trackKey)) {
+                return in.readAllBytes();
+            }
+
+        } catch (NoSuchFileException e) {
+            throw new CampingRouteGpxNotFoundException("GPX file not found for camping route with id " + campingRouteId);
+        }
+    }
+
+    // GPX files stored before tracks were encoded on upload get their tracks on the first request
+    private void encodeStoredGpx(long campingRouteId) throws IOException {
+        var track = new GpxTrack.Builder();
+        try (InputStream in = new BufferedInputStream(fileStore.open(key(campingRouteId, GPX_EXTENSION)))) {
+            GpxParser.parse(in, track);
+        }
+
+        log.info("Encoding stored GPX file of camping route with id {}", campingRouteId);
+        writeTracks(campingRouteId, track.build());
+    }
+
     public ResponseEntity<Void> deleteGpx(String principal, long campingRouteId) {
         validateUser(principal, campingRouteId);
 
         log.info("Deleting GPX file for camping route with id {}", campingRouteId);
 
-        var filePath = rootDir
-                .resolve(campingRouteId + ".gpx")
-                .normalize()
-                .toAbsolutePath();
+        var key = key(campingRouteId, GPX_EXTENSION);
 
         try {
-            if (Files.notExists(filePath)) {
+            if (fileStore.info(key).isEmpty()) {
                 throw new CampingRouteGpxNotFoundException("GPX file does not exist for camping route with id " + campingRouteId);
             }
 
-            Files.delete(filePath);
+            fileStore.delete(key);
+            fileStore.delete(key(campingRouteId, GZIP_EXTENSION));
+            profiles.remove(campingRouteId);
+            for (int level = 0; level < GpxTrackSimplifier.LEVELS; level++) {
+                fileStore.delete(trackKey(campingRouteId, level));
+            }
+            updateTrack(campingRouteId, route -> route.setTrackStats(null));
 
             return ResponseEntity.noContent().build();
         } catch (IOException e) {
@@ -0,0 +1,256 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.dto.CampingRouteDto;
+import ee.taltech.iti03022024backend.dto.PageResponse;
+import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import ee.taltech.iti03022024backend.mapping.CampingRouteMapper;
+import ee.taltech.iti03022024backend.repository.CampingRouteRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the newest camping routes of the homepage in memory as ready-made DTOs, enough to serve
+ * the first pages of any page size. Created and deleted routes are written through to the cached
+ * feed after their transaction commits, so the feed does not have to be reloaded when routes change.
+ */
+@Slf4j
+@Component
+public class CampingRouteHomepageCache {
+    // order of the homepage, newest first
+    static final Sort HOMEPAGE_SORT = Sort.by(Sort.Direction.DESC, "createdAt", "id");
+
+    // largest page size allowed by CampingRouteSearchRequest
+    private static final int MAX_PAGE_SIZE = 20;
+    private static final String CACHE_NAME = "homepage";
+
+    private static final Comparator<Entry> NEWEST_FIRST = Comparator
+            .comparing(Entry::createdAt, Comparator.nullsLast(Comparator.<LocalDateTime>naturalOrder()).reversed())
+            .thenComparing(Comparator.comparingLong(Entry::id).reversed());
+
+    private record Entry(LocalDateTime createdAt, long id, CampingRouteDto dto) {
+    }
+
+    // the newest routes and the total number of routes, complete when it holds every route
+    private record Feed(List<Entry> entries, long total, long loadedAt) {
+        boolean isComplete() {
+            return entries.size() == total;
+        }
+    }
+
+    private final CampingRouteRepository routeRepository;
+    private final CampingRouteMapper mapper;
+    private final int maxEntries;
+    private final Duration ttl;
+    private final Counter hits;
+    private final Counter misses;
+
+    // replaced as a whole, guarded by this
+    private Feed feed;
+    // the load running for a miss, the other requests wait for it instead of loading the feed as well
+    private CompletableFuture<Feed> loading;
+    // bumped on every change so a load that raced with a change is not stored
+    private long version;
+
+    public CampingRouteHomepageCache(
+            CampingRouteRepository routeRepository,
+            CampingRouteMapper mapper,
+            MeterRegistry meterRegistry,
+            @Value("${app.routes.homepage-cache.pages:5}") int pages,
+            @Value("${app.routes.homepage-cache.ttl:PT5M}") Duration ttl
+    ) {
+        this.routeRepository = routeRepository;
+        this.mapper = mapper;
+        this.maxEntries = pages * MAX_PAGE_SIZE;
+        this.ttl = ttl;
+        this.hits = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "hit")
+                .description("Homepage pages served from memory").register(meterRegistry);
+        this.misses = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "miss")
+                .description("Homepage pages that had to load the feed").register(meterRegistry);
+        Gauge.builder("cache.size", this, CampingRouteHomepageCache::size).tag("cache", CACHE_NAME)
+                .description("Camping routes held in the homepage feed").register(meterRegistry);
+    }
+
+    /**
+     * @return the homepage page, empty when it lies beyond the cached routes
+     */
+    public Optional<PageResponse<CampingRouteDto>> getPage(int pageNumber, int pageSize) {
+        long from = (long) pageNumber * pageSize;
+        if (from + pageSize > maxEntries) {
+            return Optional.empty();
+        }
+
+        Feed current;
+        CompletableFuture<Feed> pending;
+        boolean loader = false;
+        synchronized (this) {
+            current = feed;
+            boolean covered = current != null && covers(current, from, pageSize);
+            // an expired feed is still served while another request reloads it
+            if (covered && (!isExpired(current) || loading != null)) {
+                hits.increment();
+                return Optional.of(toPage(current, from, pageSize));
+            }
+            if (loading == null) {
+                loading = new CompletableFuture<>();
+                loader = true;
+            }
+            pending = loading;
+        }
+
+        misses.increment();
+        return Optional.of(toPage(loader ? load(pending) : await(pending), from, pageSize));
+    }
+
+    /**
+     * Adds the route to the cached feed once the current transaction commits.
+     */
+    public void routeCreated(CampingRouteEntity route) {
+        Entry entry = new Entry(route.getCreatedAt(), route.getId(), mapper.toDto(route));
+        AfterCommit.run(() -> update(entries -> {
+            int index = insertionPoint(entries, entry);
+            entries.add(index, entry);
+            if (entries.size() > maxEntries) {
+                entries.removeLast();
+            }
+        }, 1));
+    }
+
+    /**
+     * Replaces the cached copy of the route once the current transaction commits.
+     */
+    public void routeUpdated(CampingRouteEntity route) {
+        Entry entry = new Entry(route.getCreatedAt(), route.getId(), mapper.toDto(route));
+        AfterCommit.run(() -> update(entries -> entries.replaceAll(cached -> cached.id() == entry.id() ? entry : cached), 0));
+    }
+
+    /**
+     * Removes the route from the cached feed once the current transaction commits.
+     */
+    public void routeDeleted(long id) {
+        AfterCommit.run(() -> update(entries -> entries.removeIf(entry -> entry.id() == id), -1));
+    }
+
+    // routes are also removed when their user is deleted
+    @EventListener
+    public void routeDeleted(CampingRouteDeletedEvent event) {
+        routeDeleted(event.route().getId());
+    }
+
+    public synchronized void clear() {
+        feed = null;
+        version++;
+    }
+
+    // the feed is reloaded after the ttl, in case a change reached the database some other way
+    private boolean isExpired(Feed current) {
+        return System.nanoTime() - current.loadedAt() >= ttl.toNanos();
+    }
+
+    private synchronized int size() {
+        return feed == null ? 0 : feed.entries().size();
+    }
+
+    private boolean covers(Feed current, long from, int pageSize) {
+        return current.isComplete() || from + pageSize <= current.entries().size();
+    }
+
+    private Feed load(CompletableFuture<Feed> pending) {
+        try {
+            Feed loaded = load();
+            pending.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            synchronized (this) {
+                loading = null;
+            }
+        }
+    }
+
+    private static Feed await(CompletableFuture<Feed> pending) {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    private Feed load() {
+        long loadedVersion;
+        synchronized (this) {
+            loadedVersion = version;
+        }
+        long loadedAt = System.nanoTime();
+
+        Specification<CampingRouteEntity> all = Specification.where(null);
+        Slice<CampingRouteEntity> slice = routeRepository.findSlice(all, PageRequest.of(0, maxEntries, HOMEPAGE_SORT));
+        List<Entry> entries = slice.getContent()
+                .stream()
+                .map(route -> new Entry(route.getCreatedAt(), route.getId(), mapper.toDto(route)))
+                .toList();
+        long total = slice.hasNext() ? routeRepository.count(all) : entries.size();
+        Feed loaded = new Feed(entries, total, loadedAt);
+
+        synchronized (this) {
+            if (version == loadedVersion) {
+                feed = loaded;
+            }
+        }
+        log.debug("Loaded {} of {} camping routes into the homepage cache", entries.size(), total);
+        return loaded;
+    }
+
+    // a deleted route that is not in the feed lies beyond it, so only the total changes
+    private synchronized void update(Consumer<List<Entry>> change, long totalChange) {
+        version++;
+        if (feed == null) {
+            return;
+        }
+
+        List<Entry> entries = new ArrayList<>(feed.entries());
+        change.accept(entries);
+        feed = new Feed(List.copyOf(entries), feed.total() + totalChange, feed.loadedAt());
+    }
+
+    private static int insertionPoint(List<Entry> entries, Entry entry) {
+        int index = 0;
+        while (index < entries.size() && NEWEST_FIRST.compare(entries.get(index), entry) < 0) {
+            index++;
+        }
+        return index;
+    }
+
+    private static PageResponse<CampingRouteDto> toPage(Feed feed, long from, int pageSize) {
+        List<Entry> entries = feed.entries();
+        int fromIndex = (int) Math.min(from, entries.size());
+        int toIndex = (int) Math.min(from + pageSize, entries.size());
+        List<CampingRouteDto> dtos = entries.subList(fromIndex, toIndex)
+                .stream()
+                .map(Entry::dto)
+                .toList();
+        int totalPages = (int) ((feed.total() + pageSize - 1) / pageSize);
+
+        return new PageResponse<>(dtos, feed.total(), totalPages);
+    }
+}
@@ -0,0 +1,119 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.file.FileStore;
+import ee.taltech.iti03022024backend.image.ImageFormat;
+import ee.taltech.iti03022024backend.image.ImageResizer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Makes smaller copies of uploaded images in a few widths, so listings do not load photos of many megabytes.
+ * They are made by {@link CampingRouteImageProcessor} once the image has been sanitized, so they are upright and
+ * without metadata like the image itself, and kept in a {@code derivatives} directory next to the image, e.g. {@code camping_route_images/1/derivatives/photo-320.jpg}. Images narrower
+ * than a width get no copy of that width.
+ */
+@Slf4j
+@Component
+public class CampingRouteImageDerivatives {
+    /** Widths in pixels the images are resized to, narrowest first. */
+    public static final int[] WIDTHS = {320, 800, 1600};
+
+    private static final String DERIVATIVES_DIR = "derivatives";
+
+    public record Derivative(String key, ImageFormat format) {
+    }
+
+    private final FileStore fileStore;
+    private final List<ImageFormat> formats = Arrays.stream(ImageFormat.values()).filter(ImageFormat::isWritable).toList();
+
+    public CampingRouteImageDerivatives(FileStore fileStore) {
+        this.fileStore = fileStore;
+        log.info("Image derivatives are made as {}", formats);
+    }
+
+    /**
+     * @param width   width the image is shown at
+     * @param formats formats the client accepts, in order of preference
+     * @return the narrowest derivative at least as wide, empty when the image has none, e.g. when it is narrower
+     */
+    public Optional<Derivative> find(String directory, String imageName, int width, List<ImageFormat> formats)
+            throws IOException {
+        for (int derivativeWidth : WIDTHS) {
+            if (derivativeWidth < width) {
+                continue;
+            }
+            for (ImageFormat format : formats) {
+                String key = key(directory, imageName, derivativeWidth, format);
+                if (this.formats.contains(format) && fileStore.info(key).isPresent()) {
+                    return Optional.of(new Derivative(key, format));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    public void delete(String directory, String imageName) throws IOException {
+        for (int width : WIDTHS) {
+            for (ImageFormat format : formats) {
+                fileStore.delete(key(directory, imageName, width, format));
+            }
+        }
+    }
+
+    /**
+     * Makes the derivatives of the image, replacing any it already has.
+     */
+    void generate(String directory, String imageName) {
+        try {
+            BufferedImage image;
+            try (InputStream in = fileStore.open(directory + "/" + imageName)) {
+                image = ImageResizer.read(in, WIDTHS[WIDTHS.length - 1]);
+            }
+            if (image == null) {
+                log.info("Image {} of {} is not in a format that can be resized", imageName, directory);
+                return;
+            }
+
+            // each width is scaled down from the next wider one, which is quicker than starting from the original
+            List<Integer> made = new ArrayList<>();
+            BufferedImage source = image;
+            for (int i = WIDTHS.length - 1; i >= 0; i--) {
+                if (WIDTHS[i] >= image.getWidth()) {
+                    continue;
+                }
+                source = ImageResizer.resize(source, WIDTHS[i]);
+                for (ImageFormat format : formats) {
+                    store(source, format, key(directory, imageName, WIDTHS[i], format));
+                }
+                made.add(WIDTHS[i]);
+            }
+            log.info("Made derivatives {} wide of image {} of {}", made, imageName, directory);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not make derivatives of image {} of {}: {}", imageName, directory, e.getMessage());
+        }
+    }
+
+    private void store(BufferedImage image, ImageFormat format, String key) throws IOException {
+        try (FileStore.Upload upload = fileStore.newUpload(key)) {
+            try (OutputStream out = upload.outputStream()) {
+                ImageResizer.write(image, format, out);
+            }
+            upload.commit();
+        }
+    }
+
+    private static String key(String directory, String imageName, int width, ImageFormat format) {
+        return directory + "/" + DERIVATIVES_DIR + "/" + FilenameUtils.getBaseName(imageName) + "-" + width
+                + "." + format.getExtension();
+    }
+}
@@ -0,0 +1,153 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.entity.RouteImageEntity;
+import ee.taltech.iti03022024backend.repository.RouteImageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lists the images of camping routes from the {@code route_image} table, with the images of recently listed
+ * routes kept in memory. Images of many routes are looked up with one query for the routes that are not
+ * in memory. A route is dropped from memory once a transaction that changed its images commits.
+ */
+@Slf4j
+@Component
+public class CampingRouteImageIndex {
+    // listing pages ask for many routes, so the cache is dropped instead of growing without bound
+    private static final int MAX_CACHED_ROUTES = 10_000;
+
+    /**
+     * @param width     null when the image is in a format that can not be read
+     * @param height    null when the image is in a format that can not be read
+     * @param processed whether its metadata has been stripped, until then the file is replaced once
+     */
+    public record Image(String fileName, long size, Integer width, Integer height, String sha256, boolean processed) {
+    }
+
+    private final RouteImageRepository repository;
+    // routes without images are kept as well, most routes of a listing have none
+    private final Map<Long, List<Image>> cache = new ConcurrentHashMap<>();
+    // bumped on every change so images loaded before a change are not kept
+    private final AtomicLong version = new AtomicLong();
+
+    public CampingRouteImageIndex(RouteImageRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * @return images of the route in upload order, empty when it has none
+     */
+    public List<Image> images(long campingRouteId) {
+        return images(List.of(campingRouteId)).get(campingRouteId);
+    }
+
+    /**
+     * @return images of every route in upload order, keyed in the order of the ids
+     */
+    public Map<Long, List<Image>> images(Collection<Long> campingRouteIds) {
+        Map<Long, List<Image>> images = new LinkedHashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (long id : campingRouteIds) {
+            List<Image> cached = cache.get(id);
+            images.put(id, cached);
+            if (cached == null) {
+                missing.add(id);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<Long, List<Image>> loaded = load(missing);
+            images.replaceAll((id, cached) -> cached != null ? cached : loaded.get(id));
+        }
+        return images;
+    }
+
+    /**
+     * @return sort order of the next image of the route
+     */
+    public int nextSortOrder(long campingRouteId) {
+        return repository.findMaxSortOrder(campingRouteId) + 1;
+    }
+
+    /**
+     * @return ids of the routes without indexed images, whose images may have been stored before they were indexed
+     */
+    public List<Long> campingRouteIdsWithoutImages() {
+        return repository.findCampingRouteIdsWithoutImages();
+    }
+
+    public void add(long campingRouteId, List<RouteImageEntity> images) {
+        repository.saveAll(images);
+        evict(campingRouteId);
+    }
+
+    /**
+     * @return whether the route had an image with the name
+     */
+    public boolean remove(long campingRouteId, String fileName) {
+        boolean removed = repository.deleteByCampingRouteIdAndFileName(campingRouteId, fileName) > 0;
+        evict(campingRouteId);
+        return removed;
+    }
+
+    /**
+     * @return number of images removed
+     */
+    public int removeAll(long campingRouteId) {
+        int removed = repository.deleteByCampingRouteId(campingRouteId);
+        evict(campingRouteId);
+        return removed;
+    }
+
+    /**
+     * Drops the images of the route from memory once the current transaction commits.
+     */
+    public void evict(long campingRouteId) {
+        AfterCommit.run(() -> {
+            version.incrementAndGet();
+            cache.remove(campingRouteId);
+        });
+    }
+
+    private Map<Long, List<Image>> load(List<Long> campingRouteIds) {
+        long loadedVersion = version.get();
+
+        Map<Long, List<Image>> loaded = new HashMap<>();
+        for (long id : campingRouteIds) {
+            loaded.put(id, new ArrayList<>());
+        }
+        for (RouteImageEntity image : repository.findByCampingRouteIds(campingRouteIds)) {
+            // the id is read from the foreign key, the lazy route is not loaded
+            loaded.get(image.getCampingRoute().getId()).add(toImage(image));
+        }
+        loaded.replaceAll((id, images) -> List.copyOf(images));
+
+        if (cache.size() + loaded.size() > MAX_CACHED_ROUTES) {
+            cache.clear();
+        }
+        // a change that committed while loading may be missing from what was loaded
+        if (version.get() == loadedVersion) {
+            cache.putAll(loaded);
+            // or committed while they were put
+            if (version.get() != loadedVersion) {
+                loaded.keySet().forEach(cache::remove);
+            }
+        }
+        log.debug("Loaded images of {} camping routes", loaded.size());
+        return loaded;
+    }
+
+    private static Image toImage(RouteImageEntity image) {
+        return new Image(image.getFileName(), image.getSize(), image.getWidth(), image.getHeight(),
+                image.getContentSha256(), image.isProcessed());
+    }
+}
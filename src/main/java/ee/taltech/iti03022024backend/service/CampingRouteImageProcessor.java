@@ -0,0 +1,213 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.entity.ImageJobEntity;
+import ee.taltech.iti03022024backend.file.FileStore;
+import ee.taltech.iti03022024backend.image.ImageSanitizer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Works through the {@code image_job} queue, stripping the metadata of uploaded images and turning them upright
+ * with {@link ImageSanitizer}, then makes their {@link CampingRouteImageDerivatives derivatives} from the processed
+ * image. Any number of instances can run it, a job is claimed with
+ * {@code FOR UPDATE SKIP LOCKED} and leased until its run_at, so a job of an instance that stopped is
+ * picked up again once the lease is over.
+ * <p>
+ * A job that fails is retried with a growing delay and left DEAD after the last attempt, as is a job whose
+ * last attempt stopped the worker before the failure could be recorded.
+ */
+@Slf4j
+@Component
+public class CampingRouteImageProcessor {
+
+    // moves the run_at of due jobs past the lease and returns them with their image
+    private static final String CLAIM_JOBS = """
+            UPDATE image_job j
+            SET attempts = j.attempts + 1, run_at = localtimestamp + ? * interval '1 millisecond'
+            FROM route_image i
+            WHERE j.id IN (
+                SELECT id FROM image_job
+                WHERE status = 'PENDING' AND run_at <= localtimestamp AND attempts < ?
+                ORDER BY run_at
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED
+            ) AND i.id = j.route_image_id
+            RETURNING j.id AS job_id, j.attempts, j.route_image_id, i.camping_route_id, i.file_name
+            """;
+
+    // jobs whose last attempt stopped the worker before the failure was recorded, e.g. by running out of memory
+    private static final String BURY_JOBS = """
+            UPDATE image_job SET status = ?, last_error = ?
+            WHERE status = 'PENDING' AND run_at <= localtimestamp AND attempts >= ?
+            """;
+
+    // returns no rows when the image was deleted, deleting it waits until the image is processed
+    private static final String LOCK_IMAGE = "SELECT id FROM route_image WHERE id = ? FOR UPDATE";
+
+    private static final String UPDATE_IMAGE = """
+            UPDATE route_image SET size_bytes = ?, width = ?, height = ?, content_sha256 = ?, processed = true
+            WHERE id = ?
+            """;
+
+    private static final String MARK_PROCESSED = "UPDATE route_image SET processed = true WHERE id = ?";
+
+    private static final String DELETE_JOB = "DELETE FROM image_job WHERE id = ?";
+
+    private static final String FAIL_JOB = """
+            UPDATE image_job SET status = ?, run_at = localtimestamp + ? * interval '1 millisecond', last_error = ?
+            WHERE id = ?
+            """;
+
+    // the delay doubles with every attempt up to this many times
+    private static final int MAX_BACKOFF_SHIFT = 10;
+
+    private record Job(long id, int attempts, long imageId, long campingRouteId, String fileName) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final FileStore fileStore;
+    private final CampingRouteImageIndex imageIndex;
+    private final CampingRouteImageDerivatives derivatives;
+    private final int batchSize;
+    private final Duration lease;
+    private final int maxAttempts;
+    private final Duration retryDelay;
+
+    public CampingRouteImageProcessor(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            FileStore fileStore,
+            CampingRouteImageIndex imageIndex,
+            CampingRouteImageDerivatives derivatives,
+            @Value("${app.images.processing.batch-size:10}") int batchSize,
+            @Value("${app.images.processing.lease:PT5M}") Duration lease,
+            @Value("${app.images.processing.max-attempts:5}") int maxAttempts,
+            @Value("${app.images.processing.retry-delay:PT1M}") Duration retryDelay
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.fileStore = fileStore;
+        this.imageIndex = imageIndex;
+        this.derivatives = derivatives;
+        this.batchSize = batchSize;
+        this.lease = lease;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * Processes due jobs batch by batch until none are left.
+     *
+     * @return number of jobs claimed, including the ones that failed
+     */
+    @Scheduled(fixedDelayString = "${app.images.processing.poll-interval:PT5S}")
+    public int processPending() {
+        int total = 0;
+        List<Job> jobs;
+        do {
+            jobs = claim();
+            jobs.forEach(this::process);
+            total += jobs.size();
+        } while (jobs.size() == batchSize);
+
+        if (total > 0) {
+            log.info("Processed {} image jobs", total);
+        }
+        return total;
+    }
+
+    private List<Job> claim() {
+        int buried = jdbcTemplate.update(BURY_JOBS, ImageJobEntity.Status.DEAD.name(),
+                "Stopped while processing the image", maxAttempts);
+        if (buried > 0) {
+            log.error("Gave up on {} image jobs that stopped while they were processed", buried);
+        }
+
+        return jdbcTemplate.query(CLAIM_JOBS, (rs, rowNum) -> new Job(
+                rs.getLong("job_id"),
+                rs.getInt("attempts"),
+                rs.getLong("route_image_id"),
+                rs.getLong("camping_route_id"),
+                rs.getString("file_name")
+        ), lease.toMillis(), maxAttempts, batchSize);
+    }
+
+    private void process(Job job) {
+        String directory = CampingRouteImagesService.directory(job.campingRouteId());
+        try {
+            byte[] original;
+            try (InputStream in = fileStore.open(directory + "/" + job.fileName())) {
+                original = in.readAllBytes();
+            }
+            var sanitized = new ByteArrayOutputStream();
+            ImageSanitizer.Result result = ImageSanitizer.sanitize(original, sanitized);
+
+            Boolean completed = transactionTemplate.execute(
+                    status -> complete(job, directory, result == null ? null : sanitized.toByteArray(), result));
+
+            // made only here, so no copy of the image as it was uploaded can end up among them
+            if (Boolean.TRUE.equals(completed)) {
+                derivatives.generate(directory, job.fileName());
+            }
+        } catch (NoSuchFileException e) {
+            // nothing is left to strip, an image that was deleted meanwhile is skipped
+            transactionTemplate.executeWithoutResult(status -> complete(job, directory, null, null));
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            // the pixels of an image too large to decode are freed again, so the other jobs go on
+            fail(job, e);
+        }
+    }
+
+    // stores the sanitized image unless it was deleted, null when the image is kept as it is
+    private boolean complete(Job job, String directory, byte[] sanitized, ImageSanitizer.Result result) {
+        if (jdbcTemplate.queryForList(LOCK_IMAGE, Long.class, job.imageId()).isEmpty()) {
+            // its job was deleted with it
+            return false;
+        }
+
+        if (result == null) {
+            jdbcTemplate.update(MARK_PROCESSED, job.imageId());
+        } else {
+            FileStore.StoredFile stored;
+            try {
+                stored = fileStore.store(sanitized, directory + "/" + job.fileName());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            jdbcTemplate.update(UPDATE_IMAGE, stored.size(), result.width(), result.height(), stored.sha256(),
+                    job.imageId());
+        }
+        jdbcTemplate.update(DELETE_JOB, job.id());
+        imageIndex.evict(job.campingRouteId());
+        return true;
+    }
+
+    private void fail(Job job, Throwable e) {
+        boolean dead = job.attempts() >= maxAttempts;
+        ImageJobEntity.Status status = dead ? ImageJobEntity.Status.DEAD : ImageJobEntity.Status.PENDING;
+        long delay = retryDelay.toMillis() << Math.min(job.attempts() - 1, MAX_BACKOFF_SHIFT);
+        jdbcTemplate.update(FAIL_JOB, status.name(), delay, String.valueOf(e), job.id());
+
+        if (dead) {
+            log.error("Gave up on processing image {} of camping route with id {} after {} attempts: {}",
+                    job.fileName(), job.campingRouteId(), job.attempts(), e.getMessage());
+        } else {
+            log.warn("Could not process image {} of camping route with id {}, retrying in {} ms: {}",
+                    job.fileName(), job.campingRouteId(), delay, e.getMessage());
+        }
+    }
+}
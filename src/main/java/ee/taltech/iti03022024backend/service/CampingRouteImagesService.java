@@ -1,37 +1,75 @@
 package ee.taltech.iti03022024backend.service;
 
 import ee.taltech.iti03022024backend.dto.CampingRouteImageNamesDto;
+import ee.taltech.iti03022024backend.dto.CampingRouteImageUploadDto;
 import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import ee.taltech.iti03022024backend.entity.ImageJobEntity;
+import ee.taltech.iti03022024backend.entity.RouteImageEntity;
 import ee.taltech.iti03022024backend.exception.CampingRouteImageNotFound;
 import ee.taltech.iti03022024backend.exception.CampingRouteImageStorageException;
 import ee.taltech.iti03022024backend.exception.CampingRouteNotFoundException;
 import ee.taltech.iti03022024backend.exception.NotPermittedException;
+import ee.taltech.iti03022024backend.file.FileStore;
+import ee.taltech.iti03022024backend.image.ImageFormat;
+import ee.taltech.iti03022024backend.image.ImageResizer;
 import ee.taltech.iti03022024backend.repository.CampingRouteRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FilenameUtils;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
+import java.awt.Dimension;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.Comparator;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.NoSuchFileException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class CampingRouteImagesService {
-    private final Path rootDir = Path.of("files").resolve("camping_route_images");
+    // images are stored under a new random name and never change, so clients may keep them for good
+    private static final CacheControl IMAGE_CACHE_CONTROL = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable();
+
+    private static final String IMAGES_DIR = "camping_route_images";
+    // images are copied on virtual threads, a few at a time so one album does not take all disk or network bandwidth
+    private static final int MAX_PARALLEL_UPLOADS = 4;
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    // dimensions are null when the file is not in a format ImageIO reads
+    private record StagedImage(String originalName, String imageName, Dimension dimensions, FileStore.Upload upload) {
+    }
+
     private final CampingRouteRepository repository;
+    private final FileStore fileStore;
+    private final CampingRouteImageDerivatives derivatives;
+    private final CampingRouteImageIndex imageIndex;
 
-    private void validateUser(String principal, long campingRouteId) {
+    private CampingRouteEntity validateUser(String principal, long campingRouteId) {
         CampingRouteEntity route = repository.findById(campingRouteId)
                 .orElseThrow(() -> new CampingRouteNotFoundException("Camping route with id of "
                         + campingRouteId + " does not exist"));
@@ -39,130 +77,245 @@ public class CampingRouteImagesService {
         if (!route.getUser().getUsername().equals(principal)) {
             throw new NotPermittedException("You are not permitted to do this action.");
         }
+        return route;
     }
 
-    public ResponseEntity<Void> storeImages(String principal, MultipartFile[] files, long campingRouteId) {
-        validateUser(principal, campingRouteId);
+    /**
+     * Stores the images in parallel, either all of them or none when one can not be stored.
+     */
+    public ResponseEntity<CampingRouteImageUploadDto> storeImages(String principal, MultipartFile[] files, long campingRouteId) {
+        CampingRouteEntity route = validateUser(principal, campingRouteId);
 
         log.info("Storing images for camping route with id {}. image count: {}",
                 campingRouteId,
                 files.length
         );
 
-        for (MultipartFile file : files) {
-            storeImage(file, campingRouteId);
+        List<StagedImage> staged = stageImages(files, campingRouteId);
+        var images = new ArrayList<CampingRouteImageUploadDto.StoredImage>();
+        var entities = new ArrayList<RouteImageEntity>();
+        try {
+            // committing only renames or links the staged files, so a failure here is unlikely and quickly undone
+            int sortOrder = imageIndex.nextSortOrder(campingRouteId);
+            for (StagedImage image : staged) {
+                FileStore.StoredFile stored = image.upload().commit();
+                images.add(toStoredImage(image, stored));
+                entities.add(toEntity(route, image, stored, sortOrder++));
+            }
+            imageIndex.add(campingRouteId, entities);
+        } catch (IOException | RuntimeException e) {
+            for (var image : images) {
+                deleteQuietly(directory(campingRouteId) + "/" + image.getImageName());
+            }
+            throw toStorageException(e);
+        } finally {
+            staged.forEach(image -> closeQuietly(image.upload()));
         }
 
-        return ResponseEntity.ok().build();
+        var response = new CampingRouteImageUploadDto();
+        response.setImages(images);
+        return ResponseEntity.ok(response);
     }
 
-    public ResponseEntity<CampingRouteImageNamesDto> getImageNames(long campingRouteId) {
-        log.info("Fetching image names for camping route with id {}", campingRouteId);
-
-        var dirName = rootDir.resolve(String.valueOf(campingRouteId))
-                .normalize()
-                .toAbsolutePath();
+    // copies every file into the store on its own virtual thread, a few at a time, without making any of them visible yet
+    private List<StagedImage> stageImages(MultipartFile[] files, long campingRouteId) {
+        var semaphore = new Semaphore(MAX_PARALLEL_UPLOADS);
+        var futures = new ArrayList<Future<StagedImage>>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (MultipartFile file : files) {
+                futures.add(executor.submit(() -> {
+                    semaphore.acquire();
+                    try {
+                        return stageImage(file, campingRouteId);
+                    } finally {
+                        semaphore.release();
+                    }
+                }));
+            }
+        }
 
-        if (Files.notExists(dirName)) {
-            throw new CampingRouteImageNotFound("Could not find images for camping route");
+        var staged = new ArrayList<StagedImage>();
+        RuntimeException failure = null;
+        for (Future<StagedImage> future : futures) {
+            try {
+                staged.add(future.resultNow());
+            } catch (IllegalStateException e) {
+                if (failure == null) {
+                    failure = toStorageException(future.exceptionNow());
+                }
+            }
         }
 
-        // find all files in the dir. get their names and construct dto with list of these names
-        try (var stream = Files.list(dirName)) {
-            var fileNames = stream
-                    .filter(file -> !Files.isDirectory(file))
-                    .map(Path::getFileName)
-                    .map(Path::toString)
-                    .toList();
-            log.info("Found {} image files for camping route with id {}", fileNames.size(), campingRouteId);
-            var response = new CampingRouteImageNamesDto();
-            response.setImageNames(fileNames);
-            return ResponseEntity.ok(response);
-        } catch (IOException e) {
-            throw new CampingRouteImageNotFound(
-                    "Could not find files for camping route with id " + campingRouteId,
-                    e
-            );
+        if (failure != null) {
+            staged.forEach(image -> closeQuietly(image.upload()));
+            throw failure;
         }
+        return staged;
     }
 
-    private void storeImage(MultipartFile file, long campingRouteId) {
+    private StagedImage stageImage(MultipartFile file, long campingRouteId) throws IOException {
         log.info("Storing file with name {}", file.getOriginalFilename());
 
         if (file.isEmpty()) {
             throw new CampingRouteImageStorageException("Encountered empty file.");
         }
 
-        try {
-            var fileExtension = FilenameUtils.getExtension(file.getOriginalFilename());
+        var fileExtension = FilenameUtils.getExtension(file.getOriginalFilename());
+        var imageName = UUID.randomUUID() + "." + fileExtension;
 
-            // create directories if they don't exist
-            var campingRouteDir = rootDir.resolve(String.valueOf(campingRouteId));
-            if (Files.notExists(campingRouteDir)) {
-                log.info("Creating directory for camping route with id {}", campingRouteId);
-                Files.createDirectories(campingRouteDir);
-            }
+        // EX: camping_route_images/{id}/as43sl5bf24.png
+        FileStore.Upload upload = fileStore.newUpload(directory(campingRouteId) + "/" + imageName);
+        try (InputStream in = file.getInputStream(); OutputStream out = upload.outputStream()) {
+            in.transferTo(out);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(upload);
+            throw e;
+        }
+        return new StagedImage(file.getOriginalFilename(), imageName, readDimensions(file), upload);
+    }
+
+    // only the header is read again, the upload is already on disk or in memory
+    private static Dimension readDimensions(MultipartFile file) {
+        try (InputStream in = file.getInputStream()) {
+            return ImageResizer.dimensions(in);
+        } catch (IOException e) {
+            log.info("Could not read dimensions of file {}: {}", file.getOriginalFilename(), e.getMessage());
+            return null;
+        }
+    }
 
-            // save the file to the directory
-            Files.copy(
-                    file.getInputStream(),
-                    campingRouteDir
-                            .resolve(UUID.randomUUID() + "." + fileExtension)
-                            .normalize()
-                            .toAbsolutePath() // EX: files/{id}/as43sl5bf24.png
-            );
+    private static CampingRouteImageUploadDto.StoredImage toStoredImage(StagedImage image, FileStore.StoredFile stored) {
+        if (stored.duplicate()) {
+            // the same photo uploaded again shares the stored bytes
+            log.info("File {} has already been stored, its content is shared", image.originalName());
+        }
+        var storedImage = new CampingRouteImageUploadDto.StoredImage();
+        storedImage.setOriginalName(image.originalName());
+        storedImage.setImageName(image.imageName());
+        storedImage.setSize(stored.size());
+        storedImage.setDuplicate(stored.duplicate());
+        return storedImage;
+    }
+
+    private static RouteImageEntity toEntity(CampingRouteEntity route, StagedImage image, FileStore.StoredFile stored,
+                                             int sortOrder) {
+        var entity = new RouteImageEntity();
+        entity.setCampingRoute(route);
+        entity.setFileName(image.imageName());
+        entity.setSize(stored.size());
+        if (image.dimensions() != null) {
+            entity.setWidth(image.dimensions().width);
+            entity.setHeight(image.dimensions().height);
+        }
+        entity.setContentSha256(stored.sha256());
+        entity.setSortOrder(sortOrder);
+
+        // saved with the image, CampingRouteImageProcessor strips its metadata
+        var job = new ImageJobEntity();
+        job.setImage(entity);
+        entity.getJobs().add(job);
+        return entity;
+    }
 
+    private static RuntimeException toStorageException(Throwable e) {
+        if (e instanceof CampingRouteImageStorageException storageException) {
+            return storageException;
+        }
+        return new CampingRouteImageStorageException("File could not be saved.", e);
+    }
+
+    private void deleteQuietly(String key) {
+        try {
+            fileStore.delete(key);
         } catch (IOException e) {
-            throw new CampingRouteImageStorageException("File could not be saved.", e);
+            log.warn("Could not remove {} of an upload that failed: {}", key, e.getMessage());
         }
     }
 
-    public ResponseEntity<Resource> getImage(long id, String imageName) {
-        log.info("Getting file with name {} for camping route with id {}", imageName, id);
+    private static void closeQuietly(FileStore.Upload upload) {
+        try {
+            upload.close();
+        } catch (IOException e) {
+            log.warn("Could not discard a staged image: {}", e.getMessage());
+        }
+    }
 
-        // file path in the system
-        var filePath = rootDir
-                .resolve(String.valueOf(id))
-                .resolve(imageName)
-                .normalize()
-                .toAbsolutePath();
+    public ResponseEntity<CampingRouteImageNamesDto> getImageNames(long campingRouteId) {
+        log.info("Fetching image names for camping route with id {}", campingRouteId);
+
+        // names come from the image index in upload order, the file store is not listed
+        var fileNames = imageIndex.images(campingRouteId)
+                .stream()
+                .map(CampingRouteImageIndex.Image::fileName)
+                .toList();
+        if (fileNames.isEmpty()) {
+            throw new CampingRouteImageNotFound("Could not find images for camping route");
+        }
+        log.info("Found {} image files for camping route with id {}", fileNames.size(), campingRouteId);
+        var response = new CampingRouteImageNamesDto();
+        response.setImageNames(fileNames);
+        return ResponseEntity.ok(response);
+    }
 
+    public ResponseEntity<Resource> getImage(long id, String imageName) {
+        return getImage(id, imageName, null, null);
+    }
+
+    /**
+     * @param size   width in pixels the image is shown at, a smaller copy of the image at least as wide is sent
+     *               when there is one
+     * @param accept Accept header of the request, a WebP copy is only sent when it allows WebP
+     */
+    public ResponseEntity<Resource> getImage(long id, String imageName, Integer size, String accept) {
+        log.info("Getting file with name {} of size {} for camping route with id {}", imageName, size, id);
+
+        var headers = new HttpHeaders();
+        // until its metadata is stripped the image changes under its name, so clients have to check back
+        var cacheControl = isProcessed(id, imageName) ? IMAGE_CACHE_CONTROL : CacheControl.noCache();
         try {
-            // get the file as a "Resource" and send it back to client.
-            var resource = new UrlResource(filePath.toUri());
-            if (!resource.exists() || !resource.isReadable()) {
-                throw new CampingRouteImageNotFound("Could not find and read file " + resource.getFilename());
+            if (size != null) {
+                headers.setVary(List.of(HttpHeaders.ACCEPT));
+                var derivative = derivatives.find(directory(id), imageName, size, acceptedFormats(accept));
+                if (derivative.isPresent()) {
+                    return fileStore.serve(derivative.get().key(), derivative.get().format().getMediaType(),
+                            cacheControl, headers);
+                }
             }
-            return ResponseEntity
-                    .ok()
-                    .body(resource);
 
-        } catch (MalformedURLException e) {
-            throw new CampingRouteImageStorageException(
-                    "Invalid file path", e);
+            var contentType = MediaTypeFactory.getMediaType(imageName).orElse(MediaType.APPLICATION_OCTET_STREAM);
+            return fileStore.serve(directory(id) + "/" + imageName, contentType, cacheControl, headers);
+        } catch (NoSuchFileException e) {
+            throw new CampingRouteImageNotFound("Could not find and read file " + imageName);
+        } catch (IOException e) {
+            throw new CampingRouteImageStorageException("File " + imageName + " could not be read", e);
         }
     }
 
+    // images that are not indexed were stored before images were processed
+    private boolean isProcessed(long campingRouteId, String imageName) {
+        return imageIndex.images(campingRouteId)
+                .stream()
+                .filter(image -> image.fileName().equals(imageName))
+                .findFirst()
+                .map(CampingRouteImageIndex.Image::processed)
+                .orElse(true);
+    }
+
     public ResponseEntity<Void> deleteImage(String principal, long campingRouteId, String imageName) {
         validateUser(principal, campingRouteId);
 
         log.info("Deleting image {} from camping route with id {}", imageName, campingRouteId);
 
-        // file path in the system
-        var filePath = rootDir
-                .resolve(String.valueOf(campingRouteId))
-                .resolve(imageName)
-                .normalize()
-                .toAbsolutePath();
-
         try {
-            if (Files.notExists(filePath)) {
+            boolean indexed = imageIndex.remove(campingRouteId, imageName);
+            if (!fileStore.delete(directory(campingRouteId) + "/" + imageName) && !indexed) {
                 throw new CampingRouteImageNotFound("File " + imageName + "does not exist.");
             }
-
-            Files.delete(filePath);
+            derivatives.delete(directory(campingRouteId), imageName);
 
             return ResponseEntity.noContent().build();
+        } catch (NoSuchFileException e) {
+            throw new CampingRouteImageNotFound("File " + imageName + "does not exist.");
         } catch (IOException e) {
             throw new CampingRouteImageStorageException("File with name " + imageName + " could not be deleted", e);
         }
@@ -173,26 +326,92 @@ public class CampingRouteImagesService {
 
         log.info("Deleting all images for camping route with id {}", campingRouteId);
 
-        var dirPath = rootDir
-                .resolve(String.valueOf(campingRouteId))
-                .normalize()
-                .toAbsolutePath();
-
         try {
-            if (Files.notExists(dirPath)) {
+            int indexed = imageIndex.removeAll(campingRouteId);
+            // derivatives are in a directory of the images, so they go with them
+            if (fileStore.deleteAll(directory(campingRouteId)) == 0 && indexed == 0) {
                 throw new CampingRouteImageNotFound("Images could not be found for camping route with id " + campingRouteId);
             }
 
-            try (var stream = Files.walk(dirPath)) {
-                stream.sorted(Comparator.reverseOrder())
-                        .map(Path::toFile)
-                        .forEach(File::delete);
-            }
-
             return ResponseEntity.noContent().build();
         } catch (IOException e) {
             throw new CampingRouteImageStorageException(
                     "Could not delete directory containing images for camping route with id " + campingRouteId);
         }
     }
+
+    /**
+     * Indexes the images of routes that were stored before images were kept in the {@code route_image} table,
+     * in the order they were stored. Only routes without indexed images are looked at, so an interrupted run
+     * picks up where it stopped. Runs on startup when {@code app.images.index.backfill} is true.
+     */
+    @EventListener(value = ApplicationReadyEvent.class,
+            condition = "@environment.getProperty('app.images.index.backfill') == 'true'")
+    public void indexStoredImages() {
+        int indexed = 0;
+        for (long campingRouteId : imageIndex.campingRouteIdsWithoutImages()) {
+            try {
+                List<RouteImageEntity> entities = indexStoredImages(campingRouteId);
+                if (!entities.isEmpty()) {
+                    imageIndex.add(campingRouteId, entities);
+                    indexed += entities.size();
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not index images of camping route with id {}: {}", campingRouteId, e.getMessage());
+            }
+        }
+        log.info("Indexed {} stored images", indexed);
+    }
+
+    private List<RouteImageEntity> indexStoredImages(long campingRouteId) throws IOException {
+        var files = new ArrayList<Map.Entry<String, Instant>>();
+        for (String name : fileStore.list(directory(campingRouteId))) {
+            fileStore.info(directory(campingRouteId) + "/" + name)
+                    .ifPresent(info -> files.add(Map.entry(name, info.lastModified())));
+        }
+        files.sort(Map.Entry.comparingByValue());
+
+        CampingRouteEntity route = repository.getReferenceById(campingRouteId);
+        var entities = new ArrayList<RouteImageEntity>();
+        for (var file : files) {
+            String key = directory(campingRouteId) + "/" + file.getKey();
+            MessageDigest digest = sha256();
+            long size;
+            try (InputStream in = new DigestInputStream(fileStore.open(key), digest)) {
+                size = in.transferTo(OutputStream.nullOutputStream());
+            }
+            Dimension dimensions;
+            try (InputStream in = fileStore.open(key)) {
+                dimensions = ImageResizer.dimensions(in);
+            }
+
+            var image = new StagedImage(file.getKey(), file.getKey(), dimensions, null);
+            var stored = new FileStore.StoredFile(HEX.formatHex(digest.digest()), size, false);
+            entities.add(toEntity(route, image, stored, entities.size()));
+        }
+        return entities;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static String directory(long campingRouteId) {
+        return IMAGES_DIR + "/" + campingRouteId;
+    }
+
+    private static List<ImageFormat> acceptedFormats(String accept) {
+        try {
+            boolean webp = accept != null && MediaType.parseMediaTypes(accept)
+                    .stream()
+                    .anyMatch(ImageFormat.WEBP.getMediaType()::equalsTypeAndSubtype);
+            return webp ? List.of(ImageFormat.WEBP, ImageFormat.JPEG) : List.of(ImageFormat.JPEG);
+        } catch (InvalidMediaTypeException e) {
+            return List.of(ImageFormat.JPEG);
+        }
+    }
 }
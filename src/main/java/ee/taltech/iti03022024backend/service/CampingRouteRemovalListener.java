@@ -0,0 +1,22 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import jakarta.persistence.PreRemove;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA listener of camping routes, Hibernate takes it from the Spring context. Routes removed through a cascade,
+ * e.g. when their user is deleted, are announced the same way as routes deleted on their own.
+ */
+@Component
+@RequiredArgsConstructor
+public class CampingRouteRemovalListener {
+    private final ApplicationEventPublisher publisher;
+
+    @PreRemove
+    void routeRemoved(CampingRouteEntity route) {
+        publisher.publishEvent(new CampingRouteDeletedEvent(route));
+    }
+}
@@ -3,6 +3,7 @@ package ee.taltech.iti03022024backend.service;
 import ee.taltech.iti03022024backend.dto.CampingRouteDto;
 import ee.taltech.iti03022024backend.dto.CampingRouteSearchRequest;
 import ee.taltech.iti03022024backend.dto.PageResponse;
+import ee.taltech.iti03022024backend.dto.SliceResponse;
 import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
 import ee.taltech.iti03022024backend.entity.CampingRouteSpecifications;
 import ee.taltech.iti03022024backend.entity.UserEntity;
@@ -17,21 +18,44 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 @Transactional
 public class CampingRouteService {
+    // anything that is not part of a word would be a to_tsquery operator or separator
+    private static final Pattern NON_WORD_CHARACTERS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    // cache key of the unfiltered listing
+    private static final String ALL_ROUTES = "all";
+    // newest first, id breaks ties between routes created at the same time
+    private static final Sort SCROLL_SORT = Sort.by(Sort.Direction.DESC, "createdAt", "id");
+
     private final CampingRouteRepository routeRepository;
     private final UserRepository userRepository;
     private final CampingRouteMapper mapper;
+    private final CampingRouteTotalCounter totalCounter;
+    private final CampingRouteHomepageCache homepageCache;
+    private final CampingRouteSpatialIndex spatialIndex;
+    private final CampingRouteTileCache tileCache;
 
     public ResponseEntity<CampingRouteDto> createCampingRoute(String principal, CampingRouteDto dto) {
         UserEntity user = userRepository.findByUsername(principal)
@@ -42,7 +66,12 @@ public class CampingRouteService {
         CampingRouteEntity route = mapper.toEntity(dto);
         route.setUser(user);
 
-        return ResponseEntity.ok(mapper.toDto(routeRepository.save(route)));
+        CampingRouteEntity saved = routeRepository.save(route);
+        totalCounter.invalidate();
+        homepageCache.routeCreated(saved);
+        spatialIndex.routeChanged(saved);
+        tileCache.invalidate(saved);
+        return ResponseEntity.ok(mapper.toDto(saved));
     }
 
     public ResponseEntity<PageResponse<CampingRouteDto>> getCampingRoutesByUserId(CampingRouteSearchRequest searchRequest) {
@@ -52,16 +81,7 @@ public class CampingRouteService {
 
         Pageable pageable = PageRequest.of(searchRequest.getPageNumber(), searchRequest.getPageSize());
 
-        Page<CampingRouteEntity> resultPage = routeRepository.findAll(spec, pageable);
-
-        List<CampingRouteDto> dtos = resultPage.getContent()
-                .stream()
-                .map(mapper::toDto)
-                .toList();
-
-        PageResponse<CampingRouteDto> pageResponse = new PageResponse<>(dtos, resultPage.getTotalElements(), resultPage.getTotalPages());
-
-        return ResponseEntity.ok(pageResponse);
+        return ResponseEntity.ok(findPage("user:" + searchRequest.getKeyword(), spec, true, pageable));
     }
 
     public ResponseEntity<CampingRouteDto> getCampingRoute(long id) {
@@ -81,6 +101,7 @@ public class CampingRouteService {
 
         log.info("Deleting camping route with id {}", id);
 
+        // the caches and the spatial index drop the route through CampingRouteRemovalListener once the delete commits
         routeRepository.deleteById(id);
         return ResponseEntity.noContent().build();
     }
@@ -88,37 +109,232 @@ public class CampingRouteService {
     public ResponseEntity<PageResponse<CampingRouteDto>> getCampingRoutesForHomepage(CampingRouteSearchRequest searchRequest) {
         log.info("Homepage search request received: " + searchRequest);
 
-        Specification<CampingRouteEntity> spec = Specification.where(null);
+        int pageNumber = searchRequest.getPageNumber();
+        int pageSize = searchRequest.getPageSize();
+
+        return ResponseEntity.ok(homepageCache.getPage(pageNumber, pageSize).orElseGet(() -> findPage(
+                ALL_ROUTES,
+                Specification.where(null),
+                false,
+                PageRequest.of(pageNumber, pageSize, CampingRouteHomepageCache.HOMEPAGE_SORT))));
+    }
+
+    public ResponseEntity<PageResponse<CampingRouteDto>> findCampingRoute(CampingRouteSearchRequest searchRequest) {
+        log.info("Search request received: " + searchRequest);
 
         Pageable pageable = PageRequest.of(searchRequest.getPageNumber(), searchRequest.getPageSize());
 
-        Page<CampingRouteEntity> resultPage = routeRepository.findAll(spec, pageable);
+        if (searchRequest.hasRadius() || searchRequest.hasViewport()) {
+            return ResponseEntity.ok(searchArea(searchRequest, pageable));
+        }
+
+        return ResponseEntity.ok(switch (searchRequest.getMode()) {
+            case FULL_TEXT -> searchFullText(searchRequest.getKeyword(), pageable);
+            case FUZZY -> searchFuzzy(searchRequest, pageable);
+            case CONTAINS -> searchContains(searchRequest.getKeyword(), pageable);
+        });
+    }
+
+    private PageResponse<CampingRouteDto> searchContains(String keyword, Pageable pageable) {
+        if (keyword == null || keyword.isEmpty()) {
+            return findPage(ALL_ROUTES, Specification.where(null), false, pageable);
+        }
+        Specification<CampingRouteEntity> spec = Specification.where(CampingRouteSpecifications.hasKeyword(keyword));
+        return findPage("contains:" + keyword.toLowerCase(), spec, true, pageable);
+    }
+
+    private PageResponse<CampingRouteDto> searchFullText(String keyword, Pageable pageable) {
+        String query = toPrefixTsQuery(keyword);
+        if (query.isEmpty()) {
+            return findPage(ALL_ROUTES, Specification.where(null), false, pageable);
+        }
+        return toPageResponse(routeRepository.searchFullText(query, pageable));
+    }
+
+    private PageResponse<CampingRouteDto> searchFuzzy(CampingRouteSearchRequest searchRequest, Pageable pageable) {
+        String keyword = searchRequest.getKeyword() == null ? "" : searchRequest.getKeyword().strip();
+        if (keyword.isEmpty()) {
+            return findPage(ALL_ROUTES, Specification.where(null), false, pageable);
+        }
+
+        double nameThreshold = searchRequest.getNameSimilarityThreshold();
+        double locationThreshold = searchRequest.getLocationSimilarityThreshold();
+        routeRepository.setWordSimilarityThreshold(String.valueOf(Math.min(nameThreshold, locationThreshold)));
+
+        return toPageResponse(routeRepository.searchFuzzy(keyword, nameThreshold, locationThreshold, pageable));
+    }
+
+    /**
+     * Finds the routes in the area from {@link CampingRouteSpatialIndex}, nearest first. A keyword narrows them
+     * down the way the CONTAINS mode matches it, the search mode does not apply to areas.
+     */
+    private PageResponse<CampingRouteDto> searchArea(CampingRouteSearchRequest searchRequest, Pageable pageable) {
+        List<Long> ids = searchRequest.hasRadius()
+                ? spatialIndex.findWithinRadius(
+                searchRequest.getLatitude(), searchRequest.getLongitude(), searchRequest.getRadiusKm())
+                : spatialIndex.findInViewport(searchRequest.getMinLatitude(), searchRequest.getMinLongitude(),
+                searchRequest.getMaxLatitude(), searchRequest.getMaxLongitude());
+
+        String keyword = searchRequest.getKeyword() == null ? "" : searchRequest.getKeyword().strip();
+        if (!keyword.isEmpty() && !ids.isEmpty()) {
+            Set<Long> matching = new HashSet<>(routeRepository.findIds(Specification
+                    .where(CampingRouteSpecifications.hasIdIn(ids))
+                    .and(CampingRouteSpecifications.hasKeyword(keyword))));
+            ids = ids.stream().filter(matching::contains).toList();
+        }
+
+        int from = (int) Math.min(pageable.getOffset(), ids.size());
+        List<Long> pageIds = ids.subList(from, Math.min(from + pageable.getPageSize(), ids.size()));
+        Map<Long, CampingRouteEntity> routes = routeRepository.findAllById(pageIds)
+                .stream()
+                .collect(Collectors.toMap(CampingRouteEntity::getId, Function.identity()));
+
+        // a route deleted since the ids were looked up is left out of the page, its totals and the index
+        List<CampingRouteDto> dtos = new ArrayList<>(pageIds.size());
+        for (Long id : pageIds) {
+            CampingRouteEntity route = routes.get(id);
+            if (route == null) {
+                spatialIndex.routeDeleted(id);
+            } else {
+                dtos.add(mapper.toDto(route));
+            }
+        }
+        long total = ids.size() - (pageIds.size() - dtos.size());
+        int totalPages = (int) ((total + pageable.getPageSize() - 1) / pageable.getPageSize());
+
+        return new PageResponse<>(dtos, total, totalPages);
+    }
+
+    /**
+     * Fetches the page without the count query, the totals come from {@link CampingRouteTotalCounter}.
+     *
+     * @param key      identifies the listing for cached totals
+     * @param filtered whether spec filters the camping routes
+     */
+    private PageResponse<CampingRouteDto> findPage(String key, Specification<CampingRouteEntity> spec, boolean filtered, Pageable pageable) {
+        Slice<CampingRouteEntity> slice = routeRepository.findSlice(spec, pageable);
+        CampingRouteTotalCounter.Total total = totalCounter.count(key, spec, filtered, slice);
+
+        List<CampingRouteDto> dtos = slice.getContent()
+                .stream()
+                .map(mapper::toDto)
+                .toList();
+        int totalPages = (int) ((total.elements() + pageable.getPageSize() - 1) / pageable.getPageSize());
+
+        return new PageResponse<>(dtos, total.elements(), totalPages, total.approximate());
+    }
 
+    private PageResponse<CampingRouteDto> toPageResponse(Page<CampingRouteEntity> resultPage) {
         List<CampingRouteDto> dtos = resultPage.getContent()
                 .stream()
                 .map(mapper::toDto)
                 .toList();
 
-        return ResponseEntity.ok(new PageResponse<>(dtos, resultPage.getTotalElements(), resultPage.getTotalPages()));
+        return new PageResponse<>(dtos, resultPage.getTotalElements(), resultPage.getTotalPages());
     }
 
-    public ResponseEntity<PageResponse<CampingRouteDto>> findCampingRoute(CampingRouteSearchRequest searchRequest) {
-        log.info("Search request received: " + searchRequest);
-        Specification<CampingRouteEntity> spec = Specification.where(null);
+    public ResponseEntity<SliceResponse<CampingRouteDto>> scrollCampingRoutesForHomepage(CampingRouteSearchRequest searchRequest) {
+        log.info("Homepage scroll request received: {}", searchRequest);
+
+        return ResponseEntity.ok(scroll(Specification.where(null), searchRequest));
+    }
+
+    public ResponseEntity<SliceResponse<CampingRouteDto>> scrollCampingRoutesByUserId(CampingRouteSearchRequest searchRequest) {
+        log.info("Scrolling camping routes with user id: {}", searchRequest.getKeyword());
 
-        if (searchRequest.getKeyword() != null && !searchRequest.getKeyword().isEmpty()) {
-            spec = spec.and(CampingRouteSpecifications.hasKeyword(searchRequest.getKeyword()));
+        Specification<CampingRouteEntity> spec = Specification.where(CampingRouteSpecifications.hasUserId(Long.valueOf(searchRequest.getKeyword())));
+
+        return ResponseEntity.ok(scroll(spec, searchRequest));
+    }
+
+    /**
+     * Scrolled variant of {@link #findCampingRoute}. Matches are filtered the same way,
+     * but ordered by creation time instead of relevance so the cursor stays stable.
+     */
+    public ResponseEntity<SliceResponse<CampingRouteDto>> scrollFoundCampingRoutes(CampingRouteSearchRequest searchRequest) {
+        log.info("Search scroll request received: {}", searchRequest);
+
+        return ResponseEntity.ok(switch (searchRequest.getMode()) {
+            case FULL_TEXT -> scrollFullText(searchRequest);
+            case FUZZY -> scrollFuzzy(searchRequest);
+            case CONTAINS -> scroll(
+                    Specification.where(CampingRouteSpecifications.hasKeyword(searchRequest.getKeyword())), searchRequest);
+        });
+    }
+
+    private SliceResponse<CampingRouteDto> scrollFullText(CampingRouteSearchRequest searchRequest) {
+        String query = toPrefixTsQuery(searchRequest.getKeyword());
+        if (query.isEmpty()) {
+            return scroll(Specification.where(null), searchRequest);
         }
 
-        Pageable pageable = PageRequest.of(searchRequest.getPageNumber(), searchRequest.getPageSize());
+        CampingRouteCursor cursor = CampingRouteCursor.decode(searchRequest.getAfter());
+        int size = searchRequest.getPageSize();
 
-        Page<CampingRouteEntity> resultPage = routeRepository.findAll(spec, pageable);
+        return toSlice(routeRepository.searchFullTextAfter(query, cursor.createdAt(), cursor.id(), size + 1), size);
+    }
 
-        List<CampingRouteDto> dtos = resultPage.getContent()
+    private SliceResponse<CampingRouteDto> scrollFuzzy(CampingRouteSearchRequest searchRequest) {
+        String keyword = searchRequest.getKeyword() == null ? "" : searchRequest.getKeyword().strip();
+        if (keyword.isEmpty()) {
+            return scroll(Specification.where(null), searchRequest);
+        }
+
+        CampingRouteCursor cursor = CampingRouteCursor.decode(searchRequest.getAfter());
+        int size = searchRequest.getPageSize();
+        double nameThreshold = searchRequest.getNameSimilarityThreshold();
+        double locationThreshold = searchRequest.getLocationSimilarityThreshold();
+        routeRepository.setWordSimilarityThreshold(String.valueOf(Math.min(nameThreshold, locationThreshold)));
+
+        return toSlice(routeRepository.searchFuzzyAfter(
+                keyword, nameThreshold, locationThreshold, cursor.createdAt(), cursor.id(), size + 1), size);
+    }
+
+    private SliceResponse<CampingRouteDto> scroll(Specification<CampingRouteEntity> spec, CampingRouteSearchRequest searchRequest) {
+        CampingRouteCursor cursor = CampingRouteCursor.decode(searchRequest.getAfter());
+        ScrollPosition position = cursor.isStart()
+                ? ScrollPosition.keyset()
+                : ScrollPosition.forward(Map.of("createdAt", cursor.createdAt(), "id", cursor.id()));
+
+        Window<CampingRouteEntity> window = routeRepository.findBy(spec, query -> query
+                .sortBy(SCROLL_SORT)
+                .limit(searchRequest.getPageSize())
+                .scroll(position));
+
+        List<CampingRouteDto> dtos = window.getContent()
+                .stream()
+                .map(mapper::toDto)
+                .toList();
+        String nextCursor = window.hasNext() ? CampingRouteCursor.of(window.getContent().getLast()).encode() : null;
+
+        return new SliceResponse<>(dtos, nextCursor);
+    }
+
+    // rows holds one route more than the slice when there is a next slice
+    private SliceResponse<CampingRouteDto> toSlice(List<CampingRouteEntity> rows, int size) {
+        boolean hasNext = rows.size() > size;
+        List<CampingRouteEntity> content = hasNext ? rows.subList(0, size) : rows;
+
+        List<CampingRouteDto> dtos = content
                 .stream()
-                .map(mapper::toDto) // Adjusted mapper reference for consistency
+                .map(mapper::toDto)
                 .toList();
+        String nextCursor = hasNext ? CampingRouteCursor.of(content.getLast()).encode() : null;
+
+        return new SliceResponse<>(dtos, nextCursor);
+    }
 
-        return ResponseEntity.ok(new PageResponse<>(dtos, resultPage.getTotalElements(), resultPage.getTotalPages()));
+    /**
+     * Turns the keyword into a to_tsquery expression where every word has to match as a prefix,
+     * e.g. {@code Viru raba} becomes {@code viru:* & raba:*}.
+     */
+    static String toPrefixTsQuery(String keyword) {
+        if (keyword == null) {
+            return "";
+        }
+        return Arrays.stream(NON_WORD_CHARACTERS.split(keyword.toLowerCase()))
+                .filter(word -> !word.isEmpty())
+                .map(word -> word + ":*")
+                .collect(Collectors.joining(" & "));
     }
 }
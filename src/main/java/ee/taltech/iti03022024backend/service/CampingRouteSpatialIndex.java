@@ -0,0 +1,355 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import ee.taltech.iti03022024backend.entity.CampingRouteTrackStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Finds camping routes by area without going to the database. Every route with a start point or a GPX track
+ * is kept in memory with its bounding box, filed under each cell of a fixed latitude and longitude grid that
+ * the box overlaps. The index is loaded when the application starts and kept up to date as routes change.
+ * Routes changed by other instances are only seen by loading it again, which is done on a schedule.
+ */
+@Slf4j
+@Component
+public class CampingRouteSpatialIndex {
+    // about 11 km north to south, so a city sized viewport touches a handful of cells
+    private static final double CELL_DEGREES = 0.1;
+    private static final int ROWS = (int) Math.ceil(180 / CELL_DEGREES);
+    private static final int COLUMNS = (int) Math.ceil(360 / CELL_DEGREES);
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double KM_PER_DEGREE = Math.toRadians(EARTH_RADIUS_KM);
+
+    private static final String SELECT_LOCATED_ROUTES = """
+            SELECT id, start_lat, start_lon, track_min_lat, track_min_lon, track_max_lat, track_max_lon
+            FROM camping_route
+            WHERE start_lat IS NOT NULL OR track_min_lat IS NOT NULL
+            """;
+
+    // bounding box covers the start point as well as the track
+    record Entry(long id, double startLatitude, double startLongitude,
+                 double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+    }
+
+    private record Match(long id, double distanceKm) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    // routes changed while a rebuild reads the database, null when not rebuilding, guarded by the write lock
+    private Map<Long, Optional<Entry>> changedDuringRebuild;
+
+    public CampingRouteSpatialIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        log.info("Indexed {} camping routes by area", rebuild());
+    }
+
+    @Scheduled(fixedDelayString = "${app.routes.spatial-index.refresh-interval:PT5M}",
+            initialDelayString = "${app.routes.spatial-index.refresh-interval:PT5M}")
+    public void refresh() {
+        log.debug("Indexed {} camping routes by area", rebuild());
+    }
+
+    /**
+     * Loads every located route from the database, keeping the changes made here while it was read.
+     *
+     * @return number of routes indexed
+     */
+    public synchronized int rebuild() {
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = new HashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            List<Entry> loaded = jdbcTemplate.query(SELECT_LOCATED_ROUTES, (rs, rowNum) -> toEntry(
+                    rs.getLong("id"),
+                    rs.getObject("start_lat", Double.class),
+                    rs.getObject("start_lon", Double.class),
+                    rs.getObject("track_min_lat", Double.class),
+                    rs.getObject("track_min_lon", Double.class),
+                    rs.getObject("track_max_lat", Double.class),
+                    rs.getObject("track_max_lon", Double.class)));
+
+            lock.writeLock().lock();
+            try {
+                entries.clear();
+                cells.clear();
+                loaded.forEach(this::add);
+                changedDuringRebuild.forEach((id, entry) -> {
+                    remove(id);
+                    entry.ifPresent(this::add);
+                });
+                return entries.size();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            lock.writeLock().lock();
+            try {
+                changedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Files the route under its current start point and track once the current transaction commits.
+     */
+    public void routeChanged(CampingRouteEntity route) {
+        Entry entry = toEntry(route);
+
+        AfterCommit.run(() -> apply(route.getId(), entry));
+    }
+
+    /**
+     * Removes the route once the current transaction commits.
+     */
+    public void routeDeleted(long id) {
+        AfterCommit.run(() -> apply(id, null));
+    }
+
+    // routes are also removed when their user is deleted
+    @EventListener
+    public void routeDeleted(CampingRouteDeletedEvent event) {
+        routeDeleted(event.route().getId());
+    }
+
+    /**
+     * @return ids of the routes that start within the radius, nearest first
+     */
+    public List<Long> findWithinRadius(double latitude, double longitude, double radiusKm) {
+        double latitudeDelta = radiusKm / KM_PER_DEGREE;
+        double cosLatitude = Math.cos(Math.toRadians(Math.min(89.9, Math.abs(latitude) + latitudeDelta)));
+        double longitudeDelta = latitudeDelta / cosLatitude;
+
+        double minLatitude = Math.max(-90, latitude - latitudeDelta);
+        double maxLatitude = Math.min(90, latitude + latitudeDelta);
+        List<Match> matches = new ArrayList<>();
+        Consumer<Entry> collect = entry -> {
+            double distance = distanceKm(latitude, longitude, entry.startLatitude(), entry.startLongitude());
+            if (distance <= radiusKm) {
+                matches.add(new Match(entry.id(), distance));
+            }
+        };
+
+        lock.readLock().lock();
+        try {
+            if (longitudeDelta >= 180) {
+                search(minLatitude, -180, maxLatitude, 180, collect);
+            } else {
+                search(minLatitude, wrap(longitude - longitudeDelta), maxLatitude, wrap(longitude + longitudeDelta), collect);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return nearestFirst(matches);
+    }
+
+    /**
+     * @param minLongitude west edge, greater than maxLongitude when the viewport crosses the antimeridian
+     * @return ids of the routes that overlap the viewport, nearest to its center first
+     */
+    public List<Long> findInViewport(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        double centerLatitude = (minLatitude + maxLatitude) / 2;
+        double width = maxLongitude >= minLongitude ? maxLongitude - minLongitude : maxLongitude - minLongitude + 360;
+        double centerLongitude = wrap(minLongitude + width / 2);
+
+        List<Match> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            search(minLatitude, minLongitude, maxLatitude, maxLongitude, entry -> matches.add(new Match(entry.id(),
+                    distanceKm(centerLatitude, centerLongitude, entry.startLatitude(), entry.startLongitude()))));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return nearestFirst(matches);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the route as it is indexed, null when it has neither a start point nor a track
+     */
+    static Entry toEntry(CampingRouteEntity route) {
+        CampingRouteTrackStats track = route.getTrackStats();
+        return track == null
+                ? toEntry(route.getId(), route.getStartLatitude(), route.getStartLongitude(), null, null, null, null)
+                : toEntry(route.getId(), route.getStartLatitude(), route.getStartLongitude(), track.getMinLatitude(),
+                track.getMinLongitude(), track.getMaxLatitude(), track.getMaxLongitude());
+    }
+
+    private static Entry toEntry(long id, Double startLatitude, Double startLongitude,
+                                 Double minLatitude, Double minLongitude, Double maxLatitude, Double maxLongitude) {
+        boolean hasStart = startLatitude != null && startLongitude != null;
+        boolean hasTrack = minLatitude != null && minLongitude != null && maxLatitude != null && maxLongitude != null;
+        if (!hasStart && !hasTrack) {
+            return null;
+        }
+        if (!hasTrack) {
+            return new Entry(id, startLatitude, startLongitude, startLatitude, startLongitude, startLatitude, startLongitude);
+        }
+        if (!hasStart) {
+            // routes from before start points were stored are placed at the middle of their track
+            startLatitude = (minLatitude + maxLatitude) / 2;
+            startLongitude = (minLongitude + maxLongitude) / 2;
+        }
+        return new Entry(id, startLatitude, startLongitude,
+                Math.min(minLatitude, startLatitude), Math.min(minLongitude, startLongitude),
+                Math.max(maxLatitude, startLatitude), Math.max(maxLongitude, startLongitude));
+    }
+
+    // callers hold the write lock
+    // files the route under its entry, removes it when the entry is null
+    private void apply(long id, Entry entry) {
+        lock.writeLock().lock();
+        try {
+            remove(id);
+            if (entry != null) {
+                add(entry);
+            }
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.put(id, Optional.ofNullable(entry));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(Entry entry) {
+        entries.put(entry.id(), entry);
+        forEachCell(entry.minLatitude(), entry.minLongitude(), entry.maxLatitude(), entry.maxLongitude(),
+                cell -> cells.computeIfAbsent(cell, key -> new ArrayList<>(4)).add(entry));
+    }
+
+    private void remove(long id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return;
+        }
+        forEachCell(entry.minLatitude(), entry.minLongitude(), entry.maxLatitude(), entry.maxLongitude(), cell -> {
+            List<Entry> cellEntries = cells.get(cell);
+            cellEntries.removeIf(cellEntry -> cellEntry.id() == id);
+            if (cellEntries.isEmpty()) {
+                cells.remove(cell);
+            }
+        });
+    }
+
+    // callers hold the read lock, every overlapping route is passed to the consumer once
+    private void search(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude,
+                        Consumer<Entry> consumer) {
+        if (minLongitude > maxLongitude) {
+            search(minLatitude, minLongitude, maxLatitude, 180, consumer);
+            search(minLatitude, -180, maxLatitude, maxLongitude, consumer);
+            return;
+        }
+
+        long coveredCells = (long) (row(maxLatitude) - row(minLatitude) + 1) * (column(maxLongitude) - column(minLongitude) + 1);
+        if (coveredCells > entries.size()) {
+            // zoomed far out, checking every route is cheaper than walking mostly empty cells
+            for (Entry entry : entries.values()) {
+                if (overlaps(entry, minLatitude, minLongitude, maxLatitude, maxLongitude)) {
+                    consumer.accept(entry);
+                }
+            }
+            return;
+        }
+
+        forEachCell(minLatitude, minLongitude, maxLatitude, maxLongitude, cell -> {
+            List<Entry> cellEntries = cells.get(cell);
+            if (cellEntries == null) {
+                return;
+            }
+            for (Entry entry : cellEntries) {
+                // a route in several cells is only reported from the cell holding the corner of the overlap
+                long reportingCell = cell(row(Math.max(entry.minLatitude(), minLatitude)),
+                        column(Math.max(entry.minLongitude(), minLongitude)));
+                if (reportingCell == cell && overlaps(entry, minLatitude, minLongitude, maxLatitude, maxLongitude)) {
+                    consumer.accept(entry);
+                }
+            }
+        });
+    }
+
+    private static boolean overlaps(Entry entry, double minLatitude, double minLongitude,
+                                    double maxLatitude, double maxLongitude) {
+        return entry.minLatitude() <= maxLatitude && entry.maxLatitude() >= minLatitude
+                && entry.minLongitude() <= maxLongitude && entry.maxLongitude() >= minLongitude;
+    }
+
+    private static void forEachCell(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude,
+                                    Consumer<Long> action) {
+        for (int row = row(minLatitude); row <= row(maxLatitude); row++) {
+            for (int column = column(minLongitude); column <= column(maxLongitude); column++) {
+                action.accept(cell(row, column));
+            }
+        }
+    }
+
+    private static int row(double latitude) {
+        return Math.clamp((int) Math.floor((latitude + 90) / CELL_DEGREES), 0, ROWS - 1);
+    }
+
+    private static int column(double longitude) {
+        return Math.clamp((int) Math.floor((longitude + 180) / CELL_DEGREES), 0, COLUMNS - 1);
+    }
+
+    private static long cell(int row, int column) {
+        return (long) row * COLUMNS + column;
+    }
+
+    private static double wrap(double longitude) {
+        if (longitude < -180) {
+            return longitude + 360;
+        }
+        return longitude > 180 ? longitude - 360 : longitude;
+    }
+
+    private static List<Long> nearestFirst(List<Match> matches) {
+        return matches.stream()
+                .sorted(Comparator.comparingDouble(Match::distanceKm).thenComparingLong(Match::id))
+                .map(Match::id)
+                .toList();
+    }
+
+    static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double phi1 = Math.toRadians(latitude1);
+        double phi2 = Math.toRadians(latitude2);
+        double sinPhi = Math.sin((phi2 - phi1) / 2);
+        double sinLambda = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinPhi * sinPhi + Math.cos(phi1) * Math.cos(phi2) * sinLambda * sinLambda;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,57 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.dto.CampingRouteSummaryDto;
+import ee.taltech.iti03022024backend.repository.CommentRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Summaries of many camping routes for the cards of a listing, so a page of cards is one request instead of
+ * several per card. Every kind of data is looked up for all the routes at once.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CampingRouteSummaryService {
+    private final CampingRouteViewCounter viewCounter;
+    private final CommentRepository commentRepository;
+    private final CampingRouteImageIndex imageIndex;
+
+    /**
+     * @return summaries in the order of the ids, routes that do not exist are left out
+     */
+    public ResponseEntity<List<CampingRouteSummaryDto>> getSummaries(List<Long> campingRouteIds) {
+        log.debug("Fetching summaries of {} camping routes", campingRouteIds.size());
+
+        // the view counts are read from the routes, so they tell which routes exist
+        Map<Long, Long> viewCounts = viewCounter.getCounts(campingRouteIds);
+        List<Long> ids = campingRouteIds.stream()
+                .distinct()
+                .filter(viewCounts::containsKey)
+                .toList();
+        if (ids.isEmpty()) {
+            return ResponseEntity.ok(List.of());
+        }
+
+        Map<Long, Long> commentCounts = commentRepository.countByCampingRouteIds(ids)
+                .stream()
+                .collect(Collectors.toMap(CommentRepository.CampingRouteCommentCount::getCampingRouteId,
+                        CommentRepository.CampingRouteCommentCount::getCommentCount));
+        Map<Long, List<CampingRouteImageIndex.Image>> images = imageIndex.images(ids);
+
+        List<CampingRouteSummaryDto> summaries = ids.stream()
+                .map(id -> new CampingRouteSummaryDto(
+                        id,
+                        images.get(id).isEmpty() ? null : images.get(id).getFirst().fileName(),
+                        viewCounts.get(id),
+                        commentCounts.getOrDefault(id, 0L)))
+                .toList();
+        return ResponseEntity.ok(summaries);
+    }
+}
@@ -0,0 +1,183 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import ee.taltech.iti03022024backend.tile.VectorTileEncoder;
+import ee.taltech.iti03022024backend.tile.WebMercator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps rendered vector tiles on disk up to a zoom level, tiles zoomed in further hold only a few routes
+ * and are rendered on every request. The tiles a route is drawn on are dropped when the route changes.
+ * Only changes made by this instance are seen, so the cache is emptied on startup and tiles older than
+ * a max age are rendered again.
+ */
+@Slf4j
+@Component
+public class CampingRouteTileCache {
+    private static final String TILE_EXTENSION = ".mvt";
+    private static final double BUFFER = (double) VectorTileEncoder.BUFFER / VectorTileEncoder.EXTENT;
+
+    private final Path rootDir;
+    private final int maxZoom;
+    private final Duration maxAge;
+    // bumped on every invalidation so a tile rendered from routes that changed meanwhile is not kept
+    private final AtomicLong version = new AtomicLong();
+
+    public CampingRouteTileCache(
+            @Value("${app.files.root:files}") Path filesRoot,
+            @Value("${app.tiles.cache.max-zoom:14}") int maxZoom,
+            @Value("${app.tiles.cache.max-age:PT10M}") Duration maxAge
+    ) {
+        this.rootDir = filesRoot.resolve("tiles");
+        this.maxZoom = maxZoom;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Drops every cached tile, they may have been rendered before routes were changed elsewhere.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void clear() {
+        version.incrementAndGet();
+        try {
+            FileSystemUtils.deleteRecursively(rootDir);
+        } catch (IOException e) {
+            log.warn("Cached tiles in {} could not be dropped: {}", rootDir, e.getMessage());
+        }
+    }
+
+    /**
+     * @return version to hand to {@link #put} with a tile rendered after asking for it
+     */
+    public long version() {
+        return version.get();
+    }
+
+    public Optional<byte[]> get(int zoom, int x, int y) {
+        if (zoom > maxZoom) {
+            return Optional.empty();
+        }
+
+        Path path = tilePath(zoom, x, y);
+        try {
+            if (Files.getLastModifiedTime(path).toInstant().plus(maxAge).isBefore(Instant.now())) {
+                return Optional.empty();
+            }
+            return Optional.of(Files.readAllBytes(path));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            log.warn("Cached tile {}/{}/{} could not be read: {}", zoom, x, y, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores the tile unless a route changed since the version was taken.
+     */
+    public void put(int zoom, int x, int y, byte[] tile, long renderedVersion) {
+        if (zoom > maxZoom || version.get() != renderedVersion) {
+            return;
+        }
+
+        Path path = tilePath(zoom, x, y);
+        try {
+            Files.createDirectories(path.getParent());
+            Path staging = Files.createTempFile(path.getParent(), "tile-", ".part");
+            try {
+                Files.write(staging, tile);
+                Files.move(staging, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(staging);
+            }
+            // an invalidation that ran while the tile was written may have missed it
+            if (version.get() != renderedVersion) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            log.warn("Tile {}/{}/{} could not be cached: {}", zoom, x, y, e.getMessage());
+        }
+    }
+
+    /**
+     * Drops the cached tiles the route is drawn on as it is now once the current transaction commits.
+     * Called before and after the location of a route changes, so tiles of both locations are dropped.
+     */
+    public void invalidate(CampingRouteEntity route) {
+        CampingRouteSpatialIndex.Entry entry = CampingRouteSpatialIndex.toEntry(route);
+        if (entry == null) {
+            return;
+        }
+        AfterCommit.run(() -> invalidate(entry.minLatitude(), entry.minLongitude(), entry.maxLatitude(), entry.maxLongitude()));
+    }
+
+    // routes are also removed when their user is deleted
+    @EventListener
+    public void routeDeleted(CampingRouteDeletedEvent event) {
+        invalidate(event.route());
+    }
+
+    void invalidate(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        version.incrementAndGet();
+
+        int deleted = 0;
+        for (int zoom = 0; zoom <= maxZoom; zoom++) {
+            int last = (1 << zoom) - 1;
+            int minX = Math.clamp((long) Math.floor(WebMercator.tileX(minLongitude, zoom) - BUFFER), 0, last);
+            int maxX = Math.clamp((long) Math.floor(WebMercator.tileX(maxLongitude, zoom) + BUFFER), 0, last);
+            int minY = Math.clamp((long) Math.floor(WebMercator.tileY(maxLatitude, zoom) - BUFFER), 0, last);
+            int maxY = Math.clamp((long) Math.floor(WebMercator.tileY(minLatitude, zoom) + BUFFER), 0, last);
+
+            for (int x = minX; x <= maxX; x++) {
+                deleted += deleteColumn(rootDir.resolve(Integer.toString(zoom)).resolve(Integer.toString(x)), minY, maxY);
+            }
+        }
+        log.debug("Dropped {} cached tiles", deleted);
+    }
+
+    // walks the tiles that are cached rather than every tile of the range, which is large for long routes
+    private static int deleteColumn(Path column, int minY, int maxY) {
+        if (Files.notExists(column)) {
+            return 0;
+        }
+
+        int deleted = 0;
+        try (DirectoryStream<Path> tiles = Files.newDirectoryStream(column, "*" + TILE_EXTENSION)) {
+            for (Path tile : tiles) {
+                String name = tile.getFileName().toString();
+                int y = Integer.parseInt(name.substring(0, name.length() - TILE_EXTENSION.length()));
+                if (y >= minY && y <= maxY && Files.deleteIfExists(tile)) {
+                    deleted++;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Cached tiles in {} could not be dropped: {}", column, e.getMessage());
+        }
+        return deleted;
+    }
+
+    private Path tilePath(int zoom, int x, int y) {
+        return rootDir
+                .resolve(Integer.toString(zoom))
+                .resolve(Integer.toString(x))
+                .resolve(y + TILE_EXTENSION)
+                .normalize()
+                .toAbsolutePath();
+    }
+}
@@ -0,0 +1,156 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import ee.taltech.iti03022024backend.exception.InvalidTileException;
+import ee.taltech.iti03022024backend.file.FileResponses;
+import ee.taltech.iti03022024backend.gpx.GpxTrack;
+import ee.taltech.iti03022024backend.gpx.GpxTrackSimplifier;
+import ee.taltech.iti03022024backend.repository.CampingRouteRepository;
+import ee.taltech.iti03022024backend.tile.VectorTileEncoder;
+import ee.taltech.iti03022024backend.tile.WebMercator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CampingRouteTileService {
+    public static final int MAX_ZOOM = 22;
+    static final String LAYER_NAME = "camping_routes";
+
+    private static final MediaType TILE_MEDIA_TYPE = MediaType.parseMediaType(VectorTileEncoder.MEDIA_TYPE_VALUE);
+    // tiles change with the routes on them, browsers ask again with the ETag after a minute
+    private static final CacheControl TILE_CACHE_CONTROL = CacheControl.maxAge(1, TimeUnit.MINUTES).cachePublic();
+    private static final double BUFFER = (double) VectorTileEncoder.BUFFER / VectorTileEncoder.EXTENT;
+
+    private final CampingRouteRepository routeRepository;
+    private final CampingRouteSpatialIndex spatialIndex;
+    private final CampingRouteGpxService gpxService;
+    private final CampingRouteTileCache tileCache;
+    private final FileResponses fileResponses;
+
+    /**
+     * @return vector tile with a line for every camping route with a GPX track and a point for every other
+     * camping route with a start point, no bytes at all when the tile has no camping routes
+     */
+    public ResponseEntity<Resource> getTile(int zoom, int x, int y) {
+        long tiles = 1L << zoom;
+        if (x < 0 || y < 0 || x >= tiles || y >= tiles) {
+            throw new InvalidTileException("Tile " + zoom + "/" + x + "/" + y + " does not exist");
+        }
+
+        byte[] tile = tileCache.get(zoom, x, y).orElseGet(() -> {
+            long version = tileCache.version();
+            byte[] rendered = render(zoom, x, y);
+            tileCache.put(zoom, x, y, rendered, version);
+            return rendered;
+        });
+
+        return fileResponses.ok(tile, TILE_MEDIA_TYPE, TILE_CACHE_CONTROL);
+    }
+
+    private byte[] render(int zoom, int x, int y) {
+        List<Long> ids = spatialIndex.findInViewport(
+                WebMercator.latitude(y + 1 + BUFFER, zoom),
+                WebMercator.longitude(x - BUFFER, zoom),
+                WebMercator.latitude(y - BUFFER, zoom),
+                WebMercator.longitude(x + 1 + BUFFER, zoom));
+        log.debug("Rendering tile {}/{}/{} with {} camping routes", zoom, x, y, ids.size());
+
+        var encoder = new VectorTileEncoder(LAYER_NAME);
+        if (ids.isEmpty()) {
+            return encoder.encode();
+        }
+
+        int level = GpxTrackSimplifier.levelForZoom(zoom);
+        for (CampingRouteEntity route : routeRepository.findAllById(ids)) {
+            Optional<GpxTrack> track = route.getTrackStats() == null
+                    ? Optional.empty()
+                    : gpxService.findTrack(route.getId(), level);
+
+            if (track.isPresent()) {
+                encoder.addLineString(route.getId(), clip(track.get(), zoom, x, y), properties(route));
+            } else if (route.getStartLatitude() != null && route.getStartLongitude() != null) {
+                encoder.addPoint(route.getId(),
+                        toTile(WebMercator.tileX(route.getStartLongitude(), zoom), x),
+                        toTile(WebMercator.tileY(route.getStartLatitude(), zoom), y),
+                        properties(route));
+            }
+        }
+        return encoder.encode();
+    }
+
+    private static Map<String, Object> properties(CampingRouteEntity route) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("name", route.getName());
+        properties.put("location", route.getLocation());
+        if (route.getTrackStats() != null) {
+            properties.put("distance", Math.round(route.getTrackStats().getDistanceMeters()));
+        }
+        return properties;
+    }
+
+    // keeps the stretches of the track whose segments come near the tile, each as a line of its own
+    private static List<int[]> clip(GpxTrack track, int zoom, int x, int y) {
+        List<int[]> parts = new ArrayList<>();
+        int[] segmentStarts = track.getSegmentStarts();
+
+        for (int segment = 0; segment < segmentStarts.length; segment++) {
+            int start = segmentStarts[segment];
+            int end = track.segmentEnd(segment);
+            int[] part = new int[(end - start) * 2];
+            int size = 0;
+            int previousX = 0;
+            int previousY = 0;
+
+            for (int i = start; i < end; i++) {
+                int pointX = toTile(WebMercator.tileX(track.getLongitudes()[i], zoom), x);
+                int pointY = toTile(WebMercator.tileY(track.getLatitudes()[i], zoom), y);
+
+                if (i > start && nearTile(previousX, previousY, pointX, pointY)) {
+                    if (size == 0) {
+                        part[size++] = previousX;
+                        part[size++] = previousY;
+                    }
+                    part[size++] = pointX;
+                    part[size++] = pointY;
+                } else if (size > 0) {
+                    parts.add(Arrays.copyOf(part, size));
+                    size = 0;
+                }
+                previousX = pointX;
+                previousY = pointY;
+            }
+            if (size > 0) {
+                parts.add(Arrays.copyOf(part, size));
+            }
+        }
+        return parts;
+    }
+
+    // the bounding box of the segment overlaps the tile and its buffer
+    private static boolean nearTile(int x1, int y1, int x2, int y2) {
+        int low = -VectorTileEncoder.BUFFER;
+        int high = VectorTileEncoder.EXTENT + VectorTileEncoder.BUFFER;
+        return Math.max(x1, x2) >= low && Math.min(x1, x2) <= high
+                && Math.max(y1, y2) >= low && Math.min(y1, y2) <= high;
+    }
+
+    // far away points are clamped so the cursor arithmetic of the encoder can not overflow
+    private static int toTile(double tileCoordinate, int tile) {
+        return (int) Math.clamp(Math.round((tileCoordinate - tile) * VectorTileEncoder.EXTENT), -(1 << 24), 1 << 24);
+    }
+}
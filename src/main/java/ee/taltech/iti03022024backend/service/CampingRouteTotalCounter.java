@@ -0,0 +1,123 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import ee.taltech.iti03022024backend.repository.CampingRouteRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Works out the total number of camping routes of a listing without counting them on every page.
+ * The total is known without a query when the page is the last one, otherwise the configured
+ * {@link Strategy} decides how it is counted.
+ */
+@Slf4j
+@Component
+public class CampingRouteTotalCounter {
+    // planner estimate of the row count, -1 (or 0 before PostgreSQL 14) when the table has not been analyzed yet
+    private static final String SELECT_ESTIMATED_COUNT =
+            "SELECT reltuples::bigint FROM pg_class WHERE oid = 'camping_route'::regclass";
+
+    // keywords are part of the key, so the cache is dropped instead of growing without bound
+    private static final int MAX_CACHED_TOTALS = 10_000;
+
+    public enum Strategy {
+        /** Counts every time. */
+        EXACT,
+        /** Counts and reuses the count of the same listing until it expires. */
+        CACHED,
+        /** Uses the planner estimate for unfiltered listings, filtered listings are cached. */
+        ESTIMATED
+    }
+
+    public record Total(long elements, boolean approximate) {
+    }
+
+    private record CachedTotal(long elements, long expiresAt) {
+    }
+
+    private final Map<String, CachedTotal> cache = new ConcurrentHashMap<>();
+    private final CampingRouteRepository routeRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final Strategy strategy;
+    private final Duration cacheTtl;
+
+    public CampingRouteTotalCounter(
+            CampingRouteRepository routeRepository,
+            JdbcTemplate jdbcTemplate,
+            @Value("${app.routes.count.strategy:ESTIMATED}") Strategy strategy,
+            @Value("${app.routes.count.cache-ttl:PT1M}") Duration cacheTtl
+    ) {
+        this.routeRepository = routeRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.strategy = strategy;
+        this.cacheTtl = cacheTtl;
+    }
+
+    /**
+     * @param key      identifies the listing, e.g. the endpoint and its keyword
+     * @param spec     filter of the listing
+     * @param filtered whether the listing is filtered, unfiltered listings can use the planner estimate
+     * @param slice    page of the listing that was already fetched
+     */
+    public Total count(String key, Specification<CampingRouteEntity> spec, boolean filtered, Slice<?> slice) {
+        long seen = slice.getPageable().getOffset() + slice.getNumberOfElements();
+        if (!slice.hasNext() && (slice.hasContent() || slice.isFirst())) {
+            return new Total(seen, false);
+        }
+
+        // a route on the next page means there are more than seen
+        long atLeast = slice.hasNext() ? seen + 1 : 0;
+
+        return switch (strategy) {
+            case EXACT -> new Total(routeRepository.count(spec), false);
+            case CACHED -> cached(key, spec);
+            case ESTIMATED -> filtered ? cached(key, spec) : estimated(spec, atLeast);
+        };
+    }
+
+    /**
+     * Drops all cached totals once the current transaction commits, called when camping routes are added or
+     * removed. Dropped any earlier, a listing running meanwhile would cache the count from before the change.
+     */
+    public void invalidate() {
+        AfterCommit.run(cache::clear);
+    }
+
+    @EventListener
+    public void routeDeleted(CampingRouteDeletedEvent event) {
+        invalidate();
+    }
+
+    private Total cached(String key, Specification<CampingRouteEntity> spec) {
+        long now = System.nanoTime();
+        CachedTotal cached = cache.get(key);
+        if (cached != null && now - cached.expiresAt() < 0) {
+            return new Total(cached.elements(), true);
+        }
+
+        long elements = routeRepository.count(spec);
+        if (cache.size() >= MAX_CACHED_TOTALS) {
+            cache.clear();
+        }
+        cache.put(key, new CachedTotal(elements, now + cacheTtl.toNanos()));
+        return new Total(elements, false);
+    }
+
+    private Total estimated(Specification<CampingRouteEntity> spec, long atLeast) {
+        Long estimate = jdbcTemplate.queryForObject(SELECT_ESTIMATED_COUNT, Long.class);
+        if (estimate == null || estimate <= 0) {
+            log.debug("No row estimate for camping routes yet, counting instead");
+            return new Total(routeRepository.count(spec), false);
+        }
+        return new Total(Math.max(estimate, atLeast), true);
+    }
+}
@@ -0,0 +1,254 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.exception.CampingRouteNotFoundException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind view counter. Views are counted in memory per camping route and
+ * the accumulated deltas are written to the database in one batch on a schedule,
+ * so adding or reading a view does not touch the database once the route is known.
+ * <p>
+ * A flush takes the totals back from the database, so views counted by other instances are seen once
+ * this instance flushes its own. Counters of routes that got no views for the idle timeout are dropped
+ * and loaded again when needed, which bounds both the memory and how stale a count of a route only
+ * viewed elsewhere gets.
+ */
+@Slf4j
+@Component
+public class CampingRouteViewCounter {
+    private static final String CAMPING_ROUTE_DOES_NOT_EXIST = "Camping route with id of %d does not exist";
+
+    // returns no rows when the camping route does not exist
+    private static final String SELECT_PERSISTED_COUNT = "SELECT view_count FROM camping_route WHERE id = ?";
+
+    // returns a row for each of the camping routes that exist
+    private static final String SELECT_PERSISTED_COUNTS = "SELECT id, view_count FROM camping_route WHERE id = ANY(?)";
+
+    // returns the new total of each camping route that still exists
+    private static final String UPDATE_VIEW_COUNTS = """
+            UPDATE camping_route r SET view_count = r.view_count + d.delta
+            FROM unnest(?::bigint[], ?::bigint[]) AS d(id, delta)
+            WHERE r.id = d.id
+            RETURNING r.id, r.view_count
+            """;
+
+    // raw views are kept until ViewRollupCompactor folds them into the rollup tables,
+    // the join skips routes that were deleted before the flush
+    private static final String INSERT_VIEWS =
+            "INSERT INTO view (created_at, camping_route_id) "
+                    + "SELECT now(), r.id FROM camping_route r CROSS JOIN generate_series(1, ?) WHERE r.id = ?";
+
+    private final Map<Long, RouteCounter> counters = new ConcurrentHashMap<>();
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration idleTimeout;
+
+    public CampingRouteViewCounter(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.views.idle-timeout:PT10M}") Duration idleTimeout
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Counts a view for the camping route.
+     *
+     * @return view count of the camping route including the new view
+     */
+    public long increment(long campingRouteId) {
+        while (true) {
+            var counter = getCounter(campingRouteId);
+            counter.lastViewed = System.nanoTime();
+            // a counter dropped as idle before it was marked viewed has to be loaded again
+            if (counters.get(campingRouteId) == counter) {
+                counter.pending.increment();
+                return counter.total();
+            }
+        }
+    }
+
+    public long getCount(long campingRouteId) {
+        return getCounter(campingRouteId).total();
+    }
+
+    /**
+     * Looks up the counts of many camping routes, with one query for the routes whose count is not in memory yet.
+     *
+     * @return view counts of the camping routes that exist, keyed by their ids
+     */
+    public Map<Long, Long> getCounts(Collection<Long> campingRouteIds) {
+        Map<Long, Long> counts = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (long id : campingRouteIds) {
+            var counter = counters.get(id);
+            if (counter != null) {
+                counts.put(id, counter.total());
+            } else {
+                missing.add(id);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            jdbcTemplate.query(SELECT_PERSISTED_COUNTS, (RowCallbackHandler) row -> {
+                long id = row.getLong("id");
+                var loaded = new RouteCounter(row.getLong("view_count"));
+                var existing = counters.putIfAbsent(id, loaded);
+                counts.put(id, (existing != null ? existing : loaded).total());
+            }, (Object) missing.toArray(Long[]::new));
+        }
+        return counts;
+    }
+
+    /**
+     * Drops the in-memory state of the camping route, including views that have not been flushed yet.
+     */
+    public void evict(long campingRouteId) {
+        counters.remove(campingRouteId);
+    }
+
+    /**
+     * Drops the counter of the deleted route once its transaction commits, a rolled back delete keeps its views.
+     */
+    @EventListener
+    public void routeDeleted(CampingRouteDeletedEvent event) {
+        long campingRouteId = event.route().getId();
+        AfterCommit.run(() -> evict(campingRouteId));
+    }
+
+    /**
+     * Adds all pending view deltas to the camping route view totals and records the raw views,
+     * both in a single transaction, then drops the counters that have been idle.
+     * If writing fails, the deltas stay pending and are retried on the next flush.
+     */
+    @Scheduled(fixedDelayString = "${app.views.flush-interval:PT5S}")
+    public synchronized void flush() {
+        List<Long> ids = new ArrayList<>();
+        List<Long> deltas = new ArrayList<>();
+        List<RouteCounter> flushed = new ArrayList<>();
+        List<Object[]> batch = new ArrayList<>();
+
+        counters.forEach((id, counter) -> {
+            long delta = counter.pending.sum();
+            if (delta > 0) {
+                ids.add(id);
+                deltas.add(delta);
+                flushed.add(counter);
+                batch.add(new Object[]{delta, id});
+            }
+        });
+
+        if (!batch.isEmpty() && write(ids, deltas, flushed, batch)) {
+            log.debug("Flushed views for {} camping routes", batch.size());
+        }
+        evictIdle();
+    }
+
+    private boolean write(List<Long> ids, List<Long> deltas, List<RouteCounter> flushed, List<Object[]> batch) {
+        Map<Long, Long> totals = new HashMap<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                totals.clear();
+                jdbcTemplate.query(UPDATE_VIEW_COUNTS,
+                        (RowCallbackHandler) row -> totals.put(row.getLong("id"), row.getLong("view_count")),
+                        ids.toArray(Long[]::new), deltas.toArray(Long[]::new));
+                jdbcTemplate.batchUpdate(INSERT_VIEWS, batch);
+            });
+        } catch (RuntimeException e) {
+            log.error("Could not flush views for {} camping routes, retrying on next flush", batch.size(), e);
+            return false;
+        }
+
+        for (int i = 0; i < ids.size(); i++) {
+            Long total = totals.get(ids.get(i));
+            if (total == null) {
+                // deleted by another instance
+                counters.remove(ids.get(i), flushed.get(i));
+            } else {
+                flushed.get(i).persisted(deltas.get(i), total);
+            }
+        }
+        return true;
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        counters.forEach((id, counter) -> {
+            long lastViewed = counter.lastViewed;
+            if (now - lastViewed < idleTimeout.toNanos() || counter.pending.sum() != 0
+                    || !counters.remove(id, counter)) {
+                return;
+            }
+            // a view counted while the counter was dropped keeps it
+            if (counter.lastViewed != lastViewed || counter.pending.sum() != 0) {
+                counters.merge(id, counter, (current, evicted) -> {
+                    current.pending.add(evicted.pending.sum());
+                    return current;
+                });
+            }
+        });
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        log.info("Flushing pending views before shutdown");
+        flush();
+    }
+
+    private RouteCounter getCounter(long campingRouteId) {
+        var counter = counters.get(campingRouteId);
+        if (counter != null) {
+            return counter;
+        }
+
+        List<Long> persisted = jdbcTemplate.queryForList(SELECT_PERSISTED_COUNT, Long.class, campingRouteId);
+        if (persisted.isEmpty()) {
+            throw new CampingRouteNotFoundException(String.format(CAMPING_ROUTE_DOES_NOT_EXIST, campingRouteId));
+        }
+
+        var loaded = new RouteCounter(persisted.getFirst());
+        var existing = counters.putIfAbsent(campingRouteId, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    private static final class RouteCounter {
+        private final LongAdder pending = new LongAdder();
+        private volatile long persisted;
+        private volatile long lastViewed = System.nanoTime();
+
+        private RouteCounter(long persisted) {
+            this.persisted = persisted;
+        }
+
+        private long total() {
+            return persisted + pending.sum();
+        }
+
+        // only called from the synchronized flush, the flushed views are taken out of pending first
+        // so a concurrent read never counts them twice
+        private void persisted(long delta, long total) {
+            pending.add(-delta);
+            persisted = total;
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package ee.taltech.iti03022024backend.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import ee.taltech.iti03022024backend.dto.CommentDto;
+import ee.taltech.iti03022024backend.dto.SliceResponse;
 import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
 import ee.taltech.iti03022024backend.entity.CommentEntity;
 import ee.taltech.iti03022024backend.entity.UserEntity;
@@ -14,12 +18,22 @@ import ee.taltech.iti03022024backend.repository.CommentRepository;
 import ee.taltech.iti03022024backend.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -33,6 +47,8 @@ public class CommentService {
     private final UserRepository userRepository;
     private final CommentRepository commentRepository;
     private final CampingRouteRepository campingRouteRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
 
     public ResponseEntity<CommentDto> createComment(String principal, CommentDto dto, long campingRouteId) {
         CampingRouteEntity campingRoute = campingRouteRepository.findById(campingRouteId)
@@ -61,20 +77,90 @@ public class CommentService {
     public ResponseEntity<List<CommentDto>> getCommentsByCampingRoute(Long id) {
         log.info("Fetching comments by camping route id {}", id);
 
-        return ResponseEntity.ok(commentMapper.toDtoList(commentRepository.findByCampingRoute(getCampingRouteEntity(id))));
+        List<CommentDto> comments = commentRepository.findDtosByCampingRouteId(id);
+        // only a route without comments needs the extra existence check
+        if (comments.isEmpty() && !campingRouteRepository.existsById(id)) {
+            throw new CampingRouteNotFoundException(String.format(CAMPING_ROUTE_DOES_NOT_EXIST, id));
+        }
+
+        return ResponseEntity.ok(comments);
     }
 
     public ResponseEntity<List<CommentDto>> getCommentsByUserId(long id) {
         log.info("Fetching comments by user id {}", id);
 
-        return ResponseEntity.ok(commentMapper.toDtoList(commentRepository.findByUser_Id(id)));
+        return ResponseEntity.ok(commentRepository.findDtosByUserId(id));
+    }
+
+    /**
+     * @param after id of the last comment of the previous slice, null for the first slice
+     */
+    public ResponseEntity<SliceResponse<CommentDto>> getCommentSliceByCampingRoute(long id, Long after, int limit) {
+        log.info("Fetching {} comments by camping route id {} after comment {}", limit, id, after);
+
+        List<CommentDto> rows = commentRepository.findDtosByCampingRouteIdAfter(id, after == null ? 0 : after, Limit.of(limit + 1));
+        if (rows.isEmpty() && after == null && !campingRouteRepository.existsById(id)) {
+            throw new CampingRouteNotFoundException(String.format(CAMPING_ROUTE_DOES_NOT_EXIST, id));
+        }
+
+        return ResponseEntity.ok(toSlice(rows, limit));
+    }
+
+    /**
+     * @param after id of the last comment of the previous slice, null for the first slice
+     */
+    public ResponseEntity<SliceResponse<CommentDto>> getCommentSliceByUserId(long id, Long after, int limit) {
+        log.info("Fetching {} comments by user id {} after comment {}", limit, id, after);
+
+        return ResponseEntity.ok(toSlice(commentRepository.findDtosByUserIdAfter(id, after == null ? 0 : after, Limit.of(limit + 1)), limit));
     }
 
-    private CampingRouteEntity getCampingRouteEntity(long id) {
-        log.info("Fetching camping route with id of {}", id);
+    public ResponseEntity<StreamingResponseBody> streamCommentsByCampingRoute(long id) {
+        log.info("Streaming comments by camping route id {}", id);
+
+        if (!campingRouteRepository.existsById(id)) {
+            throw new CampingRouteNotFoundException(String.format(CAMPING_ROUTE_DOES_NOT_EXIST, id));
+        }
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> writeNdjson(out, () -> commentRepository.streamDtosByCampingRouteId(id)));
+    }
+
+    public ResponseEntity<StreamingResponseBody> streamCommentsByUserId(long id) {
+        log.info("Streaming comments by user id {}", id);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> writeNdjson(out, () -> commentRepository.streamDtosByUserId(id)));
+    }
+
+    // rows holds one comment more than the slice when there is a next slice
+    private static SliceResponse<CommentDto> toSlice(List<CommentDto> rows, int limit) {
+        boolean hasNext = rows.size() > limit;
+        List<CommentDto> content = hasNext ? rows.subList(0, limit) : rows;
+
+        return new SliceResponse<>(content, hasNext ? String.valueOf(content.getLast().getId()) : null);
+    }
 
-        return campingRouteRepository.findById(id)
-                .orElseThrow(() -> new CampingRouteNotFoundException(String.format(CAMPING_ROUTE_DOES_NOT_EXIST, id)));
+    /**
+     * Writes the comments one JSON object per line. Runs after the request handler has returned,
+     * so the stream gets its own transaction; only one fetch of rows is held in memory at a time.
+     */
+    private void writeNdjson(OutputStream out, Supplier<Stream<CommentDto>> comments) {
+        ObjectWriter writer = objectMapper.writerFor(CommentDto.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<CommentDto> stream = comments.get()) {
+                Iterator<CommentDto> iterator = stream.iterator();
+                while (iterator.hasNext()) {
+                    writer.writeValue(out, iterator.next());
+                    out.write('\n');
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 
     public ResponseEntity<Void> deleteCommentByCommentId(String name, long commentId) {
@@ -83,7 +169,7 @@ public class CommentService {
         var comment = commentRepository.findById(commentId).orElseThrow(() -> new CommentNotExistsException("Comment with id of " + commentId + " does not exist"));
         var user = userRepository.findByUsername(name).orElseThrow(() -> new UserNotFoundException(String.format(USER_NOT_FOUND, name)));
 
-        if (!comment.getUser().equals(user)) {
+        if (comment.getUser().getId() != user.getId()) {
             throw new UserNotFoundException("User does not have permission to delete comment with id of " + commentId);
         }
 
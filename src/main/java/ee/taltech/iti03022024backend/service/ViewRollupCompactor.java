@@ -0,0 +1,85 @@
+package ee.taltech.iti03022024backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+
+/**
+ * Folds raw views older than the raw retention into the hourly and daily rollup tables
+ * and removes them, so the view table only holds recent views. Hourly buckets are kept
+ * for the hourly retention, daily buckets are kept for good.
+ */
+@Slf4j
+@Component
+public class ViewRollupCompactor {
+
+    // moves one batch of old raw views into both rollup tables and returns how many were moved
+    private static final String COMPACT_BATCH = """
+            WITH moved AS (
+                DELETE FROM view
+                WHERE id IN (SELECT id FROM view WHERE created_at < localtimestamp - ? * interval '1 second' LIMIT ?)
+                RETURNING camping_route_id, created_at
+            ), hourly AS (
+                INSERT INTO view_hourly (camping_route_id, bucket_start, view_count)
+                SELECT camping_route_id, date_trunc('hour', created_at), count(*) FROM moved GROUP BY 1, 2
+                ON CONFLICT (camping_route_id, bucket_start)
+                    DO UPDATE SET view_count = view_hourly.view_count + excluded.view_count
+            ), daily AS (
+                INSERT INTO view_daily (camping_route_id, bucket_date, view_count)
+                SELECT camping_route_id, created_at::date, count(*) FROM moved GROUP BY 1, 2
+                ON CONFLICT (camping_route_id, bucket_date)
+                    DO UPDATE SET view_count = view_daily.view_count + excluded.view_count
+            )
+            SELECT count(*) FROM moved
+            """;
+
+    private static final String PRUNE_HOURLY =
+            "DELETE FROM view_hourly WHERE bucket_start < localtimestamp - ? * interval '1 second'";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration rawRetention;
+    private final Duration hourlyRetention;
+    private final int batchSize;
+
+    public ViewRollupCompactor(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.views.rollup.raw-retention:P7D}") Duration rawRetention,
+            @Value("${app.views.rollup.hourly-retention:P90D}") Duration hourlyRetention,
+            @Value("${app.views.rollup.batch-size:10000}") int batchSize
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.rawRetention = rawRetention;
+        this.hourlyRetention = hourlyRetention;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Compacts old raw views batch by batch, each batch in its own transaction.
+     *
+     * @return number of raw views folded into the rollup tables
+     */
+    @Scheduled(cron = "${app.views.rollup.cron:0 15 * * * *}")
+    public long compact() {
+        long total = 0;
+        long moved;
+        do {
+            moved = transactionTemplate.execute(status -> jdbcTemplate.queryForObject(
+                    COMPACT_BATCH, Long.class, rawRetention.toSeconds(), batchSize));
+            total += moved;
+        } while (moved == batchSize);
+
+        int pruned = jdbcTemplate.update(PRUNE_HOURLY, hourlyRetention.toSeconds());
+
+        log.info("Compacted {} raw views into rollups, pruned {} hourly buckets", total, pruned);
+        return total;
+    }
+}
@@ -0,0 +1,66 @@
+package ee.taltech.iti03022024backend.tile;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The few protocol buffer encodings a vector tile needs, written without generated classes.
+ */
+final class ProtobufWriter {
+    private static final int VARINT = 0;
+    private static final int FIXED_64 = 1;
+    private static final int LENGTH_DELIMITED = 2;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    void writeVarintField(int field, long value) {
+        writeTag(field, VARINT);
+        writeVarint(value);
+    }
+
+    void writeDoubleField(int field, double value) {
+        writeTag(field, FIXED_64);
+        long bits = Double.doubleToLongBits(value);
+        for (int i = 0; i < 8; i++) {
+            out.write((int) (bits >>> (8 * i)));
+        }
+    }
+
+    void writeStringField(int field, String value) {
+        writeBytesField(field, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    void writeBytesField(int field, byte[] value) {
+        writeTag(field, LENGTH_DELIMITED);
+        writeVarint(value.length);
+        out.writeBytes(value);
+    }
+
+    void writePackedField(int field, int[] values, int count) {
+        var packed = new ProtobufWriter();
+        for (int i = 0; i < count; i++) {
+            packed.writeVarint(values[i] & 0xFFFFFFFFL);
+        }
+        writeBytesField(field, packed.toByteArray());
+    }
+
+    boolean isEmpty() {
+        return out.size() == 0;
+    }
+
+    byte[] toByteArray() {
+        return out.toByteArray();
+    }
+
+    private void writeTag(int field, int wireType) {
+        writeVarint((long) field << 3 | wireType);
+    }
+
+    private void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
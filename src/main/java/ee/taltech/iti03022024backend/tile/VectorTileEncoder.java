@@ -0,0 +1,157 @@
+package ee.taltech.iti03022024backend.tile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a Mapbox Vector Tile (version 2.1) with a single layer. Geometry is given in tile coordinates,
+ * 0 to {@link #EXTENT} from the north west corner, coordinates a little outside the tile are allowed
+ * so lines do not end at the edge of the tile.
+ */
+public class VectorTileEncoder {
+    public static final String MEDIA_TYPE_VALUE = "application/vnd.mapbox-vector-tile";
+    public static final int EXTENT = 4096;
+    // how far past the edge of the tile geometry is kept, so lines and icons are not cut off at the edge
+    public static final int BUFFER = 64;
+
+    private static final int MOVE_TO = 1;
+    private static final int LINE_TO = 2;
+    private static final int POINT = 1;
+    private static final int LINE_STRING = 2;
+
+    private final String layerName;
+    private final List<byte[]> features = new ArrayList<>();
+    private final Map<String, Integer> keys = new LinkedHashMap<>();
+    private final Map<Object, Integer> values = new LinkedHashMap<>();
+
+    public VectorTileEncoder(String layerName) {
+        this.layerName = layerName;
+    }
+
+    public void addPoint(long id, int x, int y, Map<String, ?> properties) {
+        int[] geometry = {command(MOVE_TO, 1), zigzag(x), zigzag(y)};
+        addFeature(id, POINT, geometry, geometry.length, properties);
+    }
+
+    /**
+     * @param parts lines of the feature, each as x and y coordinates one after another
+     */
+    public void addLineString(long id, List<int[]> parts, Map<String, ?> properties) {
+        int length = 0;
+        for (int[] part : parts) {
+            length += part.length + 2;
+        }
+        int[] geometry = new int[length];
+        int size = 0;
+        int cursorX = 0;
+        int cursorY = 0;
+
+        for (int[] part : parts) {
+            int[] line = withoutRepeatedPoints(part);
+            if (line.length < 4) {
+                continue;
+            }
+            geometry[size++] = command(MOVE_TO, 1);
+            geometry[size++] = zigzag(line[0] - cursorX);
+            geometry[size++] = zigzag(line[1] - cursorY);
+            geometry[size++] = command(LINE_TO, line.length / 2 - 1);
+            for (int i = 2; i < line.length; i += 2) {
+                geometry[size++] = zigzag(line[i] - line[i - 2]);
+                geometry[size++] = zigzag(line[i + 1] - line[i - 1]);
+            }
+            cursorX = line[line.length - 2];
+            cursorY = line[line.length - 1];
+        }
+
+        if (size > 0) {
+            addFeature(id, LINE_STRING, geometry, size, properties);
+        }
+    }
+
+    public boolean isEmpty() {
+        return features.isEmpty();
+    }
+
+    /**
+     * @return the tile, no bytes at all when it has no features
+     */
+    public byte[] encode() {
+        if (features.isEmpty()) {
+            return new byte[0];
+        }
+
+        var layer = new ProtobufWriter();
+        layer.writeVarintField(15, 2);
+        layer.writeStringField(1, layerName);
+        features.forEach(feature -> layer.writeBytesField(2, feature));
+        keys.keySet().forEach(key -> layer.writeStringField(3, key));
+        values.keySet().forEach(value -> layer.writeBytesField(4, encodeValue(value)));
+        layer.writeVarintField(5, EXTENT);
+
+        var tile = new ProtobufWriter();
+        tile.writeBytesField(3, layer.toByteArray());
+        return tile.toByteArray();
+    }
+
+    private void addFeature(long id, int type, int[] geometry, int geometryLength, Map<String, ?> properties) {
+        int[] tags = new int[properties.size() * 2];
+        int tagCount = 0;
+        for (Map.Entry<String, ?> property : properties.entrySet()) {
+            if (property.getValue() == null) {
+                continue;
+            }
+            tags[tagCount++] = keys.computeIfAbsent(property.getKey(), key -> keys.size());
+            tags[tagCount++] = values.computeIfAbsent(property.getValue(), value -> values.size());
+        }
+
+        var feature = new ProtobufWriter();
+        feature.writeVarintField(1, id);
+        if (tagCount > 0) {
+            feature.writePackedField(2, tags, tagCount);
+        }
+        feature.writeVarintField(3, type);
+        feature.writePackedField(4, geometry, geometryLength);
+        features.add(feature.toByteArray());
+    }
+
+    private static byte[] encodeValue(Object value) {
+        var writer = new ProtobufWriter();
+        switch (value) {
+            case String string -> writer.writeStringField(1, string);
+            case Double number -> writer.writeDoubleField(3, number);
+            case Float number -> writer.writeDoubleField(3, number);
+            case Boolean bool -> writer.writeVarintField(7, bool ? 1 : 0);
+            case Number number -> writer.writeVarintField(6, zigzag(number.longValue()));
+            default -> writer.writeStringField(1, value.toString());
+        }
+        return writer.toByteArray();
+    }
+
+    // points that land on the same tile coordinate add nothing to the line
+    private static int[] withoutRepeatedPoints(int[] part) {
+        int[] line = new int[part.length];
+        int size = 0;
+        for (int i = 0; i + 1 < part.length; i += 2) {
+            if (size == 0 || part[i] != line[size - 2] || part[i + 1] != line[size - 1]) {
+                line[size++] = part[i];
+                line[size++] = part[i + 1];
+            }
+        }
+        return Arrays.copyOf(line, size);
+    }
+
+    private static int command(int id, int count) {
+        return (id & 0x7) | (count << 3);
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
@@ -0,0 +1,32 @@
+package ee.taltech.iti03022024backend.tile;
+
+/**
+ * Converts between latitudes and longitudes and the tile grid of web maps, where tile (0, 0) is the
+ * north west corner and each zoom level splits every tile in four. Tile coordinates are fractional,
+ * the whole part is the tile and the rest is the position within it.
+ */
+public final class WebMercator {
+    // the projection ends here so the world is square
+    public static final double MAX_LATITUDE = 85.05112878;
+
+    private WebMercator() {
+    }
+
+    public static double tileX(double longitude, int zoom) {
+        return (longitude + 180) / 360 * (1L << zoom);
+    }
+
+    public static double tileY(double latitude, int zoom) {
+        double phi = Math.toRadians(Math.clamp(latitude, -MAX_LATITUDE, MAX_LATITUDE));
+        return (1 - Math.log(Math.tan(phi) + 1 / Math.cos(phi)) / Math.PI) / 2 * (1L << zoom);
+    }
+
+    public static double longitude(double tileX, int zoom) {
+        return Math.clamp(tileX / (1L << zoom) * 360 - 180, -180, 180);
+    }
+
+    public static double latitude(double tileY, int zoom) {
+        double n = Math.PI * (1 - 2 * tileY / (1L << zoom));
+        return Math.clamp(Math.toDegrees(Math.atan(Math.sinh(n))), -MAX_LATITUDE, MAX_LATITUDE);
+    }
+}
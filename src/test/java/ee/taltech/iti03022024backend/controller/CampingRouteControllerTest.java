@@ -2,6 +2,7 @@ package ee.taltech.iti03022024backend.controller;
 
 import ee.taltech.iti03022024backend.AbstractIntegrationTest;
 import ee.taltech.iti03022024backend.dto.CampingRouteDto;
+import ee.taltech.iti03022024backend.dto.CampingRouteSearchMode;
 import ee.taltech.iti03022024backend.dto.CampingRouteSearchRequest;
 import jakarta.transaction.Transactional;
 import org.junit.jupiter.api.Test;
@@ -14,6 +15,8 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
@@ -32,6 +35,8 @@ class CampingRouteControllerTest extends AbstractIntegrationTest {
     static Stream<Object[]> provideTestParameters() {
         return Stream.of(
                 new Object[]{"/api/public/camping_routes/search", "2", 0, 5, 1, 1},
+                new Object[]{"/api/public/camping_routes/search", "rou", 0, 5, 2, 1},
+                new Object[]{"/api/public/camping_routes/search", "Tëst locations", 0, 5, 2, 1},
                 new Object[]{"/api/public/camping_routes", "", 0, 5, 2, 1},
                 new Object[]{"/api/public/camping_routes/user", "2", 0, 5, 1, 1}
         );
@@ -86,6 +91,84 @@ class CampingRouteControllerTest extends AbstractIntegrationTest {
                 .andExpect(jsonPath("$.totalPages").value(expectedTotalPages));
     }
 
+    @Test
+    @Transactional
+    void givenMisspelledKeyword_whenFuzzySearch_thenReturnsSimilarCampingRoutes() throws Exception {
+        CampingRouteSearchRequest searchRequest = new CampingRouteSearchRequest();
+        searchRequest.setKeyword("Locaton");
+        searchRequest.setMode(CampingRouteSearchMode.FUZZY);
+        searchRequest.setPageNumber(0);
+        searchRequest.setPageSize(5);
+
+        mvc.perform(post("/api/public/camping_routes/search")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(searchRequest)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalElements").value(2));
+
+        searchRequest.setKeyword("Mountain");
+
+        mvc.perform(post("/api/public/camping_routes/search")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(searchRequest)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalElements").value(0));
+    }
+
+    @Test
+    void givenRadiusWithoutCenter_whenSearchCampingRoutes_thenReturnsBadRequest() throws Exception {
+        CampingRouteSearchRequest searchRequest = new CampingRouteSearchRequest();
+        searchRequest.setRadiusKm(10.0);
+        searchRequest.setPageNumber(0);
+        searchRequest.setPageSize(5);
+
+        mvc.perform(post("/api/public/camping_routes/search")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(searchRequest)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    void givenCursorOfPreviousSlice_whenScrollCampingRoutes_thenReturnsNextSlice() throws Exception {
+        CampingRouteSearchRequest searchRequest = new CampingRouteSearchRequest();
+        searchRequest.setPageSize(1);
+
+        String firstSlice = mvc.perform(post("/api/public/camping_routes/scroll")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(searchRequest)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(1))
+                .andExpect(jsonPath("$.content[0].id").value(2))
+                .andExpect(jsonPath("$.nextCursor").isNotEmpty())
+                .andReturn().getResponse().getContentAsString();
+
+        searchRequest.setAfter(objectMapper.readTree(firstSlice).get("nextCursor").asText());
+
+        mvc.perform(post("/api/public/camping_routes/scroll")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(searchRequest)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(1))
+                .andExpect(jsonPath("$.content[0].id").value(1))
+                .andExpect(jsonPath("$.nextCursor").isEmpty());
+    }
+
+    @Test
+    @Transactional
+    void givenMalformedCursor_whenScrollFoundCampingRoutes_thenReturnsBadRequest() throws Exception {
+        CampingRouteSearchRequest searchRequest = new CampingRouteSearchRequest();
+        searchRequest.setKeyword("Test");
+        searchRequest.setPageSize(1);
+        searchRequest.setAfter("bm90LWEtY3Vyc29y");
+
+        mvc.perform(post("/api/public/camping_routes/search/scroll")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(searchRequest)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Cursor is not valid"));
+    }
+
     @Test
     @Transactional
     void givenExistingCampingRoute_whenGetCampingRoute_thenReturnsOkAndCorrectData() throws Exception {
@@ -98,6 +181,30 @@ class CampingRouteControllerTest extends AbstractIntegrationTest {
                 .andExpect(jsonPath("$.location").value("Test Location"));
     }
 
+    @Test
+    @Transactional
+    void givenCampingRouteIds_whenGetCampingRouteSummaries_thenReturnsExistingRoutesInOrder() throws Exception {
+        mvc.perform(get("/api/public/camping_routes/summaries").param("ids", "2", "999", "1"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].campingRouteId").value(2))
+                .andExpect(jsonPath("$[0].coverImageName").isEmpty())
+                .andExpect(jsonPath("$[0].commentsCount").value(1))
+                .andExpect(jsonPath("$[0].viewsCount").isNumber())
+                .andExpect(jsonPath("$[1].campingRouteId").value(1))
+                .andExpect(jsonPath("$[1].commentsCount").value(0));
+    }
+
+    @Test
+    void givenTooManyCampingRouteIds_whenGetCampingRouteSummaries_thenReturnsBadRequest() throws Exception {
+        String ids = LongStream.rangeClosed(1, 101).mapToObj(Long::toString).collect(Collectors.joining(","));
+
+        mvc.perform(get("/api/public/camping_routes/summaries").param("ids", ids))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Between 1 and 100 IDs must be provided"));
+    }
+
     @Test
     @Transactional
     void givenCampingRouteId_whenDeleteCampingRouteAndUserLoggedIn_thenReturnsNoContent() throws Exception {
@@ -3,19 +3,28 @@ package ee.taltech.iti03022024backend.controller;
 import ee.taltech.iti03022024backend.AbstractIntegrationTest;
 import jakarta.transaction.Transactional;
 import org.junit.jupiter.api.Test;
+import ee.taltech.iti03022024backend.gpx.GpxTrackCodec;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 
@@ -45,7 +54,96 @@ class CampingRouteGpxControllerTest extends AbstractIntegrationTest {
         givenGpxFileAndCampingRouteId_whenAddGpxFileToCampingRoute_thenReturnsOK();
         mvc.perform(get("/api/public/camping_routes/gpx/{id}", 1L))
                 .andExpect(status().isOk())
-                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+                .andExpect(content().contentType("application/gpx+xml"))
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"));
+    }
+
+    @Test
+    @Transactional
+    void givenGzipAccepted_whenGetGpx_thenReturnCompressedGpxFile() throws Exception {
+        givenGpxFileAndCampingRouteId_whenAddGpxFileToCampingRoute_thenReturnsOK();
+        byte[] gpx = Files.readAllBytes(new File("src/test/resources/anija.gpx").toPath());
+
+        byte[] body = mvc.perform(get("/api/public/camping_routes/gpx/{id}", 1L).header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            assertArrayEquals(gpx, in.readAllBytes());
+        }
+        assertTrue(body.length < gpx.length / 4);
+    }
+
+    @Test
+    @Transactional
+    void givenCampingRouteId_whenGetElevationProfile_thenReturnOkAndProfile() throws Exception {
+        givenGpxFileAndCampingRouteId_whenAddGpxFileToCampingRoute_thenReturnsOK();
+        mvc.perform(get("/api/public/camping_routes/gpx/{id}/profile", 1L))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.distanceMeters").value(4909.3))
+                .andExpect(jsonPath("$.elevations.length()").value(100));
+    }
+
+    @Test
+    @Transactional
+    void givenMatchingETag_whenGetGpx_thenReturnNotModified() throws Exception {
+        givenGpxFileAndCampingRouteId_whenAddGpxFileToCampingRoute_thenReturnsOK();
+        String eTag = mvc.perform(get("/api/public/camping_routes/gpx/{id}", 1L))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mvc.perform(get("/api/public/camping_routes/gpx/{id}", 1L).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    @Transactional
+    void givenRange_whenGetGpx_thenReturnPartialContent() throws Exception {
+        givenGpxFileAndCampingRouteId_whenAddGpxFileToCampingRoute_thenReturnsOK();
+        byte[] gpx = Files.readAllBytes(new File("src/test/resources/anija.gpx").toPath());
+
+        mvc.perform(get("/api/public/camping_routes/gpx/{id}", 1L).header(HttpHeaders.RANGE, "bytes=10-19"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 10-19/" + gpx.length))
+                .andExpect(content().bytes(Arrays.copyOfRange(gpx, 10, 20)));
+    }
+
+    @Test
+    @Transactional
+    void givenZoom_whenGetGpx_thenReturnOk() throws Exception {
+        givenGpxFileAndCampingRouteId_whenAddGpxFileToCampingRoute_thenReturnsOK();
+        mvc.perform(get("/api/public/camping_routes/gpx/{id}", 1L).param("zoom", "12"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void givenNegativeTolerance_whenGetTrack_thenReturnBadRequest() throws Exception {
+        mvc.perform(get("/api/public/camping_routes/gpx/{id}/track", 1L).param("tolerance", "-1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    void givenCampingRouteId_whenGetTrack_thenReturnOkAndEncodedTrack() throws Exception {
+        givenGpxFileAndCampingRouteId_whenAddGpxFileToCampingRoute_thenReturnsOK();
+        mvc.perform(get("/api/public/camping_routes/gpx/{id}/track", 1L))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(GpxTrackCodec.MEDIA_TYPE));
+    }
+
+    @Test
+    @Transactional
+    void givenJsonAccepted_whenGetTrack_thenReturnOkAndTrackAsJson() throws Exception {
+        givenGpxFileAndCampingRouteId_whenAddGpxFileToCampingRoute_thenReturnsOK();
+        mvc.perform(get("/api/public/camping_routes/gpx/{id}/track", 1L)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.latitudes.length()").value(784))
+                .andExpect(jsonPath("$.segmentStarts[0]").value(0));
     }
 
     @Test
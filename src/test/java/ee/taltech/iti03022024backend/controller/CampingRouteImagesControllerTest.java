@@ -3,11 +3,13 @@ package ee.taltech.iti03022024backend.controller;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import ee.taltech.iti03022024backend.AbstractIntegrationTest;
 import ee.taltech.iti03022024backend.dto.CampingRouteImageNamesDto;
+import ee.taltech.iti03022024backend.service.CampingRouteImageIndex;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
@@ -18,6 +20,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Comparator;
 
+import static org.hamcrest.Matchers.startsWith;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -32,6 +35,9 @@ class CampingRouteImagesControllerTest extends AbstractIntegrationTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private CampingRouteImageIndex imageIndex;
+
     private final Path rootDir = Paths.get("files", "camping_route_images");
 
     @BeforeEach
@@ -43,6 +49,7 @@ class CampingRouteImagesControllerTest extends AbstractIntegrationTest {
                     .forEach(File::delete);
         }
         Files.createDirectories(rootDir);
+        imageIndex.removeAll(1L);
     }
 
     @Test
@@ -83,7 +90,9 @@ class CampingRouteImagesControllerTest extends AbstractIntegrationTest {
         String actualImageName = responseDto.getImageNames().get(0);
         mvc.perform(get("/api/public/camping_routes/images/{id}/{imageName}", 1L, actualImageName))
                 .andExpect(status().isOk())
-                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, startsWith("image/")))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public, immutable"))
+                .andExpect(header().exists(HttpHeaders.ETAG));
     }
 
     @Test
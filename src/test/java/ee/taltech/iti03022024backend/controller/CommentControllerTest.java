@@ -10,6 +10,7 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -52,6 +53,43 @@ class CommentControllerTest extends AbstractIntegrationTest {
                 .andExpect(jsonPath("$[0].content").value("Test Comment"));
     }
 
+    @Test
+    @Transactional
+    void givenLimit_whenGetCommentsByCampingRoute_thenReturnsSlice() throws Exception {
+        mvc.perform(get("/api/public/camping_routes/comments/{campingRouteId}", 2L).param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(1)))
+                .andExpect(jsonPath("$.content[0].content").value("Test Comment"))
+                .andExpect(jsonPath("$.nextCursor").isEmpty());
+
+        mvc.perform(get("/api/public/camping_routes/comments/{campingRouteId}", 2L)
+                        .param("limit", "1")
+                        .param("after", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(0)));
+    }
+
+    @Test
+    @Transactional
+    void givenTooLargeLimit_whenGetCommentsByCampingRoute_thenReturnsBadRequest() throws Exception {
+        mvc.perform(get("/api/public/camping_routes/comments/{campingRouteId}", 2L).param("limit", "1000"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Limit must not exceed 100"));
+    }
+
+    @Test
+    void givenCampingRouteId_whenStreamCommentsByCampingRoute_thenStreamsNdjson() throws Exception {
+        MvcResult result = mvc.perform(get("/api/public/camping_routes/comments/{campingRouteId}/stream", 2L)
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"id\":1,\"content\":\"Test Comment\",\"userID\":1}\n"));
+    }
+
     @Test
     @Transactional
     void givenUserId_whenGetCommentsByUserId_thenReturnsOk() throws Exception {
@@ -0,0 +1,104 @@
+package ee.taltech.iti03022024backend.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ee.taltech.iti03022024backend.AbstractIntegrationTest;
+import ee.taltech.iti03022024backend.dto.CampingRouteSearchRequest;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.transaction.Transactional;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Listings must not load the author of every route or comment separately.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class ListingStatementCountTest extends AbstractIntegrationTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    private long statementCount(RequestBuilder request) throws Exception {
+        statistics.clear();
+        mvc.perform(request).andExpect(status().isOk());
+        return statistics.getPrepareStatementCount();
+    }
+
+    private RequestBuilder postSearch(String url, String keyword) throws Exception {
+        CampingRouteSearchRequest searchRequest = new CampingRouteSearchRequest();
+        searchRequest.setKeyword(keyword);
+        searchRequest.setPageSize(10);
+
+        return post(url)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(searchRequest));
+    }
+
+    @Test
+    @Transactional
+    void givenCampingRoutesOfUser_whenGetCampingRoutesByUserId_thenOneStatement() throws Exception {
+        assertThat(statementCount(postSearch("/api/public/camping_routes/user", "2"))).isEqualTo(1);
+    }
+
+    @Test
+    @Transactional
+    void givenMatchingCampingRoutes_whenSearchCampingRoutes_thenOneStatement() throws Exception {
+        assertThat(statementCount(postSearch("/api/public/camping_routes/search", "Test"))).isEqualTo(1);
+    }
+
+    @Test
+    @Transactional
+    void givenCampingRoutes_whenScrollCampingRoutes_thenOneStatement() throws Exception {
+        assertThat(statementCount(postSearch("/api/public/camping_routes/scroll", ""))).isEqualTo(1);
+    }
+
+    @Test
+    @Transactional
+    void givenCommentsOfCampingRoute_whenGetCommentsByCampingRoute_thenOneStatement() throws Exception {
+        statistics.clear();
+        mvc.perform(get("/api/public/camping_routes/comments/{campingRouteId}", 2L))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].userID").value(1));
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    @Transactional
+    void givenCommentsOfUser_whenGetCommentsByUserId_thenOneStatement() throws Exception {
+        assertThat(statementCount(get("/api/public/camping_routes/comments/user/{userId}", 1L))).isEqualTo(1);
+    }
+
+    @Test
+    @Transactional
+    void givenCampingRoute_whenGetCampingRoute_thenOneStatement() throws Exception {
+        assertThat(statementCount(get("/api/public/camping_routes/{id}", 1L))).isEqualTo(1);
+    }
+}
@@ -2,6 +2,7 @@ package ee.taltech.iti03022024backend.controller;
 
 import ee.taltech.iti03022024backend.AbstractIntegrationTest;
 import ee.taltech.iti03022024backend.repository.ViewRepository;
+import ee.taltech.iti03022024backend.service.CampingRouteViewCounter;
 import jakarta.transaction.Transactional;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,8 +10,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.web.servlet.MockMvc;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -24,9 +27,17 @@ class ViewsControllerTest extends AbstractIntegrationTest {
     @Autowired
     private ViewRepository viewRepository;
 
+    @Autowired
+    private CampingRouteViewCounter viewCounter;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @BeforeEach
     void clearViews() {
         viewRepository.deleteAll();
+        jdbcTemplate.update("UPDATE camping_route SET view_count = 0");
+        viewCounter.evict(2L);
     }
 
     @Test
@@ -69,4 +80,32 @@ class ViewsControllerTest extends AbstractIntegrationTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.viewsCount").value(2));
     }
-}
\ No newline at end of file
+
+    @Test
+    @Transactional
+    void givenAddedViews_whenFlush_thenViewsArePersisted() throws Exception {
+        long campingRouteId = 2L;
+
+        for (int i = 0; i < 3; i++) {
+            mvc.perform(post("/api/public/camping_routes/views/{campingRouteId}", campingRouteId)
+                    .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk());
+        }
+
+        viewCounter.flush();
+
+        assertThat(viewRepository.countByCampingRoute_Id(campingRouteId)).isEqualTo(3);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT view_count FROM camping_route WHERE id = ?", Long.class, campingRouteId)).isEqualTo(3);
+        mvc.perform(get("/api/public/camping_routes/views/{campingRouteId}", campingRouteId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.viewsCount").value(3));
+    }
+
+    @Test
+    void givenNonExistingCampingRoute_whenAddView_thenReturnsNotFound() throws Exception {
+        mvc.perform(post("/api/public/camping_routes/views/{campingRouteId}", 999L)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotFound());
+    }
+}
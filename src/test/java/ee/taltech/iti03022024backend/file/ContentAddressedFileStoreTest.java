@@ -0,0 +1,182 @@
+package ee.taltech.iti03022024backend.file;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ContentAddressedFileStoreTest {
+    // SHA-256 of "photo"
+    private static final String PHOTO_SHA256 = "55c64d0fcd6f9d5f7c828093857e3fdfda68478bb4e9bd24d481ef391c7804e8";
+
+    @TempDir
+    Path tempDir;
+
+    private final FileResponses fileResponses = new FileResponses();
+
+    private ContentAddressedFileStore store() {
+        return new ContentAddressedFileStore(tempDir, fileResponses);
+    }
+
+    private static FileStore.StoredFile store(FileStore store, String content, String key) throws IOException {
+        return store.store(content.getBytes(StandardCharsets.UTF_8), key);
+    }
+
+    private static String read(FileStore store, String key) throws IOException {
+        try (InputStream in = store.open(key)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private long blobCount() throws IOException {
+        try (Stream<Path> files = Files.find(tempDir.resolve("blobs"), 3,
+                (path, attributes) -> attributes.isRegularFile() && !path.getParent().endsWith("staging"))) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void givenSameContentTwice_whenStore_thenContentIsStoredOnce() throws IOException {
+        var store = store();
+
+        var firstStored = store(store, "photo", "images/1/a.jpg");
+        var secondStored = store(store, "photo", "images/2/b.jpg");
+
+        assertThat(firstStored.duplicate()).isFalse();
+        assertThat(secondStored.duplicate()).isTrue();
+        assertThat(secondStored.sha256()).isEqualTo(firstStored.sha256());
+        assertThat(secondStored.size()).isEqualTo(5);
+        assertThat(read(store, "images/2/b.jpg")).isEqualTo("photo");
+        assertThat(Files.isSameFile(tempDir.resolve("images/1/a.jpg"), tempDir.resolve("images/2/b.jpg"))).isTrue();
+        assertThat(blobCount()).isEqualTo(1);
+    }
+
+    @Test
+    void givenContent_whenStore_thenBlobIsShardedByHash() throws IOException {
+        var store = store();
+
+        var stored = store(store, "photo", "a.jpg");
+
+        assertThat(stored.sha256()).isEqualTo(PHOTO_SHA256);
+        Path blob = store.blobPath(stored.sha256());
+        assertThat(blob.getParent().getFileName()).hasToString(stored.sha256().substring(2, 4));
+        assertThat(blob.getParent().getParent().getFileName()).hasToString(stored.sha256().substring(0, 2));
+        assertThat(Files.isSameFile(blob, tempDir.resolve("a.jpg"))).isTrue();
+    }
+
+    @Test
+    void givenExistingFile_whenStore_thenFileIsReplaced() throws IOException {
+        var store = store();
+
+        store(store, "<gpx>old</gpx>", "gpx/1.gpx");
+        var before = store.info("gpx/1.gpx").orElseThrow();
+        store(store, "<gpx>new</gpx>", "gpx/1.gpx");
+
+        assertThat(read(store, "gpx/1.gpx")).isEqualTo("<gpx>new</gpx>");
+        assertThat(store.info("gpx/1.gpx").orElseThrow().version()).isNotEqualTo(before.version());
+        assertThat(store.list("gpx")).containsExactly("1.gpx");
+    }
+
+    @Test
+    void givenUncommittedUpload_whenClose_thenNothingIsStored() throws IOException {
+        var store = store();
+
+        try (FileStore.Upload upload = store.newUpload("gpx/1.gpx")) {
+            try (OutputStream out = upload.outputStream()) {
+                out.write("invalid".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        assertThat(store.info("gpx/1.gpx")).isEmpty();
+        assertThat(blobCount()).isZero();
+        try (Stream<Path> staging = Files.list(tempDir.resolve("blobs").resolve("staging"))) {
+            assertThat(staging).isEmpty();
+        }
+    }
+
+    @Test
+    void givenDirectory_whenListAndDeleteAll_thenSubdirectoriesAreOnlyDeleted() throws IOException {
+        var store = store();
+        store(store, "a", "images/1/a.jpg");
+        store(store, "b", "images/1/b.jpg");
+        store(store, "a small", "images/1/derivatives/a-320.jpg");
+
+        assertThat(store.list("images/1")).containsExactlyInAnyOrder("a.jpg", "b.jpg");
+        assertThat(store.deleteAll("images/1")).isEqualTo(3);
+        assertThat(store.list("images/1")).isEmpty();
+        assertThat(store.deleteAll("images/1")).isZero();
+    }
+
+    @Test
+    void givenKeyOutsideOfRoot_whenOpen_thenThrowNoSuchFileException() throws IOException {
+        var store = store();
+        var stored = store(store, "photo", "a.jpg");
+
+        assertThatThrownBy(() -> store.open("../secret")).isInstanceOf(NoSuchFileException.class);
+        assertThatThrownBy(() -> store.open("blobs/" + stored.sha256().substring(0, 2))).isInstanceOf(NoSuchFileException.class);
+    }
+
+    @Test
+    void givenStoredFile_whenServe_thenFileIsTheBody() throws IOException {
+        var store = store();
+        store(store, "photo", "images/1/a.jpg");
+
+        var response = store.serve("images/1/a.jpg", MediaType.IMAGE_JPEG,
+                CacheControl.noCache(), HttpHeaders.EMPTY);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getBody().getFile().toPath()).isEqualTo(tempDir.resolve("images/1/a.jpg"));
+    }
+
+    @Test
+    void givenFileServedOften_whenServe_thenItIsServedFromMemoryUntilReplaced() throws IOException {
+        var store = new ContentAddressedFileStore(tempDir, fileResponses, new HotFileCache(1024, 1024));
+        store(store, "photo", "images/1/a.jpg");
+        var fromDisk = store.serve("images/1/a.jpg", MediaType.IMAGE_JPEG, CacheControl.noCache(), HttpHeaders.EMPTY);
+        store.serve("images/1/a.jpg", MediaType.IMAGE_JPEG, CacheControl.noCache(), HttpHeaders.EMPTY);
+
+        var fromMemory = store.serve("images/1/a.jpg", MediaType.IMAGE_JPEG, CacheControl.noCache(), HttpHeaders.EMPTY);
+
+        assertThat(fromMemory.getBody().isFile()).isFalse();
+        assertThat(fromMemory.getBody().getContentAsByteArray()).isEqualTo("photo".getBytes(StandardCharsets.UTF_8));
+        assertThat(fromMemory.getHeaders().getETag()).isEqualTo(fromDisk.getHeaders().getETag());
+        assertThat(fromMemory.getHeaders().getLastModified()).isEqualTo(fromDisk.getHeaders().getLastModified());
+
+        store(store, "other photo", "images/1/a.jpg");
+        var replaced = store.serve("images/1/a.jpg", MediaType.IMAGE_JPEG, CacheControl.noCache(), HttpHeaders.EMPTY);
+
+        assertThat(replaced.getBody().getContentAsByteArray()).isEqualTo("other photo".getBytes(StandardCharsets.UTF_8));
+        assertThat(replaced.getHeaders().getETag()).isNotEqualTo(fromDisk.getHeaders().getETag());
+    }
+
+    @Test
+    void givenDeletedFiles_whenCollectGarbage_thenOnlyUnusedBlobsAreRemoved() throws IOException {
+        var store = store();
+        store(store, "photo", "a.jpg");
+        store(store, "photo", "b.jpg");
+        store(store, "other photo", "c.jpg");
+
+        assertThat(store.delete("b.jpg")).isTrue();
+        assertThat(store.delete("c.jpg")).isTrue();
+        assertThat(store.delete("c.jpg")).isFalse();
+        int removed = store.collectGarbage();
+
+        assertThat(removed).isEqualTo(1);
+        assertThat(blobCount()).isEqualTo(1);
+        assertThat(read(store, "a.jpg")).isEqualTo("photo");
+        assertThat(store(store, "photo", "b.jpg").duplicate()).isTrue();
+    }
+}
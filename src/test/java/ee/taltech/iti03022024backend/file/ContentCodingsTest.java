@@ -0,0 +1,35 @@
+package ee.taltech.iti03022024backend.file;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentCodingsTest {
+
+    @Test
+    void givenNamedCoding_whenAccepts_thenTrue() {
+        assertThat(ContentCodings.accepts("gzip, deflate, br", ContentCodings.GZIP)).isTrue();
+        assertThat(ContentCodings.accepts("br;q=1.0, GZIP;q=0.5", ContentCodings.GZIP)).isTrue();
+        assertThat(ContentCodings.accepts("x-gzip", ContentCodings.GZIP)).isTrue();
+    }
+
+    @Test
+    void givenMissingOrOtherCodings_whenAccepts_thenFalse() {
+        assertThat(ContentCodings.accepts(null, ContentCodings.GZIP)).isFalse();
+        assertThat(ContentCodings.accepts("", ContentCodings.GZIP)).isFalse();
+        assertThat(ContentCodings.accepts("deflate, br", ContentCodings.GZIP)).isFalse();
+    }
+
+    @Test
+    void givenZeroQuality_whenAccepts_thenFalse() {
+        assertThat(ContentCodings.accepts("gzip;q=0", ContentCodings.GZIP)).isFalse();
+        assertThat(ContentCodings.accepts("*, gzip;q=0.0", ContentCodings.GZIP)).isFalse();
+        assertThat(ContentCodings.accepts("gzip;q=abc", ContentCodings.GZIP)).isFalse();
+    }
+
+    @Test
+    void givenWildcard_whenAccepts_thenWildcardDecides() {
+        assertThat(ContentCodings.accepts("*", ContentCodings.GZIP)).isTrue();
+        assertThat(ContentCodings.accepts("identity, *;q=0", ContentCodings.GZIP)).isFalse();
+    }
+}
@@ -0,0 +1,106 @@
+package ee.taltech.iti03022024backend.file;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileChannelResourceHttpMessageConverterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+    private final ServletServerHttpResponse response = new ServletServerHttpResponse(servletResponse);
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    private Path file(int size) throws IOException {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return Files.write(tempDir.resolve("image.jpg"), content);
+    }
+
+    @Test
+    void givenFileResource_whenWrite_thenWholeFileIsWritten() throws IOException {
+        Path file = file(200_000);
+
+        new FileChannelResourceHttpMessageConverter().write(new FileSystemResource(file), MediaType.IMAGE_JPEG, response);
+
+        assertThat(servletResponse.getContentLength()).isEqualTo(200_000);
+        assertThat(servletResponse.getContentAsByteArray()).isEqualTo(Files.readAllBytes(file));
+    }
+
+    @Test
+    void givenFileRegion_whenWrite_thenRangeIsWritten() throws IOException {
+        Path file = file(1000);
+        var region = new ResourceRegion(new FileSystemResource(file), 100, 50);
+
+        new FileChannelResourceRegionHttpMessageConverter().write(List.of(region), null, MediaType.IMAGE_JPEG, response);
+
+        assertThat(servletResponse.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 100-149/1000");
+        assertThat(servletResponse.getContentLength()).isEqualTo(50);
+        assertThat(servletResponse.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(Files.readAllBytes(file), 100, 150));
+    }
+
+    @Test
+    void givenRegionPastEndOfFile_whenWrite_thenRangeEndsWithFile() throws IOException {
+        Path file = file(1000);
+        var region = new ResourceRegion(new FileSystemResource(file), 900, 500);
+
+        new FileChannelResourceRegionHttpMessageConverter().write(List.of(region), null, MediaType.IMAGE_JPEG, response);
+
+        assertThat(servletResponse.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 900-999/1000");
+        assertThat(servletResponse.getContentAsByteArray()).hasSize(100);
+    }
+
+    @Test
+    void givenContainerSupportsSendfile_whenWriteLargeFile_thenFileIsHandedToContainer() throws IOException {
+        Path file = file(200_000);
+        var request = new MockHttpServletRequest();
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        var region = new ResourceRegion(new FileSystemResource(file), 1000, 100_000);
+
+        new FileChannelResourceRegionHttpMessageConverter().write(List.of(region), null, MediaType.IMAGE_JPEG, response);
+
+        assertThat(servletResponse.getContentAsByteArray()).isEmpty();
+        assertThat(servletResponse.getContentLength()).isEqualTo(100_000);
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.filename")).isEqualTo(file.toAbsolutePath().toString());
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.start")).isEqualTo(1000L);
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.end")).isEqualTo(101_000L);
+    }
+
+    @Test
+    void givenContainerSupportsSendfile_whenWriteSmallFile_thenFileIsWritten() throws IOException {
+        Path file = file(1000);
+        var request = new MockHttpServletRequest();
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        new FileChannelResourceHttpMessageConverter().write(new FileSystemResource(file), MediaType.IMAGE_JPEG, response);
+
+        assertThat(servletResponse.getContentAsByteArray()).hasSize(1000);
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.filename")).isNull();
+    }
+}
@@ -0,0 +1,73 @@
+package ee.taltech.iti03022024backend.file;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileResponsesTest {
+    private static final CacheControl NO_CACHE = CacheControl.noCache();
+
+    @TempDir
+    Path tempDir;
+
+    private final FileResponses fileResponses = new FileResponses();
+
+    @Test
+    void givenFile_whenOk_thenValidatorsAndCacheHeadersAreSet() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("route.gpx"), "<gpx/>");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1_700_000_000_000L));
+
+        ResponseEntity<Resource> response = fileResponses.ok(file, MediaType.APPLICATION_XML, NO_CACHE);
+
+        assertThat(response.getHeaders().getETag()).startsWith("\"").endsWith("\"").hasSize(45);
+        assertThat(response.getHeaders().getLastModified()).isEqualTo(1_700_000_000_000L);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_XML);
+        assertThat(response.getHeaders().getCacheControl()).isEqualTo("no-cache");
+        assertThat(response.getBody().isFile()).isTrue();
+    }
+
+    @Test
+    void givenSameContent_whenOk_thenSameETagAsGeneratedContent() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("a.gpx"), "<gpx/>");
+        Path copy = Files.writeString(tempDir.resolve("b.gpx"), "<gpx/>");
+
+        String fileETag = fileResponses.ok(file, MediaType.APPLICATION_XML, NO_CACHE).getHeaders().getETag();
+        String copyETag = fileResponses.ok(copy, MediaType.APPLICATION_XML, NO_CACHE).getHeaders().getETag();
+        String generatedETag = fileResponses.ok("<gpx/>".getBytes(), MediaType.APPLICATION_XML, NO_CACHE).getHeaders().getETag();
+
+        assertThat(copyETag).isEqualTo(fileETag);
+        assertThat(generatedETag).isEqualTo(fileETag);
+    }
+
+    @Test
+    void givenReplacedFile_whenOk_thenETagIsRecomputed() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("route.gpx"), "<gpx/>");
+        String before = fileResponses.ok(file, MediaType.APPLICATION_XML, NO_CACHE).getHeaders().getETag();
+
+        Path staging = Files.writeString(tempDir.resolve("route.gpx.part"), "<gpx></gpx>");
+        Files.move(staging, file, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        String after = fileResponses.ok(file, MediaType.APPLICATION_XML, NO_CACHE).getHeaders().getETag();
+
+        assertThat(after).isNotEqualTo(before);
+    }
+
+    @Test
+    void givenMissingFileOrDirectory_whenOk_thenThrowNoSuchFileException() {
+        assertThatThrownBy(() -> fileResponses.ok(tempDir.resolve("missing.gpx"), MediaType.APPLICATION_XML, NO_CACHE))
+                .isInstanceOf(NoSuchFileException.class);
+        assertThatThrownBy(() -> fileResponses.ok(tempDir, MediaType.APPLICATION_XML, NO_CACHE))
+                .isInstanceOf(NoSuchFileException.class);
+    }
+}
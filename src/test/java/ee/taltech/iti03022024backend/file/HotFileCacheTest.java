@@ -0,0 +1,109 @@
+package ee.taltech.iti03022024backend.file;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotFileCacheTest {
+    // 50 bytes of window and 950 bytes of main space
+    private final HotFileCache cache = new HotFileCache(1000, 100);
+
+    private static HotFileCache.CachedFile file(int size) {
+        return new HotFileCache.CachedFile(new byte[size], "\"etag\"", Instant.EPOCH);
+    }
+
+    // what the store does for a request
+    private HotFileCache.CachedFile serve(Path path) {
+        HotFileCache.CachedFile cached = cache.get(path);
+        if (cached == null && cache.wants(path, 100)) {
+            cache.put(path, file(100), cache.version());
+        }
+        return cached;
+    }
+
+    @Test
+    void givenFileServedOnce_whenWants_thenItStaysOnDisk() {
+        Path path = Path.of("images/1/a.jpg");
+
+        assertThat(cache.get(path)).isNull();
+        assertThat(cache.wants(path, 100)).isFalse();
+
+        assertThat(cache.get(path)).isNull();
+        assertThat(cache.wants(path, 100)).isTrue();
+        assertThat(cache.wants(path, 101)).isFalse();
+    }
+
+    @Test
+    void givenPopularFiles_whenManyFilesAreServedTwice_thenPopularFilesAreKept() {
+        for (int i = 0; i < 5; i++) {
+            for (int request = 0; request < 5; request++) {
+                serve(Path.of("popular/" + i));
+            }
+        }
+
+        for (int i = 0; i < 50; i++) {
+            serve(Path.of("scan/" + i));
+            serve(Path.of("scan/" + i));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(cache.get(Path.of("popular/" + i))).isNotNull();
+        }
+        assertThat(cache.bytes()).isLessThanOrEqualTo(1000);
+    }
+
+    @Test
+    void givenFileReplacedWhileRead_whenPut_thenItIsNotKept() {
+        Path path = Path.of("images/1/a.jpg");
+        long version = cache.version();
+
+        cache.invalidate(path);
+        cache.put(path, file(10), version);
+
+        assertThat(cache.get(path)).isNull();
+    }
+
+    @Test
+    void givenDeletedDirectory_whenInvalidateAll_thenOnlyItsFilesAreDropped() {
+        cache.put(Path.of("images/1/a.jpg"), file(10), cache.version());
+        cache.put(Path.of("images/1/derivatives/a-320.jpg"), file(10), cache.version());
+        cache.put(Path.of("images/12/a.jpg"), file(10), cache.version());
+
+        cache.invalidateAll(Path.of("images/1"));
+
+        assertThat(cache.get(Path.of("images/1/a.jpg"))).isNull();
+        assertThat(cache.get(Path.of("images/1/derivatives/a-320.jpg"))).isNull();
+        assertThat(cache.get(Path.of("images/12/a.jpg"))).isNotNull();
+        assertThat(cache.bytes()).isEqualTo(10);
+    }
+
+    @Test
+    void givenRequests_whenBoundToRegistry_thenHitsAndMissesAreCounted() {
+        var registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        Path path = Path.of("images/1/a.jpg");
+
+        serve(path);
+        serve(path);
+        serve(path);
+
+        assertThat(registry.get("cache.gets").tag("result", "hit").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("cache.gets").tag("result", "miss").functionCounter().count()).isEqualTo(2);
+        assertThat(registry.get("cache.bytes").gauge().value()).isEqualTo(100);
+    }
+
+    @Test
+    void givenNoBudget_whenServe_thenNothingIsKept() {
+        var disabled = new HotFileCache(0, 0);
+        Path path = Path.of("images/1/a.jpg");
+
+        disabled.get(path);
+        disabled.get(path);
+
+        assertThat(disabled.wants(path, 1)).isFalse();
+    }
+}
@@ -0,0 +1,135 @@
+package ee.taltech.iti03022024backend.file;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.testcontainers.containers.MinIOContainer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class S3FileStoreTest {
+    private static final String BUCKET = "files";
+
+    private static final MinIOContainer MINIO = new MinIOContainer("minio/minio:RELEASE.2024-10-13T13-34-11Z");
+
+    private static S3FileStore store;
+
+    @BeforeAll
+    static void setUp() {
+        MINIO.start();
+        var credentials = StaticCredentialsProvider.create(AwsBasicCredentials.create(MINIO.getUserName(), MINIO.getPassword()));
+        var s3 = S3Configuration.builder().pathStyleAccessEnabled(true).build();
+        var endpoint = URI.create(MINIO.getS3URL());
+        var client = S3Client.builder().region(Region.US_EAST_1).credentialsProvider(credentials)
+                .serviceConfiguration(s3).endpointOverride(endpoint).build();
+        var presigner = S3Presigner.builder().region(Region.US_EAST_1).credentialsProvider(credentials)
+                .serviceConfiguration(s3).endpointOverride(endpoint).build();
+        client.createBucket(request -> request.bucket(BUCKET));
+        store = new S3FileStore(client, presigner, BUCKET, Duration.ofMinutes(5));
+    }
+
+    @AfterAll
+    static void tearDown() {
+        store.close();
+        MINIO.stop();
+    }
+
+    private static String read(String key) throws IOException {
+        try (InputStream in = store.open(key)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void givenSmallFile_whenStore_thenFileCanBeReadAndListed() throws IOException {
+        var stored = store.store("photo".getBytes(StandardCharsets.UTF_8), "images/1/a.jpg");
+
+        assertThat(stored.sha256()).isEqualTo("55c64d0fcd6f9d5f7c828093857e3fdfda68478bb4e9bd24d481ef391c7804e8");
+        assertThat(read("images/1/a.jpg")).isEqualTo("photo");
+        assertThat(store.info("images/1/a.jpg").orElseThrow().size()).isEqualTo(5);
+        assertThat(store.list("images/1")).containsExactly("a.jpg");
+    }
+
+    @Test
+    void givenFileOfSeveralParts_whenStore_thenPartsAreJoined() throws IOException {
+        byte[] content = new byte[S3FileStore.PART_SIZE * 2 + 1000];
+        Arrays.fill(content, (byte) 'x');
+
+        var stored = store.store(content, "gpx/large.gpx");
+
+        assertThat(stored.size()).isEqualTo(content.length);
+        try (InputStream in = store.open("gpx/large.gpx")) {
+            assertThat(in.readAllBytes()).isEqualTo(content);
+        }
+    }
+
+    @Test
+    void givenUncommittedUpload_whenClose_thenNothingIsStored() throws IOException {
+        try (FileStore.Upload upload = store.newUpload("gpx/invalid.gpx")) {
+            try (OutputStream out = upload.outputStream()) {
+                out.write(new byte[S3FileStore.PART_SIZE + 1]);
+            }
+        }
+
+        assertThat(store.info("gpx/invalid.gpx")).isEmpty();
+        assertThatThrownBy(() -> store.open("gpx/invalid.gpx")).isInstanceOf(NoSuchFileException.class);
+    }
+
+    @Test
+    void givenStoredFile_whenServe_thenRedirectToPresignedUrlWithHeaders() throws Exception {
+        store.store("<gpx/>".getBytes(StandardCharsets.UTF_8), "gpx/1.gpx");
+        var headers = new HttpHeaders();
+        headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        var response = store.serve("gpx/1.gpx", MediaType.parseMediaType("application/gpx+xml"), CacheControl.noCache(), headers);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FOUND);
+        assertThat(response.getHeaders().getVary()).containsExactly(HttpHeaders.ACCEPT_ENCODING);
+        try (var client = HttpClient.newHttpClient()) {
+            var download = client.send(HttpRequest.newBuilder(response.getHeaders().getLocation()).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertThat(download.body()).isEqualTo("<gpx/>");
+            assertThat(download.headers().firstValue(HttpHeaders.CONTENT_TYPE)).hasValue("application/gpx+xml");
+            assertThat(download.headers().firstValue(HttpHeaders.CACHE_CONTROL)).hasValue("no-cache");
+        }
+    }
+
+    @Test
+    void givenMissingFile_whenServe_thenThrowNoSuchFileException() {
+        assertThatThrownBy(() -> store.serve("images/9/missing.jpg", MediaType.IMAGE_JPEG, CacheControl.noCache(), HttpHeaders.EMPTY))
+                .isInstanceOf(NoSuchFileException.class);
+    }
+
+    @Test
+    void givenDirectory_whenDeleteAll_thenEveryFileInItIsDeleted() throws IOException {
+        store.store("a".getBytes(StandardCharsets.UTF_8), "images/2/a.jpg");
+        store.store("a small".getBytes(StandardCharsets.UTF_8), "images/2/derivatives/a-320.jpg");
+
+        assertThat(store.list("images/2")).containsExactly("a.jpg");
+        assertThat(store.deleteAll("images/2")).isEqualTo(2);
+        assertThat(store.delete("images/2/a.jpg")).isFalse();
+    }
+}
@@ -0,0 +1,108 @@
+package ee.taltech.iti03022024backend.gpx;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class GpxElevationProfileTest {
+    // one thousandth of a degree of latitude
+    private static final double STEP_METERS = 111.195;
+
+    // points due north, elevation rises a meter per point
+    private static ElevationProfile climb(int points, int buckets) {
+        var profile = new GpxElevationProfile(buckets);
+        profile.segmentStart();
+        for (int i = 0; i < points; i++) {
+            profile.point(58 + i / 1000.0, 25, i, GpxPointConsumer.NO_TIME);
+        }
+        return profile.build();
+    }
+
+    @Test
+    void givenSteadyClimb_whenBuild_thenBucketsFollowTheClimb() {
+        ElevationProfile profile = climb(1001, 100);
+
+        assertThat(profile.distanceMeters()).isCloseTo(1000 * STEP_METERS, within(1.0));
+        assertThat(profile.bucketMeters()).isCloseTo(10 * STEP_METERS, within(0.01));
+        assertThat(profile.elevations()).hasSize(100);
+        for (int bucket = 0; bucket < 100; bucket++) {
+            assertThat(profile.distances()[bucket]).isCloseTo((bucket + 0.5) * profile.bucketMeters(), within(0.01));
+            assertThat(profile.elevations()[bucket]).isCloseTo(bucket * 10 + 5, within(1.5));
+            assertThat(profile.minElevations()[bucket]).isLessThanOrEqualTo(profile.elevations()[bucket]);
+            assertThat(profile.maxElevations()[bucket]).isGreaterThanOrEqualTo(profile.elevations()[bucket]);
+        }
+        assertThat(profile.minElevations()[0]).isZero();
+        assertThat(profile.maxElevations()[99]).isEqualTo(1000);
+    }
+
+    @Test
+    void givenTrackShorterThanBuckets_whenBuild_thenEveryBucketHasAnElevation() {
+        ElevationProfile profile = climb(3, 100);
+
+        assertThat(profile.elevations()).hasSize(100);
+        assertThat(Arrays.stream(profile.elevations()).boxed()).allSatisfy(elevation -> assertThat(elevation).isBetween(0.0, 2.0));
+        assertThat(profile.elevations()[0]).isZero();
+        assertThat(profile.elevations()[99]).isEqualTo(2);
+    }
+
+    @Test
+    void givenSparsePoints_whenBuild_thenEmptyBucketsAreInterpolated() {
+        var profile = new GpxElevationProfile(10);
+        profile.point(58.0, 25, 100, GpxPointConsumer.NO_TIME);
+        profile.point(58.1, 25, 200, GpxPointConsumer.NO_TIME);
+
+        ElevationProfile built = profile.build();
+
+        assertThat(built.elevations()[0]).isEqualTo(100);
+        assertThat(built.elevations()[9]).isEqualTo(200);
+        double[] middle = Arrays.copyOfRange(built.elevations(), 1, 9);
+        assertThat(middle).isSorted();
+        assertThat(Arrays.stream(middle).boxed()).allSatisfy(elevation -> assertThat(elevation).isStrictlyBetween(100.0, 200.0));
+    }
+
+    @Test
+    void givenSeparateSegments_whenBuild_thenGapBetweenSegmentsIsNotCounted() {
+        var profile = new GpxElevationProfile(10);
+        profile.segmentStart();
+        profile.point(58.0, 25, 10, GpxPointConsumer.NO_TIME);
+        profile.point(58.001, 25, 10, GpxPointConsumer.NO_TIME);
+        profile.segmentStart();
+        profile.point(59.0, 25, 10, GpxPointConsumer.NO_TIME);
+        profile.point(59.001, 25, 10, GpxPointConsumer.NO_TIME);
+
+        assertThat(profile.build().distanceMeters()).isCloseTo(2 * STEP_METERS, within(0.1));
+    }
+
+    @Test
+    void givenNoElevations_whenBuild_thenNoProfile() {
+        var profile = new GpxElevationProfile(10);
+        profile.point(58.0, 25, Double.NaN, GpxPointConsumer.NO_TIME);
+        profile.point(58.1, 25, Double.NaN, GpxPointConsumer.NO_TIME);
+
+        assertThat(profile.build()).isNull();
+    }
+
+    @Test
+    void givenGarminExport_whenBuild_thenProfileSpansTheTrack() throws IOException {
+        var statistics = new GpxTrackStatistics();
+        var profile = new GpxElevationProfile(100);
+        try (InputStream in = Files.newInputStream(Path.of("src/test/resources/anija.gpx"))) {
+            GpxParser.parse(in, statistics.andThen(profile));
+        }
+
+        ElevationProfile built = profile.build();
+
+        assertThat(built.distanceMeters()).isEqualTo(statistics.getDistanceMeters());
+        assertThat(built.elevations()).hasSize(100);
+        double lowest = Arrays.stream(built.minElevations()).min().orElseThrow();
+        double highest = Arrays.stream(built.maxElevations()).max().orElseThrow();
+        assertThat(highest - lowest).isGreaterThanOrEqualTo(statistics.getElevationGainMeters() / 2);
+    }
+}
@@ -0,0 +1,119 @@
+package ee.taltech.iti03022024backend.gpx;
+
+import ee.taltech.iti03022024backend.exception.InvalidGpxException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class GpxParserTest {
+
+    private static GpxTrackStatistics parse(String gpx) {
+        var statistics = new GpxTrackStatistics();
+        GpxParser.parse(new ByteArrayInputStream(gpx.getBytes(StandardCharsets.UTF_8)), statistics);
+        return statistics;
+    }
+
+    private static String track(String... segments) {
+        return """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <gpx version="1.1" xmlns="http://www.topografix.com/GPX/1/1" xmlns:ns3="urn:extension">
+                  <wpt lat="10" lon="10"><ele>500</ele></wpt>
+                  <trk>%s</trk>
+                </gpx>
+                """.formatted(String.join("", segments));
+    }
+
+    @Test
+    void givenGarminExport_whenParse_thenStatisticsOfTrack() throws IOException {
+        var statistics = new GpxTrackStatistics();
+        try (InputStream in = Files.newInputStream(Path.of("src/test/resources/anija.gpx"))) {
+            GpxParser.parse(in, statistics);
+        }
+
+        assertThat(statistics.getPointCount()).isEqualTo(784);
+        assertThat(statistics.getDistanceMeters()).isCloseTo(4909.3, within(0.1));
+        assertThat(statistics.getElevationGainMeters()).isCloseTo(12.0, within(0.01));
+        assertThat(statistics.getElevationLossMeters()).isCloseTo(6.0, within(0.01));
+        assertThat(statistics.getMinLatitude()).isCloseTo(59.31997, within(0.00001));
+        assertThat(statistics.getMaxLatitude()).isCloseTo(59.33294, within(0.00001));
+        assertThat(statistics.getMinLongitude()).isCloseTo(25.34278, within(0.00001));
+        assertThat(statistics.getMaxLongitude()).isCloseTo(25.36723, within(0.00001));
+        assertThat(statistics.getDurationSeconds()).isEqualTo(4758L);
+    }
+
+    @Test
+    void givenSeveralSegments_whenParse_thenGapBetweenSegmentsIsNotCounted() {
+        var statistics = parse(track(
+                "<trkseg><trkpt lat=\"0\" lon=\"0\"/><trkpt lat=\"0\" lon=\"0.01\"/></trkseg>",
+                "<trkseg><trkpt lat=\"1\" lon=\"0\"/><trkpt lat=\"1\" lon=\"0.01\"/></trkseg>"));
+
+        assertThat(statistics.getPointCount()).isEqualTo(4);
+        assertThat(statistics.getDistanceMeters()).isCloseTo(1111.9 + 1111.7, within(1.0));
+        assertThat(statistics.getDurationSeconds()).isNull();
+    }
+
+    @Test
+    void givenSmallElevationChanges_whenParse_thenNoiseIsNotCountedAsClimb() {
+        var statistics = parse(track("""
+                <trkseg>
+                  <trkpt lat="0" lon="0"><ele>100</ele></trkpt>
+                  <trkpt lat="0" lon="0"><ele>101.5</ele></trkpt>
+                  <trkpt lat="0" lon="0"><ele>99</ele></trkpt>
+                  <trkpt lat="0" lon="0"><ele>110</ele></trkpt>
+                  <trkpt lat="0" lon="0"><ele>104</ele></trkpt>
+                </trkseg>"""));
+
+        assertThat(statistics.getElevationGainMeters()).isEqualTo(10.0);
+        assertThat(statistics.getElevationLossMeters()).isEqualTo(6.0);
+    }
+
+    @Test
+    void givenTimeInExtension_whenParse_thenOnlyPointTimeIsUsed() {
+        var statistics = parse(track("""
+                <trkseg>
+                  <trkpt lat="0" lon="0"><time>2024-11-09T09:00:00Z</time></trkpt>
+                  <trkpt lat="0" lon="0">
+                    <time>2024-11-09T09:10:00Z</time>
+                    <extensions><ns3:time>2024-11-09T12:00:00Z</ns3:time></extensions>
+                  </trkpt>
+                </trkseg>"""));
+
+        assertThat(statistics.getDurationSeconds()).isEqualTo(600L);
+    }
+
+    @Test
+    void givenPointWithoutLongitude_whenParse_thenThrowInvalidGpxException() {
+        String gpx = track("<trkseg><trkpt lat=\"0\"/></trkseg>");
+
+        assertThatThrownBy(() -> parse(gpx))
+                .isInstanceOf(InvalidGpxException.class)
+                .hasMessage("GPX point is missing its lon attribute.");
+    }
+
+    @Test
+    void givenOtherXml_whenParse_thenThrowInvalidGpxException() {
+        assertThatThrownBy(() -> parse("<kml><Placemark/></kml>"))
+                .isInstanceOf(InvalidGpxException.class)
+                .hasMessage("File is not a GPX file.");
+    }
+
+    @Test
+    void givenExternalEntity_whenParse_thenThrowInvalidGpxException() {
+        String gpx = """
+                <?xml version="1.0"?>
+                <!DOCTYPE gpx [<!ENTITY secret SYSTEM "file:///etc/passwd">]>
+                <gpx><trk><trkseg><trkpt lat="0" lon="0"><ele>&secret;</ele></trkpt></trkseg></trk></gpx>
+                """;
+
+        assertThatThrownBy(() -> parse(gpx)).isInstanceOf(InvalidGpxException.class);
+    }
+}
@@ -0,0 +1,89 @@
+package ee.taltech.iti03022024backend.gpx;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class GpxTrackCodecTest {
+    private static final Path ANIJA = Path.of("src/test/resources/anija.gpx");
+
+    private static GpxTrack anija() throws IOException {
+        var builder = new GpxTrack.Builder();
+        try (InputStream in = Files.newInputStream(ANIJA)) {
+            GpxParser.parse(in, builder);
+        }
+        return builder.build();
+    }
+
+    @Test
+    void givenGarminExport_whenEncode_thenFarSmallerThanGpx() throws IOException {
+        byte[] encoded = GpxTrackCodec.encode(anija());
+
+        assertThat((long) encoded.length).isLessThan(Files.size(ANIJA) / 50);
+    }
+
+    @Test
+    void givenTrack_whenEncodeAndDecode_thenPointsArePreservedToAMeter() throws IOException {
+        GpxTrack track = anija();
+
+        GpxTrack decoded = GpxTrackCodec.decode(GpxTrackCodec.encode(track));
+
+        assertThat(decoded.size()).isEqualTo(784);
+        assertThat(decoded.getSegmentStarts()).containsExactly(0);
+        for (int i = 0; i < track.size(); i++) {
+            assertThat(decoded.getLatitudes()[i]).isCloseTo(track.getLatitudes()[i], within(0.000005));
+            assertThat(decoded.getLongitudes()[i]).isCloseTo(track.getLongitudes()[i], within(0.000005));
+            assertThat(decoded.getElevations()[i]).isCloseTo(track.getElevations()[i], within(0.05));
+        }
+        assertThat(decoded.getTimes()).containsExactly(track.getTimes());
+    }
+
+    @Test
+    void givenSegmentsWithoutElevationsAndTimes_whenEncodeAndDecode_thenOnlyCoordinatesAreStored() {
+        var builder = new GpxTrack.Builder();
+        builder.segmentStart();
+        builder.point(-33.5, 151.25, Double.NaN, GpxPointConsumer.NO_TIME);
+        builder.segmentStart();
+        builder.segmentStart();
+        builder.point(-33.6, 151.2, Double.NaN, GpxPointConsumer.NO_TIME);
+        builder.point(-33.7, -179.9, Double.NaN, GpxPointConsumer.NO_TIME);
+
+        GpxTrack decoded = GpxTrackCodec.decode(GpxTrackCodec.encode(builder.build()));
+
+        assertThat(decoded.getSegmentStarts()).containsExactly(0, 1);
+        assertThat(decoded.segmentEnd(1)).isEqualTo(3);
+        assertThat(decoded.getLongitudes()).containsExactly(new double[]{151.25, 151.2, -179.9}, within(1e-9));
+        assertThat(decoded.getElevations()).isNull();
+        assertThat(decoded.getTimes()).isNull();
+    }
+
+    @Test
+    void givenPointsWithoutElevation_whenBuild_thenElevationIsTakenFromNeighbours() {
+        var builder = new GpxTrack.Builder();
+        builder.point(0, 0, Double.NaN, GpxPointConsumer.NO_TIME);
+        builder.point(0, 0, 12, 1_000);
+        builder.point(0, 0, Double.NaN, GpxPointConsumer.NO_TIME);
+        builder.point(0, 0, 15, 3_000);
+
+        GpxTrack track = builder.build();
+
+        assertThat(track.getElevations()).containsExactly(12, 12, 12, 15);
+        assertThat(track.getTimes()).containsExactly(1_000, 1_000, 1_000, 3_000);
+    }
+
+    @Test
+    void givenTruncatedBytes_whenDecode_thenThrowIllegalArgumentException() throws IOException {
+        byte[] encoded = GpxTrackCodec.encode(anija());
+
+        assertThatThrownBy(() -> GpxTrackCodec.decode(Arrays.copyOf(encoded, encoded.length / 2)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,170 @@
+package ee.taltech.iti03022024backend.gpx;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GpxTrackSimplifierTest {
+
+    private static GpxTrack track(double[]... points) {
+        var builder = new GpxTrack.Builder();
+        for (double[] point : points) {
+            builder.point(point[0], point[1], Double.NaN, GpxPointConsumer.NO_TIME);
+        }
+        return builder.build();
+    }
+
+    private static GpxTrack randomWalk(int size, long seed) {
+        var random = new Random(seed);
+        var builder = new GpxTrack.Builder();
+        double latitude = 59.4;
+        double longitude = 24.7;
+        for (int i = 0; i < size; i++) {
+            latitude += random.nextGaussian() * 0.0001;
+            longitude += random.nextGaussian() * 0.0002;
+            builder.point(latitude, longitude, 30 + i % 7, 1_700_000_000_000L + i * 1000L);
+        }
+        return builder.build();
+    }
+
+    // Douglas-Peucker as usually written, recursively and for a single tolerance
+    private static List<Integer> douglasPeucker(double[] x, double[] y, int start, int end, double tolerance) {
+        List<Integer> kept = new ArrayList<>();
+        kept.add(start);
+        split(x, y, start, end, tolerance, kept);
+        kept.add(end);
+        return kept;
+    }
+
+    private static void split(double[] x, double[] y, int start, int end, double tolerance, List<Integer> kept) {
+        int farthest = -1;
+        double maxDistance = -1;
+        for (int i = start + 1; i < end; i++) {
+            double dx = x[end] - x[start];
+            double dy = y[end] - y[start];
+            double t = Math.clamp(((x[i] - x[start]) * dx + (y[i] - y[start]) * dy) / (dx * dx + dy * dy), 0, 1);
+            double distance = Math.hypot(x[i] - x[start] - t * dx, y[i] - y[start] - t * dy);
+            if (distance > maxDistance) {
+                maxDistance = distance;
+                farthest = i;
+            }
+        }
+        if (farthest >= 0 && maxDistance > tolerance) {
+            split(x, y, start, farthest, tolerance, kept);
+            kept.add(farthest);
+            split(x, y, farthest, end, tolerance, kept);
+        }
+    }
+
+    @Test
+    void givenStraightLine_whenSimplify_thenOnlyEndsAreKept() {
+        GpxTrack line = track(new double[]{59.0, 25.0}, new double[]{59.001, 25.0}, new double[]{59.002, 25.0},
+                new double[]{59.003, 25.0});
+
+        GpxTrack simplified = GpxTrackSimplifier.simplify(line, 1);
+
+        assertThat(simplified.getLatitudes()).containsExactly(59.0, 59.003);
+    }
+
+    @Test
+    void givenDetour_whenSimplify_thenDetourIsKeptOnlyBelowItsSize() {
+        // the middle point lies about 111 m east of the line
+        GpxTrack detour = track(new double[]{0, 0}, new double[]{0.0005, 0.001}, new double[]{0.001, 0});
+
+        assertThat(GpxTrackSimplifier.simplify(detour, 100).size()).isEqualTo(3);
+        assertThat(GpxTrackSimplifier.simplify(detour, 120).size()).isEqualTo(2);
+    }
+
+    @Test
+    void givenSegments_whenSimplify_thenEndsOfEverySegmentAreKept() {
+        var builder = new GpxTrack.Builder();
+        for (int segment = 0; segment < 3; segment++) {
+            builder.segmentStart();
+            for (int i = 0; i < 10; i++) {
+                builder.point(segment, i / 1000.0, Double.NaN, GpxPointConsumer.NO_TIME);
+            }
+        }
+        builder.segmentStart();
+        builder.point(5, 5, Double.NaN, GpxPointConsumer.NO_TIME);
+
+        GpxTrack simplified = GpxTrackSimplifier.simplify(builder.build(), 10);
+
+        assertThat(simplified.getSegmentStarts()).containsExactly(0, 2, 4, 6);
+        assertThat(simplified.getLongitudes()).containsExactly(0, 0.009, 0, 0.009, 0, 0.009, 5);
+    }
+
+    @Test
+    void givenRandomTrack_whenSimplify_thenSameAsDouglasPeuckerWithThatTolerance() {
+        GpxTrack track = randomWalk(2_000, 42);
+        double[] x = new double[track.size()];
+        double[] y = new double[track.size()];
+        double[] latitudes = track.getLatitudes();
+        double minLatitude = Double.POSITIVE_INFINITY;
+        double maxLatitude = Double.NEGATIVE_INFINITY;
+        for (double latitude : latitudes) {
+            minLatitude = Math.min(minLatitude, latitude);
+            maxLatitude = Math.max(maxLatitude, latitude);
+        }
+        double scale = Math.cos(Math.toRadians((minLatitude + maxLatitude) / 2));
+        for (int i = 0; i < track.size(); i++) {
+            x[i] = Math.toRadians(track.getLongitudes()[i]) * 6_371_008.8 * scale;
+            y[i] = Math.toRadians(latitudes[i]) * 6_371_008.8;
+        }
+
+        for (double tolerance : new double[]{1, 5, 20, 100}) {
+            List<Integer> expected = douglasPeucker(x, y, 0, track.size() - 1, tolerance);
+
+            GpxTrack simplified = GpxTrackSimplifier.simplify(track, tolerance);
+
+            assertThat(simplified.size()).isEqualTo(expected.size());
+            for (int k = 0; k < expected.size(); k++) {
+                assertThat(simplified.getLatitudes()[k]).isEqualTo(latitudes[expected.get(k)]);
+                assertThat(simplified.getTimes()[k]).isEqualTo(track.getTimes()[expected.get(k)]);
+            }
+        }
+    }
+
+    @Test
+    void givenGarminExport_whenLevels_thenEveryLevelHasFewerPoints() throws IOException {
+        var builder = new GpxTrack.Builder();
+        try (InputStream in = Files.newInputStream(Path.of("src/test/resources/anija.gpx"))) {
+            GpxParser.parse(in, builder);
+        }
+
+        GpxTrack[] levels = GpxTrackSimplifier.levels(builder.build());
+
+        assertThat(levels).hasSize(GpxTrackSimplifier.LEVELS);
+        assertThat(levels[0].size()).isEqualTo(784);
+        for (int level = 1; level < levels.length; level++) {
+            assertThat(levels[level].size()).isLessThan(levels[level - 1].size()).isGreaterThanOrEqualTo(2);
+        }
+    }
+
+    @Test
+    void givenLongTrack_whenLevels_thenAllLevelsAreBuilt() {
+        GpxTrack[] levels = GpxTrackSimplifier.levels(randomWalk(100_000, 7));
+
+        assertThat(levels[GpxTrackSimplifier.LEVELS - 1].size()).isBetween(2, levels[1].size());
+    }
+
+    @Test
+    void givenToleranceOrZoom_whenLevel_thenCoarsestLevelWithinIt() {
+        assertThat(GpxTrackSimplifier.levelForTolerance(0)).isZero();
+        assertThat(GpxTrackSimplifier.levelForTolerance(1.9)).isZero();
+        assertThat(GpxTrackSimplifier.levelForTolerance(2)).isEqualTo(1);
+        assertThat(GpxTrackSimplifier.levelForTolerance(10_000)).isEqualTo(GpxTrackSimplifier.LEVELS - 1);
+
+        assertThat(GpxTrackSimplifier.levelForZoom(20)).isZero();
+        assertThat(GpxTrackSimplifier.levelForZoom(14)).isEqualTo(1);
+        assertThat(GpxTrackSimplifier.levelForZoom(13)).isEqualTo(2);
+        assertThat(GpxTrackSimplifier.levelForZoom(3)).isEqualTo(GpxTrackSimplifier.LEVELS - 1);
+    }
+}
@@ -0,0 +1,71 @@
+package ee.taltech.iti03022024backend.image;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ImageResizerTest {
+
+    private static byte[] png(int width, int height, Color color) throws IOException {
+        var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        var graphics = image.createGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        var out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void givenLargeImage_whenRead_thenImageIsSubsampledToTwiceTheWidth() throws IOException {
+        BufferedImage image = ImageResizer.read(new ByteArrayInputStream(png(2000, 1000, Color.RED)), 320);
+
+        assertThat(image.getWidth()).isBetween(640, 1000);
+        assertThat(image.getHeight()).isCloseTo(image.getWidth() / 2, within(1));
+    }
+
+    @Test
+    void givenLargeImage_whenReadWithin_thenImageIsSubsampledToThePixelLimit() throws IOException {
+        BufferedImage image = ImageResizer.readWithin(new ByteArrayInputStream(png(2000, 1000, Color.RED)), 500_000);
+
+        assertThat(image.getWidth()).isEqualTo(1000);
+        assertThat(image.getHeight()).isEqualTo(500);
+    }
+
+    @Test
+    void givenNotAnImage_whenRead_thenNull() throws IOException {
+        assertThat(ImageResizer.read(new ByteArrayInputStream("<gpx/>".getBytes()), 320)).isNull();
+    }
+
+    @Test
+    void givenImage_whenResize_thenAspectRatioIsKept() throws IOException {
+        BufferedImage image = ImageResizer.read(new ByteArrayInputStream(png(1999, 1000, Color.RED)), 1600);
+
+        BufferedImage resized = ImageResizer.resize(image, 320);
+
+        assertThat(resized.getWidth()).isEqualTo(320);
+        assertThat(resized.getHeight()).isEqualTo(160);
+        assertThat(new Color(resized.getRGB(160, 80))).isEqualTo(Color.RED);
+    }
+
+    @Test
+    void givenTransparentImage_whenResizeAndWriteJpeg_thenBackgroundIsWhite() throws IOException {
+        BufferedImage image = ImageResizer.read(new ByteArrayInputStream(png(640, 640, new Color(0, 0, 0, 0))), 320);
+
+        var out = new ByteArrayOutputStream();
+        ImageResizer.write(ImageResizer.resize(image, 320), ImageFormat.JPEG, out);
+
+        BufferedImage written = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(written.getWidth()).isEqualTo(320);
+        assertThat(new Color(written.getRGB(10, 10)).getRed()).isGreaterThan(250);
+    }
+}
@@ -0,0 +1,138 @@
+package ee.taltech.iti03022024backend.image;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImageSanitizerTest {
+
+    // red on the left half, blue on the right half
+    private static BufferedImage halves(int width, int height) {
+        var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        var graphics = image.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, width / 2, height);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(width / 2, 0, width - width / 2, height);
+        graphics.dispose();
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        var out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    // JPEG with an EXIF segment holding only the orientation, as a phone writes it
+    private static byte[] jpegWithOrientation(BufferedImage image, int orientation) throws IOException {
+        byte[] jpeg = encode(image, "jpeg");
+        ByteBuffer tiff = ByteBuffer.allocate(26)
+                .put("MM".getBytes(StandardCharsets.US_ASCII)).putShort((short) 42).putInt(8)
+                .putShort((short) 1)
+                .putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0)
+                .putInt(0);
+        ByteBuffer app1 = ByteBuffer.allocate(4 + 6 + tiff.capacity())
+                .putShort((short) 0xFFE1).putShort((short) (2 + 6 + tiff.capacity()))
+                .put("Exif\0\0".getBytes(StandardCharsets.US_ASCII)).put(tiff.array());
+
+        var out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+        out.write(app1.array());
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+
+    private static boolean contains(byte[] bytes, String text) {
+        return new String(bytes, StandardCharsets.ISO_8859_1).contains(text);
+    }
+
+    private static boolean isRed(int rgb) {
+        var color = new Color(rgb);
+        return color.getRed() > 200 && color.getBlue() < 60;
+    }
+
+    @Test
+    void givenJpegWithOrientation_whenOrientation_thenItIsRead() throws IOException {
+        assertThat(ImageSanitizer.orientation(jpegWithOrientation(halves(64, 32), 6))).isEqualTo(6);
+        assertThat(ImageSanitizer.orientation(encode(halves(64, 32), "jpeg"))).isEqualTo(1);
+    }
+
+    @Test
+    void givenTurnedJpeg_whenSanitize_thenItIsUprightWithoutExif() throws IOException {
+        byte[] jpeg = jpegWithOrientation(halves(64, 32), 6);
+        var out = new ByteArrayOutputStream();
+
+        ImageSanitizer.Result result = ImageSanitizer.sanitize(jpeg, out);
+
+        assertThat(result).isEqualTo(new ImageSanitizer.Result(32, 64, true));
+        assertThat(contains(out.toByteArray(), "Exif")).isFalse();
+        // turned clockwise, the left half is on top
+        BufferedImage sanitized = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(sanitized.getWidth()).isEqualTo(32);
+        assertThat(isRed(sanitized.getRGB(16, 8))).isTrue();
+        assertThat(isRed(sanitized.getRGB(16, 56))).isFalse();
+    }
+
+    @Test
+    void givenEveryOrientation_whenOrient_thenLeftHalfEndsUpWhereExpected() {
+        BufferedImage image = halves(64, 32);
+
+        assertThat(isRed(ImageSanitizer.orient(image, 2).getRGB(48, 16))).isTrue();
+        assertThat(isRed(ImageSanitizer.orient(image, 3).getRGB(48, 16))).isTrue();
+        assertThat(isRed(ImageSanitizer.orient(image, 4).getRGB(16, 16))).isTrue();
+        assertThat(isRed(ImageSanitizer.orient(image, 5).getRGB(16, 16))).isTrue();
+        assertThat(isRed(ImageSanitizer.orient(image, 6).getRGB(16, 16))).isTrue();
+        assertThat(isRed(ImageSanitizer.orient(image, 7).getRGB(16, 48))).isTrue();
+        assertThat(isRed(ImageSanitizer.orient(image, 8).getRGB(16, 48))).isTrue();
+        assertThat(ImageSanitizer.orient(image, 1)).isSameAs(image);
+    }
+
+    @Test
+    void givenPng_whenSanitize_thenItIsReencoded() throws IOException {
+        var out = new ByteArrayOutputStream();
+
+        ImageSanitizer.Result result = ImageSanitizer.sanitize(encode(halves(40, 30), "png"), out);
+
+        assertThat(result).isEqualTo(new ImageSanitizer.Result(40, 30, false));
+        assertThat(ImageIO.read(new ByteArrayInputStream(out.toByteArray())).getWidth()).isEqualTo(40);
+    }
+
+    @Test
+    void givenImageOverPixelLimit_whenSanitize_thenItIsScaledDownToFit() throws IOException {
+        var out = new ByteArrayOutputStream();
+
+        ImageSanitizer.Result result = ImageSanitizer.sanitize(encode(halves(40, 30), "png"), out, 300);
+
+        assertThat(result).isEqualTo(new ImageSanitizer.Result(20, 15, false));
+        assertThat(ImageIO.read(new ByteArrayInputStream(out.toByteArray())).getWidth()).isEqualTo(20);
+    }
+
+    @Test
+    void givenOtherFormat_whenSanitize_thenNothingIsWritten() throws IOException {
+        var out = new ByteArrayOutputStream();
+
+        assertThat(ImageSanitizer.sanitize("<gpx/>".getBytes(), out)).isNull();
+        assertThat(ImageSanitizer.sanitize(encode(halves(40, 30), "gif"), out)).isNull();
+        assertThat(out.size()).isZero();
+    }
+
+    @Test
+    void givenBrokenJpeg_whenSanitize_thenIOException() {
+        byte[] broken = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 1, 0,
+                0, 1, 0, 1, 0, 0, (byte) 0xFF, (byte) 0xC0, 1, 2, 3};
+
+        assertThatThrownBy(() -> ImageSanitizer.sanitize(broken, new ByteArrayOutputStream()))
+                .isInstanceOf(IOException.class);
+    }
+}
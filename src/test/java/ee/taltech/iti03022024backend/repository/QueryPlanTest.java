@@ -0,0 +1,63 @@
+package ee.taltech.iti03022024backend.repository;
+
+import ee.taltech.iti03022024backend.AbstractIntegrationTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Guards the indexes of the hot queries. The test tables are tiny, so sequential scans are
+ * discouraged for the transaction and the plans show which index the planner can use.
+ */
+@SpringBootTest
+@Transactional
+class QueryPlanTest extends AbstractIntegrationTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void discourageSequentialScans() {
+        jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+    }
+
+    static Stream<Object[]> hotQueries() {
+        return Stream.of(
+                new Object[]{"SELECT * FROM user_data WHERE username = 'user1'", "user_data_username_key"},
+                new Object[]{"SELECT 1 FROM user_data WHERE email = 'user.one@gmail.com' LIMIT 1", "user_data_email_key"},
+                new Object[]{"SELECT * FROM camping_route WHERE user_data_id = 1 ORDER BY created_at DESC, id DESC LIMIT 11",
+                        "idx_camping_route_user_created_at_id"},
+                new Object[]{"SELECT * FROM camping_route ORDER BY created_at DESC, id DESC LIMIT 11",
+                        "idx_camping_route_created_at_id"},
+                new Object[]{"SELECT id, content, user_data_id FROM comment WHERE camping_route_id = 2 AND id > 0 ORDER BY id LIMIT 21",
+                        "idx_comment_camping_route_id"},
+                new Object[]{"SELECT id, content, user_data_id FROM comment WHERE user_data_id = 1 AND id > 0 ORDER BY id LIMIT 21",
+                        "idx_comment_user_data_id"},
+                new Object[]{"SELECT count(*) FROM view WHERE camping_route_id = 1 AND created_at >= localtimestamp - interval '1 day'",
+                        "idx_view_camping_route_created_at"},
+                new Object[]{"SELECT * FROM camping_route WHERE search_vector @@ to_tsquery('route_search', 'raba:*')",
+                        "idx_camping_route_search_vector"},
+                new Object[]{"SELECT * FROM camping_route WHERE 'raba' <% name", "idx_camping_route_name_trgm"},
+                new Object[]{"SELECT camping_route_id, count(*) FROM comment WHERE camping_route_id IN (1, 2) GROUP BY camping_route_id",
+                        "idx_comment_camping_route_id"},
+                new Object[]{"SELECT * FROM route_image WHERE camping_route_id IN (1, 2) ORDER BY camping_route_id, sort_order, id",
+                        "idx_route_image_camping_route_sort_order"}
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("hotQueries")
+    void givenHotQuery_whenExplain_thenUsesIndex(String query, String index) {
+        String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + query, String.class));
+
+        assertThat(plan).contains(index).doesNotContain("Seq Scan");
+    }
+}
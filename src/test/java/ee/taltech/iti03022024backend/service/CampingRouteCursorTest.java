@@ -0,0 +1,38 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.exception.InvalidCursorException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CampingRouteCursorTest {
+
+    @Test
+    void givenCursor_whenEncodeAndDecode_thenSameCursor() {
+        var cursor = new CampingRouteCursor(LocalDateTime.of(2024, 11, 20, 10, 15, 0, 123_456_000), 42L);
+
+        String token = cursor.encode();
+
+        assertThat(token).matches("^[A-Za-z0-9_-]+$");
+        assertThat(CampingRouteCursor.decode(token)).isEqualTo(cursor);
+    }
+
+    @Test
+    void givenNoToken_whenDecode_thenStartCursor() {
+        assertThat(CampingRouteCursor.decode(null).isStart()).isTrue();
+        assertThat(CampingRouteCursor.decode("").isStart()).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"bm90LWEtY3Vyc29y", "MjAyNC0xMS0yMFQxMDoxNTpub3QtYW4taWQ", "%%%"})
+    void givenMalformedToken_whenDecode_thenThrowInvalidCursorException(String token) {
+        assertThatThrownBy(() -> CampingRouteCursor.decode(token))
+                .isInstanceOf(InvalidCursorException.class)
+                .hasMessage("Cursor is not valid");
+    }
+}
@@ -1,11 +1,21 @@
 package ee.taltech.iti03022024backend.service;
 
+import ee.taltech.iti03022024backend.dto.CampingRouteElevationProfileDto;
 import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import ee.taltech.iti03022024backend.entity.CampingRouteTrackStats;
 import ee.taltech.iti03022024backend.entity.UserEntity;
 import ee.taltech.iti03022024backend.exception.CampingRouteGpxNotFoundException;
 import ee.taltech.iti03022024backend.exception.CampingRouteGpxStorageException;
 import ee.taltech.iti03022024backend.exception.CampingRouteNotFoundException;
+import ee.taltech.iti03022024backend.exception.InvalidGpxException;
 import ee.taltech.iti03022024backend.exception.NotPermittedException;
+import ee.taltech.iti03022024backend.file.ContentAddressedFileStore;
+import ee.taltech.iti03022024backend.file.FileResponses;
+import ee.taltech.iti03022024backend.gpx.EncodedGpxTrack;
+import ee.taltech.iti03022024backend.gpx.GpxParser;
+import ee.taltech.iti03022024backend.gpx.GpxTrack;
+import ee.taltech.iti03022024backend.gpx.GpxTrackCodec;
+import ee.taltech.iti03022024backend.gpx.GpxTrackStatistics;
 import ee.taltech.iti03022024backend.repository.CampingRouteRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -14,16 +24,24 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.util.List;
 import java.util.Optional;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -32,9 +50,21 @@ class CampingRouteGpxServiceTest {
     @Mock
     private CampingRouteRepository campingRouteRepository;
 
+    @Mock
+    private CampingRouteHomepageCache homepageCache;
+
+    @Mock
+    private CampingRouteSpatialIndex spatialIndex;
+
+    @Mock
+    private CampingRouteTileCache tileCache;
+
     @Mock
     private MultipartFile multipartFile;
 
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @TempDir
     Path tempDir;
 
@@ -45,12 +75,34 @@ class CampingRouteGpxServiceTest {
         Path rootDir = tempDir.resolve("files").resolve("camping_route_gpx");
         Files.createDirectories(rootDir);
 
-        service = new CampingRouteGpxService(campingRouteRepository);
-        var rootDirField = CampingRouteGpxService.class.getDeclaredField("rootDir");
-        rootDirField.setAccessible(true);
-        rootDirField.set(service, rootDir);
+        var fileResponses = new FileResponses();
+        service = new CampingRouteGpxService(campingRouteRepository, homepageCache, spatialIndex, tileCache, fileResponses,
+                new ContentAddressedFileStore(tempDir.resolve("files"), fileResponses),
+                new TransactionTemplate(transactionManager));
     }
 
+    private static final String GPX = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <gpx version="1.1" xmlns="http://www.topografix.com/GPX/1/1">
+              <trk><trkseg>
+                <trkpt lat="59.0" lon="25.0"><ele>10</ele><time>2024-11-09T09:00:00Z</time></trkpt>
+                <trkpt lat="59.01" lon="25.0"><ele>20</ele><time>2024-11-09T09:15:00Z</time></trkpt>
+              </trkseg></trk>
+            </gpx>
+            """;
+
+    // the middle point lies about 6 m off the line between the others
+    private static final String GPX_WITH_DETOUR = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <gpx version="1.1" xmlns="http://www.topografix.com/GPX/1/1">
+              <trk><trkseg>
+                <trkpt lat="59.0" lon="25.0"><time>2024-11-09T09:00:00Z</time></trkpt>
+                <trkpt lat="59.005" lon="25.0001"><time>2024-11-09T09:05:00Z</time></trkpt>
+                <trkpt lat="59.01" lon="25.0"><time>2024-11-09T09:15:00Z</time></trkpt>
+              </trkseg></trk>
+            </gpx>
+            """;
+
     private CampingRouteEntity mockRouteEntity(String username, long id) {
         var userEntity = new UserEntity();
         userEntity.setUsername(username);
@@ -70,13 +122,57 @@ class CampingRouteGpxServiceTest {
 
         when(multipartFile.isEmpty()).thenReturn(false);
         when(multipartFile.getOriginalFilename()).thenReturn("route.gpx");
-        when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream("test content".getBytes()));
+        when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream(GPX.getBytes()));
 
         ResponseEntity<Void> response = service.storeGpx(principal, multipartFile, routeId);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         Path filePath = tempDir.resolve("files").resolve("camping_route_gpx").resolve(routeId + ".gpx");
         assertTrue(Files.exists(filePath));
+        assertEquals(GPX, Files.readString(filePath));
+
+        CampingRouteTrackStats stats = route.getTrackStats();
+        assertNotNull(stats);
+        assertEquals(2, stats.getPointCount());
+        assertEquals(1111.95, stats.getDistanceMeters(), 0.01);
+        assertEquals(10.0, stats.getElevationGainMeters());
+        assertEquals(900L, stats.getDurationSeconds());
+        verify(campingRouteRepository).save(route);
+        verify(homepageCache).routeUpdated(route);
+        verify(spatialIndex).routeChanged(route);
+        verify(tileCache, times(2)).invalidate(route);
+        assertEquals(59.0, route.getStartLatitude());
+        assertEquals(25.0, route.getStartLongitude());
+
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(filePath.resolveSibling(routeId + ".gpx.gz")))) {
+            assertEquals(GPX, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        Path trackPath = tempDir.resolve("files").resolve("camping_route_gpx").resolve(routeId + ".track");
+        assertEquals(2, GpxTrackCodec.decode(Files.readAllBytes(trackPath)).size());
+        assertTrue(Files.exists(trackPath.resolveSibling(routeId + ".lod4.track")));
+    }
+
+    @Test
+    void givenMalformedGpx_whenStoreGpx_thenThrowInvalidGpxExceptionAndKeepOldFile() throws IOException {
+        long routeId = 1L;
+        String principal = "validUser";
+        CampingRouteEntity route = mockRouteEntity(principal, routeId);
+        when(campingRouteRepository.findById(routeId)).thenReturn(Optional.of(route));
+        Path rootDir = tempDir.resolve("files").resolve("camping_route_gpx");
+        Files.writeString(rootDir.resolve(routeId + ".gpx"), GPX);
+
+        when(multipartFile.isEmpty()).thenReturn(false);
+        when(multipartFile.getOriginalFilename()).thenReturn("route.gpx");
+        when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream("<gpx><trk>".getBytes()));
+
+        assertThrows(InvalidGpxException.class, () -> service.storeGpx(principal, multipartFile, routeId));
+
+        try (var files = Files.list(rootDir)) {
+            assertEquals(List.of(rootDir.resolve(routeId + ".gpx")), files.toList());
+        }
+        assertEquals(GPX, Files.readString(rootDir.resolve(routeId + ".gpx")));
+        verify(campingRouteRepository, never()).save(any());
     }
 
     @Test
@@ -132,6 +228,28 @@ class CampingRouteGpxServiceTest {
     }
 
         @Test
+    void givenRouteEditedDuringUpload_whenStoreGpx_thenTrackIsSavedOnTheEditedRoute() throws IOException {
+        long routeId = 1L;
+        String principal = "validUser";
+        CampingRouteEntity loaded = mockRouteEntity(principal, routeId);
+        CampingRouteEntity edited = mockRouteEntity(principal, routeId);
+        edited.setName("Renamed meanwhile");
+        when(campingRouteRepository.findById(routeId)).thenReturn(Optional.of(loaded), Optional.of(edited));
+
+        when(multipartFile.isEmpty()).thenReturn(false);
+        when(multipartFile.getOriginalFilename()).thenReturn("route.gpx");
+        when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream(GPX.getBytes()));
+
+        service.storeGpx(principal, multipartFile, routeId);
+
+        verify(campingRouteRepository).save(edited);
+        verify(campingRouteRepository, never()).save(loaded);
+        assertEquals("Renamed meanwhile", edited.getName());
+        assertEquals(2, edited.getTrackStats().getPointCount());
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
     void givenIOException_whenStoreGpx_thenThrowCampingRouteGpxStorageException() throws IOException {
         String principal = "validUser";
         long campingRouteId = 1L;
@@ -166,6 +284,57 @@ class CampingRouteGpxServiceTest {
         assertTrue(resource.exists());
     }
 
+    @Test
+    void givenReplacedGpxFile_whenGetGpx_thenETagChanges() throws IOException {
+        long routeId = 5L;
+        Path filePath = tempDir.resolve("files").resolve("camping_route_gpx").resolve(routeId + ".gpx");
+        Files.writeString(filePath, GPX);
+
+        String first = service.getGpx(routeId).getHeaders().getETag();
+        String again = service.getGpx(routeId).getHeaders().getETag();
+        Files.writeString(filePath, GPX_WITH_DETOUR);
+        String replaced = service.getGpx(routeId).getHeaders().getETag();
+
+        assertEquals(first, again);
+        assertNotEquals(first, replaced);
+        assertEquals("application/gpx+xml", service.getGpx(routeId).getHeaders().getContentType().toString());
+    }
+
+    @Test
+    void givenGzipAccepted_whenGetGpx_thenCompressedFileIsCreatedAndReturned() throws IOException {
+        long routeId = 5L;
+        Path filePath = tempDir.resolve("files").resolve("camping_route_gpx").resolve(routeId + ".gpx");
+        Files.writeString(filePath, GPX);
+
+        ResponseEntity<Resource> response = service.getGpx(routeId, "gzip, deflate, br");
+
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(List.of(HttpHeaders.ACCEPT_ENCODING), response.getHeaders().getVary());
+        Path compressedPath = filePath.resolveSibling(routeId + ".gpx.gz");
+        assertTrue(Files.exists(compressedPath));
+        try (InputStream in = new GZIPInputStream(response.getBody().getInputStream())) {
+            assertEquals(GPX, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertNotEquals(service.getGpx(routeId).getHeaders().getETag(), response.getHeaders().getETag());
+    }
+
+    @Test
+    void givenGzipRefused_whenGetGpx_thenUncompressedFileIsReturned() throws IOException {
+        long routeId = 5L;
+        Files.writeString(tempDir.resolve("files").resolve("camping_route_gpx").resolve(routeId + ".gpx"), GPX);
+
+        ResponseEntity<Resource> response = service.getGpx(routeId, "gzip;q=0, identity");
+
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(List.of(HttpHeaders.ACCEPT_ENCODING), response.getHeaders().getVary());
+        assertEquals(GPX, response.getBody().getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void givenGzipAcceptedAndNonExistingGpxFile_whenGetGpx_thenThrowCampingRouteGpxNotFoundException() {
+        assertThrows(CampingRouteGpxNotFoundException.class, () -> service.getGpx(6L, "gzip"));
+    }
+
     @Test
     void givenNonExistingGpxFile_whenGetGpx_thenThrowCampingRouteGpxNotFoundException() {
         long routeId = 6L;
@@ -175,6 +344,106 @@ class CampingRouteGpxServiceTest {
     }
 
 
+    @Test
+    void givenEncodedTrack_whenGetTrack_thenStoredBytesReturned() throws IOException {
+        long routeId = 5L;
+        byte[] encoded = {'C', 'R', 'T', 1, 0, 0, 0};
+        Files.write(tempDir.resolve("files").resolve("camping_route_gpx").resolve(routeId + ".track"), encoded);
+
+        ResponseEntity<EncodedGpxTrack> response = service.getTrack(routeId, null, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals(encoded, response.getBody().bytes());
+    }
+
+    @Test
+    void givenGpxFileWithoutEncodedTrack_whenGetTrack_thenTrackIsEncodedAndStored() throws IOException {
+        long routeId = 5L;
+        Path rootDir = tempDir.resolve("files").resolve("camping_route_gpx");
+        Files.writeString(rootDir.resolve(routeId + ".gpx"), GPX);
+
+        ResponseEntity<EncodedGpxTrack> response = service.getTrack(routeId, null, null);
+
+        GpxTrack track = response.getBody().decode();
+        assertEquals(2, track.size());
+        assertEquals(59.01, track.getLatitudes()[1], 1e-9);
+        assertTrue(Files.exists(rootDir.resolve(routeId + ".track")));
+    }
+
+    @Test
+    void givenTolerance_whenGetTrack_thenLevelOfDetailReturned() throws IOException {
+        long routeId = 5L;
+        Files.writeString(tempDir.resolve("files").resolve("camping_route_gpx").resolve(routeId + ".gpx"), GPX_WITH_DETOUR);
+
+        assertEquals(3, service.getTrack(routeId, null, null).getBody().decode().size());
+        assertEquals(3, service.getTrack(routeId, 1.0, null).getBody().decode().size());
+        assertEquals(2, service.getTrack(routeId, 10.0, null).getBody().decode().size());
+        assertEquals(2, service.getTrack(routeId, null, 10).getBody().decode().size());
+        assertEquals(3, service.getTrack(routeId, 1.0, 10).getBody().decode().size());
+    }
+
+    @Test
+    void givenZoom_whenGetGpx_thenSimplifiedGpxFileReturned() throws IOException {
+        long routeId = 5L;
+        Files.writeString(tempDir.resolve("files").resolve("camping_route_gpx").resolve(routeId + ".gpx"), GPX_WITH_DETOUR);
+
+        ResponseEntity<Resource> response = service.getGpx(routeId, null, 10, null);
+
+        var statistics = new GpxTrackStatistics();
+        try (var in = response.getBody().getInputStream()) {
+            GpxParser.parse(in, statistics);
+        }
+        assertEquals(2, statistics.getPointCount());
+        assertEquals(900L, statistics.getDurationSeconds());
+    }
+
+    @Test
+    void givenGpxFile_whenGetElevationProfile_thenProfileIsComputedOnceUntilFileIsReplaced() throws IOException {
+        long routeId = 5L;
+        Path filePath = tempDir.resolve("files").resolve("camping_route_gpx").resolve(routeId + ".gpx");
+        Files.writeString(filePath, GPX);
+
+        CampingRouteElevationProfileDto profile = service.getElevationProfile(routeId).getBody();
+        CampingRouteElevationProfileDto again = service.getElevationProfile(routeId).getBody();
+
+        assertNotNull(profile);
+        assertSame(profile, again);
+        assertEquals(1112.0, profile.getDistanceMeters());
+        assertEquals(100, profile.getElevations().length);
+        assertEquals(10.0, profile.getElevations()[0]);
+        assertEquals(20.0, profile.getElevations()[99]);
+
+        Files.delete(filePath);
+        Files.writeString(filePath, GPX.replace("<ele>20</ele>", "<ele>40</ele>"));
+        CampingRouteElevationProfileDto replaced = service.getElevationProfile(routeId).getBody();
+
+        assertNotSame(profile, replaced);
+        assertEquals(40.0, replaced.getElevations()[99]);
+    }
+
+    @Test
+    void givenGpxFileWithoutElevations_whenGetElevationProfile_thenThrowCampingRouteGpxNotFoundException() throws IOException {
+        long routeId = 5L;
+        Files.writeString(tempDir.resolve("files").resolve("camping_route_gpx").resolve(routeId + ".gpx"), GPX_WITH_DETOUR);
+
+        assertThrows(CampingRouteGpxNotFoundException.class, () -> service.getElevationProfile(routeId));
+    }
+
+    @Test
+    void givenNonExistingGpxFile_whenGetElevationProfile_thenThrowCampingRouteGpxNotFoundException() {
+        assertThrows(CampingRouteGpxNotFoundException.class, () -> service.getElevationProfile(6L));
+    }
+
+    @Test
+    void givenNonExistingGpxFile_whenGetTrack_thenThrowCampingRouteGpxNotFoundException() {
+        assertThrows(CampingRouteGpxNotFoundException.class, () -> service.getTrack(6L, null, null));
+    }
+
+    @Test
+    void givenNonExistingGpxFile_whenFindTrack_thenEmpty() {
+        assertTrue(service.findTrack(1L, 2).isEmpty());
+    }
+
     @Test
     void givenAuthorizedUserAndExistingGpxFile_whenDeleteGpx_thenSuccess() throws IOException {
         long routeId = 7L;
@@ -184,11 +453,24 @@ class CampingRouteGpxServiceTest {
 
         Path filePath = tempDir.resolve("files").resolve("camping_route_gpx").resolve(routeId + ".gpx");
         Files.write(filePath, "test".getBytes());
+        Path trackPath = filePath.resolveSibling(routeId + ".track");
+        Files.write(trackPath, "test".getBytes());
+        Path levelPath = filePath.resolveSibling(routeId + ".lod2.track");
+        Files.write(levelPath, "test".getBytes());
+        Path compressedPath = filePath.resolveSibling(routeId + ".gpx.gz");
+        Files.write(compressedPath, "test".getBytes());
+
+        route.setTrackStats(new CampingRouteTrackStats());
 
         ResponseEntity<Void> response = service.deleteGpx(principal, routeId);
 
         assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
         assertFalse(Files.exists(filePath));
+        assertFalse(Files.exists(trackPath));
+        assertFalse(Files.exists(levelPath));
+        assertFalse(Files.exists(compressedPath));
+        assertNull(route.getTrackStats());
+        verify(homepageCache).routeUpdated(route);
     }
 
     @Test
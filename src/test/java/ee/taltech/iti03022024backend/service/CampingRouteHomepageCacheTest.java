@@ -0,0 +1,242 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.dto.CampingRouteDto;
+import ee.taltech.iti03022024backend.dto.PageResponse;
+import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import ee.taltech.iti03022024backend.mapping.CampingRouteMapperImpl;
+import ee.taltech.iti03022024backend.repository.CampingRouteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CampingRouteHomepageCacheTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 11, 20, 12, 0);
+
+    @Mock
+    private CampingRouteRepository routeRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private CampingRouteHomepageCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // one page of the largest page size
+        cache = new CampingRouteHomepageCache(routeRepository, new CampingRouteMapperImpl(), meterRegistry, 1,
+                Duration.ofMinutes(5));
+    }
+
+    private static CampingRouteEntity route(long id) {
+        CampingRouteEntity route = new CampingRouteEntity();
+        route.setId(id);
+        route.setName("Route " + id);
+        route.setCreatedAt(NOW.plusMinutes(id));
+        return route;
+    }
+
+    // routes with ids from count down to 1, newest first
+    @SuppressWarnings("unchecked")
+    private void givenRoutes(long count) {
+        List<CampingRouteEntity> routes = LongStream.iterate(count, id -> id - 1).limit(Math.min(count, 20))
+                .mapToObj(CampingRouteHomepageCacheTest::route)
+                .toList();
+        when(routeRepository.findSlice(any(Specification.class), any(Pageable.class)))
+                .thenAnswer(invocation -> new SliceImpl<>(routes, invocation.getArgument(1), count > 20));
+        lenient().when(routeRepository.count(any(Specification.class))).thenReturn(count);
+    }
+
+    private static List<Long> ids(PageResponse<CampingRouteDto> page) {
+        return page.getContent().stream().map(CampingRouteDto::getId).toList();
+    }
+
+    private double gets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", "homepage").tag("result", result).counter().count();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenLoadedFeed_whenGetPages_thenServedFromMemory() {
+        givenRoutes(30);
+
+        var first = cache.getPage(0, 10).orElseThrow();
+        var second = cache.getPage(1, 10).orElseThrow();
+
+        assertThat(ids(first)).containsExactly(30L, 29L, 28L, 27L, 26L, 25L, 24L, 23L, 22L, 21L);
+        assertThat(ids(second)).startsWith(20L).endsWith(11L);
+        assertThat(second.getTotalElements()).isEqualTo(30);
+        assertThat(second.getTotalPages()).isEqualTo(3);
+        verify(routeRepository, times(1)).findSlice(any(Specification.class), any(Pageable.class));
+        assertThat(gets("hit")).isEqualTo(1);
+        assertThat(gets("miss")).isEqualTo(1);
+    }
+
+    @Test
+    void givenPageBeyondFeed_whenGetPage_thenEmpty() {
+        assertThat(cache.getPage(2, 10)).isEmpty();
+        verifyNoInteractions(routeRepository);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenCreatedRoute_whenGetPage_thenRouteIsFirstWithoutReload() {
+        givenRoutes(3);
+        cache.getPage(0, 5);
+
+        cache.routeCreated(route(4));
+        var page = cache.getPage(0, 5).orElseThrow();
+
+        assertThat(ids(page)).containsExactly(4L, 3L, 2L, 1L);
+        assertThat(page.getTotalElements()).isEqualTo(4);
+        verify(routeRepository, times(1)).findSlice(any(Specification.class), any(Pageable.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenDeletedRoute_whenGetPage_thenRouteIsGoneWithoutReload() {
+        givenRoutes(3);
+        cache.getPage(0, 5);
+
+        cache.routeDeleted(2);
+        var page = cache.getPage(0, 5).orElseThrow();
+
+        assertThat(ids(page)).containsExactly(3L, 1L);
+        assertThat(page.getTotalElements()).isEqualTo(2);
+        verify(routeRepository, times(1)).findSlice(any(Specification.class), any(Pageable.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenDeletedRouteInFullFeed_whenGetLastCachedPage_thenFeedIsReloaded() {
+        givenRoutes(30);
+        cache.getPage(0, 20);
+
+        cache.routeDeleted(25);
+        cache.getPage(0, 20);
+
+        verify(routeRepository, times(2)).findSlice(any(Specification.class), any(Pageable.class));
+        assertThat(gets("miss")).isEqualTo(2);
+    }
+
+    @Test
+    void givenCreatedRouteBeforeFeedIsLoaded_whenGetPage_thenFeedIsLoadedFromDatabase() {
+        cache.routeCreated(route(1));
+
+        givenRoutes(1);
+        var page = cache.getPage(0, 5).orElseThrow();
+
+        assertThat(ids(page)).containsExactly(1L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenRouteDeletedWithItsUser_whenGetPage_thenRouteIsGone() {
+        givenRoutes(3);
+        cache.getPage(0, 5);
+
+        cache.routeDeleted(new CampingRouteDeletedEvent(route(2)));
+
+        assertThat(ids(cache.getPage(0, 5).orElseThrow())).containsExactly(3L, 1L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenExpiredFeed_whenGetPage_thenFeedIsReloaded() {
+        cache = new CampingRouteHomepageCache(routeRepository, new CampingRouteMapperImpl(), meterRegistry, 1,
+                Duration.ZERO);
+        givenRoutes(3);
+
+        cache.getPage(0, 5);
+        cache.getPage(0, 5);
+
+        verify(routeRepository, times(2)).findSlice(any(Specification.class), any(Pageable.class));
+    }
+
+    // routes with ids from count down to 1, every load waits until it is released
+    @SuppressWarnings("unchecked")
+    private CountDownLatch givenSlowRoutes(long count, CountDownLatch loadStarted) {
+        List<CampingRouteEntity> routes = LongStream.iterate(count, id -> id - 1).limit(count)
+                .mapToObj(CampingRouteHomepageCacheTest::route)
+                .toList();
+        var release = new CountDownLatch(1);
+        when(routeRepository.findSlice(any(Specification.class), any(Pageable.class))).thenAnswer(invocation -> {
+            loadStarted.countDown();
+            assertThat(release.await(10, TimeUnit.SECONDS)).isTrue();
+            return new SliceImpl<>(routes, invocation.getArgument(1), false);
+        });
+        return release;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenConcurrentMisses_whenGetPage_thenFeedIsLoadedOnce() throws Exception {
+        var loadStarted = new CountDownLatch(1);
+        var release = givenSlowRoutes(3, loadStarted);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Optional<PageResponse<CampingRouteDto>>>> pages = new ArrayList<>();
+            pages.add(executor.submit(() -> cache.getPage(0, 5)));
+            assertThat(loadStarted.await(10, TimeUnit.SECONDS)).isTrue();
+            for (int i = 0; i < 3; i++) {
+                pages.add(executor.submit(() -> cache.getPage(0, 5)));
+            }
+            // give the other requests time to find the load running
+            Thread.sleep(100);
+            release.countDown();
+
+            for (var page : pages) {
+                assertThat(ids(page.get(10, TimeUnit.SECONDS).orElseThrow())).containsExactly(3L, 2L, 1L);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(routeRepository, times(1)).findSlice(any(Specification.class), any(Pageable.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenExpiredFeedBeingReloaded_whenGetPage_thenExpiredFeedIsServed() throws Exception {
+        cache = new CampingRouteHomepageCache(routeRepository, new CampingRouteMapperImpl(), meterRegistry, 1,
+                Duration.ZERO);
+        var firstLoad = new CountDownLatch(1);
+        givenSlowRoutes(3, firstLoad).countDown();
+        cache.getPage(0, 5);
+        var reloadStarted = new CountDownLatch(1);
+        var release = givenSlowRoutes(3, reloadStarted);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> reload = executor.submit(() -> cache.getPage(0, 5));
+            assertThat(reloadStarted.await(10, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(ids(cache.getPage(0, 5).orElseThrow())).containsExactly(3L, 2L, 1L);
+
+            release.countDown();
+            reload.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(routeRepository, times(2)).findSlice(any(Specification.class), any(Pageable.class));
+    }
+}
@@ -0,0 +1,110 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import ee.taltech.iti03022024backend.entity.RouteImageEntity;
+import ee.taltech.iti03022024backend.repository.RouteImageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CampingRouteImageIndexTest {
+
+    @Mock
+    private RouteImageRepository repository;
+
+    private CampingRouteImageIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new CampingRouteImageIndex(repository);
+    }
+
+    private static RouteImageEntity image(long campingRouteId, String fileName, int sortOrder) {
+        var route = new CampingRouteEntity();
+        route.setId(campingRouteId);
+        var image = new RouteImageEntity();
+        image.setCampingRoute(route);
+        image.setFileName(fileName);
+        image.setSize(100);
+        image.setWidth(40);
+        image.setHeight(30);
+        image.setContentSha256("a".repeat(64));
+        image.setSortOrder(sortOrder);
+        return image;
+    }
+
+    private static List<String> names(List<CampingRouteImageIndex.Image> images) {
+        return images.stream().map(CampingRouteImageIndex.Image::fileName).toList();
+    }
+
+    @Test
+    void givenManyRoutes_whenImages_thenTheyAreLoadedWithOneQuery() {
+        when(repository.findByCampingRouteIds(List.of(3L, 1L, 2L))).thenReturn(List.of(
+                image(1, "a.jpg", 0), image(1, "b.jpg", 1), image(3, "c.jpg", 0)));
+
+        var images = index.images(List.of(3L, 1L, 2L));
+
+        assertThat(images.keySet()).containsExactly(3L, 1L, 2L);
+        assertThat(names(images.get(1L))).containsExactly("a.jpg", "b.jpg");
+        assertThat(names(images.get(3L))).containsExactly("c.jpg");
+        assertThat(images.get(2L)).isEmpty();
+        assertThat(images.get(1L).getFirst()).isEqualTo(new CampingRouteImageIndex.Image("a.jpg", 100, 40, 30, "a".repeat(64), false));
+        verify(repository, times(1)).findByCampingRouteIds(anyCollection());
+    }
+
+    @Test
+    void givenCachedRoutes_whenImages_thenOnlyOtherRoutesAreLoaded() {
+        when(repository.findByCampingRouteIds(List.of(1L))).thenReturn(List.of(image(1, "a.jpg", 0)));
+        when(repository.findByCampingRouteIds(List.of(2L))).thenReturn(List.of());
+        index.images(1L);
+
+        var images = index.images(List.of(1L, 2L));
+        index.images(List.of(2L, 1L));
+
+        assertThat(names(images.get(1L))).containsExactly("a.jpg");
+        assertThat(images.get(2L)).isEmpty();
+        verify(repository).findByCampingRouteIds(List.of(1L));
+        verify(repository).findByCampingRouteIds(List.of(2L));
+    }
+
+    @Test
+    void givenAddedImages_whenImages_thenRouteIsLoadedAgain() {
+        when(repository.findByCampingRouteIds(List.of(1L)))
+                .thenReturn(List.of())
+                .thenReturn(List.of(image(1, "a.jpg", 0)));
+        assertThat(index.images(1L)).isEmpty();
+
+        index.add(1L, List.of(image(1, "a.jpg", 0)));
+
+        assertThat(names(index.images(1L))).containsExactly("a.jpg");
+        verify(repository).saveAll(anyList());
+    }
+
+    @Test
+    void givenRemovedImage_whenImages_thenRouteIsLoadedAgain() {
+        when(repository.findByCampingRouteIds(List.of(1L)))
+                .thenReturn(List.of(image(1, "a.jpg", 0), image(1, "b.jpg", 1)))
+                .thenReturn(List.of(image(1, "b.jpg", 1)));
+        when(repository.deleteByCampingRouteIdAndFileName(1L, "a.jpg")).thenReturn(1);
+        index.images(1L);
+
+        assertThat(index.remove(1L, "a.jpg")).isTrue();
+
+        assertThat(names(index.images(1L))).containsExactly("b.jpg");
+    }
+
+    @Test
+    void givenNoImages_whenNextSortOrder_thenZero() {
+        when(repository.findMaxSortOrder(1L)).thenReturn(-1);
+
+        assertThat(index.nextSortOrder(1L)).isZero();
+    }
+}
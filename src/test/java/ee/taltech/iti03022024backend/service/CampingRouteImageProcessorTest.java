@@ -0,0 +1,135 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.AbstractIntegrationTest;
+import ee.taltech.iti03022024backend.file.FileStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// jobs are only processed when the test asks for it
+@SpringBootTest(properties = {"app.images.processing.poll-interval=PT1H", "app.images.processing.max-attempts=2"})
+class CampingRouteImageProcessorTest extends AbstractIntegrationTest {
+
+    private static final String DIRECTORY = "camping_route_images/1";
+
+    @Autowired
+    private CampingRouteImageProcessor processor;
+
+    @Autowired
+    private FileStore fileStore;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    @AfterEach
+    void clearImages() throws IOException {
+        // their jobs are deleted with them
+        jdbcTemplate.update("DELETE FROM route_image");
+        fileStore.deleteAll(DIRECTORY);
+    }
+
+    private long insertImage(String fileName, byte[] content) throws IOException {
+        FileStore.StoredFile stored = fileStore.store(content, DIRECTORY + "/" + fileName);
+        Long id = jdbcTemplate.queryForObject("INSERT INTO route_image "
+                + "(camping_route_id, file_name, size_bytes, content_sha256, sort_order) VALUES (1, ?, ?, ?, 0) "
+                + "RETURNING id", Long.class, fileName, stored.size(), stored.sha256());
+        jdbcTemplate.update("INSERT INTO image_job (route_image_id) VALUES (?)", id);
+        return id;
+    }
+
+    private Map<String, Object> image(long id) {
+        return jdbcTemplate.queryForMap("SELECT * FROM route_image WHERE id = ?", id);
+    }
+
+    private Map<String, Object> job(long imageId) {
+        return jdbcTemplate.queryForMap("SELECT * FROM image_job WHERE route_image_id = ?", imageId);
+    }
+
+    private long jobCount() {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM image_job", Long.class);
+    }
+
+    @Test
+    void givenPendingJpeg_whenProcessPending_thenItIsReencodedAndItsJobRemoved() throws IOException {
+        var jpeg = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), "jpeg", jpeg);
+        long id = insertImage("photo.jpg", jpeg.toByteArray());
+
+        assertThat(processor.processPending()).isEqualTo(1);
+
+        assertThat(jobCount()).isZero();
+        Map<String, Object> image = image(id);
+        assertThat(image.get("processed")).isEqualTo(true);
+        assertThat(image.get("width")).isEqualTo(40);
+        assertThat(image.get("height")).isEqualTo(30);
+        assertThat(fileStore.info(DIRECTORY + "/photo.jpg").orElseThrow().size()).isEqualTo(image.get("size_bytes"));
+    }
+
+    @Test
+    void givenPendingPhoto_whenProcessPending_thenDerivativesAreMadeFromTheProcessedImage() throws IOException {
+        var jpeg = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(1000, 500, BufferedImage.TYPE_INT_RGB), "jpeg", jpeg);
+        insertImage("photo.jpg", jpeg.toByteArray());
+
+        processor.processPending();
+
+        assertThat(fileStore.info(DIRECTORY + "/derivatives/photo-320.jpg")).isPresent();
+        assertThat(fileStore.info(DIRECTORY + "/derivatives/photo-800.jpg")).isPresent();
+        assertThat(fileStore.info(DIRECTORY + "/derivatives/photo-1600.jpg")).isEmpty();
+    }
+
+    @Test
+    void givenFileThatIsNotAnImage_whenProcessPending_thenItIsMarkedProcessedAsItIs() throws IOException {
+        long id = insertImage("track.gpx", "<gpx/>".getBytes());
+
+        processor.processPending();
+
+        assertThat(jobCount()).isZero();
+        assertThat(image(id).get("processed")).isEqualTo(true);
+        assertThat(image(id).get("size_bytes")).isEqualTo(6L);
+    }
+
+    @Test
+    void givenBrokenImage_whenProcessPending_thenItIsRetriedUntilDead() throws IOException {
+        byte[] broken = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 1, 0,
+                0, 1, 0, 1, 0, 0, (byte) 0xFF, (byte) 0xC0, 1, 2, 3};
+        long id = insertImage("broken.jpg", broken);
+
+        processor.processPending();
+
+        assertThat(job(id)).containsEntry("status", "PENDING").containsEntry("attempts", 1);
+        assertThat(job(id).get("last_error")).isNotNull();
+        // not due until the retry delay is over
+        assertThat(processor.processPending()).isZero();
+
+        jdbcTemplate.update("UPDATE image_job SET run_at = localtimestamp WHERE route_image_id = ?", id);
+        processor.processPending();
+
+        assertThat(job(id)).containsEntry("status", "DEAD").containsEntry("attempts", 2);
+        assertThat(image(id).get("processed")).isEqualTo(false);
+    }
+
+    @Test
+    void givenJobThatStoppedTheWorkerOnItsLastAttempt_whenProcessPending_thenItIsDead() throws IOException {
+        long id = insertImage("huge.jpg", "<gpx/>".getBytes());
+        // claimed for the last time, the lease is over but no failure was recorded
+        jdbcTemplate.update("UPDATE image_job SET attempts = 2 WHERE route_image_id = ?", id);
+
+        assertThat(processor.processPending()).isZero();
+
+        assertThat(job(id)).containsEntry("status", "DEAD").containsEntry("attempts", 2);
+        assertThat(image(id).get("processed")).isEqualTo(false);
+    }
+}
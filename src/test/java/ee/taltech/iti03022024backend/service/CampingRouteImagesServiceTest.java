@@ -1,12 +1,16 @@
 package ee.taltech.iti03022024backend.service;
 
 import ee.taltech.iti03022024backend.dto.CampingRouteImageNamesDto;
+import ee.taltech.iti03022024backend.dto.CampingRouteImageUploadDto;
 import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import ee.taltech.iti03022024backend.entity.RouteImageEntity;
 import ee.taltech.iti03022024backend.entity.UserEntity;
 import ee.taltech.iti03022024backend.exception.CampingRouteImageNotFound;
 import ee.taltech.iti03022024backend.exception.CampingRouteImageStorageException;
 import ee.taltech.iti03022024backend.exception.CampingRouteNotFoundException;
 import ee.taltech.iti03022024backend.exception.NotPermittedException;
+import ee.taltech.iti03022024backend.file.ContentAddressedFileStore;
+import ee.taltech.iti03022024backend.file.FileResponses;
 import ee.taltech.iti03022024backend.repository.CampingRouteRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,13 +19,21 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.core.io.Resource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -35,13 +47,19 @@ class CampingRouteImagesServiceTest {
     private CampingRouteRepository campingRouteRepository;
     @Mock
     private MultipartFile multipartFile;
+    @Mock
+    private CampingRouteImageIndex imageIndex;
 
     @Captor
     private ArgumentCaptor<CampingRouteEntity> routeCaptor;
+    @Captor
+    private ArgumentCaptor<List<RouteImageEntity>> imagesCaptor;
 
     @TempDir
     Path tempDir;
 
+    private CampingRouteImageDerivatives derivatives;
+
     private CampingRouteImagesService service;
 
     @BeforeEach
@@ -50,10 +68,9 @@ class CampingRouteImagesServiceTest {
         Path rootDir = tempDir.resolve("files").resolve("camping_route_images");
         Files.createDirectories(rootDir);
 
-        service = new CampingRouteImagesService(campingRouteRepository);
-        var rootDirField = CampingRouteImagesService.class.getDeclaredField("rootDir");
-        rootDirField.setAccessible(true);
-        rootDirField.set(service, rootDir);
+        var fileStore = new ContentAddressedFileStore(tempDir.resolve("files"), new FileResponses());
+        derivatives = new CampingRouteImageDerivatives(fileStore);
+        service = new CampingRouteImagesService(campingRouteRepository, fileStore, derivatives, imageIndex);
     }
 
     private CampingRouteEntity mockRouteEntity(String username, long id) {
@@ -158,6 +175,125 @@ class CampingRouteImagesServiceTest {
         });
     }
 
+    @Test
+    void givenOneFailingFileOfMany_whenStoreImages_thenNoImageIsStored() throws IOException {
+        long routeId = 3L;
+        String principal = "validUser";
+        CampingRouteEntity route = mockRouteEntity(principal, routeId);
+        when(campingRouteRepository.findById(routeId)).thenReturn(Optional.of(route));
+
+        var files = new ArrayList<MultipartFile>();
+        for (int i = 0; i < 10; i++) {
+            MultipartFile file = mock(MultipartFile.class);
+            when(file.isEmpty()).thenReturn(false);
+            when(file.getOriginalFilename()).thenReturn("image" + i + ".png");
+            if (i == 7) {
+                when(file.getInputStream()).thenThrow(new IOException("Simulated IO error"));
+            } else {
+                when(file.getInputStream()).thenReturn(new ByteArrayInputStream(("image " + i).getBytes()));
+            }
+            files.add(file);
+        }
+
+        assertThrows(CampingRouteImageStorageException.class, () -> {
+            service.storeImages(principal, files.toArray(MultipartFile[]::new), routeId);
+        });
+
+        Path routeDir = tempDir.resolve("files").resolve("camping_route_images").resolve(String.valueOf(routeId));
+        assertFalse(Files.exists(routeDir));
+        try (var staging = Files.list(tempDir.resolve("files").resolve("blobs").resolve("staging"))) {
+            assertEquals(0, staging.count());
+        }
+    }
+
+    @Test
+    void givenManyFiles_whenStoreImages_thenResultOfEveryFileIsReturnedInOrder() throws IOException {
+        long routeId = 1L;
+        String principal = "validUser";
+        CampingRouteEntity route = mockRouteEntity(principal, routeId);
+        when(campingRouteRepository.findById(routeId)).thenReturn(Optional.of(route));
+
+        var files = new ArrayList<MultipartFile>();
+        for (int i = 0; i < 20; i++) {
+            MultipartFile file = mock(MultipartFile.class);
+            when(file.isEmpty()).thenReturn(false);
+            when(file.getOriginalFilename()).thenReturn("image" + i + ".jpg");
+            when(file.getInputStream()).thenReturn(new ByteArrayInputStream(("image " + i % 10).getBytes()));
+            files.add(file);
+        }
+
+        var response = service.storeImages(principal, files.toArray(MultipartFile[]::new), routeId);
+
+        var images = response.getBody().getImages();
+        assertEquals(20, images.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("image" + i + ".jpg", images.get(i).getOriginalName());
+            assertTrue(images.get(i).getImageName().endsWith(".jpg"));
+            assertEquals(7, images.get(i).getSize());
+        }
+        assertTrue(images.stream().skip(10).allMatch(CampingRouteImageUploadDto.StoredImage::isDuplicate));
+        verify(imageIndex).add(eq(routeId), imagesCaptor.capture());
+        var indexed = imagesCaptor.getValue();
+        assertEquals(20, indexed.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(images.get(i).getImageName(), indexed.get(i).getFileName());
+            assertEquals(i, indexed.get(i).getSortOrder());
+        }
+    }
+
+    @Test
+    void givenPhoto_whenStoreImages_thenItsMetadataIsIndexed() throws IOException {
+        long routeId = 1L;
+        String principal = "validUser";
+        CampingRouteEntity route = mockRouteEntity(principal, routeId);
+        when(campingRouteRepository.findById(routeId)).thenReturn(Optional.of(route));
+        when(imageIndex.nextSortOrder(routeId)).thenReturn(3);
+        var png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB), "png", png);
+
+        MultipartFile file = mock(MultipartFile.class);
+        when(file.isEmpty()).thenReturn(false);
+        when(file.getOriginalFilename()).thenReturn("photo.png");
+        when(file.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(png.toByteArray()));
+
+        var response = service.storeImages(principal, new MultipartFile[]{file}, routeId);
+
+        verify(imageIndex).add(eq(routeId), imagesCaptor.capture());
+        RouteImageEntity image = imagesCaptor.getValue().getFirst();
+        assertSame(route, image.getCampingRoute());
+        assertEquals(response.getBody().getImages().getFirst().getImageName(), image.getFileName());
+        assertEquals(png.size(), image.getSize());
+        assertEquals(400, image.getWidth());
+        assertEquals(300, image.getHeight());
+        assertEquals(64, image.getContentSha256().length());
+        assertEquals(3, image.getSortOrder());
+        assertFalse(image.isProcessed());
+        assertEquals(1, image.getJobs().size());
+        assertSame(image, image.getJobs().getFirst().getImage());
+    }
+
+    @Test
+    void givenIndexFailure_whenStoreImages_thenStoredFilesAreRemoved() throws IOException {
+        long routeId = 1L;
+        String principal = "validUser";
+        when(campingRouteRepository.findById(routeId)).thenReturn(Optional.of(mockRouteEntity(principal, routeId)));
+        doThrow(new DataIntegrityViolationException("Simulated database error")).when(imageIndex).add(eq(routeId), anyList());
+
+        MultipartFile file = mock(MultipartFile.class);
+        when(file.isEmpty()).thenReturn(false);
+        when(file.getOriginalFilename()).thenReturn("image.png");
+        when(file.getInputStream()).thenReturn(new ByteArrayInputStream("file content".getBytes()));
+
+        assertThrows(CampingRouteImageStorageException.class, () -> {
+            service.storeImages(principal, new MultipartFile[]{file}, routeId);
+        });
+
+        Path routeDir = tempDir.resolve("files").resolve("camping_route_images").resolve(String.valueOf(routeId));
+        try (var stream = Files.list(routeDir)) {
+            assertEquals(0, stream.count());
+        }
+    }
+
     @Test
     void givenValidFiles_whenStoreImages_thenFilesStoredSuccessfully() throws IOException {
         long routeId = 1L;
@@ -185,6 +321,30 @@ class CampingRouteImagesServiceTest {
         assertEquals(2, Files.list(routeDir).count());
     }
 
+    @Test
+    void givenSameImageTwice_whenStoreImages_thenContentIsShared() throws IOException {
+        long routeId = 1L;
+        String principal = "validUser";
+        CampingRouteEntity route = mockRouteEntity(principal, routeId);
+        when(campingRouteRepository.findById(routeId)).thenReturn(Optional.of(route));
+
+        MultipartFile file = mock(MultipartFile.class);
+        when(file.isEmpty()).thenReturn(false);
+        when(file.getOriginalFilename()).thenReturn("image.png");
+        when(file.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream("file content".getBytes()));
+
+        service.storeImages(principal, new MultipartFile[]{file}, routeId);
+        service.storeImages(principal, new MultipartFile[]{file}, routeId);
+
+        Path routeDir = tempDir.resolve("files").resolve("camping_route_images").resolve(String.valueOf(routeId));
+        List<Path> images;
+        try (var stream = Files.list(routeDir)) {
+            images = stream.toList();
+        }
+        assertEquals(2, images.size());
+        assertTrue(Files.isSameFile(images.get(0), images.get(1)));
+    }
+
     @Test
     void givenNonExistingDirectory_whenStoreImages_thenDirectoryCreated() throws IOException {
         long routeId = 1L;
@@ -208,12 +368,11 @@ class CampingRouteImagesServiceTest {
     }
 
     @Test
-    void givenExistingDirectoryWithFiles_whenGetImageNames_thenReturnListOfFiles() throws IOException {
+    void givenIndexedImages_whenGetImageNames_thenReturnNamesInOrder() {
         long routeId = 2L;
-        Path routeDir = tempDir.resolve("files").resolve("camping_route_images").resolve(String.valueOf(routeId));
-        Files.createDirectories(routeDir);
-        Files.createFile(routeDir.resolve("image1.png"));
-        Files.createFile(routeDir.resolve("image2.jpg"));
+        when(imageIndex.images(routeId)).thenReturn(List.of(
+                new CampingRouteImageIndex.Image("image2.jpg", 10, 40, 30, "b".repeat(64), true),
+                new CampingRouteImageIndex.Image("image1.png", 20, null, null, "a".repeat(64), true)));
 
         // Note: getImageNames does not require user validation, so no stubbing needed.
 
@@ -222,10 +381,7 @@ class CampingRouteImagesServiceTest {
         assertEquals(HttpStatus.OK, response.getStatusCode());
         CampingRouteImageNamesDto dto = response.getBody();
         assertNotNull(dto);
-        List<String> imageNames = dto.getImageNames();
-        assertEquals(2, imageNames.size());
-        assertTrue(imageNames.contains("image1.png"));
-        assertTrue(imageNames.contains("image2.jpg"));
+        assertEquals(List.of("image2.jpg", "image1.png"), dto.getImageNames());
     }
 
     @Test
@@ -250,6 +406,83 @@ class CampingRouteImagesServiceTest {
         Resource resource = response.getBody();
         assertNotNull(resource);
         assertTrue(resource.exists());
+        assertEquals(MediaType.IMAGE_PNG, response.getHeaders().getContentType());
+        assertNotNull(response.getHeaders().getETag());
+        assertTrue(response.getHeaders().getCacheControl().contains("immutable"));
+    }
+
+    @Test
+    void givenUnprocessedImage_whenGetImage_thenItIsNotCached() throws IOException {
+        long routeId = 4L;
+        String imageName = "image.png";
+        Path routeDir = tempDir.resolve("files").resolve("camping_route_images").resolve(String.valueOf(routeId));
+        Files.createDirectories(routeDir);
+        Files.write(routeDir.resolve(imageName), "test".getBytes());
+        when(imageIndex.images(routeId)).thenReturn(List.of(
+                new CampingRouteImageIndex.Image(imageName, 4, null, null, "a".repeat(64), false)));
+
+        ResponseEntity<Resource> response = service.getImage(routeId, imageName);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("no-cache", response.getHeaders().getCacheControl());
+    }
+
+    @Test
+    void givenStoredPhoto_whenGetImageWithSize_thenNarrowestWiderDerivativeIsSent() throws IOException {
+        long routeId = 1L;
+        String principal = "validUser";
+        when(campingRouteRepository.findById(routeId)).thenReturn(Optional.of(mockRouteEntity(principal, routeId)));
+        var photo = new BufferedImage(1000, 500, BufferedImage.TYPE_INT_RGB);
+        var png = new ByteArrayOutputStream();
+        ImageIO.write(photo, "png", png);
+
+        MultipartFile file = mock(MultipartFile.class);
+        when(file.isEmpty()).thenReturn(false);
+        when(file.getOriginalFilename()).thenReturn("photo.png");
+        when(file.getInputStream()).thenReturn(new ByteArrayInputStream(png.toByteArray()));
+        String imageName = service.storeImages(principal, new MultipartFile[]{file}, routeId)
+                .getBody().getImages().getFirst().getImageName();
+        // as the image processor does once the image is sanitized
+        derivatives.generate(CampingRouteImagesService.directory(routeId), imageName);
+
+        ResponseEntity<Resource> thumbnail = service.getImage(routeId, imageName, 300, "image/avif,image/webp,*/*");
+        ResponseEntity<Resource> medium = service.getImage(routeId, imageName, 500, null);
+        ResponseEntity<Resource> large = service.getImage(routeId, imageName, 1200, null);
+
+        assertEquals(MediaType.IMAGE_JPEG, thumbnail.getHeaders().getContentType());
+        assertEquals(320, ImageIO.read(thumbnail.getBody().getInputStream()).getWidth());
+        assertEquals(800, ImageIO.read(medium.getBody().getInputStream()).getWidth());
+        assertEquals(List.of(HttpHeaders.ACCEPT), medium.getHeaders().getVary());
+        // a photo narrower than the size is sent as it is
+        assertEquals(MediaType.IMAGE_PNG, large.getHeaders().getContentType());
+        assertEquals(1000, ImageIO.read(large.getBody().getInputStream()).getWidth());
+    }
+
+    @Test
+    void givenPhotoWithDerivatives_whenDeleteImage_thenDerivativesAreDeleted() throws IOException {
+        long routeId = 1L;
+        String principal = "validUser";
+        when(campingRouteRepository.findById(routeId)).thenReturn(Optional.of(mockRouteEntity(principal, routeId)));
+        var png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB), "png", png);
+
+        MultipartFile file = mock(MultipartFile.class);
+        when(file.isEmpty()).thenReturn(false);
+        when(file.getOriginalFilename()).thenReturn("photo.png");
+        when(file.getInputStream()).thenReturn(new ByteArrayInputStream(png.toByteArray()));
+        String imageName = service.storeImages(principal, new MultipartFile[]{file}, routeId)
+                .getBody().getImages().getFirst().getImageName();
+        derivatives.generate(CampingRouteImagesService.directory(routeId), imageName);
+        Path derivativeDir = tempDir.resolve("files").resolve("camping_route_images").resolve("1").resolve("derivatives");
+        try (var stream = Files.list(derivativeDir)) {
+            assertEquals(1, stream.count());
+        }
+
+        service.deleteImage(principal, routeId, imageName);
+
+        try (var stream = Files.list(derivativeDir)) {
+            assertEquals(0, stream.count());
+        }
     }
 
     @Test
@@ -279,6 +512,18 @@ class CampingRouteImagesServiceTest {
         assertFalse(Files.exists(routeDir.resolve(imageName)));
     }
 
+    @Test
+    void givenIndexedImageWithoutFile_whenDeleteImage_thenImageIsRemovedFromIndex() {
+        long routeId = 6L;
+        String principal = "owner";
+        when(campingRouteRepository.findById(routeId)).thenReturn(Optional.of(mockRouteEntity(principal, routeId)));
+        when(imageIndex.remove(routeId, "missing.png")).thenReturn(true);
+
+        ResponseEntity<Void> response = service.deleteImage(principal, routeId, "missing.png");
+
+        assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
+    }
+
     @Test
     void givenAuthorizedUserAndNonExistingFile_whenDeleteImage_thenThrowCampingRouteImageNotFound() {
         long routeId = 7L;
@@ -336,6 +581,34 @@ class CampingRouteImagesServiceTest {
 
         assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
         assertFalse(Files.exists(routeDir));
+        verify(imageIndex).removeAll(routeId);
+    }
+
+    @Test
+    void givenImagesStoredBeforeIndexing_whenIndexStoredImages_thenTheyAreIndexedInStoredOrder() throws IOException {
+        long routeId = 13L;
+        var route = mockRouteEntity("owner", routeId);
+        when(imageIndex.campingRouteIdsWithoutImages()).thenReturn(List.of(routeId, 14L));
+        when(campingRouteRepository.getReferenceById(routeId)).thenReturn(route);
+        Path routeDir = tempDir.resolve("files").resolve("camping_route_images").resolve(String.valueOf(routeId));
+        Files.createDirectories(routeDir);
+        ImageIO.write(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), "png", routeDir.resolve("b.png").toFile());
+        Files.setLastModifiedTime(routeDir.resolve("b.png"), FileTime.fromMillis(1_000));
+        Files.write(routeDir.resolve("a.txt"), "photo".getBytes());
+        Files.setLastModifiedTime(routeDir.resolve("a.txt"), FileTime.fromMillis(2_000));
+
+        service.indexStoredImages();
+
+        verify(imageIndex).add(eq(routeId), imagesCaptor.capture());
+        verify(imageIndex, never()).add(eq(14L), anyList());
+        var images = imagesCaptor.getValue();
+        assertEquals(List.of("b.png", "a.txt"), images.stream().map(RouteImageEntity::getFileName).toList());
+        assertEquals(40, images.getFirst().getWidth());
+        assertNull(images.get(1).getWidth());
+        assertEquals(5, images.get(1).getSize());
+        // SHA-256 of "photo"
+        assertEquals("55c64d0fcd6f9d5f7c828093857e3fdfda68478bb4e9bd24d481ef391c7804e8", images.get(1).getContentSha256());
+        assertEquals(1, images.get(1).getSortOrder());
     }
 
     @Test
@@ -1,12 +1,16 @@
 package ee.taltech.iti03022024backend.service;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.assertj.core.api.Assertions.*;
 
 import ee.taltech.iti03022024backend.dto.CampingRouteDto;
+import ee.taltech.iti03022024backend.dto.CampingRouteSearchMode;
 import ee.taltech.iti03022024backend.dto.CampingRouteSearchRequest;
 import ee.taltech.iti03022024backend.dto.PageResponse;
+import ee.taltech.iti03022024backend.dto.SliceResponse;
 import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
 import ee.taltech.iti03022024backend.entity.UserEntity;
 import ee.taltech.iti03022024backend.exception.CampingRouteNotFoundException;
@@ -15,6 +19,7 @@ import ee.taltech.iti03022024backend.mapping.CampingRouteMapper;
 import ee.taltech.iti03022024backend.mapping.CampingRouteMapperImpl;
 import ee.taltech.iti03022024backend.repository.CampingRouteRepository;
 import ee.taltech.iti03022024backend.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -22,8 +27,11 @@ import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.http.ResponseEntity;
 import org.springframework.data.domain.*;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.*;
 
 
@@ -39,11 +47,25 @@ class CampingRouteServiceTest {
     @Spy
     private CampingRouteMapper mapper = new CampingRouteMapperImpl();
 
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private CampingRouteTileCache tileCache;
+
+    private CampingRouteSpatialIndex spatialIndex;
+
     private CampingRouteService campingRouteService;
 
     @BeforeEach
     void setUp() {
-        campingRouteService = new CampingRouteService(routeRepository, userRepository, mapper);
+        CampingRouteTotalCounter totalCounter = new CampingRouteTotalCounter(
+                routeRepository, jdbcTemplate, CampingRouteTotalCounter.Strategy.EXACT, Duration.ofMinutes(1));
+        CampingRouteHomepageCache homepageCache = new CampingRouteHomepageCache(
+                routeRepository, mapper, new SimpleMeterRegistry(), 5, Duration.ofMinutes(5));
+        spatialIndex = new CampingRouteSpatialIndex(jdbcTemplate);
+        campingRouteService = new CampingRouteService(
+                routeRepository, userRepository, mapper, totalCounter, homepageCache, spatialIndex, tileCache);
     }
 
     @Test
@@ -85,9 +107,9 @@ class CampingRouteServiceTest {
         CampingRouteEntity route = new CampingRouteEntity();
         routes.add(route);
 
-        Page<CampingRouteEntity> page = new PageImpl<>(routes, PageRequest.of(0, 10), routes.size());
+        Slice<CampingRouteEntity> slice = new SliceImpl<>(routes, PageRequest.of(0, 10), false);
 
-        when(routeRepository.findAll(any(Specification.class), any(Pageable.class))).thenReturn(page);
+        when(routeRepository.findSlice(any(Specification.class), any(Pageable.class))).thenReturn(slice);
         when(mapper.toDto(route)).thenReturn(new CampingRouteDto());
 
         // when
@@ -96,7 +118,8 @@ class CampingRouteServiceTest {
         // then
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         assertThat(response.getBody()).isNotNull();
-        verify(routeRepository, times(1)).findAll(any(Specification.class), any(Pageable.class));
+        verify(routeRepository, times(1)).findSlice(any(Specification.class), any(Pageable.class));
+        verify(routeRepository, never()).count(any(Specification.class));
     }
 
     @Test
@@ -177,9 +200,10 @@ class CampingRouteServiceTest {
         searchRequest.setPageNumber(0);
         searchRequest.setPageSize(10);
 
-        Page<CampingRouteEntity> page = new PageImpl<>(Collections.singletonList(new CampingRouteEntity()));
+        Slice<CampingRouteEntity> slice = new SliceImpl<>(
+                Collections.singletonList(new CampingRouteEntity()), PageRequest.of(0, 10), false);
 
-        when(routeRepository.findAll(any(Specification.class), any(Pageable.class))).thenReturn(page);
+        when(routeRepository.findSlice(any(Specification.class), any(Pageable.class))).thenReturn(slice);
 
         // when
         ResponseEntity<PageResponse<CampingRouteDto>> response = campingRouteService.getCampingRoutesForHomepage(searchRequest);
@@ -200,7 +224,7 @@ class CampingRouteServiceTest {
 
         Page<CampingRouteEntity> page = new PageImpl<>(Collections.singletonList(new CampingRouteEntity()));
 
-        when(routeRepository.findAll(any(Specification.class), any(Pageable.class))).thenReturn(page);
+        when(routeRepository.searchFullText(eq("test:*"), any(Pageable.class))).thenReturn(page);
 
         // when
         ResponseEntity<PageResponse<CampingRouteDto>> response = campingRouteService.findCampingRoute(searchRequest);
@@ -210,4 +234,245 @@ class CampingRouteServiceTest {
         assertThat(response.getBody()).isNotNull();
         assertThat(response.getBody().getTotalElements()).isEqualTo(1);
     }
+
+    @Test
+    void findCampingRoute_shouldUseSpecification_withContainsMode() {
+        // given
+        CampingRouteSearchRequest searchRequest = new CampingRouteSearchRequest();
+        searchRequest.setPageNumber(0);
+        searchRequest.setPageSize(10);
+        searchRequest.setKeyword("test");
+        searchRequest.setMode(CampingRouteSearchMode.CONTAINS);
+
+        Slice<CampingRouteEntity> slice = new SliceImpl<>(
+                Collections.singletonList(new CampingRouteEntity()), PageRequest.of(1, 10), true);
+
+        when(routeRepository.findSlice(any(Specification.class), any(Pageable.class))).thenReturn(slice);
+        when(routeRepository.count(any(Specification.class))).thenReturn(25L);
+
+        // when
+        ResponseEntity<PageResponse<CampingRouteDto>> response = campingRouteService.findCampingRoute(searchRequest);
+
+        // then
+        assertThat(response.getBody()).isNotNull();
+        assertThat(response.getBody().getTotalElements()).isEqualTo(25);
+        assertThat(response.getBody().getTotalPages()).isEqualTo(3);
+        assertThat(response.getBody().isApproximate()).isFalse();
+        verify(routeRepository, never()).searchFullText(anyString(), any(Pageable.class));
+    }
+
+    private CampingRouteEntity routeStartingAt(long id, double latitude, double longitude) {
+        CampingRouteEntity route = new CampingRouteEntity();
+        route.setId(id);
+        route.setStartLatitude(latitude);
+        route.setStartLongitude(longitude);
+        spatialIndex.routeChanged(route);
+        return route;
+    }
+
+    @Test
+    void findCampingRoute_shouldReturnNearestRoutesFirst_withRadius() {
+        // given
+        routeStartingAt(1L, 58.378, 26.729);
+        CampingRouteEntity kadriorg = routeStartingAt(2L, 59.438, 24.790);
+        CampingRouteEntity oldTown = routeStartingAt(3L, 59.437, 24.745);
+        routeStartingAt(4L, 59.330, 25.343);
+
+        CampingRouteSearchRequest searchRequest = new CampingRouteSearchRequest();
+        searchRequest.setPageNumber(0);
+        searchRequest.setPageSize(2);
+        searchRequest.setLatitude(59.437);
+        searchRequest.setLongitude(24.754);
+        searchRequest.setRadiusKm(50.0);
+
+        when(routeRepository.findAllById(List.of(3L, 2L))).thenReturn(List.of(kadriorg, oldTown));
+
+        // when
+        ResponseEntity<PageResponse<CampingRouteDto>> response = campingRouteService.findCampingRoute(searchRequest);
+
+        // then
+        assertThat(response.getBody()).isNotNull();
+        assertThat(response.getBody().getContent()).extracting(CampingRouteDto::getId).containsExactly(3L, 2L);
+        assertThat(response.getBody().getTotalElements()).isEqualTo(3);
+        assertThat(response.getBody().getTotalPages()).isEqualTo(2);
+        verify(routeRepository, never()).findSlice(any(Specification.class), any(Pageable.class));
+    }
+
+    @Test
+    void findCampingRoute_shouldLeaveOutDeletedRoutes_withRadius() {
+        // given
+        CampingRouteEntity oldTown = routeStartingAt(1L, 59.437, 24.745);
+        routeStartingAt(2L, 59.438, 24.790);
+
+        CampingRouteSearchRequest searchRequest = new CampingRouteSearchRequest();
+        searchRequest.setPageNumber(0);
+        searchRequest.setPageSize(10);
+        searchRequest.setLatitude(59.437);
+        searchRequest.setLongitude(24.754);
+        searchRequest.setRadiusKm(50.0);
+
+        when(routeRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(oldTown));
+
+        // when
+        ResponseEntity<PageResponse<CampingRouteDto>> response = campingRouteService.findCampingRoute(searchRequest);
+
+        // then
+        assertThat(response.getBody()).isNotNull();
+        assertThat(response.getBody().getContent()).extracting(CampingRouteDto::getId).containsExactly(1L);
+        assertThat(response.getBody().getTotalElements()).isEqualTo(1);
+        assertThat(response.getBody().getTotalPages()).isEqualTo(1);
+        assertThat(spatialIndex.size()).isEqualTo(1);
+    }
+
+    @Test
+    void findCampingRoute_shouldNarrowAreaByKeyword_withViewport() {
+        // given
+        routeStartingAt(1L, 59.437, 24.745);
+        CampingRouteEntity kadriorg = routeStartingAt(2L, 59.438, 24.790);
+        routeStartingAt(3L, 58.378, 26.729);
+
+        CampingRouteSearchRequest searchRequest = new CampingRouteSearchRequest();
+        searchRequest.setPageNumber(0);
+        searchRequest.setPageSize(10);
+        searchRequest.setKeyword("park");
+        searchRequest.setMinLatitude(59.3);
+        searchRequest.setMinLongitude(24.5);
+        searchRequest.setMaxLatitude(59.6);
+        searchRequest.setMaxLongitude(25.0);
+
+        when(routeRepository.findIds(any(Specification.class))).thenReturn(List.of(2L));
+        when(routeRepository.findAllById(List.of(2L))).thenReturn(List.of(kadriorg));
+
+        // when
+        ResponseEntity<PageResponse<CampingRouteDto>> response = campingRouteService.findCampingRoute(searchRequest);
+
+        // then
+        assertThat(response.getBody()).isNotNull();
+        assertThat(response.getBody().getContent()).extracting(CampingRouteDto::getId).containsExactly(2L);
+        assertThat(response.getBody().getTotalElements()).isEqualTo(1);
+    }
+
+    @Test
+    void findCampingRoute_shouldListAllRoutes_whenKeywordHasNoWords() {
+        // given
+        CampingRouteSearchRequest searchRequest = new CampingRouteSearchRequest();
+        searchRequest.setPageNumber(0);
+        searchRequest.setPageSize(10);
+        searchRequest.setKeyword(" ,.- ");
+
+        when(routeRepository.findSlice(any(Specification.class), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(), PageRequest.of(0, 10), false));
+
+        // when
+        campingRouteService.findCampingRoute(searchRequest);
+
+        // then
+        verify(routeRepository, never()).searchFullText(anyString(), any(Pageable.class));
+    }
+
+    @Test
+    void findCampingRoute_shouldUseLowestThresholdForIndex_withFuzzyMode() {
+        // given
+        CampingRouteSearchRequest searchRequest = new CampingRouteSearchRequest();
+        searchRequest.setPageNumber(0);
+        searchRequest.setPageSize(10);
+        searchRequest.setKeyword(" Harjuma ");
+        searchRequest.setMode(CampingRouteSearchMode.FUZZY);
+        searchRequest.setNameSimilarityThreshold(0.6);
+        searchRequest.setLocationSimilarityThreshold(0.3);
+
+        Page<CampingRouteEntity> page = new PageImpl<>(Collections.singletonList(new CampingRouteEntity()));
+
+        when(routeRepository.searchFuzzy(eq("Harjuma"), eq(0.6), eq(0.3), any(Pageable.class))).thenReturn(page);
+
+        // when
+        ResponseEntity<PageResponse<CampingRouteDto>> response = campingRouteService.findCampingRoute(searchRequest);
+
+        // then
+        assertThat(response.getBody()).isNotNull();
+        assertThat(response.getBody().getTotalElements()).isEqualTo(1);
+        verify(routeRepository).setWordSimilarityThreshold("0.3");
+    }
+
+    private static CampingRouteEntity routeCreatedAt(long id, LocalDateTime createdAt) {
+        CampingRouteEntity route = new CampingRouteEntity();
+        route.setId(id);
+        route.setCreatedAt(createdAt);
+        return route;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void scrollCampingRoutesForHomepage_shouldReturnCursorOfLastRoute_whenThereIsNextSlice() {
+        // given
+        CampingRouteSearchRequest searchRequest = new CampingRouteSearchRequest();
+        searchRequest.setPageSize(2);
+
+        LocalDateTime createdAt = LocalDateTime.of(2024, 11, 20, 10, 15, 20, 123_456_000);
+        List<CampingRouteEntity> routes = List.of(routeCreatedAt(5L, createdAt), routeCreatedAt(4L, createdAt));
+        Window<CampingRouteEntity> window = Window.from(routes, index -> ScrollPosition.keyset(), true);
+
+        when(routeRepository.findBy(any(Specification.class), any())).thenReturn(window);
+
+        // when
+        ResponseEntity<SliceResponse<CampingRouteDto>> response = campingRouteService.scrollCampingRoutesForHomepage(searchRequest);
+
+        // then
+        assertThat(response.getBody()).isNotNull();
+        assertThat(response.getBody().getContent()).extracting(CampingRouteDto::getId).containsExactly(5L, 4L);
+        assertThat(CampingRouteCursor.decode(response.getBody().getNextCursor()))
+                .isEqualTo(new CampingRouteCursor(createdAt, 4L));
+        verify(routeRepository, never()).count(any(Specification.class));
+    }
+
+    @Test
+    void scrollFoundCampingRoutes_shouldFetchOneExtraRowAndContinueAfterCursor_withFullTextMode() {
+        // given
+        LocalDateTime createdAt = LocalDateTime.of(2024, 11, 20, 10, 15);
+        CampingRouteSearchRequest searchRequest = new CampingRouteSearchRequest();
+        searchRequest.setPageSize(2);
+        searchRequest.setKeyword("raba");
+        searchRequest.setAfter(new CampingRouteCursor(createdAt, 9L).encode());
+
+        List<CampingRouteEntity> rows = List.of(
+                routeCreatedAt(8L, createdAt), routeCreatedAt(7L, createdAt), routeCreatedAt(6L, createdAt));
+
+        when(routeRepository.searchFullTextAfter("raba:*", createdAt, 9L, 3)).thenReturn(rows);
+
+        // when
+        ResponseEntity<SliceResponse<CampingRouteDto>> response = campingRouteService.scrollFoundCampingRoutes(searchRequest);
+
+        // then
+        assertThat(response.getBody()).isNotNull();
+        assertThat(response.getBody().getContent()).extracting(CampingRouteDto::getId).containsExactly(8L, 7L);
+        assertThat(CampingRouteCursor.decode(response.getBody().getNextCursor()))
+                .isEqualTo(new CampingRouteCursor(createdAt, 7L));
+    }
+
+    @Test
+    void scrollFoundCampingRoutes_shouldReturnNoCursor_whenLastSlice() {
+        // given
+        CampingRouteSearchRequest searchRequest = new CampingRouteSearchRequest();
+        searchRequest.setPageSize(2);
+        searchRequest.setKeyword("raba");
+
+        when(routeRepository.searchFullTextAfter(eq("raba:*"), any(LocalDateTime.class), eq(Long.MAX_VALUE), eq(3)))
+                .thenReturn(List.of(routeCreatedAt(1L, LocalDateTime.now())));
+
+        // when
+        ResponseEntity<SliceResponse<CampingRouteDto>> response = campingRouteService.scrollFoundCampingRoutes(searchRequest);
+
+        // then
+        assertThat(response.getBody()).isNotNull();
+        assertThat(response.getBody().getContent()).hasSize(1);
+        assertThat(response.getBody().getNextCursor()).isNull();
+    }
+
+    @Test
+    void toPrefixTsQuery_shouldMatchEveryWordAsPrefix() {
+        assertThat(CampingRouteService.toPrefixTsQuery("Viru raba")).isEqualTo("viru:* & raba:*");
+        assertThat(CampingRouteService.toPrefixTsQuery("Kuusalu vald, Harjumaa (Põhja-Eesti)"))
+                .isEqualTo("kuusalu:* & vald:* & harjumaa:* & põhja:* & eesti:*");
+        assertThat(CampingRouteService.toPrefixTsQuery(null)).isEmpty();
+    }
 }
@@ -0,0 +1,150 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import ee.taltech.iti03022024backend.entity.CampingRouteTrackStats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CampingRouteSpatialIndexTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private CampingRouteSpatialIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new CampingRouteSpatialIndex(jdbcTemplate);
+    }
+
+    private static CampingRouteEntity route(long id, Double latitude, Double longitude) {
+        var route = new CampingRouteEntity();
+        route.setId(id);
+        route.setStartLatitude(latitude);
+        route.setStartLongitude(longitude);
+        return route;
+    }
+
+    @Test
+    void givenRoutes_whenFindWithinRadius_thenOnlyRoutesStartingInsideNearestFirst() {
+        index.routeChanged(route(1, 59.437, 24.745));
+        index.routeChanged(route(2, 59.330, 25.343));
+        index.routeChanged(route(3, 58.378, 26.729));
+        index.routeChanged(route(4, null, null));
+
+        assertThat(index.findWithinRadius(59.33, 25.30, 40)).containsExactly(2L, 1L);
+        assertThat(index.findWithinRadius(59.33, 25.30, 1)).isEmpty();
+        assertThat(index.size()).isEqualTo(3);
+    }
+
+    @Test
+    void givenTrackCrossingViewport_whenFindInViewport_thenRouteIsFoundOnce() {
+        var route = route(1, 59.0, 24.0);
+        // the track runs through many cells, the viewport covers several of them
+        route.setTrackStats(new CampingRouteTrackStats(50_000.0, 0.0, 0.0, 59.0, 24.0, 59.5, 25.0, 500, null));
+        index.routeChanged(route);
+
+        assertThat(index.findInViewport(59.2, 24.3, 59.4, 24.7)).containsExactly(1L);
+        assertThat(index.findInViewport(59.6, 24.3, 59.8, 24.7)).isEmpty();
+    }
+
+    @Test
+    void givenViewportAcrossAntimeridian_whenFindInViewport_thenRoutesOnBothSidesAreFound() {
+        index.routeChanged(route(1, -17.7, 178.0));
+        index.routeChanged(route(2, -17.7, -179.0));
+        index.routeChanged(route(3, -17.7, 170.0));
+
+        assertThat(index.findInViewport(-18, 177, -17, -178)).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(index.findWithinRadius(-17.7, 179.5, 300)).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void givenMovedAndDeletedRoutes_whenFind_thenIndexFollowsChanges() {
+        index.routeChanged(route(1, 59.437, 24.745));
+        index.routeChanged(route(2, 59.437, 24.746));
+
+        index.routeChanged(route(1, 58.378, 26.729));
+        index.routeDeleted(2);
+
+        assertThat(index.findWithinRadius(59.437, 24.745, 5)).isEmpty();
+        assertThat(index.findWithinRadius(58.378, 26.729, 5)).containsExactly(1L);
+    }
+
+    @Test
+    void givenRouteDeletedWithItsUser_whenFind_thenRouteIsGone() {
+        CampingRouteEntity route = route(1, 59.437, 24.745);
+        index.routeChanged(route);
+
+        index.routeDeleted(new CampingRouteDeletedEvent(route));
+
+        assertThat(index.findWithinRadius(59.437, 24.745, 5)).isEmpty();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenStoredRoutes_whenRebuild_thenRoutesAreLoaded() {
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class))).thenReturn(List.of(
+                new CampingRouteSpatialIndex.Entry(1, 59.4, 24.7, 59.4, 24.7, 59.4, 24.7)));
+        index.routeChanged(route(2, 59.4, 24.7));
+
+        index.rebuild();
+
+        assertThat(index.findWithinRadius(59.4, 24.7, 1)).containsExactly(1L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenRoutesChangedWhileRebuilding_whenRebuild_thenChangesAreKept() {
+        index.routeChanged(route(1, 59.4, 24.7));
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class))).thenAnswer(invocation -> {
+            // committed after the query read the routes
+            index.routeChanged(route(2, 59.4, 24.7));
+            index.routeDeleted(new CampingRouteDeletedEvent(route(1, 59.4, 24.7)));
+            return List.of(new CampingRouteSpatialIndex.Entry(1, 59.4, 24.7, 59.4, 24.7, 59.4, 24.7));
+        });
+
+        assertThat(index.rebuild()).isEqualTo(1);
+
+        assertThat(index.findWithinRadius(59.4, 24.7, 1)).containsExactly(2L);
+    }
+
+    @Test
+    void givenManyRoutes_whenFindInViewport_thenSameAsCheckingEveryRoute() {
+        var random = new Random(3);
+        List<double[]> starts = new ArrayList<>();
+        for (int id = 0; id < 5_000; id++) {
+            double latitude = 57.5 + random.nextDouble() * 2.2;
+            double longitude = 21.8 + random.nextDouble() * 6.4;
+            starts.add(new double[]{latitude, longitude});
+            index.routeChanged(route(id, latitude, longitude));
+        }
+
+        for (double[] viewport : new double[][]{{59.3, 24.6, 59.5, 24.9}, {57, 21, 60, 29}, {58.0, 22.0, 58.05, 22.1}}) {
+            List<Long> expected = new ArrayList<>();
+            for (int id = 0; id < starts.size(); id++) {
+                double[] start = starts.get(id);
+                if (start[0] >= viewport[0] && start[0] <= viewport[2] && start[1] >= viewport[1] && start[1] <= viewport[3]) {
+                    expected.add((long) id);
+                }
+            }
+
+            assertThat(index.findInViewport(viewport[0], viewport[1], viewport[2], viewport[3]))
+                    .containsExactlyInAnyOrderElementsOf(expected);
+        }
+    }
+}
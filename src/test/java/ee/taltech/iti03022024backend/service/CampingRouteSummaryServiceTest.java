@@ -0,0 +1,81 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.dto.CampingRouteSummaryDto;
+import ee.taltech.iti03022024backend.repository.CommentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CampingRouteSummaryServiceTest {
+
+    @Mock
+    private CampingRouteViewCounter viewCounter;
+
+    @Mock
+    private CommentRepository commentRepository;
+
+    @Mock
+    private CampingRouteImageIndex imageIndex;
+
+    private CampingRouteSummaryService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new CampingRouteSummaryService(viewCounter, commentRepository, imageIndex);
+    }
+
+    private static CommentRepository.CampingRouteCommentCount commentCount(long campingRouteId, long count) {
+        return new CommentRepository.CampingRouteCommentCount() {
+            @Override
+            public long getCampingRouteId() {
+                return campingRouteId;
+            }
+
+            @Override
+            public long getCommentCount() {
+                return count;
+            }
+        };
+    }
+
+    private static CampingRouteImageIndex.Image image(String fileName) {
+        return new CampingRouteImageIndex.Image(fileName, 100, 40, 30, "a".repeat(64), true);
+    }
+
+    @Test
+    void givenCampingRouteIds_whenGetSummaries_thenEachKindOfDataIsLookedUpOnce() {
+        when(viewCounter.getCounts(List.of(3L, 1L, 999L, 3L))).thenReturn(Map.of(1L, 10L, 3L, 30L));
+        when(commentRepository.countByCampingRouteIds(List.of(3L, 1L))).thenReturn(List.of(commentCount(3L, 2L)));
+        when(imageIndex.images(List.of(3L, 1L))).thenReturn(Map.of(
+                3L, List.of(image("cover.jpg"), image("second.jpg")),
+                1L, List.of()));
+
+        var summaries = service.getSummaries(List.of(3L, 1L, 999L, 3L)).getBody();
+
+        assertThat(summaries).containsExactly(
+                new CampingRouteSummaryDto(3L, "cover.jpg", 30L, 2L),
+                new CampingRouteSummaryDto(1L, null, 10L, 0L));
+        verify(commentRepository, times(1)).countByCampingRouteIds(anyCollection());
+        verify(imageIndex, times(1)).images(anyCollection());
+    }
+
+    @Test
+    void givenOnlyNonExistingCampingRoutes_whenGetSummaries_thenEmptyWithoutFurtherQueries() {
+        when(viewCounter.getCounts(List.of(999L))).thenReturn(Map.of());
+
+        var summaries = service.getSummaries(List.of(999L)).getBody();
+
+        assertThat(summaries).isEmpty();
+        verifyNoInteractions(commentRepository, imageIndex);
+    }
+}
@@ -0,0 +1,131 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import ee.taltech.iti03022024backend.tile.WebMercator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CampingRouteTileCacheTest {
+    private static final byte[] TILE = {1, 2, 3};
+
+    @TempDir
+    Path tempDir;
+
+    private CampingRouteTileCache tileCache;
+
+    @BeforeEach
+    void setUp() {
+        tileCache = new CampingRouteTileCache(tempDir, 14, Duration.ofMinutes(10));
+    }
+
+    private static CampingRouteEntity routeStartingAt(double latitude, double longitude) {
+        var route = new CampingRouteEntity();
+        route.setId(1L);
+        route.setStartLatitude(latitude);
+        route.setStartLongitude(longitude);
+        return route;
+    }
+
+    private void putTileAt(int zoom, double latitude, double longitude) {
+        tileCache.put(zoom, (int) WebMercator.tileX(longitude, zoom), (int) WebMercator.tileY(latitude, zoom),
+                TILE, tileCache.version());
+    }
+
+    private boolean hasTileAt(int zoom, double latitude, double longitude) {
+        return tileCache.get(zoom, (int) WebMercator.tileX(longitude, zoom), (int) WebMercator.tileY(latitude, zoom))
+                .isPresent();
+    }
+
+    @Test
+    void givenStoredTile_whenGet_thenTileReturned() {
+        tileCache.put(3, 4, 2, TILE, tileCache.version());
+
+        assertThat(tileCache.get(3, 4, 2)).hasValue(TILE);
+        assertThat(tileCache.get(3, 4, 3)).isEmpty();
+        assertThat(tempDir.resolve("tiles").resolve("3").resolve("4").resolve("2.mvt")).exists();
+    }
+
+    @Test
+    void givenZoomPastMaxZoom_whenPut_thenTileIsNotStored() {
+        tileCache.put(15, 0, 0, TILE, tileCache.version());
+
+        assertThat(tileCache.get(15, 0, 0)).isEmpty();
+        assertThat(tempDir.resolve("tiles").resolve("15")).doesNotExist();
+    }
+
+    @Test
+    void givenInvalidationAfterRenderStarted_whenPut_thenTileIsNotStored() {
+        long version = tileCache.version();
+        tileCache.invalidate(routeStartingAt(59.437, 24.754));
+
+        tileCache.put(3, 4, 2, TILE, version);
+
+        assertThat(tileCache.get(3, 4, 2)).isEmpty();
+    }
+
+    @Test
+    void givenCachedTiles_whenInvalidateRoute_thenOnlyTilesOfTheRouteAreDropped() {
+        putTileAt(0, 59.437, 24.754);
+        putTileAt(12, 59.437, 24.754);
+        putTileAt(12, 58.378, 26.729);
+        putTileAt(14, 59.437, 24.754);
+
+        tileCache.invalidate(routeStartingAt(59.437, 24.754));
+
+        assertThat(hasTileAt(0, 59.437, 24.754)).isFalse();
+        assertThat(hasTileAt(12, 59.437, 24.754)).isFalse();
+        assertThat(hasTileAt(14, 59.437, 24.754)).isFalse();
+        assertThat(hasTileAt(12, 58.378, 26.729)).isTrue();
+    }
+
+    @Test
+    void givenRouteWithoutLocation_whenInvalidate_thenNothingIsDropped() {
+        putTileAt(0, 59.437, 24.754);
+        long version = tileCache.version();
+
+        tileCache.invalidate(new CampingRouteEntity());
+
+        assertThat(hasTileAt(0, 59.437, 24.754)).isTrue();
+        assertThat(tileCache.version()).isEqualTo(version);
+        assertThat(Files.exists(tempDir.resolve("tiles").resolve("0"))).isTrue();
+    }
+
+    @Test
+    void givenTileOlderThanMaxAge_whenGet_thenTileIsNotReturned() throws IOException {
+        tileCache.put(3, 4, 2, TILE, tileCache.version());
+        Files.setLastModifiedTime(tempDir.resolve("tiles").resolve("3").resolve("4").resolve("2.mvt"),
+                FileTime.from(Instant.now().minus(Duration.ofMinutes(11))));
+
+        assertThat(tileCache.get(3, 4, 2)).isEmpty();
+    }
+
+    @Test
+    void givenRouteDeletedWithItsUser_whenGet_thenTilesOfTheRouteAreDropped() {
+        putTileAt(12, 59.437, 24.754);
+
+        tileCache.routeDeleted(new CampingRouteDeletedEvent(routeStartingAt(59.437, 24.754)));
+
+        assertThat(hasTileAt(12, 59.437, 24.754)).isFalse();
+    }
+
+    @Test
+    void givenCachedTiles_whenClear_thenEveryTileIsDropped() {
+        putTileAt(0, 59.437, 24.754);
+        putTileAt(12, 58.378, 26.729);
+
+        tileCache.clear();
+
+        assertThat(tempDir.resolve("tiles")).doesNotExist();
+        assertThat(hasTileAt(0, 59.437, 24.754)).isFalse();
+    }
+}
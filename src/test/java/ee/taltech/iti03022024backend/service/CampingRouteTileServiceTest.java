@@ -0,0 +1,153 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import ee.taltech.iti03022024backend.entity.CampingRouteTrackStats;
+import ee.taltech.iti03022024backend.exception.InvalidTileException;
+import ee.taltech.iti03022024backend.file.FileResponses;
+import ee.taltech.iti03022024backend.gpx.GpxPointConsumer;
+import ee.taltech.iti03022024backend.gpx.GpxTrack;
+import ee.taltech.iti03022024backend.gpx.GpxTrackSimplifier;
+import ee.taltech.iti03022024backend.repository.CampingRouteRepository;
+import ee.taltech.iti03022024backend.tile.VectorTileEncoder;
+import ee.taltech.iti03022024backend.tile.WebMercator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CampingRouteTileServiceTest {
+    private static final int ZOOM = 12;
+
+    @Mock
+    private CampingRouteRepository routeRepository;
+
+    @Mock
+    private CampingRouteGpxService gpxService;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    Path tempDir;
+
+    private CampingRouteSpatialIndex spatialIndex;
+    private CampingRouteTileService tileService;
+
+    @BeforeEach
+    void setUp() {
+        spatialIndex = new CampingRouteSpatialIndex(jdbcTemplate);
+        var tileCache = new CampingRouteTileCache(tempDir, 14, Duration.ofMinutes(10));
+        tileService = new CampingRouteTileService(routeRepository, spatialIndex, gpxService, tileCache,
+                new FileResponses());
+    }
+
+    private static GpxTrack track(double... coordinates) {
+        var track = new GpxTrack.Builder();
+        track.segmentStart();
+        for (int i = 0; i < coordinates.length; i += 2) {
+            track.point(coordinates[i], coordinates[i + 1], Double.NaN, GpxPointConsumer.NO_TIME);
+        }
+        return track.build();
+    }
+
+    private CampingRouteEntity route(long id, String name, GpxTrack track) {
+        var route = new CampingRouteEntity();
+        route.setId(id);
+        route.setName(name);
+        route.setStartLatitude(track.getLatitudes()[0]);
+        route.setStartLongitude(track.getLongitudes()[0]);
+        if (track.size() > 1) {
+            route.setTrackStats(new CampingRouteTrackStats(1000.0, 0.0, 0.0,
+                    59.43, 24.74, 59.44, 24.76, track.size(), null));
+        }
+        spatialIndex.routeChanged(route);
+        return route;
+    }
+
+    private static int tileX(double longitude) {
+        return (int) WebMercator.tileX(longitude, ZOOM);
+    }
+
+    private static int tileY(double latitude) {
+        return (int) WebMercator.tileY(latitude, ZOOM);
+    }
+
+    private static byte[] body(ResponseEntity<Resource> response) throws IOException {
+        return response.getBody().getContentAsByteArray();
+    }
+
+    @Test
+    void givenTileOutsideGrid_whenGetTile_thenThrowInvalidTileException() {
+        assertThatThrownBy(() -> tileService.getTile(1, 2, 0))
+                .isInstanceOf(InvalidTileException.class)
+                .hasMessage("Tile 1/2/0 does not exist");
+    }
+
+    @Test
+    void givenNoRoutesInTile_whenGetTile_thenEmptyTile() throws IOException {
+        ResponseEntity<Resource> response = tileService.getTile(ZOOM, 0, 0);
+
+        assertThat(response.getHeaders().getContentType()).hasToString(VectorTileEncoder.MEDIA_TYPE_VALUE);
+        assertThat(body(response)).isEmpty();
+        verifyNoInteractions(routeRepository, gpxService);
+    }
+
+    @Test
+    void givenRouteWithTrack_whenGetTile_thenTrackOfZoomLevelIsDrawn() throws IOException {
+        GpxTrack track = track(59.431, 24.741, 59.435, 24.75, 59.439, 24.759);
+        CampingRouteEntity route = route(1L, "Kadrioru ring", track);
+        when(routeRepository.findAllById(List.of(1L))).thenReturn(List.of(route));
+        when(gpxService.findTrack(1L, GpxTrackSimplifier.levelForZoom(ZOOM))).thenReturn(Optional.of(track));
+
+        byte[] tile = body(tileService.getTile(ZOOM, tileX(24.75), tileY(59.435)));
+
+        assertThat(new String(tile, StandardCharsets.UTF_8)).contains(CampingRouteTileService.LAYER_NAME, "Kadrioru ring");
+    }
+
+    @Test
+    void givenRouteWithoutTrack_whenGetTile_thenStartPointIsDrawn() throws IOException {
+        CampingRouteEntity route = route(2L, "Vanalinn", track(59.437, 24.745));
+        when(routeRepository.findAllById(List.of(2L))).thenReturn(List.of(route));
+
+        byte[] tile = body(tileService.getTile(ZOOM, tileX(24.745), tileY(59.437)));
+
+        assertThat(new String(tile, StandardCharsets.UTF_8)).contains("Vanalinn");
+        verifyNoInteractions(gpxService);
+    }
+
+    @Test
+    void givenRenderedTile_whenGetTileAgain_thenCachedTileIsServed() throws IOException {
+        CampingRouteEntity route = route(2L, "Vanalinn", track(59.437, 24.745));
+        when(routeRepository.findAllById(List.of(2L))).thenReturn(List.of(route));
+
+        ResponseEntity<Resource> firstResponse = tileService.getTile(ZOOM, tileX(24.745), tileY(59.437));
+        ResponseEntity<Resource> secondResponse = tileService.getTile(ZOOM, tileX(24.745), tileY(59.437));
+        byte[] first = body(firstResponse);
+        byte[] second = body(secondResponse);
+
+        assertThat(second).isEqualTo(first);
+        verify(routeRepository, times(1)).findAllById(List.of(2L));
+        assertThat(secondResponse.getHeaders().getETag()).isNotNull().isEqualTo(firstResponse.getHeaders().getETag());
+        assertThat(secondResponse.getHeaders().getCacheControl()).isEqualTo("max-age=60, public");
+        verify(gpxService, never()).findTrack(anyLong(), anyInt());
+    }
+}
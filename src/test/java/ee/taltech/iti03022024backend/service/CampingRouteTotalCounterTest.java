@@ -0,0 +1,156 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import ee.taltech.iti03022024backend.repository.CampingRouteRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CampingRouteTotalCounterTest {
+    private static final Specification<CampingRouteEntity> ALL = Specification.where(null);
+
+    @Mock
+    private CampingRouteRepository routeRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private CampingRouteTotalCounter counter(CampingRouteTotalCounter.Strategy strategy) {
+        return new CampingRouteTotalCounter(routeRepository, jdbcTemplate, strategy, Duration.ofMinutes(1));
+    }
+
+    private static Slice<CampingRouteEntity> slice(int page, int elements, boolean hasNext) {
+        return new SliceImpl<>(Collections.nCopies(elements, new CampingRouteEntity()), PageRequest.of(page, 10), hasNext);
+    }
+
+    @Test
+    void givenLastPage_whenCount_thenTotalIsKnownWithoutQuery() {
+        var total = counter(CampingRouteTotalCounter.Strategy.EXACT).count("all", ALL, false, slice(2, 4, false));
+
+        assertThat(total).isEqualTo(new CampingRouteTotalCounter.Total(24, false));
+        verifyNoInteractions(routeRepository, jdbcTemplate);
+    }
+
+    @Test
+    void givenPageAfterLastPage_whenCount_thenCount() {
+        when(routeRepository.count(ALL)).thenReturn(12L);
+
+        var total = counter(CampingRouteTotalCounter.Strategy.EXACT).count("all", ALL, false, slice(3, 0, false));
+
+        assertThat(total).isEqualTo(new CampingRouteTotalCounter.Total(12, false));
+    }
+
+    @Test
+    void givenCachedStrategy_whenCountTwice_thenSecondTotalIsCachedAndApproximate() {
+        var counter = counter(CampingRouteTotalCounter.Strategy.CACHED);
+        when(routeRepository.count(ALL)).thenReturn(40L);
+
+        var first = counter.count("contains:raba", ALL, true, slice(0, 10, true));
+        var second = counter.count("contains:raba", ALL, true, slice(1, 10, true));
+
+        assertThat(first).isEqualTo(new CampingRouteTotalCounter.Total(40, false));
+        assertThat(second).isEqualTo(new CampingRouteTotalCounter.Total(40, true));
+        verify(routeRepository, times(1)).count(ALL);
+    }
+
+    @Test
+    void givenCachedTotal_whenInvalidate_thenCountAgain() {
+        var counter = counter(CampingRouteTotalCounter.Strategy.CACHED);
+        when(routeRepository.count(ALL)).thenReturn(40L, 41L);
+
+        counter.count("all", ALL, false, slice(0, 10, true));
+        counter.invalidate();
+        var total = counter.count("all", ALL, false, slice(0, 10, true));
+
+        assertThat(total).isEqualTo(new CampingRouteTotalCounter.Total(41, false));
+    }
+
+    @Test
+    void givenInvalidateInTransaction_whenCountBeforeCommit_thenCachedTotalIsDroppedOnlyAfterCommit() {
+        var counter = counter(CampingRouteTotalCounter.Strategy.CACHED);
+        when(routeRepository.count(ALL)).thenReturn(40L, 41L);
+        counter.count("all", ALL, false, slice(0, 10, true));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            counter.invalidate();
+            assertThat(counter.count("all", ALL, false, slice(0, 10, true)).elements()).isEqualTo(40);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(counter.count("all", ALL, false, slice(0, 10, true)).elements()).isEqualTo(41);
+    }
+
+    @Test
+    void givenEstimatedStrategy_whenCountUnfilteredListing_thenUsePlannerEstimate() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(1000L);
+
+        var total = counter(CampingRouteTotalCounter.Strategy.ESTIMATED).count("all", ALL, false, slice(0, 10, true));
+
+        assertThat(total).isEqualTo(new CampingRouteTotalCounter.Total(1000, true));
+        verify(routeRepository, never()).count(any(Specification.class));
+    }
+
+    @Test
+    void givenStaleEstimate_whenCountUnfilteredListing_thenTotalCoversFetchedRoutes() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(15L);
+
+        var total = counter(CampingRouteTotalCounter.Strategy.ESTIMATED).count("all", ALL, false, slice(4, 10, true));
+
+        assertThat(total).isEqualTo(new CampingRouteTotalCounter.Total(51, true));
+    }
+
+    @Test
+    void givenTableNotAnalyzed_whenCountUnfilteredListing_thenCount() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(-1L);
+        when(routeRepository.count(ALL)).thenReturn(30L);
+
+        var total = counter(CampingRouteTotalCounter.Strategy.ESTIMATED).count("all", ALL, false, slice(0, 10, true));
+
+        assertThat(total).isEqualTo(new CampingRouteTotalCounter.Total(30, false));
+    }
+
+    @Test
+    void givenEstimatedStrategy_whenCountFilteredListing_thenCountIsCached() {
+        var counter = counter(CampingRouteTotalCounter.Strategy.ESTIMATED);
+        when(routeRepository.count(ALL)).thenReturn(20L);
+
+        counter.count("user:1", ALL, true, slice(0, 10, true));
+        var total = counter.count("user:1", ALL, true, slice(0, 10, true));
+
+        assertThat(total).isEqualTo(new CampingRouteTotalCounter.Total(20, true));
+        verify(routeRepository, times(1)).count(ALL);
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void givenDifferentKeywords_whenCount_thenCachedSeparately() {
+        var counter = counter(CampingRouteTotalCounter.Strategy.CACHED);
+        when(routeRepository.count(ALL)).thenReturn(20L, 5L);
+
+        var first = counter.count("contains:raba", ALL, true, slice(0, 10, true));
+        var second = counter.count("contains:rada", ALL, true, slice(0, 10, true));
+
+        assertThat(List.of(first.elements(), second.elements())).containsExactly(20L, 5L);
+    }
+}
@@ -0,0 +1,243 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
+import ee.taltech.iti03022024backend.exception.CampingRouteNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CampingRouteViewCounterTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private CampingRouteViewCounter viewCounter;
+
+    // view_count of the camping routes in the database
+    private final Map<Long, Long> database = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        viewCounter = new CampingRouteViewCounter(jdbcTemplate, transactionManager, Duration.ofMinutes(10));
+    }
+
+    private void givenPersistedCount(long campingRouteId, long count) {
+        database.put(campingRouteId, count);
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), eq(campingRouteId))).thenReturn(List.of(count));
+    }
+
+    // adds the flushed deltas to the database and returns the new totals like UPDATE ... RETURNING
+    private void givenDatabaseTakesDeltas() {
+        lenient().doAnswer(invocation -> {
+            Long[] ids = invocation.getArgument(2);
+            Long[] deltas = invocation.getArgument(3);
+            for (int i = 0; i < ids.length; i++) {
+                long total = database.merge(ids[i], deltas[i], Long::sum);
+                ResultSet row = mock(ResultSet.class);
+                when(row.getLong("id")).thenReturn(ids[i]);
+                when(row.getLong("view_count")).thenReturn(total);
+                invocation.<RowCallbackHandler>getArgument(1).processRow(row);
+            }
+            return null;
+        }).when(jdbcTemplate).query(startsWith("UPDATE"), any(RowCallbackHandler.class), any(Object[].class));
+    }
+
+    @Test
+    void givenPersistedViews_whenIncrement_thenCountIncludesPersistedViews() {
+        givenPersistedCount(1L, 10L);
+
+        assertThat(viewCounter.increment(1L)).isEqualTo(11L);
+        assertThat(viewCounter.increment(1L)).isEqualTo(12L);
+        assertThat(viewCounter.getCount(1L)).isEqualTo(12L);
+        verify(jdbcTemplate, times(1)).queryForList(anyString(), eq(Long.class), eq(1L));
+    }
+
+    @Test
+    void givenNonExistingCampingRoute_whenIncrement_thenThrowCampingRouteNotFoundException() {
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), eq(999L))).thenReturn(List.of());
+
+        assertThatThrownBy(() -> viewCounter.increment(999L))
+                .isInstanceOf(CampingRouteNotFoundException.class)
+                .hasMessageContaining("Camping route with id of 999 does not exist");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenPendingViews_whenFlush_thenDeltasAreWrittenInOneBatch() {
+        givenPersistedCount(1L, 0L);
+        givenPersistedCount(2L, 5L);
+        givenDatabaseTakesDeltas();
+        viewCounter.increment(1L);
+        viewCounter.increment(1L);
+        viewCounter.increment(2L);
+
+        viewCounter.flush();
+
+        ArgumentCaptor<List<Object[]>> batchCaptor = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).query(startsWith("UPDATE"), any(RowCallbackHandler.class), any(Object[].class));
+        verify(jdbcTemplate).batchUpdate(anyString(), batchCaptor.capture());
+        assertThat(batchCaptor.getValue()).containsExactlyInAnyOrder(new Object[]{2L, 1L}, new Object[]{1L, 2L});
+        assertThat(database).containsEntry(1L, 2L).containsEntry(2L, 6L);
+        assertThat(viewCounter.getCount(1L)).isEqualTo(2L);
+        assertThat(viewCounter.getCount(2L)).isEqualTo(6L);
+
+        viewCounter.flush();
+        verifyNoMoreInteractions(ignoreStubs(jdbcTemplate));
+    }
+
+    @Test
+    void givenViewsFlushedByAnotherInstance_whenFlush_thenCountIncludesThem() {
+        givenPersistedCount(1L, 10L);
+        givenDatabaseTakesDeltas();
+        viewCounter.increment(1L);
+
+        database.merge(1L, 5L, Long::sum);
+        viewCounter.flush();
+
+        assertThat(viewCounter.getCount(1L)).isEqualTo(16L);
+    }
+
+    @Test
+    void givenRouteDeletedByAnotherInstance_whenFlush_thenCounterIsDropped() {
+        givenPersistedCount(1L, 3L);
+        viewCounter.increment(1L);
+
+        // the update finds no row to return
+        viewCounter.flush();
+
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), eq(1L))).thenReturn(List.of());
+        assertThatThrownBy(() -> viewCounter.getCount(1L)).isInstanceOf(CampingRouteNotFoundException.class);
+    }
+
+    @Test
+    void givenIdleCounter_whenFlush_thenItIsDroppedAndItsCountReloaded() {
+        viewCounter = new CampingRouteViewCounter(jdbcTemplate, transactionManager, Duration.ZERO);
+        givenPersistedCount(1L, 3L);
+        givenDatabaseTakesDeltas();
+        viewCounter.increment(1L);
+
+        viewCounter.flush();
+
+        givenPersistedCount(1L, database.get(1L));
+        assertThat(viewCounter.getCount(1L)).isEqualTo(4L);
+        verify(jdbcTemplate, times(2)).queryForList(anyString(), eq(Long.class), eq(1L));
+    }
+
+    @Test
+    void givenFailingDatabase_whenFlush_thenViewsStayPending() {
+        givenPersistedCount(1L, 0L);
+        viewCounter.increment(1L);
+        doThrow(new DataAccessResourceFailureException("Connection refused"))
+                .doNothing()
+                .when(jdbcTemplate).query(startsWith("UPDATE"), any(RowCallbackHandler.class), any(Object[].class));
+
+        viewCounter.flush();
+        assertThat(viewCounter.getCount(1L)).isEqualTo(1L);
+        givenDatabaseTakesDeltas();
+        viewCounter.flush();
+
+        verify(jdbcTemplate, times(2)).query(startsWith("UPDATE"), any(RowCallbackHandler.class), any(Object[].class));
+        assertThat(viewCounter.getCount(1L)).isEqualTo(1L);
+        assertThat(database).containsEntry(1L, 1L);
+    }
+
+    @Test
+    void givenConcurrentViews_whenIncrement_thenNoViewIsLost() throws InterruptedException {
+        givenPersistedCount(1L, 0L);
+        givenDatabaseTakesDeltas();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        for (int i = 0; i < 10_000; i++) {
+            executor.execute(() -> viewCounter.increment(1L));
+            if (i % 1000 == 0) {
+                executor.execute(viewCounter::flush);
+            }
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(viewCounter.getCount(1L)).isEqualTo(10_000L);
+    }
+
+    @Test
+    void givenManyCampingRoutes_whenGetCounts_thenCountsNotInMemoryAreLoadedWithOneQuery() throws SQLException {
+        givenPersistedCount(1L, 3L);
+        viewCounter.increment(1L);
+        ResultSet row = mock(ResultSet.class);
+        when(row.getLong("id")).thenReturn(2L);
+        when(row.getLong("view_count")).thenReturn(7L);
+        doAnswer(invocation -> {
+            invocation.<RowCallbackHandler>getArgument(1).processRow(row);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+
+        var counts = viewCounter.getCounts(List.of(1L, 2L, 999L));
+
+        assertThat(counts).containsOnly(entry(1L, 4L), entry(2L, 7L));
+        verify(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(new Object[]{new Long[]{2L, 999L}}));
+        // the loaded count is kept in memory like a count read one route at a time
+        assertThat(viewCounter.increment(2L)).isEqualTo(8L);
+    }
+
+    @Test
+    void givenEvictedCampingRoute_whenGetCount_thenCountIsReloaded() {
+        givenPersistedCount(1L, 3L);
+        viewCounter.increment(1L);
+
+        viewCounter.evict(1L);
+
+        assertThat(viewCounter.getCount(1L)).isEqualTo(3L);
+        verify(jdbcTemplate, times(2)).queryForList(anyString(), eq(Long.class), eq(1L));
+    }
+
+    @Test
+    void givenRouteDeletedInTransaction_whenCommitted_thenCounterIsDroppedOnlyAfterCommit() {
+        givenPersistedCount(1L, 3L);
+        viewCounter.increment(1L);
+        var route = new CampingRouteEntity();
+        route.setId(1L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            viewCounter.routeDeleted(new CampingRouteDeletedEvent(route));
+            // a view counted before the delete commits still goes to the loaded counter
+            assertThat(viewCounter.getCount(1L)).isEqualTo(4L);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), eq(1L))).thenReturn(List.of());
+        assertThatThrownBy(() -> viewCounter.getCount(1L)).isInstanceOf(CampingRouteNotFoundException.class);
+    }
+}
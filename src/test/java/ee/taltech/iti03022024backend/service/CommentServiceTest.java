@@ -1,9 +1,12 @@
 package ee.taltech.iti03022024backend.service;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 import static org.assertj.core.api.Assertions.*;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import ee.taltech.iti03022024backend.dto.CommentDto;
+import ee.taltech.iti03022024backend.dto.SliceResponse;
 import ee.taltech.iti03022024backend.entity.CampingRouteEntity;
 import ee.taltech.iti03022024backend.entity.CommentEntity;
 import ee.taltech.iti03022024backend.entity.UserEntity;
@@ -18,8 +21,16 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.stream.Stream;
 
 
 @ExtendWith(MockitoExtension.class)
@@ -37,12 +48,16 @@ class CommentServiceTest {
     @Mock
     private CampingRouteRepository campingRouteRepository;
 
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     private CommentService commentService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        commentService = new CommentService(commentMapper, userRepository, commentRepository, campingRouteRepository);
+        commentService = new CommentService(commentMapper, userRepository, commentRepository, campingRouteRepository,
+                new ObjectMapper(), new TransactionTemplate(transactionManager));
     }
 
     @Test
@@ -99,28 +114,25 @@ class CommentServiceTest {
     void getCommentsByCampingRoute_shouldReturnListOfComments() {
         // Given
         long campingRouteId = 1L;
-        CommentEntity commentEntity = new CommentEntity();
-        commentEntity.setContent("Great route!");
-        List<CommentEntity> commentEntities = Collections.singletonList(commentEntity);
+        CommentDto comment = new CommentDto(1L, "Great route!", 2L);
 
-        when(campingRouteRepository.findById(campingRouteId)).thenReturn(Optional.of(new CampingRouteEntity()));
-        when(commentRepository.findByCampingRoute(any(CampingRouteEntity.class))).thenReturn(commentEntities);
-        when(commentMapper.toDtoList(commentEntities)).thenReturn(Collections.singletonList(new CommentDto()));
+        when(commentRepository.findDtosByCampingRouteId(campingRouteId)).thenReturn(List.of(comment));
 
         // When
         ResponseEntity<List<CommentDto>> response = commentService.getCommentsByCampingRoute(campingRouteId);
 
         // Then
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
-        assertThat(response.getBody()).hasSize(1);
-        verify(commentRepository, times(1)).findByCampingRoute(any(CampingRouteEntity.class));
+        assertThat(response.getBody()).containsExactly(comment);
+        verify(campingRouteRepository, never()).existsById(campingRouteId);
     }
 
     @Test
     void getCommentsByCampingRoute_shouldThrowCampingRouteNotFoundException_whenRouteNotFound() {
         // Given
         long campingRouteId = 1L;
-        when(campingRouteRepository.findById(campingRouteId)).thenReturn(Optional.empty());
+        when(commentRepository.findDtosByCampingRouteId(campingRouteId)).thenReturn(Collections.emptyList());
+        when(campingRouteRepository.existsById(campingRouteId)).thenReturn(false);
 
         // When & Then
         assertThatThrownBy(() -> commentService.getCommentsByCampingRoute(campingRouteId))
@@ -128,16 +140,26 @@ class CommentServiceTest {
                 .hasMessageContaining("Camping route with id of " + campingRouteId + " does not exist");
     }
 
+    @Test
+    void getCommentsByCampingRoute_shouldReturnEmptyList_whenRouteHasNoComments() {
+        // Given
+        long campingRouteId = 1L;
+        when(commentRepository.findDtosByCampingRouteId(campingRouteId)).thenReturn(Collections.emptyList());
+        when(campingRouteRepository.existsById(campingRouteId)).thenReturn(true);
+
+        // When
+        ResponseEntity<List<CommentDto>> response = commentService.getCommentsByCampingRoute(campingRouteId);
+
+        // Then
+        assertThat(response.getBody()).isEmpty();
+    }
+
     @Test
     void getCommentsByUserId_shouldReturnListOfComments() {
         // Given
         long userId = 1L;
-        CommentEntity commentEntity = new CommentEntity();
-        commentEntity.setContent("Nice experience!");
-        List<CommentEntity> commentEntities = Collections.singletonList(commentEntity);
-
-        when(commentRepository.findByUser_Id(userId)).thenReturn(commentEntities);
-        when(commentMapper.toDtoList(commentEntities)).thenReturn(Collections.singletonList(new CommentDto()));
+        when(commentRepository.findDtosByUserId(userId))
+                .thenReturn(Collections.singletonList(new CommentDto(1L, "Nice experience!", userId)));
 
         // When
         ResponseEntity<List<CommentDto>> response = commentService.getCommentsByUserId(userId);
@@ -145,14 +167,14 @@ class CommentServiceTest {
         // Then
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         assertThat(response.getBody()).hasSize(1);
-        verify(commentRepository, times(1)).findByUser_Id(userId);
+        verify(commentRepository, times(1)).findDtosByUserId(userId);
     }
 
     @Test
     void getCommentsByUserId_shouldReturnEmptyList_whenNoCommentsFound() {
         // Given
         long userId = 1L;
-        when(commentRepository.findByUser_Id(userId)).thenReturn(Collections.emptyList());
+        when(commentRepository.findDtosByUserId(userId)).thenReturn(Collections.emptyList());
 
         // When
         ResponseEntity<List<CommentDto>> response = commentService.getCommentsByUserId(userId);
@@ -161,4 +183,76 @@ class CommentServiceTest {
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         assertThat(response.getBody()).isEmpty();
     }
+
+    @Test
+    void getCommentSliceByCampingRoute_shouldReturnCursorOfLastComment_whenThereIsNextSlice() {
+        // Given
+        when(commentRepository.findDtosByCampingRouteIdAfter(1L, 10L, Limit.of(3))).thenReturn(List.of(
+                new CommentDto(11L, "a", 1L), new CommentDto(12L, "b", 1L), new CommentDto(13L, "c", 1L)));
+
+        // When
+        ResponseEntity<SliceResponse<CommentDto>> response = commentService.getCommentSliceByCampingRoute(1L, 10L, 2);
+
+        // Then
+        assertThat(response.getBody()).isNotNull();
+        assertThat(response.getBody().getContent()).extracting(CommentDto::getId).containsExactly(11L, 12L);
+        assertThat(response.getBody().getNextCursor()).isEqualTo("12");
+    }
+
+    @Test
+    void getCommentSliceByCampingRoute_shouldThrowCampingRouteNotFoundException_whenRouteNotFound() {
+        // Given
+        when(commentRepository.findDtosByCampingRouteIdAfter(1L, 0L, Limit.of(21))).thenReturn(List.of());
+        when(campingRouteRepository.existsById(1L)).thenReturn(false);
+
+        // When & Then
+        assertThatThrownBy(() -> commentService.getCommentSliceByCampingRoute(1L, null, 20))
+                .isInstanceOf(CampingRouteNotFoundException.class);
+    }
+
+    @Test
+    void getCommentSliceByUserId_shouldReturnNoCursor_whenLastSlice() {
+        // Given
+        when(commentRepository.findDtosByUserIdAfter(1L, 0L, Limit.of(21))).thenReturn(List.of(new CommentDto(1L, "a", 1L)));
+
+        // When
+        ResponseEntity<SliceResponse<CommentDto>> response = commentService.getCommentSliceByUserId(1L, null, 20);
+
+        // Then
+        assertThat(response.getBody()).isNotNull();
+        assertThat(response.getBody().getContent()).hasSize(1);
+        assertThat(response.getBody().getNextCursor()).isNull();
+    }
+
+    @Test
+    void streamCommentsByCampingRoute_shouldWriteOneJsonObjectPerLine() throws Exception {
+        // Given
+        when(campingRouteRepository.existsById(1L)).thenReturn(true);
+        when(commentRepository.streamDtosByCampingRouteId(1L)).thenReturn(Stream.of(
+                new CommentDto(1L, "Väga äge rada", 2L), new CommentDto(2L, "Ilus", 3L)));
+
+        // When
+        ResponseEntity<StreamingResponseBody> response = commentService.streamCommentsByCampingRoute(1L);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Objects.requireNonNull(response.getBody()).writeTo(out);
+
+        // Then
+        assertThat(response.getHeaders().getContentType()).hasToString("application/x-ndjson");
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("""
+                {"id":1,"content":"Väga äge rada","userID":2}
+                {"id":2,"content":"Ilus","userID":3}
+                """);
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void streamCommentsByCampingRoute_shouldThrowCampingRouteNotFoundException_whenRouteNotFound() {
+        // Given
+        when(campingRouteRepository.existsById(anyLong())).thenReturn(false);
+
+        // When & Then
+        assertThatThrownBy(() -> commentService.streamCommentsByCampingRoute(1L))
+                .isInstanceOf(CampingRouteNotFoundException.class);
+        verify(commentRepository, never()).streamDtosByCampingRouteId(anyLong());
+    }
 }
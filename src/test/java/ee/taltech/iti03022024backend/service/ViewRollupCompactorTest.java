@@ -0,0 +1,79 @@
+package ee.taltech.iti03022024backend.service;
+
+import ee.taltech.iti03022024backend.AbstractIntegrationTest;
+import jakarta.transaction.Transactional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class ViewRollupCompactorTest extends AbstractIntegrationTest {
+
+    @Autowired
+    private ViewRollupCompactor compactor;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void clearViews() {
+        jdbcTemplate.update("DELETE FROM view");
+        jdbcTemplate.update("DELETE FROM view_hourly");
+        jdbcTemplate.update("DELETE FROM view_daily");
+    }
+
+    private void insertView(long campingRouteId, String age) {
+        jdbcTemplate.update("INSERT INTO view (created_at, camping_route_id) "
+                + "VALUES (date_trunc('hour', localtimestamp) - ?::interval, ?)", age, campingRouteId);
+    }
+
+    @Test
+    @Transactional
+    void givenOldAndRecentViews_whenCompact_thenOldViewsAreFoldedIntoRollups() {
+        insertView(1L, "10 days");
+        insertView(1L, "10 days");
+        insertView(1L, "11 days");
+        insertView(2L, "10 days");
+        insertView(1L, "1 hour");
+
+        long moved = compactor.compact();
+
+        assertThat(moved).isEqualTo(4);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM view", Long.class)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForList(
+                "SELECT view_count FROM view_hourly WHERE camping_route_id = 1 ORDER BY bucket_start", Long.class))
+                .containsExactly(1L, 2L);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT sum(view_count) FROM view_daily WHERE camping_route_id = 1", Long.class)).isEqualTo(3);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT sum(view_count) FROM view_daily WHERE camping_route_id = 2", Long.class)).isEqualTo(1);
+    }
+
+    @Test
+    @Transactional
+    void givenExistingBuckets_whenCompact_thenBucketsAreIncremented() {
+        insertView(1L, "10 days");
+        compactor.compact();
+        insertView(1L, "10 days");
+
+        compactor.compact();
+
+        assertThat(jdbcTemplate.queryForList("SELECT view_count FROM view_hourly", Long.class)).containsExactly(2L);
+        assertThat(jdbcTemplate.queryForList("SELECT view_count FROM view_daily", Long.class)).containsExactly(2L);
+    }
+
+    @Test
+    @Transactional
+    void givenHourlyBucketsPastRetention_whenCompact_thenTheyArePruned() {
+        jdbcTemplate.update("INSERT INTO view_hourly (camping_route_id, bucket_start, view_count) "
+                + "VALUES (1, localtimestamp - interval '200 days', 5)");
+
+        compactor.compact();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM view_hourly", Long.class)).isZero();
+    }
+}
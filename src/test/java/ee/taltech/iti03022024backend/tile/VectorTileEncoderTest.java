@@ -0,0 +1,123 @@
+package ee.taltech.iti03022024backend.tile;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VectorTileEncoderTest {
+
+    // fields of a message by number, varints as Long and length delimited fields as byte[]
+    private static Map<Integer, List<Object>> decode(byte[] message) {
+        var in = new ByteArrayInputStream(message);
+        Map<Integer, List<Object>> fields = new LinkedHashMap<>();
+        while (in.available() > 0) {
+            long tag = readVarint(in);
+            Object value = switch ((int) (tag & 0x7)) {
+                case 0 -> readVarint(in);
+                case 1 -> readBytes(in, 8);
+                case 2 -> readBytes(in, (int) readVarint(in));
+                default -> throw new IllegalStateException("Unexpected wire type");
+            };
+            fields.computeIfAbsent((int) (tag >>> 3), field -> new ArrayList<>()).add(value);
+        }
+        return fields;
+    }
+
+    private static byte[] readBytes(ByteArrayInputStream in, int length) {
+        byte[] bytes = new byte[length];
+        in.read(bytes, 0, length);
+        return bytes;
+    }
+
+    private static long readVarint(ByteArrayInputStream in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            value |= (long) (b & 0x7F) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+    }
+
+    private static List<Long> packed(Object field) {
+        var in = new ByteArrayInputStream((byte[]) field);
+        List<Long> values = new ArrayList<>();
+        while (in.available() > 0) {
+            values.add(readVarint(in));
+        }
+        return values;
+    }
+
+    private static Map<Integer, List<Object>> layer(byte[] tile) {
+        return decode((byte[]) decode(tile).get(3).getFirst());
+    }
+
+    @Test
+    void givenNoFeatures_whenEncode_thenEmptyTile() {
+        var encoder = new VectorTileEncoder("routes");
+
+        assertThat(encoder.isEmpty()).isTrue();
+        assertThat(encoder.encode()).isEmpty();
+    }
+
+    @Test
+    void givenLineString_whenEncode_thenGeometryIsCommandsAndZigzagDeltas() {
+        var encoder = new VectorTileEncoder("routes");
+        encoder.addLineString(7, List.of(new int[]{10, 20, 30, 20, 30, 20, 30, 40}), Map.of("name", "Raba"));
+
+        Map<Integer, List<Object>> layer = layer(encoder.encode());
+        assertThat(layer.get(15)).containsExactly(2L);
+        assertThat(new String((byte[]) layer.get(1).getFirst(), StandardCharsets.UTF_8)).isEqualTo("routes");
+        assertThat(layer.get(5)).containsExactly((long) VectorTileEncoder.EXTENT);
+
+        Map<Integer, List<Object>> feature = decode((byte[]) layer.get(2).getFirst());
+        assertThat(feature.get(1)).containsExactly(7L);
+        assertThat(feature.get(3)).containsExactly(2L);
+        // the repeated point is dropped: move to (10, 20), line to (30, 20) and (30, 40)
+        assertThat(packed(feature.get(4).getFirst())).containsExactly(9L, 20L, 40L, 18L, 40L, 0L, 0L, 40L);
+        assertThat(packed(feature.get(2).getFirst())).containsExactly(0L, 0L);
+    }
+
+    @Test
+    void givenSeveralParts_whenEncode_thenCursorCarriesOverAndShortPartsAreDropped() {
+        var encoder = new VectorTileEncoder("routes");
+        encoder.addLineString(1, List.of(new int[]{0, 0, 10, 0}, new int[]{5, 5, 5, 5}, new int[]{10, 10, 0, 10}), Map.of());
+
+        Map<Integer, List<Object>> feature = decode((byte[]) layer(encoder.encode()).get(2).getFirst());
+        assertThat(packed(feature.get(4).getFirst()))
+                .containsExactly(9L, 0L, 0L, 10L, 20L, 0L, 9L, 0L, 20L, 10L, 19L, 0L);
+    }
+
+    @Test
+    void givenLineStringWithoutLength_whenEncode_thenFeatureIsSkipped() {
+        var encoder = new VectorTileEncoder("routes");
+        encoder.addLineString(1, List.of(new int[]{5, 5, 5, 5}), Map.of());
+
+        assertThat(encoder.isEmpty()).isTrue();
+    }
+
+    @Test
+    void givenSharedProperties_whenEncode_thenKeysAndValuesAreStoredOnce() {
+        var encoder = new VectorTileEncoder("routes");
+        encoder.addPoint(1, 100, 200, Map.of("location", "Tartu"));
+        encoder.addPoint(2, -5, 300, Map.of("location", "Tartu"));
+
+        Map<Integer, List<Object>> layer = layer(encoder.encode());
+        assertThat(layer.get(2)).hasSize(2);
+        assertThat(layer.get(3)).hasSize(1);
+        assertThat(layer.get(4)).hasSize(1);
+
+        Map<Integer, List<Object>> second = decode((byte[]) layer.get(2).get(1));
+        assertThat(second.get(3)).containsExactly(1L);
+        assertThat(packed(second.get(4).getFirst())).containsExactly(9L, 9L, 600L);
+        assertThat(packed(second.get(2).getFirst())).containsExactly(0L, 0L);
+    }
+}